@@ -23,22 +23,24 @@ public class Envirenment {
 	public static final int DEFAULT_REQUEST_PULL_TIMEOUT = 200;
 	
 	/**
-	 * RequestSuplier泵入request线程的停顿时间
+	 * RequestSuplier泵入request线程的停顿时间，各阶段已改为阻塞方式传递背压，不再使用
 	 */
+	@Deprecated
 	public static final long DEFAULT_SUPLIER_PAUSEMILLS = 300;
 	
 	/**
-	 * JCrawler爬虫线程的停顿时间
+	 * JCrawler爬虫线程的停顿时间，作为Site.sleepTimeRandom()的默认随机范围
 	 */
 	public static final long DEFAULT_CRAWLER_PAUSEMILLS = 200;
 	
 	/**
-	 * Exporter导出page线程的停顿时间
+	 * Exporter导出page线程的停顿时间，各阶段已改为阻塞方式传递背压，不再使用
 	 */
+	@Deprecated
 	public static final long DEFAULT_EXPORTER_PAUSEMILLS = 30;
 	
 	/**
-	 * main线程的停顿时间
+	 * main线程的停顿时间，只在SERVER模式下使用
 	 */
 	public static final long DEFAULT_MAINTHREAD_PAUSEMILLS = 3000;
 	
@@ -53,14 +55,175 @@ public class Envirenment {
 	public static final int DEFAULT_PAGE_PULL_TIMEOUT = 200;
 	
 	/**
-	 * main线程空闲等待终止时长
+	 * 响应报文主体默认最多读取的字节数，超过部分被丢弃
 	 */
+	public static final long DEFAULT_MAX_BODY_BYTES = 64L * 1024 * 1024;
+	
+	/**
+	 * 响应报文主体在内存中最多保存的字节数，超过后写入临时文件
+	 */
+	public static final long DEFAULT_BODY_SPILL_THRESHOLD = 1024 * 1024;
+	
+	/**
+	 * 下载响应报文主体时默认的最低传输速率，单位bytes/sec，0表示不限制
+	 */
+	public static final long DEFAULT_MIN_TRANSFER_RATE = 0;
+	
+	/**
+	 * 开始接收报文主体后经过该时长才检查传输速率，避免慢启动阶段被误判，单位millis
+	 */
+	public static final long DEFAULT_TRANSFER_RATE_GRACE = 3000;
+	
+	/**
+	 * 单次请求从发出到接收完报文主体的默认总时限，单位millis，0表示不限制
+	 */
+	public static final long DEFAULT_DOWNLOAD_DEADLINE = 0;
+	
+	/**
+	 * main线程空闲等待终止时长，CLIENT模式已改由完成跟踪器判定爬取任务结束，不再使用
+	 */
+	@Deprecated
 	public static final int DEFAULT_WAIT_END_TIMEOUT = 3 * 60 * 1000;
 	
 	public static final int DEFAULT_RETRY_TIMES = 3;
 	
+	/**
+	 * 下载失败后第一次重试的平均延迟，之后每次重试加倍，单位millis
+	 */
+	public static final long DEFAULT_RETRY_BASE_DELAY = 1000;
+	
+	/**
+	 * 下载失败后重试延迟的上限，单位millis
+	 */
+	public static final long DEFAULT_RETRY_MAX_DELAY = 60 * 1000;
+	
 	public static final int DEFAULT_CONNECTION_TIMEOUT = 3000;
 	
+	/**
+	 * 每个site的连接池默认的最大连接数
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 100;
+	
+	/**
+	 * 每个site的连接池中每个route(host、port、proxy的组合)默认的最大连接数
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 100;
+	
+	/**
+	 * 连接默认的最长保持时间，服务端通过Keep-Alive头指定了更短的时间时以服务端为准，单位millis
+	 */
+	public static final long DEFAULT_KEEP_ALIVE = 30 * 1000;
+	
+	/**
+	 * 连接空闲超过该时长后由后台线程关闭，单位millis
+	 */
+	public static final long DEFAULT_IDLE_EVICTION = 60 * 1000;
+	
+	/**
+	 * 后台线程检查并关闭过期、空闲连接的间隔，单位millis
+	 */
+	public static final long DEFAULT_CONNECTION_REAPER_INTERVAL = 5 * 1000;
+	
+	/**
+	 * DNS缓存中解析成功的结果的默认有效期，单位millis
+	 */
+	public static final long DEFAULT_DNS_TTL = 5 * 60 * 1000;
+	
+	/**
+	 * DNS缓存中解析失败(host不存在)的结果的默认有效期，单位millis
+	 */
+	public static final long DEFAULT_DNS_NEGATIVE_TTL = 30 * 1000;
+	
+	/**
+	 * DNS缓存默认最多保存的host数量
+	 */
+	public static final int DEFAULT_DNS_CACHE_SIZE = 100000;
+	
+	/**
+	 * 预解析DNS的后台线程数量
+	 */
+	public static final int DEFAULT_DNS_RESOLVER_THREADS = 8;
+	
+	/**
+	 * 等待预解析的host的最大数量，超过后新的预解析请求被忽略
+	 */
+	public static final int DEFAULT_DNS_PREFETCH_QUEUE = 10000;
+	
+	/**
+	 * 与robots.txt中user-agent比较的本爬虫名称
+	 */
+	public static final String DEFAULT_ROBOTS_AGENT = "jcrawler";
+	
+	/**
+	 * robots.txt的缓存有效期，单位millis
+	 */
+	public static final long DEFAULT_ROBOTS_TTL = 24 * 60 * 60 * 1000L;
+	
+	/**
+	 * robots.txt暂时无法访问(5xx、429或网络错误)时推迟该host的request并在之后重新下载robots.txt的时长，单位millis
+	 */
+	public static final long DEFAULT_ROBOTS_ERROR_TTL = 5 * 60 * 1000L;
+	
+	/**
+	 * 最多缓存robots.txt的host数量
+	 */
+	public static final int DEFAULT_ROBOTS_CACHE_SIZE = 100000;
+	
+	/**
+	 * 后台下载robots.txt的线程数量
+	 */
+	public static final int DEFAULT_ROBOTS_LOADER_THREADS = 4;
+	
+	/**
+	 * robots.txt中Crawl-delay的上限，单位millis，避免个别host指定过大的间隔使其request长期滞留
+	 */
+	public static final long DEFAULT_ROBOTS_MAX_CRAWL_DELAY = 60 * 1000L;
+	
+	/**
+	 * 自适应并发控制下每个host初始的并发上限
+	 */
+	public static final int DEFAULT_HOST_INITIAL_CONCURRENCY = 2;
+	
+	/**
+	 * 自适应并发控制下每个host最大的并发上限
+	 */
+	public static final int DEFAULT_HOST_MAX_CONCURRENCY = 32;
+	
+	/**
+	 * 异步分发模式下默认同时未完成的最大请求数量
+	 */
+	public static final int DEFAULT_MAX_INFLIGHT_REQUESTS = 1000;
+	
+	/**
+	 * 虚拟线程模式下默认的爬虫线程数量
+	 */
+	public static final int DEFAULT_VIRTUAL_WORKERS = 1000;
+	
+	/**
+	 * 默认Reserver预计保留的request数量
+	 */
+	public static final long DEFAULT_RESERVER_CAPACITY = 5000000;
+	
+	/**
+	 * 默认Reserver的误判率
+	 */
+	public static final double DEFAULT_RESERVER_FPP = 0.0001;
+	
+	/**
+	 * 检查点默认的快照间隔，单位ms
+	 */
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 60 * 1000;
+	
+	/**
+	 * 默认的导出线程数量
+	 */
+	public static final int DEFAULT_EXPORTER_THREADS = 1;
+	
+	/**
+	 * 导出线程每次默认最多导出的page数量
+	 */
+	public static final int DEFAULT_EXPORT_BATCH_SIZE = 100;
+	
 	public static final int DEFAULT_EXECUTOR_THREADS = Runtime.getRuntime().availableProcessors();
 	
 	/**
@@ -2,12 +2,12 @@ package jcrawler;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -15,13 +15,28 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 
+import jcrawler.checkpoint.Checkpointer;
+import jcrawler.executor.AsyncSpiderWorker;
+import jcrawler.executor.ConcurrentBloomReserver;
+import jcrawler.executor.CrawlTracker;
+import jcrawler.executor.FlowGate;
 import jcrawler.executor.PageExporterWorker;
+import jcrawler.executor.PageLanes;
 import jcrawler.executor.RequestSuplier;
 import jcrawler.executor.RequestSuplierWorker;
+import jcrawler.executor.Reserver;
+import jcrawler.executor.RetryScheduler;
 import jcrawler.executor.SpiderWorker;
 import jcrawler.exporter.Exporter;
+import jcrawler.exporter.QueuedExporter;
 import jcrawler.extractor.Extractor;
+import jcrawler.fetcher.AsyncFetcher;
+import jcrawler.fetcher.CachingFetcher;
 import jcrawler.fetcher.Fetcher;
+import jcrawler.fetcher.HttpCache;
+import jcrawler.frontier.AimdConcurrency;
+import jcrawler.frontier.PolitenessFrontier;
+import jcrawler.robots.RobotsCache;
 import jcrawler.support.Threads;
 
 /**
@@ -36,12 +51,14 @@ public class JCrawler implements Runnable {
 	private static Logger logger = LoggerFactory.getLogger(JCrawler.class);
 	
 	/**
-	 * request池，用来存储所有的request对象。
+	 * request池，用来存储所有的request对象。默认按host调度，同一host两次访问间隔为site的sleepTime。
+	 * 待爬取request数量巨大时可指定为DiskBackedFrontier，以限制其内存占用；需按request的prior调度时可指定为PriorityFrontier。
+	 * 实现了Closeable的request池将在JCrawler退出时关闭。
 	 */
-	private BlockingQueue<Request> requestQueue = new LinkedBlockingQueue<>();
+	private BlockingQueue<Request> requestQueue = new PolitenessFrontier();
 	
 	/**
-	 * requestQueue阀值，指定requestQueue中能容纳的最多request数量，超出该值时需控制线程速度。
+	 * requestQueue阀值，指定request泵最多向requestQueue中泵入多少request，达到该值时request泵阻塞直到爬虫线程取出request。
 	 */
 	private int requestHolderThresholds;
 	
@@ -51,9 +68,46 @@ public class JCrawler implements Runnable {
 	private RequestSuplier requestSuplier;
 	
 	/**
-	 * suplier线程停顿时长，单位毫秒，指定suplier线程在泵request超出requestQueue指定阀值后停顿多久，在提供requestSuplier对象后才有效
+	 * request保留器，所有初始化request以及从page中抽取的request在存入requestQueue之前由其过滤重复的request
 	 */
-	private long requestSuplierPauseMills;
+	private Reserver reserver;
+	
+	/**
+	 * 检查点目录，指定后定期记录爬取进度，爬虫进程崩溃后可通过resumeFrom从中恢复
+	 */
+	private Path checkpointDir;
+	
+	/**
+	 * 是否从检查点目录中恢复
+	 */
+	private boolean resume;
+	
+	/**
+	 * 检查点的快照间隔，单位毫秒
+	 */
+	private long checkpointIntervalMills;
+	
+	private Checkpointer checkpointer;
+	
+	/**
+	 * HTTP缓存目录，指定后重复爬取时对已缓存的页面发起条件请求，未修改的页面不再下载报文主体
+	 */
+	private Path httpCacheDir;
+	
+	/**
+	 * 重试调度器，下载失败的request按指数退避延迟重新放回requestQueue，未指定时使用默认的退避延迟
+	 */
+	private RetryScheduler retryScheduler;
+	
+	/**
+	 * robots.txt规则缓存，指定后所有request进入requestQueue之前检查robots.txt是否允许爬取，并按其Crawl-delay控制同一host的访问间隔
+	 */
+	private RobotsCache robots;
+	
+	/**
+	 * 完成跟踪器，CLIENT模式下所有request完成后立即结束爬取
+	 */
+	private CrawlTracker tracker;
 	
 	/**
 	 * 待爬取site集合，所有初始化待爬取request均设置于每个site内。JCrawler支持一次爬取多个网站。
@@ -65,30 +119,45 @@ public class JCrawler implements Runnable {
 	 */
 	private Fetcher fetcher;
 	
+	/**
+	 * 异步下载器，指定后JCrawler以异步分发模式运行：由一个分发线程维持大量未完成请求，其余线程处理下载完成后的抽取流程
+	 */
+	private AsyncFetcher asyncFetcher;
+	
+	/**
+	 * 异步分发模式下同时未完成的最大请求数量
+	 */
+	private int maxInFlight;
+	
 	/**
 	 * 执行线程数量，最少需为2个
 	 */
 	private int threads;
 	
 	/**
-	 * 执行线程池
+	 * 线程模式，默认使用平台线程池
 	 */
-	private ExecutorService executor;
+	private ThreadMode threadMode = ThreadMode.PLATFORM;
 	
 	/**
-	 * page池，用来存储所有的page对象。
+	 * 虚拟线程模式下的爬虫线程数量，每个爬虫线程运行于一个虚拟线程上，不受threads限制
 	 */
-	private BlockingQueue<Page> pageQueue = new LinkedBlockingQueue<>();
+	private int virtualWorkers;
 	
 	/**
-	 * pageQueue阀值，指定pageQueue中能容纳的最多page数量，超出该值时需控制线程速度。
+	 * 执行线程池
 	 */
-	private int pageHolderThresholds;
+	private ExecutorService executor;
 	
 	/**
-	 * Spider线程停顿时长，单位毫秒，指定Spider线程在page总量超出pageQueue指定阀值后停顿多久，以此控制Spider线程吞吐率
+	 * page池，用来存储所有的page对象，为总容量为pageHolderThresholds的有界队列，按导出线程分为多个通道，启动时创建。
 	 */
-	private long pageSuplierPauseMills;
+	private BlockingQueue<Page> pageQueue;
+	
+	/**
+	 * pageQueue阀值，指定pageQueue中能容纳的最多page数量，达到该值时爬虫线程阻塞直到导出线程取出page。
+	 */
+	private int pageHolderThresholds;
 	
 	/**
 	 * 抽取器，可选
@@ -96,19 +165,50 @@ public class JCrawler implements Runnable {
 	private Extractor extractor;
 	
 	/**
-	 * 导出器列表，可以是多个导出器以pipeline方式串行依次导出
+	 * 导出器列表，默认多个导出器以pipeline方式串行依次导出，启用exportFanout后各导出器以独立队列和线程并行导出
 	 */
 	private List<Exporter> exporters = new LinkedList<Exporter>();
 	
 	/**
-	 * Exporter线程停顿时长，单位毫秒，指定Exporter线程在一次导出流程中停顿多久，以此控制Exporter线程吞吐率
+	 * 导出线程数量，page按其request的signature分配给固定的导出线程，同一signature的page保持导出顺序
+	 */
+	private int exporterThreads;
+	
+	/**
+	 * 导出线程每次最多导出的page数量，实现了BatchExporter的导出器一次导出整批page
 	 */
-	private long pageExporterPauseMills;
+	private int exportBatchSize;
+	
+	/**
+	 * 扇出模式下每个导出器独立队列的容量，大于0时启用扇出模式：每个导出器包装为QueuedExporter，拥有各自的队列和导出线程，互不阻塞
+	 */
+	private int exportFanoutCapacity;
+	
+	/**
+	 * 扇出模式下导出器队列已满时的处理策略
+	 */
+	private QueuedExporter.OverflowPolicy exportOverflowPolicy = QueuedExporter.OverflowPolicy.BLOCK;
 	
 	public static JCrawler create() {
 		return new JCrawler();
 	}
 	
+	public JCrawler requestQueue(BlockingQueue<Request> requestQueue) {
+		assertNotRunning();
+		if (requestQueue != null) {
+			this.requestQueue = requestQueue;
+		}
+		return this;
+	}
+	
+	/**
+	 * 使用按host自适应调整并发数的PolitenessFrontier作为requestQueue，每个host的并发上限随其延迟和错误自动增减。
+	 */
+	public JCrawler adaptiveConcurrency(AimdConcurrency concurrency) {
+		Preconditions.checkNotNull(concurrency, "the concurrency is null!");
+		return requestQueue(new PolitenessFrontier(concurrency));
+	}
+	
 	public JCrawler requestHolderThresholds(int requestHolderThresholds) {
 		Preconditions.checkArgument(requestHolderThresholds > 0, "requestHolderThresholds less than zero!");
 		this.requestHolderThresholds = requestHolderThresholds; 
@@ -120,9 +220,70 @@ public class JCrawler implements Runnable {
 		return this;
 	}
 	
+	/**
+	 * request泵改由阻塞方式控制速度，不再需要停顿，该设置已不再生效。
+	 */
+	@Deprecated
 	public JCrawler requestSuplierPauseMills(long requestSuplierPauseMills) {
-		Preconditions.checkArgument(requestSuplierPauseMills > 0, "requestSuplierPauseMills less than zero!");
-		this.requestSuplierPauseMills = requestSuplierPauseMills;
+		return this;
+	}
+	
+	public JCrawler robots(RobotsCache robots) {
+		assertNotRunning();
+		if (robots != null) {
+			this.robots = robots;
+		}
+		return this;
+	}
+	
+	public JCrawler retryScheduler(RetryScheduler retryScheduler) {
+		assertNotRunning();
+		if (retryScheduler != null) {
+			this.retryScheduler = retryScheduler;
+		}
+		return this;
+	}
+	
+	public JCrawler reserver(Reserver reserver) {
+		assertNotRunning();
+		if (reserver != null) {
+			this.reserver = reserver;
+		}
+		return this;
+	}
+	
+	/**
+	 * 开始一次新的爬取，并在checkpointDir中记录检查点，目录中已有的检查点将被覆盖。
+	 */
+	public JCrawler checkpoint(Path checkpointDir) {
+		assertNotRunning();
+		this.checkpointDir = checkpointDir;
+		this.resume = false;
+		return this;
+	}
+	
+	/**
+	 * 从checkpointDir中的检查点恢复上次中断的爬取，并继续在该目录中记录检查点；目录中没有检查点时等同于checkpoint(checkpointDir)。
+	 */
+	public JCrawler resumeFrom(Path checkpointDir) {
+		assertNotRunning();
+		this.checkpointDir = checkpointDir;
+		this.resume = true;
+		return this;
+	}
+	
+	/**
+	 * 在httpCacheDir中保存每个页面的ETag/Last-Modified和报文主体，fetcher和asyncFetcher(未指定时为每个site默认的fetcher)被包装为CachingFetcher。
+	 */
+	public JCrawler httpCache(Path httpCacheDir) {
+		assertNotRunning();
+		this.httpCacheDir = httpCacheDir;
+		return this;
+	}
+	
+	public JCrawler checkpointIntervalMills(long checkpointIntervalMills) {
+		Preconditions.checkArgument(checkpointIntervalMills > 0, "checkpointIntervalMills less than zero!");
+		this.checkpointIntervalMills = checkpointIntervalMills;
 		return this;
 	}
 	
@@ -145,21 +306,47 @@ public class JCrawler implements Runnable {
 		return this;
 	}
 	
+	public JCrawler asyncFetcher(AsyncFetcher asyncFetcher) {
+		this.asyncFetcher = asyncFetcher;
+		return this;
+	}
+	
+	public JCrawler maxInFlight(int maxInFlight) {
+		Preconditions.checkArgument(maxInFlight > 0, "maxInFlight less than zero!");
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+	
 	public JCrawler threads(int threads) {
 		Preconditions.checkArgument(threads > 1, "threads less than 2!");
 		this.threads = threads;
 		return this;
 	}
 	
+	public JCrawler threadMode(ThreadMode threadMode) {
+		if (threadMode != null) {
+			this.threadMode = threadMode;
+		}
+		return this;
+	}
+	
+	public JCrawler virtualWorkers(int virtualWorkers) {
+		Preconditions.checkArgument(virtualWorkers > 0, "virtualWorkers less than zero!");
+		this.virtualWorkers = virtualWorkers;
+		return this;
+	}
+	
 	public JCrawler pageHolderThresholds(int pageHolderThresholds) {
 		Preconditions.checkArgument(pageHolderThresholds > 0, "pageHolderThresholds less than zero!");
 		this.pageHolderThresholds = pageHolderThresholds; 
 		return this;
 	}
 	
+	/**
+	 * 爬虫线程改由有界的pageQueue阻塞控制速度，不再需要停顿，该设置已不再生效。
+	 */
+	@Deprecated
 	public JCrawler pageSuplierPauseMills(long pageSuplierPauseMills) {
-		Preconditions.checkArgument(pageSuplierPauseMills > 0, "pageSuplierPauseMills less than zero!");
-		this.pageSuplierPauseMills = pageSuplierPauseMills;
 		return this;
 	}
 	
@@ -184,9 +371,35 @@ public class JCrawler implements Runnable {
 		return this;
 	}
 	
+	public JCrawler exporterThreads(int exporterThreads) {
+		Preconditions.checkArgument(exporterThreads > 0, "exporterThreads less than zero!");
+		this.exporterThreads = exporterThreads;
+		return this;
+	}
+	
+	public JCrawler exportBatchSize(int exportBatchSize) {
+		Preconditions.checkArgument(exportBatchSize > 0, "exportBatchSize less than zero!");
+		this.exportBatchSize = exportBatchSize;
+		return this;
+	}
+	
+	/**
+	 * 启用导出器扇出模式，每个导出器拥有容量为capacity的独立队列和导出线程，队列已满时按policy处理。
+	 * 
+	 * 已经是QueuedExporter的导出器不再重复包装，也可以直接以QueuedExporter包装单个导出器以单独设置其容量、线程数和策略。
+	 */
+	public JCrawler exportFanout(int capacity, QueuedExporter.OverflowPolicy policy) {
+		Preconditions.checkArgument(capacity > 0, "capacity less than zero!");
+		this.exportFanoutCapacity = capacity;
+		this.exportOverflowPolicy = Preconditions.checkNotNull(policy, "policy is null!");
+		return this;
+	}
+	
+	/**
+	 * 导出线程改为阻塞等待page，不再需要停顿，该设置已不再生效。
+	 */
+	@Deprecated
 	public JCrawler pageExporterPauseMills(long pageExporterPauseMills) {
-		Preconditions.checkArgument(pageExporterPauseMills > 0, "pageExporterPauseMills less than zero!");
-		this.pageExporterPauseMills = pageExporterPauseMills;
 		return this;
 	}
 	
@@ -198,32 +411,105 @@ public class JCrawler implements Runnable {
 		if (exporters.isEmpty()) {
 			throw new JCrawlerException("The exporters is empty!");
 		}
-		if (this.fetcher == null) {
+		if (this.fetcher == null && this.asyncFetcher == null) {
 			logger.warn("Not specified the Fetcher, use the default Fetcher with each site.");
 		}
+		if (this.httpCacheDir != null) {
+			initHttpCache();
+		}
+		if (this.executor == null && this.threadMode == ThreadMode.VIRTUAL) {
+			if (this.asyncFetcher != null) {
+				logger.warn("the async dispatch mode doesn't need virtual threads, use the platform threads instead.");
+				this.threadMode = ThreadMode.PLATFORM;
+			} else {
+				this.executor = Threads.newVirtualThreadPerTaskExecutor();
+				if (this.executor == null) {
+					logger.warn("the virtual thread isn't supported by current jvm, fallback to the platform threads.");
+					this.threadMode = ThreadMode.PLATFORM;
+				} else {
+					logger.info("use the virtual thread ExecutorService [{}]", executor);
+				}
+			}
+		}
+		this.exporterThreads = exporterThreads <= 0 ? Envirenment.DEFAULT_EXPORTER_THREADS : exporterThreads;
 		if (this.executor == null) {
 			this.threads = threads < 2 ? Envirenment.DEFAULT_EXECUTOR_THREADS : threads;
+			// exporter线程、requestSuplier线程之外至少还需一个爬虫线程，异步分发模式下分发线程之外至少还需一个线程处理下载完成后的page
+			int minThreads = this.exporterThreads + (this.requestSuplier == null ? 0 : 1) + (this.asyncFetcher == null ? 1 : 2);
+			if (this.threads < minThreads) {
+				logger.warn("the threads {} is too few, use {} instead.", threads, minThreads);
+				this.threads = minThreads;
+			}
 			this.executor = Executors.newFixedThreadPool(threads);
 			logger.info("use the ExecutorService [{}] with [{}] threads", executor, threads);
 		}
 		if (this.extractor == null) {
 			logger.warn("Not specified the Extractor, it's not necessary but you must ensure it.");
 		}
-		// 管理初始化requests
-		for (Site siteToUse : this.sites) {
-			List<Request> startRequests = siteToUse.getStartRequests();
-			for (Request startRequest : startRequests) {
-				try {
-                  this.requestQueue.offer(startRequest, Envirenment.DEFAULT_REQUEST_PUSH_TIMEOUT, TimeUnit.MILLISECONDS);
-                } catch (InterruptedException e) {
-                  // TODO Auto-generated catch block
-                  e.printStackTrace();
-                }
+		if (this.reserver == null) {
+			this.reserver = new ConcurrentBloomReserver(Envirenment.DEFAULT_RESERVER_CAPACITY, Envirenment.DEFAULT_RESERVER_FPP);
+		}
+		logger.info("use the Reserver [{}]", reserver);
+		if (this.robots != null) {
+			if (this.requestQueue instanceof PolitenessFrontier) {
+				((PolitenessFrontier) this.requestQueue).robots(robots);
+			}
+			logger.info("use the RobotsCache [{}]", robots);
+		}
+		// reserver需先于初始化requests完成初始化，以便从快照中恢复已保留的request
+		this.init(this.reserver);
+		// 从检查点恢复时，requestQueue和reserver由检查点重建，不再重新加入初始化requests
+		if (!initCheckpointer()) {
+			// 管理初始化requests：初始化request是爬取入口，即使已被保留过(比如从快照恢复后)也需重新爬取，只在reserver中登记
+			addStartRequests:
+			for (Site siteToUse : this.sites) {
+				List<Request> startRequests = siteToUse.getStartRequests();
+				for (Request startRequest : startRequests) {
+					// robots.txt暂时不可用时照常放入requestQueue，由爬虫线程取出时推迟
+					if (this.robots != null && this.robots.check(startRequest) == RobotsCache.Verdict.DISALLOWED) {
+						logger.warn("the start request {} is disallowed by robots.txt.", startRequest);
+						continue;
+					}
+					this.reserver.reserve(startRequest);
+					if (this.checkpointer != null) {
+						this.checkpointer.enqueued(startRequest);
+					}
+					try {
+						if (!this.requestQueue.offer(startRequest, Envirenment.DEFAULT_REQUEST_PUSH_TIMEOUT,
+								TimeUnit.MILLISECONDS) && this.checkpointer != null) {
+							this.checkpointer.completed(startRequest);
+						}
+					} catch (InterruptedException e) {
+						// 被中断时不再加入其余的初始化requests，保留中断状态由之后的等待处理
+						Thread.currentThread().interrupt();
+						logger.warn("interrupted while adding the start request {}, the remaining start requests are dropped.", startRequest);
+						if (this.checkpointer != null) {
+							this.checkpointer.completed(startRequest);
+						}
+						break addStartRequests;
+					}
+				}
+			}
+		}
+		// 初始化requests以及从检查点恢复的requests均已加入requestQueue，request泵占用一个计数直到泵完所有request
+		this.tracker = new CrawlTracker(this.requestQueue.size() + (this.requestSuplier == null ? 0 : 1));
+		if (this.checkpointer != null) {
+			try {
+				this.checkpointer.start();
+			} catch (IOException e) {
+				throw new JCrawlerException("start the checkpointer error!", e);
 			}
 		}
 		// init requestSuplier/fetcher/extractor
-		this.init(this.requestSuplier).init(this.fetcher).init(this.extractor);
+		this.init(this.requestSuplier).init(this.fetcher).init(this.asyncFetcher).init(this.extractor);
 		// init exporter
+		if (this.exportFanoutCapacity > 0) {
+			List<Exporter> fanout = new LinkedList<Exporter>();
+			for (Exporter exporter : this.exporters) {
+				fanout.add(exporter instanceof QueuedExporter ? exporter : new QueuedExporter(exporter, exportFanoutCapacity, exportOverflowPolicy));
+			}
+			this.exporters = fanout;
+		}
 		for (Exporter exporter : this.exporters) {
 			init(exporter);
 		}
@@ -231,6 +517,51 @@ public class JCrawler implements Runnable {
 		logger.info("start jcrawler at : {}", start = System.currentTimeMillis());
 	}
 	
+	/**
+	 * 创建检查点，指定resumeFrom且检查点目录中存在检查点时从中恢复requestQueue和reserver。
+	 * 
+	 * @return 返回true，如果已从检查点恢复
+	 */
+	private boolean initCheckpointer() {
+		if (this.checkpointDir == null) {
+			return false;
+		}
+		try {
+			long intervalToUse = checkpointIntervalMills <= 0 ? Envirenment.DEFAULT_CHECKPOINT_INTERVAL : checkpointIntervalMills;
+			this.checkpointer = new Checkpointer(checkpointDir, intervalToUse);
+			for (Site siteToUse : this.sites) {
+				this.checkpointer.site(siteToUse);
+			}
+			if (this.resume && this.checkpointer.exists()) {
+				this.checkpointer.recover(requestQueue, reserver);
+				return true;
+			}
+			if (this.checkpointer.exists()) {
+				logger.warn("the checkpoint {} already exists and will be overwritten, use resumeFrom to resume it.", checkpointDir);
+			}
+			this.checkpointer.clear();
+			return false;
+		} catch (IOException e) {
+			throw new JCrawlerException("init the checkpoint " + checkpointDir + " error!", e);
+		}
+	}
+	
+	private void initHttpCache() {
+		HttpCache httpCache;
+		try {
+			httpCache = new HttpCache(httpCacheDir);
+		} catch (IOException e) {
+			throw new JCrawlerException("init the http cache " + httpCacheDir + " error!", e);
+		}
+		if (this.asyncFetcher != null) {
+			if (!(this.asyncFetcher instanceof CachingFetcher)) {
+				this.asyncFetcher = new CachingFetcher(this.asyncFetcher, httpCache);
+			}
+		} else if (!(this.fetcher instanceof CachingFetcher)) {
+			this.fetcher = new CachingFetcher(this.fetcher, httpCache);
+		}
+	}
+	
 	public JCrawler init(Object object) {
 		if (object == null) {
 		  return this;
@@ -249,8 +580,8 @@ public class JCrawler implements Runnable {
 
 	private void close() {
 		this.status(Status.STOPPED);
-		// close requestSuplier/fetcher/extractor
-		this.close(this.requestSuplier).close(this.fetcher).close(this.extractor);
+		// close requestSuplier/checkpointer/requestQueue/reserver/fetcher/extractor
+		this.close(this.requestSuplier).close(this.checkpointer).close(this.requestQueue).close(this.reserver).close(this.fetcher).close(this.asyncFetcher).close(this.extractor);
 		// close exporter
 		for (Exporter exporter : this.exporters) {
 			close(exporter);
@@ -298,62 +629,84 @@ public class JCrawler implements Runnable {
 		// 首先检测各组件的状态，状态未设置正确先抛出运行时异常
 		init();
 		
-		// 如果提供了requestSuplier对象，需要单独占用一个线程运行它
-		int threadsUsed = 1;
+		// 各阶段之间以阻塞方式传递背压：pageQueue为有界队列，requestQueue由flowGate控制request泵
+		int pageHolderThresholdsToUse = pageHolderThresholds <= 0 ? Envirenment.DEFAULT_PAGE_THRESHOLDS : pageHolderThresholds;
+		PageLanes pageLanes = new PageLanes(exporterThreads, Math.max(pageHolderThresholdsToUse, exporterThreads));
+		this.pageQueue = pageLanes;
+		FlowGate flowGate = new FlowGate();
+		RetryScheduler retrySchedulerToUse = (retryScheduler == null ? new RetryScheduler() : retryScheduler).start(requestQueue);
+		
+		// 如果提供了requestSuplier对象，需要单独占用一个线程运行它；每个导出线程也各占用一个线程
+		int threadsUsed = exporterThreads;
 		RequestSuplierWorker requestSuplierWorker = null;
 		if (this.requestSuplier != null) {
 			threadsUsed++;
 			int requestHolderThresholdsToUse = requestHolderThresholds <= 0 ? Envirenment.DEFAULT_REQUEST_THRESHOLDS : requestHolderThresholds;
-			long requestSuplierPauseMillsToUse = requestSuplierPauseMills <= 0 ? Envirenment.DEFAULT_SUPLIER_PAUSEMILLS : requestSuplierPauseMills;
 			requestSuplierWorker = new RequestSuplierWorker(requestSuplier, requestQueue,
-					requestHolderThresholdsToUse, requestSuplierPauseMillsToUse);
+					requestHolderThresholdsToUse, flowGate).checkpointer(checkpointer).tracker(tracker).reserver(reserver).robots(robots);
 			this.executor.submit(requestSuplierWorker);
 		}
 		
 		// 启动爬取流程
 		List<SpiderWorker> crawlers = new LinkedList<SpiderWorker>();
-		int pageHolderThresholdsToUse = pageHolderThresholds <= 0 ? Envirenment.DEFAULT_PAGE_THRESHOLDS : pageHolderThresholds;
-		long pageSuplierPauseMillsToUse = pageSuplierPauseMills <= 0 ? Envirenment.DEFAULT_CRAWLER_PAUSEMILLS : pageSuplierPauseMills;
-		for (int i = 0, n = threads - threadsUsed; i < n; i++) {
-			SpiderWorker crawler = new SpiderWorker(requestQueue, pageQueue, fetcher, extractor, pageHolderThresholdsToUse, pageSuplierPauseMillsToUse);
+		if (this.asyncFetcher != null) {
+			// 异步分发模式：只启动一个分发线程，下载完成后的page交由executor中剩余的线程处理
+			threadsUsed++;
+			int maxInFlightToUse = maxInFlight <= 0 ? Envirenment.DEFAULT_MAX_INFLIGHT_REQUESTS : maxInFlight;
+			SpiderWorker crawler = new AsyncSpiderWorker(requestQueue, pageQueue, asyncFetcher, extractor,
+					executor, maxInFlightToUse).reserver(reserver).checkpointer(checkpointer).tracker(tracker).flowGate(flowGate)
+					.retryScheduler(retrySchedulerToUse).robots(robots);
 			crawlers.add(crawler);
 			this.executor.submit(crawler);
+			logger.info("run in async dispatch mode with max {} requests in flight and {} callback threads.",
+					maxInFlightToUse, threads - threadsUsed);
+		} else {
+			// 虚拟线程模式下每个爬虫线程独占一个虚拟线程，爬虫线程数量由virtualWorkers决定
+			int workers = threadMode == ThreadMode.VIRTUAL
+					? (virtualWorkers <= 0 ? Envirenment.DEFAULT_VIRTUAL_WORKERS : virtualWorkers)
+					: threads - threadsUsed;
+			for (int i = 0; i < workers; i++) {
+				SpiderWorker crawler = new SpiderWorker(requestQueue, pageQueue, fetcher, extractor)
+						.reserver(reserver).checkpointer(checkpointer).tracker(tracker).flowGate(flowGate)
+						.retryScheduler(retrySchedulerToUse).robots(robots);
+				crawlers.add(crawler);
+				this.executor.submit(crawler);
+			}
 		}
 		
-		// 对于exporters组件也需要一个单独的线程去运行它
-		long pageExporterPauseMillsToUse = pageExporterPauseMills <= 0 ? Envirenment.DEFAULT_EXPORTER_PAUSEMILLS : pageExporterPauseMills;
-		PageExporterWorker pageExporterWorker = new PageExporterWorker(pageQueue, exporters, pageExporterPauseMillsToUse);
-		this.executor.submit(pageExporterWorker);
+		// 对于exporters组件也需要单独的线程去运行它，每个导出线程只导出自己通道中的page
+		int exportBatchSizeToUse = exportBatchSize <= 0 ? Envirenment.DEFAULT_EXPORT_BATCH_SIZE : exportBatchSize;
+		List<PageExporterWorker> pageExporterWorkers = new LinkedList<PageExporterWorker>();
+		for (int i = 0; i < exporterThreads; i++) {
+			PageExporterWorker pageExporterWorker = new PageExporterWorker(pageLanes.lane(i), exporters, exportBatchSizeToUse)
+					.tracker(tracker);
+			pageExporterWorkers.add(pageExporterWorker);
+			this.executor.submit(pageExporterWorker);
+		}
 		
-		// 当JCrawler处于SERVER模式时，主线程永不退出；当JCrawler处于CLIENT模式时，如果符合某种条件则所有线程退出
-		long idleMoment = System.currentTimeMillis();
-		int idleTimes = 0;
-		while (true) {
-			Threads.sleep(Envirenment.DEFAULT_MAINTHREAD_PAUSEMILLS, true);
-			if (this.mode == Mode.CLIENT) {
-				if (!requestQueue.isEmpty()) {
-					idleTimes = 0;
-					idleMoment = System.currentTimeMillis();
-				} else {
-					idleTimes++;
-					long current = System.currentTimeMillis();
-					// 任务队列连续空闲三次或以上，并且等待指定时长后还是没有新任务加入，则认为本次爬取任务已结束，停掉所有线程。
-					if (idleTimes >= 3 && (current - idleMoment) > timeoutUntilStop) {
-						if (requestSuplierWorker != null) {
-							requestSuplierWorker.stop();
-						}
-						for (SpiderWorker crawler : crawlers) {
-							crawler.stop();
-						}
-						if (pageExporterWorker != null) {
-							pageExporterWorker.stop();
-						}
-//						logger.info("There are {} requests crawled and {} pages exported!", requestQueue.total(),
-//								pageQueue.total());
-						break;
-					}
-				}
+		// 当JCrawler处于SERVER模式时，主线程永不退出；当JCrawler处于CLIENT模式时，所有request完成后所有线程立即退出
+		if (this.mode == Mode.CLIENT) {
+			try {
+				tracker.awaitIdle();
+				logger.info("all requests are completed, stop all workers.");
+			} catch (InterruptedException e) {
+				logger.warn("interrupted while waiting requests completed, stop all workers with {}.", tracker);
+				Thread.currentThread().interrupt();
 			}
+		} else {
+			while (true) {
+				Threads.sleep(Envirenment.DEFAULT_MAINTHREAD_PAUSEMILLS, true);
+			}
+		}
+		if (requestSuplierWorker != null) {
+			requestSuplierWorker.stop();
+		}
+		retrySchedulerToUse.stop();
+		for (SpiderWorker crawler : crawlers) {
+			crawler.stop();
+		}
+		for (PageExporterWorker pageExporterWorker : pageExporterWorkers) {
+			pageExporterWorker.stop();
 		}
 		
 		// 退出时清理所有Closeable
@@ -364,8 +717,6 @@ public class JCrawler implements Runnable {
 
 	private Status status = Status.INIT;
 	
-	private long timeoutUntilStop = Envirenment.DEFAULT_WAIT_END_TIMEOUT;
-	
 	private long start;
 	
 	private long stop;
@@ -390,10 +741,11 @@ public class JCrawler implements Runnable {
 		}
 	}
 	
+	/**
+	 * CLIENT模式下由完成跟踪器判定爬取任务结束，不再需要空闲等待，该设置已不再生效。
+	 */
+	@Deprecated
 	public JCrawler timeoutUntilStop(long timeoutUntilStop) {
-		if (timeoutUntilStop > 10000) {
-			this.timeoutUntilStop = timeoutUntilStop;
-		}
 		return this;
 	}
 	
@@ -409,6 +761,19 @@ public class JCrawler implements Runnable {
 		SERVER, CLIENT;
 	}
 	
+	/**
+	 * JCrawler线程模式
+	 * 
+	 * 为其设置两种线程模式：
+	 * 1 PLATFORM模式，所有工作线程运行于固定大小的平台线程池中，爬虫线程数量由threads决定，默认为PLATFORM模式。
+	 * 2 VIRTUAL模式，每个工作线程运行于一个虚拟线程上，爬虫线程数量由virtualWorkers决定，可同时进行大量阻塞式下载；
+	 *   当前JVM不支持虚拟线程(JDK21以下)时自动回退到PLATFORM模式。
+	 * 
+	 */
+	public static enum ThreadMode {
+		PLATFORM, VIRTUAL;
+	}
+	
 	/**
 	 * JCrawler运行状态
 	 * 
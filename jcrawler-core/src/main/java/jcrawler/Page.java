@@ -71,7 +71,21 @@ public class Page {
 	}
 	
 	public boolean hasError() {
-		return e != null || (content() == null && rawContent() == null);
+		return e != null || response == null || !response.hasContent();
+	}
+	
+	/**
+	 * @return 返回true，如果响应报文主体超过最大字节数被截断，此时页面内容不完整
+	 */
+	public boolean truncated() {
+		return response != null && response.truncated();
+	}
+	
+	/**
+	 * @return 返回true，如果页面自上次爬取后未修改，响应报文主体来自本地HTTP缓存
+	 */
+	public boolean notModified() {
+		return response != null && response.notModified();
 	}
 	
 	// ------------------------------ page items set and get ------------------------------
@@ -46,6 +46,21 @@ public class Request extends Message {
 	 */
 	private int timeout;
 	
+	/**
+	 * 单次请求设置的响应报文主体最大字节数，0表示使用site的设置
+	 */
+	private long maxBodyBytes;
+	
+	/**
+	 * 单次请求设置的最低传输速率，单位bytes/sec，0表示使用site的设置
+	 */
+	private long minTransferRate;
+	
+	/**
+	 * 单次请求设置的下载总时限，单位millis，0表示使用site的设置
+	 */
+	private long downloadDeadline;
+	
 	/**
 	 * request的签名(备选属性)，用于标记并识别当前url的范畴：许多不同的url(可能只是页码参数或部分参数有差异)都对应相同的类目并属于同样的任务，此时用相同的signature表示相同属性的url。
 	 */
@@ -203,6 +218,39 @@ public class Request extends Message {
 		return this.timeout > 0 ? this.timeout : (site != null ? site.timeout() : 0);
 	}
 	
+	public Request maxBodyBytes(long maxBodyBytes) {
+		Preconditions.checkArgument(maxBodyBytes >= 0, "maxBodyBytes value less than zero!");
+		this.maxBodyBytes = maxBodyBytes;
+		return this;
+	}
+	
+	/**
+	 * @return 返回响应报文主体最多读取的字节数，未设置时依次取site和全局默认值
+	 */
+	public long maxBodyBytes() {
+		return this.maxBodyBytes > 0 ? this.maxBodyBytes : (site != null ? site.maxBodyBytes() : Envirenment.DEFAULT_MAX_BODY_BYTES);
+	}
+	
+	public Request minTransferRate(long bytesPerSecond) {
+		Preconditions.checkArgument(bytesPerSecond >= 0, "minTransferRate value less than zero!");
+		this.minTransferRate = bytesPerSecond;
+		return this;
+	}
+	
+	public long minTransferRate() {
+		return this.minTransferRate > 0 ? this.minTransferRate : (site != null ? site.minTransferRate() : Envirenment.DEFAULT_MIN_TRANSFER_RATE);
+	}
+	
+	public Request downloadDeadline(long millis) {
+		Preconditions.checkArgument(millis >= 0, "downloadDeadline value less than zero!");
+		this.downloadDeadline = millis;
+		return this;
+	}
+	
+	public long downloadDeadline() {
+		return this.downloadDeadline > 0 ? this.downloadDeadline : (site != null ? site.downloadDeadline() : Envirenment.DEFAULT_DOWNLOAD_DEADLINE);
+	}
+	
 	public Request signature(String signature) {
 		if (StringUtils.isNotBlank(signature)) {
 			this.signature = signature;
@@ -324,6 +372,7 @@ public class Request extends Message {
 		if (timeoutToUse > 0) {
 			newRequest.timeout(timeoutToUse);
 		}
+		newRequest.maxBodyBytes(this.maxBodyBytes).minTransferRate(this.minTransferRate).downloadDeadline(this.downloadDeadline);
 		return newRequest;
 	}
 	
@@ -351,6 +400,9 @@ public class Request extends Message {
 		if (timeoutToUse > 0) {
 			newRequest.timeout(timeoutToUse);
 		}
+		newRequest.maxBodyBytes(that.maxBodyBytes > 0 ? that.maxBodyBytes : this.maxBodyBytes)
+				.minTransferRate(that.minTransferRate > 0 ? that.minTransferRate : this.minTransferRate)
+				.downloadDeadline(that.downloadDeadline > 0 ? that.downloadDeadline : this.downloadDeadline);
 		return newRequest;
 	}
 	
@@ -365,12 +417,13 @@ public class Request extends Message {
 		if (this == that) {
 			return true;
 		}
-		return method == Method.GET ? url.equals(that.url()) : super.equals(arg0);
+		// URL.equals/hashCode会解析host并比较ip地址，这里只按字符串比较，不触发DNS查询
+		return method == Method.GET ? url.toExternalForm().equals(that.url().toExternalForm()) : super.equals(arg0);
 	}
 
 	@Override
 	public int hashCode() {
-		return method == Method.GET ? url.hashCode() : super.hashCode();
+		return method == Method.GET ? url.toExternalForm().hashCode() : super.hashCode();
 	}
 	
 	@Override
@@ -384,6 +437,9 @@ public class Request extends Message {
 				.add("requestCharset", requestCharset)
 				.add("responseCharset", responseCharset)
 				.add("timeout", timeout)
+				.add("maxBodyBytes", maxBodyBytes)
+				.add("minTransferRate", minTransferRate)
+				.add("downloadDeadline", downloadDeadline)
 				.add("signature", signature)
 				.add("prior", prior)
 				.add("ext", ext)
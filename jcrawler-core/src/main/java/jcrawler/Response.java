@@ -1,5 +1,6 @@
 package jcrawler;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.util.Locale;
@@ -12,6 +13,8 @@ import org.apache.http.HttpHeaders;
 
 import com.google.common.base.MoreObjects;
 
+import jcrawler.fetcher.FetchException;
+
 /**
  * 响应体，封装单次响应对象的所有相关信息。
  * 
@@ -50,6 +53,26 @@ public class Response extends Message {
      */
     private Object content;
     
+    /**
+     * HTTP响应报文主体的原始字节，rawContent和content未设置时在第一次访问时才从中解码
+     */
+    private transient ResponseBody body;
+    
+    /**
+     * 报文主体是否按文本解码，为false时content为byte array
+     */
+    private boolean textBody;
+    
+    /**
+     * 该响应自身对报文主体的引用是否已释放
+     */
+    private transient boolean bodyReleased;
+    
+    /**
+     * 该响应是否由服务端确认未修改(304)后从本地HTTP缓存中构造
+     */
+    private transient boolean notModified;
+    
     /**
      * 从响应中抽取的charset，用来对响应内容解码
      */
@@ -126,6 +149,13 @@ public class Response extends Message {
     }
     
     public String rawContent() {
+    	if (this.rawContent == null && this.textBody && readable()) {
+    		try {
+    			this.rawContent = body.text(charset == null ? "UTF-8" : charset);
+    		} catch (IOException e) {
+    			throw new FetchException("decode the response body of " + url2str() + " error!", e);
+    		}
+    	}
     	return this.rawContent;
     }
     
@@ -136,9 +166,76 @@ public class Response extends Message {
     
     @SuppressWarnings("unchecked")
 	public <T> T content() {
+    	if (this.content == null && readable()) {
+    		try {
+    			this.content = textBody ? rawContent() : body.bytes();
+    		} catch (IOException e) {
+    			throw new FetchException("read the response body of " + url2str() + " error!", e);
+    		}
+    	}
     	return (T) this.content;
     }
     
+    /**
+     * 设置响应报文主体，rawContent和content将在第一次访问时从中解码。
+     * 
+     * @param body 响应报文主体
+     * @param text 为true时按charset解码为文本，否则content为byte array
+     */
+    public Response body(ResponseBody body, boolean text) {
+    	this.body = body;
+    	this.textBody = text;
+    	this.bodyReleased = false;
+    	return this;
+    }
+    
+    public ResponseBody body() {
+    	return this.body;
+    }
+    
+    /**
+     * @return 返回true，如果该响应有报文主体，判断时不会解码报文主体
+     */
+    public boolean hasContent() {
+    	return this.content != null || this.rawContent != null || readable();
+    }
+    
+    /**
+     * @return 返回true，如果报文主体超过了request的maxBodyBytes，只保存了前maxBodyBytes个字节
+     */
+    public boolean truncated() {
+    	return this.body != null && this.body.truncated();
+    }
+    
+    private boolean readable() {
+    	return this.body != null && !this.body.released();
+    }
+    
+    /**
+     * 释放该响应自身对报文主体的引用，重复调用无效；已解码的rawContent和content不受影响。
+     * 
+     * 其他使用者通过body().retain()持有的引用不受影响，所有引用都释放后报文主体才被回收。
+     */
+    public synchronized Response release() {
+    	if (this.body != null && !this.bodyReleased) {
+    		this.bodyReleased = true;
+    		this.body.release();
+    	}
+    	return this;
+    }
+    
+    public Response notModified(boolean notModified) {
+    	this.notModified = notModified;
+    	return this;
+    }
+    
+    /**
+     * @return 返回true，如果服务端确认页面自上次爬取后未修改，报文主体来自本地HTTP缓存
+     */
+    public boolean notModified() {
+    	return this.notModified;
+    }
+    
     public Response charset(String charset) {
     	this.charset = checkCharset(charset);
     	return this;
@@ -215,12 +312,13 @@ public class Response extends Message {
 		if (this == that) {
 			return true;
 		}
-		return this.rawContent.equals(that.rawContent()) && this.url.equals(that.url) && this.method == that.method;
+		// 不比较rawContent，避免解码响应报文主体；URL.equals/hashCode会解析host，这里只按字符串比较，不触发DNS查询
+		return this.url.toExternalForm().equals(that.url.toExternalForm()) && this.method == that.method;
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(rawContent, url, method);
+		return Objects.hash(url.toExternalForm(), method);
 	}
 
 	@Override
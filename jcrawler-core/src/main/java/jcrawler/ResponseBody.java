@@ -0,0 +1,301 @@
+package jcrawler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.support.BufferPool;
+
+/**
+ * 可重复读取、有大小上限的响应报文主体。
+ *
+ * 读取时按固定大小的块保存在内存中，块从BufferPool中获取，报文主体释放后归还；总大小超过spillThreshold后将已读内容和其余部分写入临时文件，堆内存占用不超过spillThreshold；
+ * 超过maxBytes时停止读取，其余部分被丢弃并标记为truncated。
+ * 报文主体只以字节形式保存，需要文本时才按charset解码，不需要时不产生任何字符串。
+ *
+ * 报文主体以引用计数管理：创建时计数为1，每个需要在之后继续读取它的使用者先retain，用完后release，计数归零时释放内存块并删除临时文件。
+ *
+ * @author warhin.wang
+ *
+ */
+public class ResponseBody implements Closeable {
+
+	public static final int CHUNK_SIZE = 8 * 1024;
+
+	/**
+	 * 内存中的块，除最后一块外都是满的，写入临时文件后清空
+	 */
+	private final List<byte[]> chunks = new ArrayList<byte[]>();
+
+	/**
+	 * 超过spillThreshold后写入的临时文件
+	 */
+	private File file;
+
+	private long size;
+
+	private boolean truncated;
+
+	private final AtomicInteger refCnt = new AtomicInteger(1);
+
+	private ResponseBody() {
+		super();
+	}
+
+	/**
+	 * 从输入流中读取报文主体，不关闭输入流。
+	 *
+	 * @param in 输入流
+	 * @param maxBytes 最多读取的字节数，小于等于0表示不限制
+	 * @param spillThreshold 内存中最多保存的字节数，超过后写入临时文件
+	 */
+	public static ResponseBody read(InputStream in, long maxBytes, long spillThreshold) throws IOException {
+		ResponseBody body = new ResponseBody();
+		OutputStream out = null;
+		byte[] chunk = null;
+		try {
+			chunk = BufferPool.BYTES.acquire(CHUNK_SIZE);
+			int pos = 0;
+			while (true) {
+				if (maxBytes > 0 && body.size >= maxBytes) {
+					body.truncated = in.read() != -1;
+					break;
+				}
+				int want = chunk.length - pos;
+				if (maxBytes > 0) {
+					want = (int) Math.min(want, maxBytes - body.size);
+				}
+				int n = in.read(chunk, pos, want);
+				if (n < 0) {
+					break;
+				}
+				pos += n;
+				body.size += n;
+				if (pos < chunk.length) {
+					continue;
+				}
+				// 当前块已满
+				if (out != null) {
+					out.write(chunk, 0, pos);
+				} else if (body.size > spillThreshold) {
+					out = body.spill(chunk, pos);
+				} else {
+					body.chunks.add(chunk);
+					chunk = BufferPool.BYTES.acquire(CHUNK_SIZE);
+				}
+				pos = 0;
+			}
+			if (out != null) {
+				out.write(chunk, 0, pos);
+			} else if (pos > 0) {
+				body.chunks.add(chunk);
+				chunk = null;
+			}
+		} catch (IOException e) {
+			IOUtils.closeQuietly(out);
+			BufferPool.BYTES.release(chunk);
+			body.release();
+			throw e;
+		}
+		BufferPool.BYTES.release(chunk);
+		if (out != null) {
+			out.close();
+		}
+		return body;
+	}
+
+	/**
+	 * 将内存中的块和当前块写入临时文件并归还内存中的块，返回该文件的输出流用于写入其余部分。
+	 * 
+	 * 块的大小已经足够大，直接写入文件输出流，不再经过额外的缓冲。
+	 */
+	private OutputStream spill(byte[] current, int length) throws IOException {
+		file = File.createTempFile("jcrawler-body", ".tmp");
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		for (byte[] chunk : chunks) {
+			out.write(chunk, 0, CHUNK_SIZE);
+			BufferPool.BYTES.release(chunk);
+		}
+		chunks.clear();
+		out.write(current, 0, length);
+		return out;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return 返回true，如果报文主体超过了最大大小，只保存了前maxBytes个字节
+	 */
+	public boolean truncated() {
+		return truncated;
+	}
+
+	public boolean spilled() {
+		return file != null;
+	}
+
+	/**
+	 * 打开一个新的输入流从头读取报文主体，可多次调用。
+	 */
+	public InputStream openStream() throws IOException {
+		Preconditions.checkState(refCnt.get() > 0, "the response body is released!");
+		if (file != null) {
+			return new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE);
+		}
+		if (chunks.size() == 1) {
+			return new ByteArrayInputStream(chunks.get(0), 0, (int) size);
+		}
+		List<InputStream> streams = new ArrayList<InputStream>(chunks.size());
+		long remaining = size;
+		for (byte[] chunk : chunks) {
+			int length = (int) Math.min(chunk.length, remaining);
+			streams.add(new ByteArrayInputStream(chunk, 0, length));
+			remaining -= length;
+		}
+		return new SequenceInputStream(Collections.enumeration(streams));
+	}
+
+	/**
+	 * 复制出报文主体的全部字节，内存中的块属于缓冲池，不会直接返回给调用者。
+	 */
+	public byte[] bytes() throws IOException {
+		Preconditions.checkState(refCnt.get() > 0, "the response body is released!");
+		Preconditions.checkState(size <= Integer.MAX_VALUE, "the response body is too large to be a byte array!");
+		if (file == null) {
+			byte[] bytes = new byte[(int) size];
+			copyTo(bytes);
+			return bytes;
+		}
+		InputStream in = openStream();
+		try {
+			return IOUtils.toByteArray(in, size);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private void copyTo(byte[] bytes) {
+		int pos = 0;
+		for (byte[] chunk : chunks) {
+			int length = (int) Math.min(chunk.length, size - pos);
+			System.arraycopy(chunk, 0, bytes, pos, length);
+			pos += length;
+		}
+	}
+
+	/**
+	 * 按charset解码为文本。内存中的报文主体直接解码到池中的char缓冲，最终只分配结果字符串本身。
+	 */
+	public String text(String charset) throws IOException {
+		Preconditions.checkState(refCnt.get() > 0, "the response body is released!");
+		if (file == null) {
+			CharsetDecoder decoder = Charset.forName(charset).newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			byte[] joined = null;
+			ByteBuffer input;
+			if (chunks.size() <= 1) {
+				input = chunks.isEmpty() ? ByteBuffer.allocate(0) : ByteBuffer.wrap(chunks.get(0), 0, (int) size);
+			} else {
+				// 多字节字符可能跨越块的边界，先拼接到池中的一个缓冲再整体解码
+				joined = BufferPool.BYTES.acquire((int) size);
+				copyTo(joined);
+				input = ByteBuffer.wrap(joined, 0, (int) size);
+			}
+			char[] chars = BufferPool.CHARS.acquire((int) (size * (double) decoder.maxCharsPerByte()) + 1);
+			try {
+				CharBuffer output = CharBuffer.wrap(chars);
+				CoderResult result = decoder.decode(input, output, true);
+				if (!result.isUnderflow()) {
+					result.throwException();
+				}
+				decoder.flush(output);
+				return new String(chars, 0, output.position());
+			} finally {
+				BufferPool.CHARS.release(chars);
+				BufferPool.BYTES.release(joined);
+			}
+		}
+		InputStream in = openStream();
+		try {
+			return IOUtils.toString(in, charset);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	public ResponseBody retain() {
+		for (;;) {
+			int count = refCnt.get();
+			Preconditions.checkState(count > 0, "the response body is released!");
+			if (refCnt.compareAndSet(count, count + 1)) {
+				return this;
+			}
+		}
+	}
+
+	/**
+	 * 引用计数减1，归零时释放内存块并删除临时文件。
+	 *
+	 * @return 返回true，如果报文主体已被释放
+	 */
+	public boolean release() {
+		int count = refCnt.decrementAndGet();
+		if (count == 0) {
+			for (byte[] chunk : chunks) {
+				BufferPool.BYTES.release(chunk);
+			}
+			chunks.clear();
+			if (file != null) {
+				FileUtils.deleteQuietly(file);
+			}
+			return true;
+		}
+		if (count < 0) {
+			refCnt.incrementAndGet();
+			throw new IllegalStateException("the response body is released!");
+		}
+		return false;
+	}
+
+	public boolean released() {
+		return refCnt.get() <= 0;
+	}
+
+	@Override
+	public void close() {
+		release();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("size", size).add("truncated", truncated).add("spilled", spilled())
+				.add("refCnt", refCnt.get()).toString();
+	}
+
+}
@@ -52,7 +52,7 @@ public class Site {
     private String responseCharset;
 	
 	/**
-	 * HTTP请求重试次数，同一个site认为是相同的基础配置
+	 * 下载失败后的最大重试次数，由RetryScheduler按退避延迟重新放回requestQueue，0表示不重试，同一个site认为是相同的基础配置
 	 */
 	private int retryTimes;
 	
@@ -61,6 +61,51 @@ public class Site {
 	 */
 	private int timeout;
 	
+	/**
+	 * 响应报文主体最多读取的字节数，超过后中断连接，页面标记为truncated
+	 */
+	private long maxBodyBytes;
+	
+	/**
+	 * 接收响应报文主体的最低传输速率，单位bytes/sec，低于该速率时中断连接，0表示不限制
+	 */
+	private long minTransferRate;
+	
+	/**
+	 * 单次请求从发出到接收完报文主体的总时限，单位millis，超过后中断连接，0表示不限制
+	 */
+	private long downloadDeadline;
+	
+	/**
+	 * 该site的连接池最大连接数，每个site使用独立的连接池，一个繁忙的site不会占满其他site的连接
+	 */
+	private int maxConnections;
+	
+	/**
+	 * 该site的连接池中每个route的最大连接数
+	 */
+	private int maxConnectionsPerRoute;
+	
+	/**
+	 * 连接的最长保持时间，单位millis，服务端指定了更短的时间时以服务端为准，0表示完全以服务端为准
+	 */
+	private long keepAlive;
+	
+	/**
+	 * 连接空闲超过该时长后被关闭，单位millis，0表示不关闭空闲连接
+	 */
+	private long idleEviction;
+	
+	/**
+	 * 是否优先使用HTTP/2下载该site，服务端不支持时自动回退到HTTP/1.1
+	 */
+	private boolean http2;
+	
+	/**
+	 * 使用HTTP缓存重复爬取时，是否跳过未修改(304)页面的抽取和导出
+	 */
+	private boolean skipNotModified;
+	
 	/**
 	 * 对该site抓取频率的控制，指定每次请求该site后休眠间隙
 	 */
@@ -83,6 +128,13 @@ public class Site {
 		super();
 		this.retryTimes = Envirenment.DEFAULT_RETRY_TIMES;
 		this.timeout = Envirenment.DEFAULT_CONNECTION_TIMEOUT;
+		this.maxBodyBytes = Envirenment.DEFAULT_MAX_BODY_BYTES;
+		this.minTransferRate = Envirenment.DEFAULT_MIN_TRANSFER_RATE;
+		this.downloadDeadline = Envirenment.DEFAULT_DOWNLOAD_DEADLINE;
+		this.maxConnections = Envirenment.DEFAULT_MAX_CONNECTIONS;
+		this.maxConnectionsPerRoute = Envirenment.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+		this.keepAlive = Envirenment.DEFAULT_KEEP_ALIVE;
+		this.idleEviction = Envirenment.DEFAULT_IDLE_EVICTION;
 		this.sleepTime = Envirenment.DEFAULT_CRAWLER_PAUSEMILLS;
 	}
 
@@ -123,7 +175,7 @@ public class Site {
     }
 	
 	public Site retryTimes(int retryTimes) {
-		Preconditions.checkArgument(retryTimes > 0, "retryTimes value less than one!");
+		Preconditions.checkArgument(retryTimes >= 0, "retryTimes value less than zero!");
 		this.retryTimes = retryTimes;
 		return this;
 	}
@@ -142,9 +194,111 @@ public class Site {
 		return this.timeout;
 	}
 	
+	public Site maxBodyBytes(long maxBodyBytes) {
+		Preconditions.checkArgument(maxBodyBytes > 0, "maxBodyBytes value less than one!");
+		this.maxBodyBytes = maxBodyBytes;
+		return this;
+	}
+	
+	public long maxBodyBytes() {
+		return this.maxBodyBytes;
+	}
+	
+	public Site minTransferRate(long bytesPerSecond) {
+		Preconditions.checkArgument(bytesPerSecond >= 0, "minTransferRate value less than zero!");
+		this.minTransferRate = bytesPerSecond;
+		return this;
+	}
+	
+	public long minTransferRate() {
+		return this.minTransferRate;
+	}
+	
+	public Site downloadDeadline(long millis) {
+		Preconditions.checkArgument(millis >= 0, "downloadDeadline value less than zero!");
+		this.downloadDeadline = millis;
+		return this;
+	}
+	
+	public long downloadDeadline() {
+		return this.downloadDeadline;
+	}
+	
+	/**
+	 * 连接池在该site第一次被抓取时创建，之后修改连接池相关的设置不再生效
+	 */
+	public Site maxConnections(int maxConnections) {
+		Preconditions.checkArgument(maxConnections > 0, "maxConnections value less than one!");
+		this.maxConnections = maxConnections;
+		return this;
+	}
+	
+	public int maxConnections() {
+		return this.maxConnections;
+	}
+	
+	public Site maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		Preconditions.checkArgument(maxConnectionsPerRoute > 0, "maxConnectionsPerRoute value less than one!");
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		return this;
+	}
+	
+	public int maxConnectionsPerRoute() {
+		return this.maxConnectionsPerRoute;
+	}
+	
+	public Site keepAlive(long millis) {
+		Preconditions.checkArgument(millis >= 0, "keepAlive value less than zero!");
+		this.keepAlive = millis;
+		return this;
+	}
+	
+	public long keepAlive() {
+		return this.keepAlive;
+	}
+	
+	public Site idleEviction(long millis) {
+		Preconditions.checkArgument(millis >= 0, "idleEviction value less than zero!");
+		this.idleEviction = millis;
+		return this;
+	}
+	
+	public long idleEviction() {
+		return this.idleEviction;
+	}
+	
+	/**
+	 * 设置为true时，未指定fetcher的爬虫通过HttpFetcherFactory.getFetcher(site)取得Http2Fetcher，同一host的并发请求复用少量HTTP/2连接；
+	 * 当前jvm不支持时仍使用HttpFetcher。
+	 */
+	public Site http2(boolean http2) {
+		this.http2 = http2;
+		return this;
+	}
+	
+	public boolean http2() {
+		return this.http2;
+	}
+	
+	/**
+	 * 设置为true时，JCrawler指定了httpCache后，服务端确认未修改的页面不再抽取和导出，也就不再从中发现新的链接；
+	 * 默认为false，未修改的页面使用缓存的报文主体照常抽取和导出。
+	 */
+	public Site skipNotModified(boolean skipNotModified) {
+		this.skipNotModified = skipNotModified;
+		return this;
+	}
+	
+	public boolean skipNotModified() {
+		return this.skipNotModified;
+	}
+	
 	/**
 	 * 由用户设置该site的sleepTime时长
 	 * 
+	 * requestQueue为PolitenessFrontier(默认)时，sleepTime是每条连接两次请求之间的间隔，同一host两次请求的间隔为sleepTime除以该host的连接数，
+	 * 需要严格按host间隔sleepTime访问时同时设置maxConnectionsPerRoute为1。
+	 * 
 	 * @param sleepTime 用户可以显式设置sleepTime为0，表示该site没有反爬虫策略，爬虫线程不需要暂停
 	 * @return Site for chain invoke
 	 */
@@ -371,6 +525,15 @@ public class Site {
 				.add("cookies", cookies)
 				.add("retryTimes", retryTimes)
 				.add("timeout", timeout)
+				.add("maxBodyBytes", maxBodyBytes)
+				.add("minTransferRate", minTransferRate)
+				.add("downloadDeadline", downloadDeadline)
+				.add("maxConnections", maxConnections)
+				.add("maxConnectionsPerRoute", maxConnectionsPerRoute)
+				.add("keepAlive", keepAlive)
+				.add("idleEviction", idleEviction)
+				.add("http2", http2)
+				.add("skipNotModified", skipNotModified)
 				.add("sleepTime", sleepTime)
 				.toString();
 	}
@@ -0,0 +1,464 @@
+package jcrawler.checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Request;
+import jcrawler.Site;
+import jcrawler.executor.Reserver;
+import jcrawler.executor.Stopable;
+import jcrawler.frontier.RequestCodec;
+
+/**
+ * 爬取进度的检查点，用于爬虫进程崩溃后从断点处恢复爬取，而不是从site的初始化request重新开始。
+ * 
+ * 检查点目录中包含两类文件：
+ * 1 预写日志(wal-*.log)，按顺序记录每个加入requestQueue的request(ENQUEUED)以及每个爬取完成的request的identify(COMPLETED)。
+ * 2 快照(snapshot.dat)，定期将上一个快照与其后的预写日志合并压缩而成：已完成的request只保留identify(SEEN)，未完成的request保留完整编码(PENDING)。
+ * 
+ * enqueued在调用者线程中将request编码为字节，completed只取得其identify，随后把事件放入内存队列后立即返回，
+ * 写日志以及合并快照均在单独的checkpoint线程中进行，不会阻塞爬虫线程；request加入requestQueue后可能被其他线程修改(比如合并site的headers)，
+ * 因此应在加入requestQueue之前调用enqueued，加入失败时再以completed抵消。
+ * 崩溃时已取出但尚未完成的request在恢复后会被重新爬取；预写日志末尾不完整的记录将被忽略。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class Checkpointer extends Stopable implements Runnable, Closeable {
+	
+	private static final Logger logger = LoggerFactory.getLogger(Checkpointer.class);
+	
+	private static final int SNAPSHOT_MAGIC = 0x4A43434B;
+	
+	private static final String SNAPSHOT_FILE = "snapshot.dat";
+	
+	private static final String WAL_PREFIX = "wal-";
+	
+	private static final String WAL_SUFFIX = ".log";
+	
+	private static final byte END = 0;
+	private static final byte ENQUEUED = 1;
+	private static final byte COMPLETED = 2;
+	private static final byte SEEN = 3;
+	private static final byte PENDING = 4;
+	
+	/**
+	 * 每次从事件队列中最多取出并写入的事件数量
+	 */
+	private static final int BATCH_SIZE = 1024;
+	
+	private final File dir;
+	
+	private final long snapshotIntervalMills;
+	
+	private final RequestCodec codec = new RequestCodec();
+	
+	private final BlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+	
+	/**
+	 * 编码单个事件的缓冲区，只在checkpoint线程(或停止后的close)中使用
+	 */
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+	
+	private final DataOutputStream record = new DataOutputStream(buffer);
+	
+	private DataOutputStream wal;
+	
+	private long nextWalId;
+	
+	private long lastSnapshot = System.currentTimeMillis();
+	
+	private Thread thread;
+	
+	public Checkpointer(Path dir, long snapshotIntervalMills) throws IOException {
+		super();
+		Preconditions.checkNotNull(dir, "the checkpoint dir is null!");
+		Preconditions.checkArgument(snapshotIntervalMills > 0, "snapshotIntervalMills less than zero!");
+		this.dir = dir.toFile();
+		this.snapshotIntervalMills = snapshotIntervalMills;
+		FileUtils.forceMkdir(this.dir);
+		File[] wals = walFiles();
+		if (wals.length > 0) {
+			this.nextWalId = walId(wals[wals.length - 1]) + 1;
+		}
+	}
+	
+	public Checkpointer site(Site site) {
+		codec.register(site);
+		return this;
+	}
+	
+	/**
+	 * @return 返回true，如果检查点目录中存在可恢复的快照或预写日志
+	 */
+	public boolean exists() {
+		return new File(dir, SNAPSHOT_FILE).isFile() || walFiles().length > 0;
+	}
+	
+	/**
+	 * 清空检查点目录中已有的快照和预写日志，从头开始记录。
+	 */
+	public void clear() {
+		Preconditions.checkState(thread == null, "the checkpointer has alread bean started!");
+		FileUtils.deleteQuietly(new File(dir, SNAPSHOT_FILE));
+		for (File file : walFiles()) {
+			FileUtils.deleteQuietly(file);
+		}
+		nextWalId = 0;
+	}
+	
+	/**
+	 * 从检查点目录恢复：先将快照与预写日志合并为新的快照，再由新快照重建reserver和requestQueue。
+	 * 
+	 * @return 返回恢复到requestQueue中的request数量
+	 */
+	public int recover(BlockingQueue<Request> requestQueue, Reserver reserver) throws IOException {
+		Preconditions.checkState(thread == null, "the checkpointer has alread bean started!");
+		compact();
+		File snapshot = new File(dir, SNAPSHOT_FILE);
+		if (!snapshot.isFile()) {
+			return 0;
+		}
+		int seen = 0, pending = 0;
+		DataInputStream in = openSnapshot(snapshot);
+		try {
+			byte type;
+			while ((type = in.readByte()) != END) {
+				if (type == SEEN) {
+					String identify = RequestCodec.readString(in);
+					if (reserver != null) {
+						reserver.reserve(Request.create(identify));
+					}
+					seen++;
+				} else if (type == PENDING) {
+					Request request = codec.read(in);
+					if (reserver != null) {
+						reserver.reserve(request);
+					}
+					requestQueue.offer(request);
+					pending++;
+				} else {
+					throw new IOException("unknown snapshot record type " + type);
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		logger.info("recover from checkpoint {} : {} requests completed and {} requests pending.", dir, seen, pending);
+		return pending;
+	}
+	
+	/**
+	 * 启动checkpoint线程
+	 */
+	public synchronized void start() throws IOException {
+		Preconditions.checkState(thread == null, "the checkpointer has alread bean started!");
+		rollWal();
+		thread = new Thread(this, "jcrawler-checkpointer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * 记录加入requestQueue的request，在调用者线程中完成编码后放入内存队列，不阻塞调用者，编码失败的request不会被记录。
+	 * 应在request加入requestQueue之前调用，此后request可能被其他爬虫线程修改。
+	 */
+	public void enqueued(Request request) {
+		byte[] encoded;
+		try {
+			encoded = codec.encode(request);
+		} catch (IOException | RuntimeException e) {
+			logger.error("encode checkpoint event for the request {} error, the event is skipped!", request, e);
+			return;
+		}
+		events.offer(new Event(ENQUEUED, encoded, null));
+	}
+	
+	/**
+	 * 记录爬取完成(无论成功与否)的request，只放入内存队列，不阻塞调用者。
+	 */
+	public void completed(Request request) {
+		events.offer(new Event(COMPLETED, null, request.identify()));
+	}
+	
+	@Override
+	public void run() {
+		List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+		while (!isStop()) {
+			try {
+				Event first = events.poll(1, TimeUnit.SECONDS);
+				if (first != null) {
+					batch.add(first);
+					events.drainTo(batch, BATCH_SIZE - 1);
+					try {
+						write(batch);
+					} finally {
+						// 写入失败时同样丢弃该批事件，否则下一次将重复写入并使batch无限增长
+						batch.clear();
+					}
+				}
+				if (System.currentTimeMillis() - lastSnapshot >= snapshotIntervalMills) {
+					rollWal();
+					compact();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (Exception e) {
+				logger.error("write checkpoint to {} error!", dir, e);
+			}
+		}
+	}
+	
+	/**
+	 * 每个事件先完整编码到缓冲区，再整条追加到预写日志，编码失败的事件(如identify过长)被跳过，不会在预写日志中留下不完整的记录。
+	 */
+	private void write(List<Event> batch) throws IOException {
+		for (Event event : batch) {
+			buffer.reset();
+			try {
+				record.writeByte(event.type);
+				if (event.type == ENQUEUED) {
+					record.write(event.encoded);
+				} else {
+					RequestCodec.writeString(event.identify, record);
+				}
+			} catch (IOException | RuntimeException e) {
+				logger.error("encode checkpoint event for the request {} error, the event is skipped!", event.identify, e);
+				continue;
+			}
+			buffer.writeTo(wal);
+		}
+		wal.flush();
+	}
+	
+	private void rollWal() throws IOException {
+		IOUtils.closeQuietly(wal);
+		File file = new File(dir, String.format("%s%016d%s", WAL_PREFIX, nextWalId++, WAL_SUFFIX));
+		wal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+	}
+	
+	/**
+	 * 将已有的快照与除当前正在写入之外的预写日志合并为新的快照，先写入临时文件再原子替换，合并完成后删除已合并的预写日志。
+	 */
+	private void compact() throws IOException {
+		lastSnapshot = System.currentTimeMillis();
+		List<File> wals = new ArrayList<File>(Arrays.asList(walFiles()));
+		if (wal != null && !wals.isEmpty()) {
+			// 最后一个为当前正在写入的预写日志
+			wals.remove(wals.size() - 1);
+		}
+		if (wals.isEmpty()) {
+			return;
+		}
+		
+		// 第一遍：收集预写日志中已完成的request
+		Set<String> completed = new HashSet<String>();
+		for (File file : wals) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				while (true) {
+					byte type = in.readByte();
+					if (type == ENQUEUED) {
+						codec.read(in);
+					} else if (type == COMPLETED) {
+						completed.add(RequestCodec.readString(in));
+					} else {
+						throw new IOException("unknown wal record type " + type);
+					}
+				}
+			} catch (EOFException e) {
+				// 到达文件末尾，崩溃时末尾可能有不完整的记录
+			} catch (IOException e) {
+				logger.warn("the wal {} is truncated : {}", file, e.getMessage());
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		
+		// 第二遍：合并旧快照与预写日志中加入的request
+		File snapshot = new File(dir, SNAPSHOT_FILE);
+		File tmp = new File(dir, SNAPSHOT_FILE + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+		int seen = 0, pending = 0;
+		try {
+			out.writeInt(SNAPSHOT_MAGIC);
+			if (snapshot.isFile()) {
+				DataInputStream in = openSnapshot(snapshot);
+				try {
+					byte type;
+					while ((type = in.readByte()) != END) {
+						if (type == SEEN) {
+							out.writeByte(SEEN);
+							RequestCodec.writeString(RequestCodec.readString(in), out);
+							seen++;
+						} else if (type == PENDING) {
+							if (merge(codec.read(in), completed, out)) pending++; else seen++;
+						} else {
+							throw new IOException("unknown snapshot record type " + type);
+						}
+					}
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+			for (File file : wals) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				try {
+					while (true) {
+						byte type = in.readByte();
+						if (type == ENQUEUED) {
+							if (merge(codec.read(in), completed, out)) pending++; else seen++;
+						} else {
+							RequestCodec.readString(in);
+						}
+					}
+				} catch (IOException e) {
+					// 到达文件末尾或遇到不完整的记录，已在第一遍中记录
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+			out.writeByte(END);
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+		Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		for (File file : wals) {
+			FileUtils.deleteQuietly(file);
+		}
+		logger.info("compact checkpoint {} with {} wals : {} requests completed and {} requests pending.", dir,
+				wals.size(), seen, pending);
+	}
+	
+	/**
+	 * @return 返回true，如果request尚未完成并以PENDING记录写入
+	 */
+	private boolean merge(Request request, Set<String> completed, DataOutputStream out) throws IOException {
+		String identify = request.identify();
+		if (completed.contains(identify)) {
+			out.writeByte(SEEN);
+			RequestCodec.writeString(identify, out);
+			return false;
+		}
+		out.writeByte(PENDING);
+		codec.write(request, out);
+		return true;
+	}
+	
+	private DataInputStream openSnapshot(File snapshot) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+		if (in.readInt() != SNAPSHOT_MAGIC) {
+			IOUtils.closeQuietly(in);
+			throw new IOException(snapshot + " is not a checkpoint snapshot!");
+		}
+		return in;
+	}
+	
+	private File[] walFiles() {
+		File[] files = dir.listFiles((File d, String name) -> name.startsWith(WAL_PREFIX) && name.endsWith(WAL_SUFFIX));
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files);
+		return files;
+	}
+	
+	private static long walId(File file) {
+		String name = file.getName();
+		return Long.parseLong(name.substring(WAL_PREFIX.length(), name.length() - WAL_SUFFIX.length()));
+	}
+	
+	/**
+	 * 停止checkpoint线程，写完内存队列中剩余的事件后合并为最终的快照。
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (thread == null) {
+			return;
+		}
+		stop();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		List<Event> batch = new ArrayList<Event>();
+		events.drainTo(batch);
+		write(batch);
+		rollWal();
+		compact();
+		IOUtils.closeQuietly(wal);
+		wal = null;
+		// 最后一个空的预写日志已无用处
+		for (File file : walFiles()) {
+			if (file.length() == 0) {
+				FileUtils.deleteQuietly(file);
+			}
+		}
+		thread = null;
+	}
+	
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("dir", dir)
+				.add("snapshotIntervalMills", snapshotIntervalMills)
+				.add("events", events.size())
+				.toString();
+	}
+	
+	private static class Event {
+		
+		private final byte type;
+		
+		/**
+		 * ENQUEUED事件中request的完整编码
+		 */
+		private final byte[] encoded;
+		
+		/**
+		 * COMPLETED事件中request的identify
+		 */
+		private final String identify;
+
+		private Event(byte type, byte[] encoded, String identify) {
+			this.type = type;
+			this.encoded = encoded;
+			this.identify = identify;
+		}
+		
+	}
+
+}
@@ -0,0 +1,124 @@
+package jcrawler.executor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcrawler.Envirenment;
+import jcrawler.Page;
+import jcrawler.Request;
+import jcrawler.Response;
+import jcrawler.extractor.Extractor;
+import jcrawler.fetcher.AsyncFetcher;
+
+/**
+ * 异步分发模式下的爬虫线程。
+ * 
+ * 该线程只负责从requestQueue中取出request并交给AsyncFetcher异步下载，不等待下载结果，最多同时保持maxInFlight个未完成的请求；
+ * 下载完成后的抽取和存入pageQueue等后续流程交由callbackExecutor执行，因此少量线程即可维持大量并发请求。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class AsyncSpiderWorker extends SpiderWorker {
+
+  private static final Logger logger = LoggerFactory.getLogger(AsyncSpiderWorker.class);
+
+  private AsyncFetcher asyncFetcher;
+
+  private Executor callbackExecutor;
+
+  private int maxInFlight;
+
+  private Semaphore inFlightPermits;
+
+  public AsyncSpiderWorker(BlockingQueue<Request> requestQueue, BlockingQueue<Page> pageQueue,
+      AsyncFetcher asyncFetcher, Extractor extractor, Executor callbackExecutor, int maxInFlight) {
+    super(requestQueue, pageQueue, null, extractor);
+    this.asyncFetcher = asyncFetcher;
+    this.callbackExecutor = callbackExecutor;
+    this.maxInFlight = maxInFlight;
+    this.inFlightPermits = new Semaphore(maxInFlight);
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      // 被显式终止时，执行线程退出。
+      if (isStop()) {
+        break;
+      }
+
+      // 未完成请求数量达到maxInFlight时等待，直到有请求完成释放许可；pageQueue已满时回调线程阻塞，许可不再释放，分发随即暂停。
+      try {
+        if (!inFlightPermits.tryAcquire(Envirenment.DEFAULT_REQUEST_PULL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+          continue;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+
+      Request request = pollRequest();
+      if (request == null) {
+        inFlightPermits.release();
+        continue;
+      }
+
+      dispatch(request);
+    }
+  }
+
+  private void dispatch(final Request request) {
+    final long start = System.nanoTime();
+    asyncFetcher.fetchAsync(request).whenComplete((Response response, Throwable e) -> {
+      final Page page = Page.create().request(request);
+      if (e != null) {
+        Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+        logger.error("Fetch response error : ", cause);
+        page.exception(cause);
+      } else {
+        page.response(response);
+        logger.info("fetch response from request success : the request is {}, the response is {}.",
+            request, response);
+      }
+      fetched(page, start);
+      if (retry(page)) {
+        inFlightPermits.release();
+        return;
+      }
+      try {
+        callbackExecutor.execute(() -> {
+          try {
+            process(page);
+          } catch (Exception ex) {
+            logger.error("Process page error : ", ex);
+          } finally {
+            completed(request);
+            inFlightPermits.release();
+          }
+        });
+      } catch (RejectedExecutionException ex) {
+        logger.warn("the callback executor rejected page {}, it will be dropped.", page);
+        release(page);
+        completed(request);
+        finished();
+        inFlightPermits.release();
+      }
+    });
+  }
+
+  /**
+   * @return 当前未完成的异步请求数量
+   */
+  public int inFlight() {
+    return maxInFlight - inFlightPermits.availablePermits();
+  }
+
+}
@@ -0,0 +1,125 @@
+package jcrawler.executor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import jcrawler.Request;
+
+/**
+ * 无锁的布隆过滤器保留器，JCrawler默认使用的Reserver。
+ * 
+ * 位数组以AtomicLongArray存储，每个bit通过CAS置位，多个线程同时reserve时互不阻塞，以此取代BloomReserver中对整个过滤器加锁的方式。
+ * 一次reserve中只要有任一bit由本线程从0置为1，就认为该request此前未出现过。
+ * 两个线程同时reserve同一个url时极少数情况下可能都返回true，这与布隆过滤器本身的误判一样是可以接受的。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class ConcurrentBloomReserver implements Reserver {
+	
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+	
+	private final long expectedInsertions;
+	
+	private final double fpp;
+	
+	private final long numBits;
+	
+	private final int numHashFunctions;
+	
+	private volatile AtomicLongArray bits;
+	
+	private final LongAdder counter = new LongAdder();
+	
+	public ConcurrentBloomReserver(long expectedInsertions, double fpp) {
+		Preconditions.checkArgument(expectedInsertions > 0, "expectedInsertions less than zero!");
+		Preconditions.checkArgument(fpp > 0 && fpp < 1, "fpp must be in (0, 1)!");
+		this.expectedInsertions = expectedInsertions;
+		this.fpp = fpp;
+		this.numBits = optimalNumOfBits(expectedInsertions, fpp);
+		this.numHashFunctions = optimalNumOfHashFunctions(expectedInsertions, numBits);
+		this.bits = new AtomicLongArray(Math.toIntExact((numBits + 63) >>> 6));
+	}
+
+	@Override
+	public boolean reserve(Request request) {
+		byte[] bytes = HASH_FUNCTION.hashString(request.identify(), StandardCharsets.UTF_8).asBytes();
+		long hash1 = lowerEight(bytes, 0);
+		long hash2 = lowerEight(bytes, 8);
+		AtomicLongArray bitsToUse = this.bits;
+		boolean changed = false;
+		long combinedHash = hash1;
+		for (int i = 0; i < numHashFunctions; i++) {
+			long bitIndex = (combinedHash & Long.MAX_VALUE) % numBits;
+			changed |= set(bitsToUse, bitIndex);
+			combinedHash += hash2;
+		}
+		if (changed) {
+			counter.increment();
+		}
+		return changed;
+	}
+	
+	/**
+	 * 以CAS方式置位
+	 * 
+	 * @return 返回true，如果该bit由本次调用从0置为1
+	 */
+	private static boolean set(AtomicLongArray bitsToUse, long bitIndex) {
+		int index = (int) (bitIndex >>> 6);
+		long mask = 1L << bitIndex;
+		long oldValue;
+		do {
+			oldValue = bitsToUse.get(index);
+			if ((oldValue & mask) != 0) {
+				return false;
+			}
+		} while (!bitsToUse.compareAndSet(index, oldValue, oldValue | mask));
+		return true;
+	}
+
+	@Override
+	public void reset() {
+		this.bits = new AtomicLongArray(this.bits.length());
+		this.counter.reset();
+	}
+
+	@Override
+	public int count() {
+		return counter.intValue();
+	}
+	
+	private static long lowerEight(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 7; i >= 0; i--) {
+			value = (value << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return value;
+	}
+	
+	static long optimalNumOfBits(long n, double p) {
+		return Math.max(64, (long) (-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+	}
+	
+	static int optimalNumOfHashFunctions(long n, long m) {
+		return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+	}
+	
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("expectedInsertions", expectedInsertions)
+				.add("fpp", fpp)
+				.add("numBits", numBits)
+				.add("numHashFunctions", numHashFunctions)
+				.add("count", count())
+				.toString();
+	}
+
+}
@@ -0,0 +1,89 @@
+package jcrawler.executor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * 爬取任务的完成跟踪器，取代主线程定时轮询requestQueue是否为空的方式。
+ * 
+ * 每个request加入requestQueue时计数加一，对应的page导出完成或被放弃时计数减一；request泵在泵完所有request之前也占用一个计数。
+ * page中抽取出的新request总是在该page完成之前加入requestQueue，因此计数归零时requestQueue必然为空且没有任何正在处理的request，
+ * 此时本次爬取任务已结束，归零后计数不会再增加，等待者立即被唤醒。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class CrawlTracker {
+	
+	private static final Logger logger = LoggerFactory.getLogger(CrawlTracker.class);
+	
+	private final AtomicLong inFlight;
+	
+	private final CountDownLatch idle = new CountDownLatch(1);
+	
+	public CrawlTracker(long initial) {
+		super();
+		this.inFlight = new AtomicLong(initial);
+		if (initial <= 0) {
+			idle.countDown();
+		}
+	}
+	
+	/**
+	 * 一个request加入requestQueue
+	 */
+	public void enqueued() {
+		inFlight.incrementAndGet();
+	}
+	
+	/**
+	 * 一个request对应的page已导出完成或被放弃
+	 */
+	public void completed() {
+		long current = inFlight.decrementAndGet();
+		if (current == 0) {
+			idle.countDown();
+		} else if (current < 0) {
+			logger.error("the in-flight count {} is less than zero!", current);
+		}
+	}
+	
+	/**
+	 * @return 返回已加入requestQueue但尚未完成的request数量
+	 */
+	public long inFlight() {
+		return inFlight.get();
+	}
+	
+	public boolean isIdle() {
+		return idle.getCount() == 0;
+	}
+	
+	/**
+	 * 等待直到所有request完成
+	 */
+	public void awaitIdle() throws InterruptedException {
+		idle.await();
+	}
+	
+	/**
+	 * 在指定时长内等待所有request完成
+	 * 
+	 * @return 返回true，如果所有request已完成
+	 */
+	public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		return idle.await(timeout, unit);
+	}
+	
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("inFlight", inFlight()).add("idle", isIdle()).toString();
+	}
+
+}
@@ -0,0 +1,215 @@
+package jcrawler.executor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import jcrawler.Request;
+
+/**
+ * 精确去重的保留器，适合上亿url的爬取任务。
+ * 
+ * 每个request只保存其identify的64位指纹，指纹存储在堆外内存(direct ByteBuffer)中的开放寻址哈希表里，每个url只占8到16字节，
+ * 不会像SetReserver那样在堆上保存完整的url字符串，因此也不会造成长时间的GC停顿。
+ * 
+ * 哈希表按指纹的高位分为多个段，每个段独立加锁和扩容，不同段上的reserve互不阻塞；count()不加锁。
+ * 64位指纹冲突的概率在1亿个url时约为万分之三，可以视为精确去重。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class FingerprintReserver implements Reserver {
+	
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+	
+	public static final int DEFAULT_SEGMENTS = 64;
+	
+	/**
+	 * 段内元素数量超出容量的该比例后扩容为原来的两倍
+	 */
+	private static final double LOAD_FACTOR = 0.7;
+	
+	private final long expectedInsertions;
+	
+	private final Segment[] segments;
+	
+	private final int segmentShift;
+	
+	private final LongAdder counter = new LongAdder();
+	
+	public FingerprintReserver(long expectedInsertions) {
+		this(expectedInsertions, DEFAULT_SEGMENTS);
+	}
+	
+	public FingerprintReserver(long expectedInsertions, int segments) {
+		super();
+		Preconditions.checkArgument(expectedInsertions > 0, "expectedInsertions less than zero!");
+		Preconditions.checkArgument(segments > 0 && Integer.bitCount(segments) == 1, "segments must be a power of two!");
+		this.expectedInsertions = expectedInsertions;
+		this.segments = new Segment[segments];
+		this.segmentShift = 64 - Integer.numberOfTrailingZeros(segments);
+		int segmentCapacity = capacityFor(expectedInsertions / segments + 1);
+		for (int i = 0; i < segments; i++) {
+			this.segments[i] = new Segment(segmentCapacity);
+		}
+	}
+	
+	/**
+	 * @return 返回容纳size个指纹所需的表容量，为2的幂
+	 */
+	private static int capacityFor(long size) {
+		long capacity = Long.highestOneBit(Math.max(16, (long) (size / LOAD_FACTOR)) - 1) << 1;
+		Preconditions.checkArgument(capacity <= Segment.MAX_CAPACITY, "too many insertions for one segment, use more segments!");
+		return (int) capacity;
+	}
+
+	@Override
+	public boolean reserve(Request request) {
+		long fingerprint = fingerprint(request);
+		Segment segment = segments.length == 1 ? segments[0] : segments[(int) (fingerprint >>> segmentShift)];
+		if (segment.add(fingerprint)) {
+			counter.increment();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return 返回request的64位指纹，0用于标记空槽，因此不会返回0
+	 */
+	protected long fingerprint(Request request) {
+		long fingerprint = HASH_FUNCTION.hashString(request.identify(), StandardCharsets.UTF_8).asLong();
+		return fingerprint == 0 ? 1 : fingerprint;
+	}
+
+	@Override
+	public void reset() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+		counter.reset();
+	}
+
+	@Override
+	public int count() {
+		return counter.intValue();
+	}
+	
+	/**
+	 * @return 返回所有段占用的堆外内存字节数
+	 */
+	public long memoryBytes() {
+		long bytes = 0;
+		for (Segment segment : segments) {
+			bytes += segment.memoryBytes();
+		}
+		return bytes;
+	}
+	
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("expectedInsertions", expectedInsertions)
+				.add("segments", segments.length)
+				.add("count", count())
+				.add("memoryBytes", memoryBytes())
+				.toString();
+	}
+	
+	private static class Segment {
+		
+		/**
+		 * 每个槽位8字节，ByteBuffer的容量为int，因此单个segment最多1 << 27个槽位(1GB)
+		 */
+		private static final int MAX_CAPACITY = 1 << 27;
+		
+		private final int initialCapacity;
+		
+		private LongBuffer table;
+		
+		private int mask;
+		
+		private int size;
+		
+		private int threshold;
+
+		private Segment(int initialCapacity) {
+			this.initialCapacity = initialCapacity;
+			allocate(initialCapacity);
+		}
+		
+		private void allocate(int capacity) {
+			this.table = ByteBuffer.allocateDirect(capacity << 3).order(ByteOrder.nativeOrder()).asLongBuffer();
+			this.mask = capacity - 1;
+			this.threshold = (int) (capacity * LOAD_FACTOR);
+			this.size = 0;
+		}
+		
+		private synchronized boolean add(long fingerprint) {
+			if (!insert(table, mask, fingerprint)) {
+				return false;
+			}
+			if (++size > threshold) {
+				resize();
+			}
+			return true;
+		}
+		
+		/**
+		 * 线性探测插入
+		 * 
+		 * @return 返回true，如果指纹不存在并已插入
+		 */
+		private static boolean insert(LongBuffer table, int mask, long fingerprint) {
+			int index = mix(fingerprint) & mask;
+			while (true) {
+				long current = table.get(index);
+				if (current == 0) {
+					table.put(index, fingerprint);
+					return true;
+				}
+				if (current == fingerprint) {
+					return false;
+				}
+				index = (index + 1) & mask;
+			}
+		}
+		
+		private void resize() {
+			int capacity = mask + 1;
+			Preconditions.checkState(capacity < MAX_CAPACITY, "the segment is full!");
+			LongBuffer old = table;
+			int sizeToUse = size;
+			allocate(capacity << 1);
+			for (int i = 0; i < capacity; i++) {
+				long fingerprint = old.get(i);
+				if (fingerprint != 0) {
+					insert(table, mask, fingerprint);
+				}
+			}
+			this.size = sizeToUse;
+		}
+		
+		private synchronized void clear() {
+			allocate(initialCapacity);
+		}
+		
+		private synchronized long memoryBytes() {
+			return (mask + 1L) << 3;
+		}
+		
+		private static int mix(long fingerprint) {
+			// 段已由指纹高位决定，槽位取低位并混合高位以保证分布均匀
+			return (int) (fingerprint ^ (fingerprint >>> 32));
+		}
+		
+	}
+
+}
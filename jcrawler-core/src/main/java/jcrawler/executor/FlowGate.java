@@ -0,0 +1,69 @@
+package jcrawler.executor;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 生产者与消费者之间的流控闸门，用于容量不受限的requestQueue。
+ * 
+ * 生产者在队列中的元素数量达到上限时阻塞于awaitBelow，消费者每取出一个元素后调用signal立即唤醒生产者，
+ * 取代了生产者检查队列大小后休眠固定时长的轮询方式。没有生产者等待时signal只读取一个volatile变量，不会加锁。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class FlowGate {
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	private final Condition below = lock.newCondition();
+	
+	private volatile int waiters;
+	
+	/**
+	 * 阻塞直到queue中的元素数量小于limit，或者等待超过指定时长。
+	 * 
+	 * @return 返回true，如果queue中的元素数量已小于limit
+	 */
+	public boolean awaitBelow(Collection<?> queue, int limit, long timeout, TimeUnit unit) throws InterruptedException {
+		if (queue.size() < limit) {
+			return true;
+		}
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			waiters++;
+			try {
+				// 先登记为等待者再检查队列大小，消费者在取出元素后检查等待者，因此不会错过唤醒
+				while (queue.size() >= limit) {
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = below.awaitNanos(nanos);
+				}
+				return true;
+			} finally {
+				waiters--;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * 消费者取出元素后调用，唤醒等待中的生产者。
+	 */
+	public void signal() {
+		if (waiters > 0) {
+			lock.lock();
+			try {
+				below.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package jcrawler.executor;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -9,8 +10,8 @@ import org.slf4j.LoggerFactory;
 
 import jcrawler.Envirenment;
 import jcrawler.Page;
+import jcrawler.exporter.BatchExporter;
 import jcrawler.exporter.Exporter;
-import jcrawler.support.Threads;
 
 public class PageExporterWorker extends Stopable implements Runnable {
 
@@ -19,48 +20,91 @@ public class PageExporterWorker extends Stopable implements Runnable {
   private BlockingQueue<Page> pageQueue;
   
   private List<Exporter> exporters;
-  
-  private long pageExporterPauseMills;
 
-  public PageExporterWorker(BlockingQueue<Page> pageQueue, List<Exporter> exporters,
-      long pageExporterPauseMills) {
+  /**
+   * 每次从pageQueue中最多取出并导出的page数量
+   */
+  private int batchSize;
+
+  private CrawlTracker tracker;
+
+  public PageExporterWorker(BlockingQueue<Page> pageQueue, List<Exporter> exporters) {
+    this(pageQueue, exporters, Envirenment.DEFAULT_EXPORT_BATCH_SIZE);
+  }
+
+  public PageExporterWorker(BlockingQueue<Page> pageQueue, List<Exporter> exporters, int batchSize) {
     super();
     this.pageQueue = pageQueue;
     this.exporters = exporters;
-    this.pageExporterPauseMills = pageExporterPauseMills;
+    this.batchSize = batchSize;
+  }
+
+  public PageExporterWorker tracker(CrawlTracker tracker) {
+    this.tracker = tracker;
+    return this;
   }
 
   @Override
   public void run() {
+    List<Page> batch = new ArrayList<Page>(batchSize);
     while (true) {
       // 被显式终止时，执行线程退出。
       if (isStop()) {
         break;
       }
 
-      // 从pageQueue中取出一个page对象，如果经过指定时间后未取到page对象，循环该过程直到取到为止。
+      // 从pageQueue中取出一个page对象，阻塞等待直到有page或者超时，超时后重新判断是否已被终止；取到后再一次性取出已就绪的其余page组成一批。
       Page page = null;
       try {
         page = pageQueue.poll(Envirenment.DEFAULT_PAGE_PULL_TIMEOUT, TimeUnit.MILLISECONDS);
-      } catch (InterruptedException e1) {
-        // TODO Auto-generated catch block
-        e1.printStackTrace();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
       }
-      // 只有在当前线程本次循环中未取到page对象时才考虑要不要休眠暂停：pageExporterPauseMills需要显式设置过大于0，以此防止exporter线程空转浪费资源
       if (page == null) {
-        Threads.sleep(pageExporterPauseMills, true);
         continue;
       }
+      batch.add(page);
+      if (batchSize > 1) {
+        pageQueue.drainTo(batch, batchSize - 1);
+      }
 
-      // 对于取到的page对象，依次通过每一个Exporter执行其export过程。
+      // 对于取到的这批page对象，依次通过每一个Exporter执行其export过程，BatchExporter一次导出整批page。
       for (Exporter exporter : exporters) {
-        try {
-          exporter.export(page);
-          logger.info("export page success. page : {} ", page);
-        } catch (Exception e) {
-          logger.error("export page error : ", e);
+        export(exporter, batch);
+      }
+      // 所有导出器都已导出，释放page的响应报文主体；需要稍后继续读取的导出器自行retain
+      for (Page p : batch) {
+        if (p.response() != null) {
+          p.response().release();
         }
       }
+      if (tracker != null) {
+        for (int i = 0; i < batch.size(); i++) {
+          tracker.completed();
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  private void export(Exporter exporter, List<Page> batch) {
+    if (exporter instanceof BatchExporter) {
+      try {
+        ((BatchExporter) exporter).export(batch);
+        logger.info("export {} pages success.", batch.size());
+      } catch (Exception e) {
+        logger.error("export pages error : ", e);
+      }
+      return;
+    }
+    for (Page page : batch) {
+      try {
+        exporter.export(page);
+        logger.info("export page success. page : {} ", page);
+      } catch (Exception e) {
+        logger.error("export page error : ", e);
+      }
     }
   }
 
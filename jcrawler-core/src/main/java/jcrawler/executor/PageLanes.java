@@ -0,0 +1,237 @@
+package jcrawler.executor;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Page;
+
+/**
+ * 按request的signature分道的pageQueue，每个导出线程独占一条有界的通道。
+ * 
+ * 存入的page按其request的signature散列到固定的通道，因此同一signature的page总是由同一个导出线程按存入顺序导出，多个导出线程之间互不影响；
+ * 没有signature的page(默认情况)不要求顺序，轮流存入各条通道，使所有导出线程都能分担导出。
+ * 通道已满时存入page的爬虫线程阻塞。取出操作按轮转方式作用于所有通道，take和poll(timeout)等待任意一条通道中有page，导出线程应通过lane(int)只从自己的通道中取出page。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class PageLanes extends AbstractQueue<Page> implements BlockingQueue<Page> {
+	
+	private final List<BlockingQueue<Page>> lanes;
+	
+	private int next;
+	
+	/**
+	 * 没有signature的page轮流存入的下一条通道
+	 */
+	private final AtomicInteger unsigned = new AtomicInteger();
+	
+	/**
+	 * 所有通道共用的非空信号，只有存在等待中的take或poll(timeout)时存入操作才需要加锁通知
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	private final Condition notEmpty = lock.newCondition();
+	
+	private final AtomicInteger waiters = new AtomicInteger();
+	
+	/**
+	 * @param lanes 通道数量
+	 * @param capacity 所有通道的总容量，平均分配到每条通道
+	 */
+	public PageLanes(int lanes, int capacity) {
+		super();
+		Preconditions.checkArgument(lanes > 0, "lanes less than zero!");
+		Preconditions.checkArgument(capacity >= lanes, "capacity less than lanes!");
+		List<BlockingQueue<Page>> lanesToUse = new ArrayList<BlockingQueue<Page>>(lanes);
+		int laneCapacity = (capacity + lanes - 1) / lanes;
+		for (int i = 0; i < lanes; i++) {
+			lanesToUse.add(new LinkedBlockingQueue<Page>(laneCapacity));
+		}
+		this.lanes = Collections.unmodifiableList(lanesToUse);
+	}
+	
+	public int lanes() {
+		return lanes.size();
+	}
+	
+	public BlockingQueue<Page> lane(int index) {
+		return lanes.get(index);
+	}
+	
+	private BlockingQueue<Page> laneOf(Page page) {
+		if (lanes.size() == 1) {
+			return lanes.get(0);
+		}
+		String signature = page.request() == null ? null : page.request().signature();
+		int hash = signature == null ? unsigned.getAndIncrement() : signature.hashCode();
+		return lanes.get((hash & Integer.MAX_VALUE) % lanes.size());
+	}
+
+	@Override
+	public boolean offer(Page page) {
+		return signalIf(laneOf(page).offer(page));
+	}
+
+	@Override
+	public void put(Page page) throws InterruptedException {
+		laneOf(page).put(page);
+		signalIf(true);
+	}
+
+	@Override
+	public boolean offer(Page page, long timeout, TimeUnit unit) throws InterruptedException {
+		return signalIf(laneOf(page).offer(page, timeout, unit));
+	}
+	
+	/**
+	 * page存入通道之后再检查等待者，等待者在登记之后再检查通道，因此二者至少有一方能看到对方，不会丢失通知。
+	 */
+	private boolean signalIf(boolean added) {
+		if (added && waiters.get() > 0) {
+			lock.lock();
+			try {
+				notEmpty.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+		return added;
+	}
+
+	@Override
+	public Page poll() {
+		int start = nextLane();
+		for (int i = 0; i < lanes.size(); i++) {
+			Page page = lanes.get((start + i) % lanes.size()).poll();
+			if (page != null) {
+				return page;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Page take() throws InterruptedException {
+		Page page = poll();
+		if (page != null) {
+			return page;
+		}
+		lock.lockInterruptibly();
+		waiters.incrementAndGet();
+		try {
+			while ((page = poll()) == null) {
+				notEmpty.await();
+			}
+			return page;
+		} finally {
+			waiters.decrementAndGet();
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 等待任意一条通道中有page，直到超时。
+	 */
+	@Override
+	public Page poll(long timeout, TimeUnit unit) throws InterruptedException {
+		Page page = poll();
+		if (page != null) {
+			return page;
+		}
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		waiters.incrementAndGet();
+		try {
+			while ((page = poll()) == null) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return page;
+		} finally {
+			waiters.decrementAndGet();
+			lock.unlock();
+		}
+	}
+	
+	private synchronized int nextLane() {
+		next = (next + 1) % lanes.size();
+		return next;
+	}
+
+	@Override
+	public Page peek() {
+		for (BlockingQueue<Page> lane : lanes) {
+			Page page = lane.peek();
+			if (page != null) {
+				return page;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (BlockingQueue<Page> lane : lanes) {
+			size += lane.size();
+		}
+		return size;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		int remaining = 0;
+		for (BlockingQueue<Page> lane : lanes) {
+			remaining += lane.remainingCapacity();
+		}
+		return remaining;
+	}
+
+	@Override
+	public int drainTo(Collection<? super Page> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Page> c, int maxElements) {
+		int n = 0;
+		for (BlockingQueue<Page> lane : lanes) {
+			if (n >= maxElements) {
+				break;
+			}
+			n += lane.drainTo(c, maxElements - n);
+		}
+		return n;
+	}
+
+	@Override
+	public Iterator<Page> iterator() {
+		List<Page> snapshot = new ArrayList<Page>();
+		for (BlockingQueue<Page> lane : lanes) {
+			snapshot.addAll(lane);
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("lanes", lanes.size()).add("size", size()).toString();
+	}
+
+}
@@ -9,7 +9,8 @@ import org.slf4j.LoggerFactory;
 
 import jcrawler.Envirenment;
 import jcrawler.Request;
-import jcrawler.support.Threads;
+import jcrawler.checkpoint.Checkpointer;
+import jcrawler.robots.RobotsCache;
 
 public class RequestSuplierWorker extends Stopable implements Runnable {
 
@@ -21,15 +22,61 @@ public class RequestSuplierWorker extends Stopable implements Runnable {
 
   private int requestHolderThresholds;
 
-  private long requestSuplierPauseMills;
+  private FlowGate flowGate;
 
+  private Checkpointer checkpointer;
+
+  /**
+   * 已保留的request集合，已保留过的request不再进入requestQueue，可选
+   */
+  private Reserver reserver;
+
+  /**
+   * 完成跟踪器，request泵在泵完所有request之前占用其一个计数，以免爬取任务在泵完之前被判定为已结束
+   */
+  private CrawlTracker tracker;
+
+  private boolean holding;
+
+  /**
+   * robots.txt规则缓存，request进入requestQueue之前由其判断是否允许爬取，可选
+   */
+  private RobotsCache robots;
+
+  /**
+   * requestQueue中的request数量达到requestHolderThresholds时request泵阻塞于flowGate，爬虫线程取出request后立即被唤醒。
+   */
   public RequestSuplierWorker(RequestSuplier requestSuplier, BlockingQueue<Request> requestQueue,
-      int requestHolderThresholds, long requestSuplierPauseMills) {
+      int requestHolderThresholds, FlowGate flowGate) {
     super();
     this.requestSuplier = requestSuplier;
     this.requestQueue = requestQueue;
     this.requestHolderThresholds = requestHolderThresholds;
-    this.requestSuplierPauseMills = requestSuplierPauseMills;
+    this.flowGate = flowGate;
+  }
+
+  public RequestSuplierWorker checkpointer(Checkpointer checkpointer) {
+    this.checkpointer = checkpointer;
+    return this;
+  }
+
+  public RequestSuplierWorker reserver(Reserver reserver) {
+    this.reserver = reserver;
+    return this;
+  }
+
+  public RequestSuplierWorker robots(RobotsCache robots) {
+    this.robots = robots;
+    return this;
+  }
+
+  /**
+   * 设置完成跟踪器，调用者需事先为request泵在tracker中计入一个计数。
+   */
+  public RequestSuplierWorker tracker(CrawlTracker tracker) {
+    this.tracker = tracker;
+    this.holding = tracker != null;
+    return this;
   }
 
   @Override
@@ -41,27 +88,62 @@ public class RequestSuplierWorker extends Stopable implements Runnable {
           break;
         }
 
-        // requestQueue中存储的待爬取request集合数量超出阀值后暂停request泵工作，休眠指定requestSuplierPauseMills时长后再判断是否继续。以此控制泵的速度和爬虫系统负载。
-        if (requestQueue.size() >= requestHolderThresholds) {
-          logger.warn(
-              "request suplier run faster than crawler(the requestQueue current size {} >= the requestQueue thresholds {}), please adjust the threads relationed!",
-              requestQueue.size(), requestHolderThresholds);
-          Threads.sleep(requestSuplierPauseMills, true);
+        // requestQueue中存储的待爬取request集合数量达到阀值后阻塞request泵，直到爬虫线程取出request或等待超时后再判断是否继续。以此控制泵的速度和爬虫系统负载。
+        if (!flowGate.awaitBelow(requestQueue, requestHolderThresholds,
+            Envirenment.DEFAULT_REQUEST_PULL_TIMEOUT, TimeUnit.MILLISECONDS)) {
           continue;
         }
 
-        // requestSuplier没有后续任务了将轮询
+        // requestSuplier没有后续任务了将轮询，并释放在完成跟踪器中占用的计数
         if (!requestSuplier.hasNext()) {
+          if (holding) {
+            holding = false;
+            tracker.completed();
+          }
           continue;
         }
+        if (tracker != null && !holding) {
+          holding = true;
+          tracker.enqueued();
+        }
 
         // request泵继续开工，导入一批新的待爬取request任务到requestQueue中。
         List<Request> newRequests = requestSuplier.nextBatch();
         if (newRequests != null && !newRequests.isEmpty()) {
           logger.info("retrive next batch requests from requestSuplier : {}", newRequests.size());
           for (Request newRequest : newRequests) {
-            requestQueue.offer(newRequest, Envirenment.DEFAULT_REQUEST_PUSH_TIMEOUT,
-                TimeUnit.MILLISECONDS);
+            // robots.txt不允许爬取的request不再进入requestQueue，先于reserver判断，以免被拒绝的request占用reserver
+            // robots.txt暂时不可用时照常放入，由爬虫线程取出时再判断
+            if (robots != null && robots.check(newRequest) == RobotsCache.Verdict.DISALLOWED) {
+              logger.debug("the request {} is disallowed by robots.txt.", newRequest);
+              continue;
+            }
+            // 已保留过的request不再重复爬取
+            if (reserver != null && !reserver.reserve(newRequest)) {
+              continue;
+            }
+            // 先计入完成跟踪器再放入requestQueue，否则其他爬虫线程可能在计数之前就完成该request，使计数提前归零
+            if (tracker != null) {
+              tracker.enqueued();
+            }
+            // 放入requestQueue之前记录检查点，之后request可能已被爬虫线程取出并修改
+            if (checkpointer != null) {
+              checkpointer.enqueued(newRequest);
+            }
+            boolean offered = false;
+            try {
+              offered = requestQueue.offer(newRequest, Envirenment.DEFAULT_REQUEST_PUSH_TIMEOUT,
+                  TimeUnit.MILLISECONDS);
+            } finally {
+              if (!offered) {
+                if (checkpointer != null) {
+                  checkpointer.completed(newRequest);
+                }
+                if (tracker != null) {
+                  tracker.completed();
+                }
+              }
+            }
           }
         }
       } catch (Exception e) {
@@ -0,0 +1,247 @@
+package jcrawler.executor;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Envirenment;
+import jcrawler.Page;
+import jcrawler.Request;
+import jcrawler.fetcher.FetchAbortException;
+import jcrawler.fetcher.FetchException;
+
+/**
+ * 下载失败的request的重试调度器，取代HttpClient在爬虫线程内立即重试的方式。
+ *
+ * 爬虫线程下载失败后调用schedule(page)：可重试的失败按指数退避加随机抖动计算延迟，到期后由后台线程将request重新放回requestQueue，爬虫线程不必等待，立即处理下一个request。
+ * 1 可重试的失败：408、425、429、500、502、503、504，连接或读取失败、超时，低于最低传输速率或超过下载总时限；
+ * 2 不重试的失败：其他状态码(如404)，host不存在，报文主体超过最大字节数，以及不支持的method等非IO错误；
+ * 3 已重试的次数保存在request的ext中(key为ATTEMPTS)，达到site的retryTimes后不再重试。
+ *
+ * 第n次重试的延迟为min(maxDelay, baseDelay * 2^(n-1))，其中一半固定、一半随机，避免同一批失败的request同时重试。
+ * 等待重试的request仍计入完成跟踪器，其page不再交给下游处理，也不通知检查点该request已完成。
+ *
+ * @author warhin.wang
+ *
+ */
+public class RetryScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+
+	/**
+	 * request的ext中保存已重试次数的key
+	 */
+	public static final String ATTEMPTS = "jcrawler.retry.attempts";
+
+	private static final int SC_TOO_EARLY = 425;
+
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+
+	private final long baseDelay;
+
+	private final long maxDelay;
+
+	private final ScheduledThreadPoolExecutor timer;
+
+	private volatile BlockingQueue<Request> requestQueue;
+
+	private volatile boolean stopped;
+
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final LongAdder scheduled = new LongAdder();
+
+	private final LongAdder exhausted = new LongAdder();
+
+	private final LongAdder deferred = new LongAdder();
+
+	public RetryScheduler() {
+		this(Envirenment.DEFAULT_RETRY_BASE_DELAY, Envirenment.DEFAULT_RETRY_MAX_DELAY);
+	}
+
+	/**
+	 * @param baseDelay 第一次重试的平均延迟，单位millis
+	 * @param maxDelay 重试延迟的上限，单位millis
+	 */
+	public RetryScheduler(long baseDelay, long maxDelay) {
+		super();
+		Preconditions.checkArgument(baseDelay > 0, "baseDelay less than zero!");
+		Preconditions.checkArgument(maxDelay >= baseDelay, "maxDelay less than baseDelay!");
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "request-retry-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * 开始调度，到期的request重新放回requestQueue。
+	 */
+	public RetryScheduler start(BlockingQueue<Request> requestQueue) {
+		Preconditions.checkNotNull(requestQueue, "the requestQueue is null!");
+		this.requestQueue = requestQueue;
+		return this;
+	}
+
+	/**
+	 * 停止调度，尚未到期的request被放弃。
+	 */
+	public void stop() {
+		this.stopped = true;
+		this.timer.shutdownNow();
+	}
+
+	/**
+	 * 下载失败的page交给调度器，可重试且未达到重试次数上限时按退避延迟安排重试。
+	 *
+	 * @return 返回true，如果已安排重试，此时调用者不再处理该page
+	 */
+	public boolean schedule(Page page) {
+		if (stopped || requestQueue == null || page == null || page.exception() == null || !retryable(page.exception())) {
+			return false;
+		}
+		Request request = page.request();
+		int attempts = attempts(request);
+		int maxAttempts = request.site() == null ? Envirenment.DEFAULT_RETRY_TIMES : request.site().retryTimes();
+		if (attempts >= maxAttempts) {
+			exhausted.increment();
+			logger.warn("give up the request {} after {} retries.", request, attempts);
+			return false;
+		}
+		request.ext(ATTEMPTS, attempts + 1);
+		long delay = delay(attempts + 1);
+		if (!submit(request, delay)) {
+			return false;
+		}
+		scheduled.increment();
+		logger.info("retry the request {} in {} millis, attempt {} of {}.", request, delay, attempts + 1, maxAttempts);
+		return true;
+	}
+
+	/**
+	 * 推迟一个尚不能下载的request(如其host的robots.txt暂时不可用)，delay之后放回requestQueue，不计入重试次数。
+	 *
+	 * @return 返回true，如果已安排推迟，此时调用者不再处理该request
+	 */
+	public boolean defer(Request request, long delay) {
+		if (stopped || requestQueue == null || request == null) {
+			return false;
+		}
+		if (!submit(request, Math.max(delay, 0))) {
+			return false;
+		}
+		deferred.increment();
+		logger.info("defer the request {} in {} millis.", request, delay);
+		return true;
+	}
+
+	private boolean submit(Request request, long delay) {
+		pending.incrementAndGet();
+		try {
+			timer.schedule(() -> requeue(request), delay, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (RuntimeException e) {
+			// 已停止
+			pending.decrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * 将到期的request放回requestQueue。requestQueue已满时不在唯一的调度线程上等待，而是稍后再次尝试，以免阻塞其他到期的request。
+	 */
+	private void requeue(Request request) {
+		if (stopped) {
+			pending.decrementAndGet();
+			return;
+		}
+		if (requestQueue.offer(request)) {
+			pending.decrementAndGet();
+			return;
+		}
+		try {
+			timer.schedule(() -> requeue(request), Envirenment.DEFAULT_REQUEST_PUSH_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (RuntimeException e) {
+			// 已停止
+			pending.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return 第attempt次重试的延迟，一半固定、一半随机
+	 */
+	long delay(int attempt) {
+		long cap = (long) Math.min(maxDelay, baseDelay * Math.pow(2, attempt - 1));
+		long half = cap / 2;
+		return half + ThreadLocalRandom.current().nextLong(cap - half + 1);
+	}
+
+	/**
+	 * @return 返回true，如果该下载失败是暂时性的，稍后重试可能成功
+	 */
+	public static boolean retryable(Throwable e) {
+		if (e instanceof FetchAbortException) {
+			return ((FetchAbortException) e).reason() != FetchAbortException.Reason.BODY_TOO_LARGE;
+		}
+		if (e instanceof FetchException && ((FetchException) e).getStatusCode() > 0) {
+			switch (((FetchException) e).getStatusCode()) {
+			case HttpStatus.SC_REQUEST_TIMEOUT:
+			case SC_TOO_EARLY:
+			case SC_TOO_MANY_REQUESTS:
+			case HttpStatus.SC_INTERNAL_SERVER_ERROR:
+			case HttpStatus.SC_BAD_GATEWAY:
+			case HttpStatus.SC_SERVICE_UNAVAILABLE:
+			case HttpStatus.SC_GATEWAY_TIMEOUT:
+				return true;
+			default:
+				return false;
+			}
+		}
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof UnknownHostException) {
+				return false;
+			}
+			if (cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return request已重试的次数
+	 */
+	public static int attempts(Request request) {
+		Object attempts = request.ext(ATTEMPTS);
+		return attempts instanceof Number ? ((Number) attempts).intValue() : 0;
+	}
+
+	/**
+	 * @return 等待重试的request数量
+	 */
+	public int pending() {
+		return pending.get();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("pending", pending).add("scheduled", scheduled)
+				.add("exhausted", exhausted).add("deferred", deferred).add("baseDelay", baseDelay).add("maxDelay", maxDelay).toString();
+	}
+
+}
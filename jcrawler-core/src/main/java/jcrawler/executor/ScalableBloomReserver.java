@@ -0,0 +1,273 @@
+package jcrawler.executor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+
+import jcrawler.Initializable;
+import jcrawler.Request;
+
+/**
+ * 可自动扩容的布隆过滤器保留器，适合长期运行的SERVER模式爬虫。
+ * 
+ * 由多层布隆过滤器组成，当前层保留的request数量达到其容量后追加新的一层，新层容量按growthFactor放大，误判率按tighteningRatio收紧，
+ * 各层误判率之和收敛于fpp，因此无论保留多少request，总体误判率都不会超过指定的fpp。
+ * 
+ * 指定snapshot文件后，init时从该文件恢复已保留的request集合，close时(以及调用snapshot()时)将当前状态写入该文件，重启后的爬虫不会重新爬取已爬过的url。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class ScalableBloomReserver implements Reserver, Initializable, Closeable {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ScalableBloomReserver.class);
+	
+	private static final int SNAPSHOT_MAGIC = 0x4A435342;
+	
+	private static final int SNAPSHOT_VERSION = 1;
+	
+	private static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(Charset.forName("UTF-8"));
+	
+	public static final int DEFAULT_GROWTH_FACTOR = 2;
+	
+	public static final double DEFAULT_TIGHTENING_RATIO = 0.5;
+	
+	/**
+	 * 第一层过滤器的容量
+	 */
+	private final long initialCapacity;
+	
+	/**
+	 * 总体的目标误判率
+	 */
+	private final double fpp;
+	
+	/**
+	 * 新层相对上一层的容量放大倍数
+	 */
+	private final int growthFactor;
+	
+	/**
+	 * 新层相对上一层的误判率收紧比例
+	 */
+	private final double tighteningRatio;
+	
+	/**
+	 * 快照文件，为null时不做持久化
+	 */
+	private final File snapshot;
+	
+	private final List<Layer> layers = new ArrayList<Layer>();
+	
+	private int counter;
+	
+	/**
+	 * 串行化多次snapshot调用，它们写入同一个临时文件
+	 */
+	private final Object snapshotLock = new Object();
+	
+	public ScalableBloomReserver(long initialCapacity, double fpp) {
+		this(initialCapacity, fpp, null);
+	}
+	
+	public ScalableBloomReserver(long initialCapacity, double fpp, String snapshot) {
+		this(initialCapacity, fpp, DEFAULT_GROWTH_FACTOR, DEFAULT_TIGHTENING_RATIO, snapshot);
+	}
+	
+	public ScalableBloomReserver(long initialCapacity, double fpp, int growthFactor, double tighteningRatio, String snapshot) {
+		super();
+		Preconditions.checkArgument(initialCapacity > 0 && initialCapacity <= Integer.MAX_VALUE, "initialCapacity out of range!");
+		Preconditions.checkArgument(fpp > 0 && fpp < 1, "fpp must be in (0, 1)!");
+		Preconditions.checkArgument(growthFactor >= 1, "growthFactor less than one!");
+		Preconditions.checkArgument(tighteningRatio > 0 && tighteningRatio < 1, "tighteningRatio must be in (0, 1)!");
+		this.initialCapacity = initialCapacity;
+		this.fpp = fpp;
+		this.growthFactor = growthFactor;
+		this.tighteningRatio = tighteningRatio;
+		this.snapshot = snapshot == null ? null : FileUtils.getFile(snapshot);
+		this.layers.add(newLayer(0));
+	}
+	
+	private Layer newLayer(int index) {
+		// guava的BloomFilter容量上限为Integer.MAX_VALUE，层数继续增加时保持该容量
+		long capacity = (long) Math.min(initialCapacity * Math.pow(growthFactor, index), Integer.MAX_VALUE);
+		// 第i层误判率为 fpp * (1 - r) * r^i，各层之和不超过fpp
+		double layerFpp = fpp * (1 - tighteningRatio) * Math.pow(tighteningRatio, index);
+		return new Layer(capacity, 0, BloomFilter.create(FUNNEL, (int) capacity, layerFpp));
+	}
+
+	@Override
+	public synchronized boolean reserve(Request request) {
+		String identify = request.identify();
+		for (Layer layer : layers) {
+			if (layer.filter.mightContain(identify)) {
+				return false;
+			}
+		}
+		Layer current = layers.get(layers.size() - 1);
+		if (current.count >= current.capacity) {
+			current = newLayer(layers.size());
+			layers.add(current);
+			logger.info("the reserver grows to {} layers, the new layer capacity is {}.", layers.size(), current.capacity);
+		}
+		current.filter.put(identify);
+		current.count++;
+		counter++;
+		return true;
+	}
+
+	@Override
+	public synchronized void reset() {
+		layers.clear();
+		layers.add(newLayer(0));
+		counter = 0;
+	}
+
+	@Override
+	public synchronized int count() {
+		return counter;
+	}
+	
+	/**
+	 * @return 返回当前的层数
+	 */
+	public synchronized int layers() {
+		return layers.size();
+	}
+	
+	/**
+	 * 从快照文件中恢复，快照文件不存在时从空集合开始。
+	 */
+	@Override
+	public void init() {
+		if (snapshot == null || !snapshot.isFile()) {
+			return;
+		}
+		try {
+			restore(snapshot);
+			logger.info("restore the reserver from snapshot {} : {}", snapshot, this);
+		} catch (IOException e) {
+			logger.error("restore the reserver from snapshot {} error, start with an empty reserver!", snapshot, e);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		snapshot();
+	}
+	
+	/**
+	 * 将当前状态写入快照文件。先写入临时文件再原子替换，写入过程中崩溃不会破坏已有的快照。
+	 * 
+	 * 只在持有锁时复制当前状态，写文件时不阻塞reserve：已写满的层不再修改，直接引用；只复制最后一层的位数组。
+	 */
+	public void snapshot() throws IOException {
+		if (snapshot == null) {
+			return;
+		}
+		int counterToWrite;
+		List<Layer> layersToWrite;
+		synchronized (this) {
+			counterToWrite = counter;
+			layersToWrite = new ArrayList<Layer>(layers);
+			Layer current = layersToWrite.get(layersToWrite.size() - 1);
+			layersToWrite.set(layersToWrite.size() - 1, new Layer(current.capacity, current.count, current.filter.copy()));
+		}
+		synchronized (snapshotLock) {
+			File parent = snapshot.getAbsoluteFile().getParentFile();
+			FileUtils.forceMkdir(parent);
+			File tmp = new File(parent, snapshot.getName() + ".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(SNAPSHOT_MAGIC);
+				out.writeInt(SNAPSHOT_VERSION);
+				out.writeInt(counterToWrite);
+				out.writeInt(layersToWrite.size());
+				for (Layer layer : layersToWrite) {
+					out.writeLong(layer.capacity);
+					out.writeLong(layer.count);
+					layer.filter.writeTo(out);
+				}
+				out.flush();
+			} finally {
+				IOUtils.closeQuietly(out);
+			}
+			Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		logger.info("snapshot the reserver to {} : {}", snapshot, this);
+	}
+	
+	private void restore(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+				throw new IOException(file + " is not a reserver snapshot!");
+			}
+			int countToUse = in.readInt();
+			int size = in.readInt();
+			List<Layer> layersToUse = new ArrayList<Layer>(size);
+			for (int i = 0; i < size; i++) {
+				long capacity = in.readLong();
+				long count = in.readLong();
+				layersToUse.add(new Layer(capacity, count, BloomFilter.readFrom(in, FUNNEL)));
+			}
+			synchronized (this) {
+				this.layers.clear();
+				this.layers.addAll(layersToUse);
+				this.counter = countToUse;
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("initialCapacity", initialCapacity)
+				.add("fpp", fpp)
+				.add("layers", layers.size())
+				.add("count", counter)
+				.add("snapshot", snapshot)
+				.toString();
+	}
+	
+	private static class Layer {
+		
+		private final long capacity;
+		
+		private long count;
+		
+		private final BloomFilter<CharSequence> filter;
+
+		private Layer(long capacity, long count, BloomFilter<CharSequence> filter) {
+			this.capacity = capacity;
+			this.count = count;
+			this.filter = filter;
+		}
+		
+	}
+
+}
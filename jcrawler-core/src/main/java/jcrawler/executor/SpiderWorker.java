@@ -11,9 +11,14 @@ import jcrawler.Envirenment;
 import jcrawler.Page;
 import jcrawler.Request;
 import jcrawler.Response;
+import jcrawler.checkpoint.Checkpointer;
 import jcrawler.extractor.Extractor;
+import jcrawler.fetcher.DnsCache;
 import jcrawler.fetcher.Fetcher;
 import jcrawler.fetcher.HttpFetcherFactory;
+import jcrawler.frontier.AimdConcurrency;
+import jcrawler.frontier.PolitenessFrontier;
+import jcrawler.robots.RobotsCache;
 import jcrawler.support.Threads;
 
 public class SpiderWorker extends Stopable implements Runnable {
@@ -28,83 +33,265 @@ public class SpiderWorker extends Stopable implements Runnable {
   
   private Extractor extractor;
   
-  private int pageHolderThresholds;
-  
-  private long pageSuplierPauseMills;
 
+  /**
+   * requestQueue为PolitenessFrontier时由其按host控制爬取频率，爬虫线程不再需要休眠
+   */
+  private boolean politeByFrontier;
+
+  /**
+   * request保留器，新抽取的request在存入requestQueue之前由其过滤重复的request，可选
+   */
+  private Reserver reserver;
+
+  /**
+   * 检查点，记录新加入requestQueue以及爬取完成的request，可选
+   */
+  private Checkpointer checkpointer;
+
+  /**
+   * 完成跟踪器，可选
+   */
+  private CrawlTracker tracker;
+
+  /**
+   * requestQueue的流控闸门，取出request后唤醒等待中的request泵，可选
+   */
+  private FlowGate flowGate;
+
+  /**
+   * 重试调度器，下载失败的request由其按退避延迟重新放回requestQueue，可选
+   */
+  private RetryScheduler retryScheduler;
+
+  /**
+   * robots.txt规则缓存，新抽取的request进入requestQueue之前由其判断是否允许爬取，可选
+   */
+  private RobotsCache robots;
+
+  /**
+   * pageQueue需为有界队列，已满时爬虫线程阻塞直到下游导出线程取出page，以此控制爬虫的速度和爬虫系统负载。
+   */
   public SpiderWorker(BlockingQueue<Request> requestQueue, BlockingQueue<Page> pageQueue,
-      Fetcher fetcher, Extractor extractor, int pageHolderThresholds, long pageSuplierPauseMills) {
+      Fetcher fetcher, Extractor extractor) {
     super();
     this.requestQueue = requestQueue;
     this.pageQueue = pageQueue;
     this.fetcher = fetcher;
     this.extractor = extractor;
-    this.pageHolderThresholds = pageHolderThresholds;
-    this.pageSuplierPauseMills = pageSuplierPauseMills;
+    this.politeByFrontier = requestQueue instanceof PolitenessFrontier;
+  }
+
+  public SpiderWorker reserver(Reserver reserver) {
+    this.reserver = reserver;
+    return this;
+  }
+
+  public SpiderWorker checkpointer(Checkpointer checkpointer) {
+    this.checkpointer = checkpointer;
+    return this;
+  }
+
+  public SpiderWorker tracker(CrawlTracker tracker) {
+    this.tracker = tracker;
+    return this;
+  }
+
+  public SpiderWorker flowGate(FlowGate flowGate) {
+    this.flowGate = flowGate;
+    return this;
+  }
+
+  public SpiderWorker retryScheduler(RetryScheduler retryScheduler) {
+    this.retryScheduler = retryScheduler;
+    return this;
+  }
+
+  public SpiderWorker robots(RobotsCache robots) {
+    this.robots = robots;
+    return this;
   }
 
   @Override
   public void run() {
     while (true) {
-      // 被显式终止时，执行线程退出。
-      if (isStop()) {
+      // 被显式终止或被中断时，执行线程退出。
+      if (isStop() || Thread.currentThread().isInterrupted()) {
         break;
       }
 
-      // pageQueue中存储的待导出page集合数量超出阀值后暂停crawler工作，休眠指定pageSuplierPauseMills时长后再判断是否继续。以此控制爬虫的速度和爬虫系统负载。
-      if (pageQueue.size() >= pageHolderThresholds) {
-        logger.warn(
-            "crawler run faster than page exporter(the pageQueue current size {} >= the pageQueue thresholds {}), please adjust the threads relationed!",
-            pageQueue.size(), pageHolderThresholds);
-        Threads.sleep(pageSuplierPauseMills, true);
-        continue;
-      }
-
       // 从RequestHolder中取出一个待爬取的Request对象，如果未取到，循环该过程直到取到为止。
-      Request request = null;
-      try {
-        request =
-            requestQueue.poll(Envirenment.DEFAULT_REQUEST_PULL_TIMEOUT, TimeUnit.MILLISECONDS);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-      }
-      if (request == null || !request.validate()) {
+      Request request = pollRequest();
+      if (request == null) {
         continue;
       }
 
       // 使用指定的fetcher对象下载该request对象，得到一个page对象，如果下载的page对象有误，判断是否需要重试
       Page page = fetch(request);
-      if (page == null || page.hasError()) {
+      if (retry(page)) {
         continue;
       }
-
-      // 如果下载的page对象无误，根据指定的extractor对象(如果用户指定了)处理page
-      extract(page);
-      if (page.skipPageItems()) {
+      boolean processed = process(page);
+      completed(request);
+      if (!processed) {
         continue;
       }
 
-      // 将处理后的page对象存入PageQueue，待下游线程进一步处理
-      try {
-        pageQueue.offer(page, Envirenment.DEFAULT_PAGE_PUSH_TIMEOUT, TimeUnit.MILLISECONDS);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+      // 一次爬取结束后根据site的sleepTime配置决定是否需要暂停一段时间，以控制爬取频率：为0时表示不休息，尽可能努力抓取；值越大表明停歇时间越长，可以防反爬虫策略
+      // requestQueue按host调度时该间隔已由requestQueue保证，不再休眠。
+      if (!politeByFrontier) {
+        long sleepTime = (page.site() == null) ? 0 : page.site().sleepTime();
+        if (robots != null) {
+          sleepTime = Math.max(sleepTime, robots.crawlDelay(request));
+        }
+        Threads.sleep(sleepTime, true);
       }
+    }
+  }
 
-      // 一次爬取结束后根据site的sleepTime配置决定是否需要暂停一段时间，以控制爬取频率：为0时表示不休息，尽可能努力抓取；值越大表明停歇时间越长，可以防反爬虫策略
-      long sleepTime = (page.site() == null) ? 0 : page.site().sleepTime();
-      Threads.sleep(sleepTime, true);
+  protected Request pollRequest() {
+    Request request = null;
+    try {
+      request =
+          requestQueue.poll(Envirenment.DEFAULT_REQUEST_PULL_TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.warn("interrupted while polling request from requestQueue.");
+      return null;
+    }
+    if (request == null) {
+      return null;
+    }
+    if (flowGate != null) {
+      flowGate.signal();
+    }
+    if (!request.validate()) {
+      // 无效的request不会被下载，同样视为已完成，恢复后不再重新爬取
+      fetched(Page.create().request(request), System.nanoTime());
+      completed(request);
+      finished();
+      return null;
+    }
+    if (robots != null && !checkRobots(request)) {
+      return null;
     }
+    return request;
   }
 
-  private Page fetch(Request request) {
+  /**
+   * 下载之前再次检查robots.txt：已不允许爬取时放弃该request；robots.txt尚未下载完成或暂时不可用时交给重试调度器推迟，之后重新判断。
+   *
+   * @return 返回true，如果允许下载该request
+   */
+  private boolean checkRobots(Request request) {
+    RobotsCache.Verdict verdict = robots.check(request);
+    if (verdict == RobotsCache.Verdict.ALLOWED) {
+      return true;
+    }
+    // 该request未下载，仍需归还PolitenessFrontier中该host的并发许可
+    fetched(Page.create().request(request), System.nanoTime());
+    if (verdict == RobotsCache.Verdict.DEFERRED && retryScheduler != null) {
+      long delay = Math.max(robots.deferDelay(request), Envirenment.DEFAULT_RETRY_BASE_DELAY);
+      if (retryScheduler.defer(request, delay)) {
+        return false;
+      }
+    }
+    logger.debug("the request {} is disallowed by robots.txt.", request);
+    completed(request);
+    finished();
+    return false;
+  }
+
+  /**
+   * 处理下载后的page对象：抽取，然后存入pageQueue待下游线程导出。
+   * 
+   * @param page 下载后的page对象
+   * @return 返回true，如果page对象无误且已交给下游处理，否则返回false。
+   */
+  protected boolean process(Page page) {
+    // 如果下载的page对象有误，放弃该page
+    if (page == null || page.hasError()) {
+      release(page);
+      finished();
+      return false;
+    }
+
+    // 页面自上次爬取后未修改且site要求跳过时，不再抽取和导出
+    if (page.notModified() && page.site() != null && page.site().skipNotModified()) {
+      logger.debug("skip the not modified page {}.", page);
+      release(page);
+      finished();
+      return false;
+    }
+
+    // 如果下载的page对象无误，根据指定的extractor对象(如果用户指定了)处理page
+    extract(page);
+    if (page.skipPageItems()) {
+      release(page);
+      finished();
+      return false;
+    }
+
+    // 将处理后的page对象存入PageQueue，待下游线程进一步处理，由下游线程导出后通知完成跟踪器；pageQueue已满时阻塞直到下游线程取出page
+    try {
+      pageQueue.put(page);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.warn("interrupted while putting page {} to pageQueue, the page is dropped.", page);
+      release(page);
+      finished();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * 下载失败的page交给重试调度器，已安排重试时释放该page，其request仍计入完成跟踪器，也不通知检查点该request已完成。
+   *
+   * @return 返回true，如果已安排重试，调用者不再处理该page
+   */
+  protected boolean retry(Page page) {
+    if (retryScheduler == null || page == null || !page.hasError() || !retryScheduler.schedule(page)) {
+      return false;
+    }
+    release(page);
+    return true;
+  }
+
+  /**
+   * 一个page被放弃时释放其响应报文主体；交给下游的page由导出线程导出后释放。
+   */
+  protected static void release(Page page) {
+    if (page != null && page.response() != null) {
+      page.response().release();
+    }
+  }
+
+  /**
+   * 一个page被放弃、不再交给下游处理时调用，通知完成跟踪器。
+   */
+  protected void finished() {
+    if (tracker != null) {
+      tracker.completed();
+    }
+  }
+
+  /**
+   * 一个request爬取完成(无论成功与否)后调用，通知检查点该request无需在恢复后重新爬取。
+   */
+  protected void completed(Request request) {
+    if (checkpointer != null) {
+      checkpointer.completed(request);
+    }
+  }
+
+  protected Page fetch(Request request) {
     Page page = Page.create().request(request);
+    long start = System.nanoTime();
     try {
       Fetcher fetcherToUse = fetcher;
       if (fetcherToUse == null) {
-        fetcherToUse = HttpFetcherFactory.getInstance().getHttpFetcher(request.site());
+        fetcherToUse = HttpFetcherFactory.getInstance().getFetcher(request.site());
       }
       Response response = fetcherToUse.fetch(request);
       page.response(response);
@@ -114,9 +301,23 @@ public class SpiderWorker extends Stopable implements Runnable {
       logger.error("Fetch response error : ", e);
       page.exception(e);
     }
+    fetched(page, start);
     return page;
   }
 
+  /**
+   * 一个request下载结束后调用，requestQueue为PolitenessFrontier时报告其延迟和结果，用于调整该host的并发上限。
+   *
+   * @param start 开始下载的时刻，单位纳秒
+   */
+  protected void fetched(Page page, long start) {
+    if (politeByFrontier) {
+      long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      ((PolitenessFrontier) requestQueue).completed(page.request(), latencyMillis,
+          AimdConcurrency.Outcome.of(page.response(), page.exception()));
+    }
+  }
+
   private void extract(Page page) {
     if (extractor == null) {
       return;
@@ -139,12 +340,47 @@ public class SpiderWorker extends Stopable implements Runnable {
     if (newRequests != null && !newRequests.isEmpty()) {
       logger.info("retrive next batch requests inner this page : {}", newRequests.size());
       for (Request newRequest : newRequests) {
+        // robots.txt不允许爬取的request不再进入requestQueue，先于reserver判断，以免被拒绝的request占用reserver
+        // robots.txt暂时不可用时照常放入requestQueue，取出时再判断
+        if (robots != null && robots.check(newRequest) == RobotsCache.Verdict.DISALLOWED) {
+          logger.debug("the request {} is disallowed by robots.txt.", newRequest);
+          continue;
+        }
+        // 已保留过的request不再重复爬取
+        if (reserver != null && !reserver.reserve(newRequest)) {
+          continue;
+        }
+        // 先计入完成跟踪器再放入requestQueue，否则其他爬虫线程可能在计数之前就完成该request，使计数提前归零
+        if (tracker != null) {
+          tracker.enqueued();
+        }
+        // 放入requestQueue之前记录检查点，之后request可能已被其他爬虫线程取出并修改
+        if (checkpointer != null) {
+          checkpointer.enqueued(newRequest);
+        }
+        boolean offered = false;
         try {
-          this.requestQueue.offer(newRequest, Envirenment.DEFAULT_REQUEST_PUSH_TIMEOUT,
+          offered = this.requestQueue.offer(newRequest, Envirenment.DEFAULT_REQUEST_PUSH_TIMEOUT,
               TimeUnit.MILLISECONDS);
+          if (offered) {
+            // 新链接进入requestQueue时即开始后台解析其host，下载时通常已在DNS缓存中
+            DnsCache.GLOBAL.prefetch(newRequest.url().getHost());
+          }
         } catch (InterruptedException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
+          // 被中断时不再加入该page中其余的新链接，保留中断状态使爬虫线程退出
+          Thread.currentThread().interrupt();
+          logger.warn("interrupted while putting request {} to requestQueue, the remaining links of page {} are dropped.",
+              newRequest, page.request());
+          return;
+        } finally {
+          if (!offered) {
+            if (checkpointer != null) {
+              checkpointer.completed(newRequest);
+            }
+            if (tracker != null) {
+              tracker.completed();
+            }
+          }
         }
       }
     }
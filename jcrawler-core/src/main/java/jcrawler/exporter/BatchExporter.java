@@ -0,0 +1,19 @@
+package jcrawler.exporter;
+
+import java.util.List;
+
+import jcrawler.Page;
+
+/**
+ * 批量导出器，一次导出一批page，适合写文件、写数据库等单次调用开销较大的导出器。
+ * 
+ * 导出线程每次从pageQueue中取出一批page后调用export(List<Page>)；同一signature的page总是由同一个导出线程按爬取完成的顺序导出。
+ * 
+ * @author warhin.wang
+ *
+ */
+public interface BatchExporter extends Exporter {
+	
+	void export(List<Page> pages);
+
+}
@@ -2,22 +2,35 @@ package jcrawler.exporter;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
 
 import jcrawler.Envirenment;
 import jcrawler.Page;
@@ -26,36 +39,71 @@ import jcrawler.support.Jsons_;
 
 /**
  * file的导出器
- * 
+ *
  * 目标是能支持对本地磁盘IO的读写操作。
- * 
+ *
+ * 每个signature对应一个独立的写入通道(lane)，不同signature之间互不加锁；每个page的pageItems以紧凑json格式直接流式写入其通道的写缓冲，成为一行，
+ * 不经过中间字符串，写入时只持有该通道的锁。
+ * 写入采用组提交方式：写缓冲满flushBytes或距上次提交超过flushIntervalMills时整体flush一次，空闲的通道由后台线程按时间预算flush，进程崩溃时最多丢失一个提交周期内的数据。
+ * 设置rotateBytes或rotateIntervalMills后，当前文件超过大小或打开时长时在记录边界处滚动：当前文件重命名为"signature.时间戳"，然后重新创建signature文件继续写入。
+ *
  * @author warhin.wang
  *
  */
-public class FileExporter implements Exporter {
-	
+public class FileExporter implements BatchExporter {
+
 	private static final Logger logger = LoggerFactory.getLogger(FileExporter.class);
 	private static final String DEFAULT_SIGNATURE = Envirenment.DEFAULT_OUTPUT_FILENAME;
-	
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	public static final int DEFAULT_FLUSH_BYTES = 64 * 1024;
+
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLS = 1000;
+
 	/**
 	 * 文件导出器输出目录
 	 */
 	private File target;
-	
+
 	/**
 	 * 文件导出器写文件编码
 	 */
 	private String charset;
-	
+
+	/**
+	 * 每个通道的写缓冲大小，缓冲写满时整体写出
+	 */
+	private int flushBytes = DEFAULT_FLUSH_BYTES;
+
+	/**
+	 * 组提交的时间预算，通道中的数据最多在缓冲中停留这么久
+	 */
+	private long flushIntervalMills = DEFAULT_FLUSH_INTERVAL_MILLS;
+
+	/**
+	 * 文件达到该大小时滚动，小于等于0表示不按大小滚动
+	 */
+	private long rotateBytes;
+
 	/**
-	 * BufferedWriter集合，key为request的signature，value为该类型signature对应的BufferedWriter
+	 * 文件打开超过该时长时滚动，小于等于0表示不按时间滚动
 	 */
-	private Map<String, BufferedWriter> bufferedWriters = new HashMap<String, BufferedWriter>();
-	
+	private long rotateIntervalMills;
+
+	/**
+	 * 写入通道集合，key为request的signature，value为该类型signature对应的写入通道
+	 */
+	private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+
+	/**
+	 * 按时间预算flush空闲通道的后台线程，第一个通道创建时启动
+	 */
+	private ScheduledExecutorService flusher;
+
 	public FileExporter(String dir) throws IOException {
 		this(dir, Charsets.UTF_8.toString());
 	}
-	
+
 	public FileExporter(String dir, String charset) throws IOException {
 		super();
 		this.target = FileUtils.getFile(dir);
@@ -69,50 +117,152 @@ public class FileExporter implements Exporter {
 		this.charset = Request.checkCharset(charset);
 	}
 
+	public FileExporter flushBytes(int flushBytes) {
+		Preconditions.checkArgument(flushBytes > 0, "flushBytes less than zero!");
+		this.flushBytes = flushBytes;
+		return this;
+	}
+
+	public FileExporter flushIntervalMills(long flushIntervalMills) {
+		Preconditions.checkArgument(flushIntervalMills > 0, "flushIntervalMills less than zero!");
+		this.flushIntervalMills = flushIntervalMills;
+		return this;
+	}
+
+	public FileExporter rotateBytes(long rotateBytes) {
+		this.rotateBytes = rotateBytes;
+		return this;
+	}
+
+	public FileExporter rotateIntervalMills(long rotateIntervalMills) {
+		this.rotateIntervalMills = rotateIntervalMills;
+		return this;
+	}
+
 	@Override
 	public void close() throws IOException {
-		for (BufferedWriter writer : bufferedWriters.values()) {
-			IOUtils.closeQuietly(writer);
+		synchronized (this) {
+			if (flusher != null) {
+				flusher.shutdownNow();
+				flusher = null;
+			}
+		}
+		for (Lane lane : lanes.values()) {
+			lane.close();
 		}
+		lanes.clear();
 	}
 
 	@Override
 	public void export(Page page) {
 		if (page.skipPageItems()) {
-			logger.info("the page items {} is ignore!" + page.getPageItems());
+			logger.info("the page items {} is ignore!", page.getPageItems());
 			return;
 		}
-		
-		// request对象的signature属性在导出器为FileExporter类型时作为该类型request对应response数据的输出文件名称，不同类别的request可分别输出到不同的目标文件中，便于后续数据处理
+
+		export(lane(signature(page)), Collections.singletonList(page));
+	}
+
+	/**
+	 * 批量导出一批page，同一signature的page在一次持有通道锁的期间连续写入，每个通道在整批写完后只判断一次是否需要提交。
+	 */
+	@Override
+	public void export(List<Page> pages) {
+		Map<String, List<Page>> groups = new LinkedHashMap<String, List<Page>>();
+		for (Page page : pages) {
+			if (page.skipPageItems()) {
+				logger.info("the page items {} is ignore!", page.getPageItems());
+				continue;
+			}
+			String signature = signature(page);
+			List<Page> group = groups.get(signature);
+			if (group == null) {
+				group = new ArrayList<Page>();
+				groups.put(signature, group);
+			}
+			group.add(page);
+		}
+
+		for (Map.Entry<String, List<Page>> entry : groups.entrySet()) {
+			export(lane(entry.getKey()), entry.getValue());
+		}
+	}
+
+	private void export(Lane lane, List<Page> pages) {
+		synchronized (lane) {
+			for (Page page : pages) {
+				lane.write(page);
+			}
+			lane.commitIfDue(false);
+		}
+	}
+
+	/**
+	 * request对象的signature属性在导出器为FileExporter类型时作为该类型request对应response数据的输出文件名称，不同类别的request可分别输出到不同的目标文件中，便于后续数据处理
+	 */
+	private String signature(Page page) {
 		String signature = page.request().signature();
-		if (StringUtils.isBlank(signature)) {
-			signature = DEFAULT_SIGNATURE;
+		return StringUtils.isBlank(signature) ? DEFAULT_SIGNATURE : signature;
+	}
+
+	private Lane lane(String signature) {
+		Lane lane = lanes.get(signature);
+		if (lane != null) {
+			return lane;
 		}
-		
-		BufferedWriter writer = null;
-		synchronized (bufferedWriters) {
-			writer = bufferedWriters.get(signature);
-			if (writer == null) {
-				File fileToWrite = FileUtils.getFile(target, signature);
-				try {
-					writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileToWrite, true), charset));
-				} catch (UnsupportedEncodingException | FileNotFoundException e) {
-					logger.error("create bufferedWriter with name {} error!", signature, e);
-					throw new ExportException("create bufferedWriter with name "+signature+" error!", e);
-				}
-				bufferedWriters.put(signature, writer);
+		synchronized (this) {
+			lane = lanes.get(signature);
+			if (lane == null) {
+				lane = new Lane(signature);
+				lanes.put(signature, lane);
+				startFlusher();
 			}
 		}
-		
-		doExport(page, writer);
+		return lane;
 	}
-	
+
+	private void startFlusher() {
+		if (flusher != null) {
+			return;
+		}
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "file-exporter-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(() -> {
+			for (Lane lane : lanes.values()) {
+				synchronized (lane) {
+					try {
+						lane.commitIfDue(true);
+					} catch (ExportException e) {
+						logger.error("flush lane {} error!", lane.signature, e);
+					}
+				}
+			}
+		}, flushIntervalMills, flushIntervalMills, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 将一个page写入其通道，调用时持有该通道的锁，writer为该通道的写缓冲。子类可覆盖该方法改变输出格式，默认交给doExport(Page, Writer)。
+	 */
 	protected void doExport(Page page, BufferedWriter writer) {
+		doExport(page, (Writer) writer);
+	}
+
+	/**
+	 * 编码一个page，默认将pageItems以紧凑json格式流式写为一行。
+	 */
+	protected void doExport(Page page, Writer writer) {
 		Map<String, Object> items = page.getPageItems();
 		if (items != null && !items.isEmpty()) {
 			try {
-				IOUtils.write(Jsons_.toString(items), writer);
-				writer.newLine();
+				ObjectMapper mapper = Jsons_.getObjectMapper();
+				JsonGenerator generator = mapper.getJsonFactory().createJsonGenerator(writer);
+				generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+				mapper.writeValue(generator, items);
+				generator.close();
+				writer.write(LINE_SEPARATOR);
 			} catch (IOException e) {
 				throw new ExportException("write data to target error!", e);
 			}
@@ -121,7 +271,179 @@ public class FileExporter implements Exporter {
 
 	@Override
 	public String toString() {
-		return MoreObjects.toStringHelper(this).add("target", target).add("charset", charset).toString();
+		return MoreObjects.toStringHelper(this).add("target", target).add("charset", charset).add("flushBytes", flushBytes)
+				.add("flushIntervalMills", flushIntervalMills).add("rotateBytes", rotateBytes)
+				.add("rotateIntervalMills", rotateIntervalMills).toString();
+	}
+
+	/**
+	 * 一个signature对应的写入通道，所有方法都需要在持有该通道的锁时调用。
+	 */
+	private class Lane {
+
+		private final String signature;
+
+		private final File file;
+
+		private CountingWriter writer;
+
+		/**
+		 * 已写出到文件的字节数
+		 */
+		private CountingOutputStream counter;
+
+		/**
+		 * 当前文件打开前已有的字节数
+		 */
+		private long initialBytes;
+
+		private long openedAt;
+
+		private long committedAt;
+
+		/**
+		 * 上次提交后写入的字符数，为0表示没有待提交的数据
+		 */
+		private long pending;
+
+		Lane(String signature) {
+			this.signature = signature;
+			this.file = FileUtils.getFile(target, signature);
+			open();
+		}
+
+		private void open() {
+			try {
+				initialBytes = file.length();
+				counter = new CountingOutputStream(new FileOutputStream(file, true));
+				writer = new CountingWriter(new OutputStreamWriter(counter, charset), flushBytes);
+			} catch (IOException e) {
+				IOUtils.closeQuietly(counter);
+				logger.error("create bufferedWriter with name {} error!", signature, e);
+				throw new ExportException("create bufferedWriter with name "+signature+" error!", e);
+			}
+			openedAt = committedAt = System.currentTimeMillis();
+		}
+
+		void write(Page page) {
+			if (writer == null) {
+				throw new ExportException("the file of " + signature + " is closed!");
+			}
+			long written = writer.count;
+			try {
+				doExport(page, writer);
+			} catch (RuntimeException e) {
+				// 已写出部分内容时补一个换行，不完整的记录不会与下一条记录连在一起
+				if (writer.count > written) {
+					try {
+						writer.write(LINE_SEPARATOR);
+					} catch (IOException ioe) {
+						e.addSuppressed(ioe);
+					}
+				}
+				throw e;
+			} finally {
+				pending += writer.count - written;
+			}
+		}
+
+		/**
+		 * 距上次提交超过时间预算时flush，然后在需要时滚动文件。
+		 *
+		 * @param idle 为true时表示由后台线程调用，只处理时间预算
+		 */
+		void commitIfDue(boolean idle) {
+			if (writer == null) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			if (pending > 0 && now - committedAt >= flushIntervalMills) {
+				commit(now);
+			}
+			// 缓冲中的数据尚未计入文件大小，估算可能达到滚动大小时先提交，再按准确的文件大小判断
+			boolean rotateBySize = false;
+			if (!idle && rotateBytes > 0 && initialBytes + counter.getByteCount() + pending >= rotateBytes) {
+				commit(now);
+				rotateBySize = initialBytes + counter.getByteCount() >= rotateBytes;
+			}
+			boolean rotateByTime = rotateIntervalMills > 0 && now - openedAt >= rotateIntervalMills
+					&& initialBytes + counter.getByteCount() + pending > 0;
+			if (rotateBySize || rotateByTime) {
+				rotate(now);
+			}
+		}
+
+		private void commit(long now) {
+			try {
+				writer.flush();
+			} catch (IOException e) {
+				throw new ExportException("flush data to target error!", e);
+			}
+			pending = 0;
+			committedAt = now;
+		}
+
+		private void rotate(long now) {
+			commit(now);
+			IOUtils.closeQuietly(writer);
+			String suffix = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date(now));
+			File rotated = FileUtils.getFile(target, signature + "." + suffix);
+			for (int i = 1; rotated.exists(); i++) {
+				rotated = FileUtils.getFile(target, signature + "." + suffix + "-" + i);
+			}
+			if (!file.renameTo(rotated)) {
+				logger.error("rotate file {} to {} error!", file, rotated);
+			} else {
+				logger.info("rotate file {} to {}", file, rotated);
+			}
+			open();
+		}
+
+		void close() {
+			synchronized (this) {
+				if (writer != null) {
+					try {
+						writer.flush();
+					} catch (IOException e) {
+						logger.error("flush file {} error!", file, e);
+					}
+					IOUtils.closeQuietly(writer);
+					writer = null;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * 统计写入字符数的写缓冲
+	 */
+	private static class CountingWriter extends BufferedWriter {
+
+		private long count;
+
+		CountingWriter(Writer out, int size) {
+			super(out, size);
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			super.write(c);
+			count++;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			super.write(cbuf, off, len);
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			super.write(str, off, len);
+			count += len;
+		}
+
 	}
 
 }
@@ -0,0 +1,439 @@
+package jcrawler.exporter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Disposable;
+import jcrawler.Envirenment;
+import jcrawler.Initializable;
+import jcrawler.Page;
+import jcrawler.Request;
+import jcrawler.ResponseBody;
+import jcrawler.frontier.RequestCodec;
+import jcrawler.support.Jsons_;
+
+/**
+ * 带独立队列和导出线程的导出器，用于把多个导出器由串行pipeline改为并行扇出。
+ *
+ * export只把page放入该导出器自己的有界队列中，由其专属的导出线程异步调用被包装的导出器，因此一个慢速导出器(如数据库)不会拖慢其他导出器(如本地文件)。
+ * 队列已满时按OverflowPolicy处理新到达的page：BLOCK阻塞调用者直到有空位，DROP丢弃该page并计数，SPILL将该page写入磁盘上的溢出文件，队列取空后再按顺序读回导出。
+ *
+ * 溢出文件中只保存page的request和pageItems，读回的page不再携带response，且pageItems中的值经过json转换后变为Map、List、String等基本结构。
+ * close时先等待队列和溢出文件中的page全部导出，再关闭被包装的导出器。
+ *
+ * @author warhin.wang
+ *
+ */
+public class QueuedExporter implements BatchExporter, Initializable, Disposable {
+
+	private static final Logger logger = LoggerFactory.getLogger(QueuedExporter.class);
+
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	/**
+	 * 队列已满时新到达page的处理策略
+	 */
+	public enum OverflowPolicy {
+		BLOCK, DROP, SPILL
+	}
+
+	private final Exporter exporter;
+
+	private final BlockingQueue<Page> queue;
+
+	private final OverflowPolicy policy;
+
+	private final int threads;
+
+	private final List<Thread> workers = new LinkedList<Thread>();
+
+	/**
+	 * 溢出文件，仅在SPILL策略下创建
+	 */
+	private final Spill spill;
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile boolean closed;
+
+	public QueuedExporter(Exporter exporter) {
+		this(exporter, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	public QueuedExporter(Exporter exporter, int capacity, OverflowPolicy policy) {
+		this(exporter, capacity, 1, policy, null);
+	}
+
+	/**
+	 * @param exporter 被包装的导出器
+	 * @param capacity 队列容量
+	 * @param threads 导出线程数量，大于1时同一signature的page不再保证导出顺序
+	 * @param policy 队列已满时的处理策略
+	 * @param spillDir 溢出文件所在目录，为null时在系统临时目录中创建
+	 */
+	public QueuedExporter(Exporter exporter, int capacity, int threads, OverflowPolicy policy, File spillDir) {
+		super();
+		Preconditions.checkNotNull(exporter, "exporter is null!");
+		Preconditions.checkArgument(capacity > 0, "capacity less than zero!");
+		Preconditions.checkArgument(threads > 0, "threads less than zero!");
+		Preconditions.checkNotNull(policy, "policy is null!");
+		this.exporter = exporter;
+		this.queue = new ArrayBlockingQueue<Page>(capacity);
+		this.threads = threads;
+		this.policy = policy;
+		this.spill = policy == OverflowPolicy.SPILL ? new Spill(spillDir) : null;
+	}
+
+	public Exporter exporter() {
+		return exporter;
+	}
+
+	/**
+	 * @return 返回DROP策略下已丢弃的page数量
+	 */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	public int size() {
+		return queue.size() + (spill == null ? 0 : spill.size());
+	}
+
+	@Override
+	public void init() {
+		if (exporter instanceof Initializable) {
+			((Initializable) exporter).init();
+		}
+		synchronized (workers) {
+			if (!workers.isEmpty()) {
+				return;
+			}
+			for (int i = 0; i < threads; i++) {
+				Thread worker = new Thread(new Worker(), "exporter-" + exporter.getClass().getSimpleName() + "-" + i);
+				worker.setDaemon(true);
+				worker.start();
+				workers.add(worker);
+			}
+		}
+	}
+
+	@Override
+	public void export(Page page) {
+		Preconditions.checkState(!closed, "the exporter is closed!");
+		if (workers.isEmpty()) {
+			init();
+		}
+		// 队列中的page在调用者返回后才被导出，需要持有其响应报文主体，导出后释放
+		ResponseBody body = page.response() == null ? null : page.response().body();
+		if (body != null) {
+			body.retain();
+		}
+		boolean queued = false;
+		try {
+			switch (policy) {
+			case BLOCK:
+				try {
+					queue.put(page);
+					queued = true;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ExportException("interrupted while waiting for queue of " + exporter, e);
+				}
+				break;
+			case DROP:
+				queued = queue.offer(page);
+				if (!queued) {
+					long count = dropped.incrementAndGet();
+					logger.warn("the queue of {} is full, drop page {}, total dropped : {}", exporter, page, count);
+				}
+				break;
+			case SPILL:
+				// 溢出文件中有page时新page也写入溢出文件，保证先进先出
+				synchronized (spill) {
+					if (spill.size() == 0 && queue.offer(page)) {
+						queued = true;
+					} else {
+						spill.write(page);
+					}
+				}
+				break;
+			}
+		} finally {
+			if (body != null && !queued) {
+				body.release();
+			}
+		}
+	}
+
+	@Override
+	public void export(List<Page> pages) {
+		for (Page page : pages) {
+			export(page);
+		}
+	}
+
+	/**
+	 * 取出一批待导出的page：优先从队列中取，队列为空时从溢出文件读回，都为空时阻塞等待队列直到超时。
+	 */
+	private List<Page> take(int max) throws InterruptedException {
+		List<Page> batch = new ArrayList<Page>(max);
+		if (queue.drainTo(batch, max) > 0) {
+			return batch;
+		}
+		if (spill != null) {
+			synchronized (spill) {
+				if (spill.size() > 0) {
+					int lost = spill.read(batch, max);
+					if (lost > 0) {
+						long count = dropped.addAndGet(lost);
+						logger.warn("the spill file of {} is broken, drop {} pages, total dropped : {}", exporter, lost, count);
+					}
+					return batch;
+				}
+			}
+		}
+		Page page = queue.poll(Envirenment.DEFAULT_PAGE_PULL_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (page != null) {
+			batch.add(page);
+			queue.drainTo(batch, max - 1);
+		}
+		return batch;
+	}
+
+	private void doExport(List<Page> batch) {
+		if (exporter instanceof BatchExporter) {
+			try {
+				((BatchExporter) exporter).export(batch);
+			} catch (Exception e) {
+				logger.error("export pages to {} error : ", exporter, e);
+			}
+		} else {
+			for (Page page : batch) {
+				try {
+					exporter.export(page);
+				} catch (Exception e) {
+					logger.error("export page to {} error : ", exporter, e);
+				}
+			}
+		}
+		// 从溢出文件读回的page不携带响应，只有队列中的page持有报文主体
+		for (Page page : batch) {
+			if (page.response() != null && page.response().body() != null) {
+				page.response().body().release();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		synchronized (workers) {
+			for (Thread worker : workers) {
+				try {
+					worker.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			workers.clear();
+		}
+		if (spill != null) {
+			spill.close();
+		}
+		exporter.close();
+	}
+
+	@Override
+	public void destroy() {
+		if (exporter instanceof Disposable) {
+			((Disposable) exporter).destroy();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("exporter", exporter).add("policy", policy).add("threads", threads)
+				.add("size", size()).add("dropped", dropped).toString();
+	}
+
+	private class Worker implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				List<Page> batch;
+				try {
+					batch = take(Envirenment.DEFAULT_EXPORT_BATCH_SIZE);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (RuntimeException e) {
+					// 单次取出失败不能终止导出线程，否则队列中剩余的page再也不会被导出
+					logger.error("take pages for {} error : ", exporter, e);
+					continue;
+				}
+				if (batch.isEmpty()) {
+					// 已关闭且队列和溢出文件都已取空时退出
+					if (closed && size() == 0) {
+						break;
+					}
+					continue;
+				}
+				try {
+					doExport(batch);
+				} catch (RuntimeException e) {
+					logger.error("export pages to {} error : ", exporter, e);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * 磁盘上的溢出文件，按写入顺序读回，全部读完后删除文件，下次溢出时重新创建。调用者负责同步。
+	 */
+	private static class Spill {
+
+		private final RequestCodec codec = new RequestCodec();
+
+		private final File dir;
+
+		private File file;
+
+		private DataOutputStream out;
+
+		private DataInputStream in;
+
+		/**
+		 * 已写入尚未读回的page数量
+		 */
+		private volatile int size;
+
+		Spill(File dir) {
+			try {
+				if (dir == null) {
+					this.dir = Files.createTempDirectory("jcrawler-spill").toFile();
+				} else {
+					FileUtils.forceMkdir(dir);
+					this.dir = dir;
+				}
+			} catch (IOException e) {
+				throw new ExportException("create spill directory error!", e);
+			}
+		}
+
+		int size() {
+			return size;
+		}
+
+		void write(Page page) {
+			try {
+				if (out == null) {
+					file = File.createTempFile("spill", ".dat", dir);
+					out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+				}
+				// 先完整编码再一次写入，编码失败时溢出文件中不会留下不完整的记录
+				codec.register(page.site());
+				byte[] request = codec.encode(page.request());
+				byte[] items = Jsons_.toString(page.getPageItems()).getBytes(StandardCharsets.UTF_8);
+				out.write(request);
+				out.writeBoolean(page.skipPageItems());
+				out.writeInt(items.length);
+				out.write(items);
+				size++;
+			} catch (IOException e) {
+				throw new ExportException("write page to spill file error!", e);
+			}
+		}
+
+		/**
+		 * 读回至多max个page加入batch。溢出文件损坏时丢弃其中剩余的page并删除该文件，以免之后的读取反复失败。
+		 *
+		 * @return 因溢出文件损坏而丢弃的page数量
+		 */
+		@SuppressWarnings("unchecked")
+		int read(List<Page> batch, int max) {
+			try {
+				out.flush();
+				if (in == null) {
+					in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				}
+				while (size > 0 && batch.size() < max) {
+					Request request = codec.read(in);
+					boolean skip = in.readBoolean();
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					size--;
+					Page page = Page.create().request(request).skipPageItems(skip);
+					Map<String, Object> items;
+					try {
+						items = Jsons_.toObject(new String(bytes, StandardCharsets.UTF_8), Map.class);
+					} catch (RuntimeException e) {
+						// 记录已完整读出，只放弃该page
+						logger.error("parse page items of {} from spill file error, the page is dropped!", request, e);
+						continue;
+					}
+					if (items != null) {
+						for (Map.Entry<String, Object> item : items.entrySet()) {
+							page.addPageItem(item.getKey(), item.getValue());
+						}
+					}
+					batch.add(page);
+				}
+				if (size == 0) {
+					reset();
+				}
+				return 0;
+			} catch (IOException e) {
+				int lost = size;
+				logger.error("read page from spill file {} error, {} pages are dropped!", file, lost, e);
+				close();
+				return lost;
+			}
+		}
+
+		/**
+		 * 读回时需要先flush写入缓冲；读完后关闭并删除当前溢出文件。
+		 */
+		private void reset() {
+			IOUtils.closeQuietly(in);
+			IOUtils.closeQuietly(out);
+			in = null;
+			out = null;
+			FileUtils.deleteQuietly(file);
+			file = null;
+		}
+
+		void close() {
+			reset();
+			size = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,429 @@
+package jcrawler.exporter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Envirenment;
+import jcrawler.Page;
+import jcrawler.support.Jsons_;
+
+/**
+ * 分块压缩的列式导出器，适合数据量大、需要被下游任务反复读取的抽取结果。
+ *
+ * 每个signature输出到一个"signature.jcs"文件，pageItems按blockRecords条一块缓存在内存中，块写满时整体编码后以deflate压缩写出：
+ * 块内先写出该块用到的所有key组成的字典，然后按列写出每个key在各条记录中的值，key只在字典中出现一次，同一列的值类型相近，压缩率远高于逐行json。
+ * 文件末尾为索引footer，记录每个块的偏移和记录数，SegmentReader据此可直接定位到任意块，并按块惰性地解码记录。
+ *
+ * 值按类型编码：字符串、整数(解码为Long)、浮点数(解码为Double)、布尔值原样保存，其他对象转为json保存，解码后变为Map、List等基本结构。
+ * footer在close时写出，未正常关闭的文件仍可由SegmentReader顺序扫描读出已写出的完整块。
+ *
+ * @author warhin.wang
+ *
+ */
+public class SegmentExporter implements BatchExporter {
+
+	private static final Logger logger = LoggerFactory.getLogger(SegmentExporter.class);
+	private static final String DEFAULT_SIGNATURE = Envirenment.DEFAULT_OUTPUT_FILENAME;
+
+	public static final String SUFFIX = ".jcs";
+
+	public static final int DEFAULT_BLOCK_RECORDS = 1024;
+
+	static final int MAGIC = 0x4A435347;
+	static final byte VERSION = 1;
+
+	static final byte ABSENT = 0;
+	static final byte NULL = 1;
+	static final byte STRING = 2;
+	static final byte LONG = 3;
+	static final byte DOUBLE = 4;
+	static final byte BOOLEAN_TRUE = 5;
+	static final byte BOOLEAN_FALSE = 6;
+	static final byte JSON = 7;
+
+	/**
+	 * 导出器输出目录
+	 */
+	private final File target;
+
+	/**
+	 * 每块最多容纳的记录数
+	 */
+	private final int blockRecords;
+
+	/**
+	 * deflate压缩级别
+	 */
+	private final int level;
+
+	/**
+	 * 写入通道集合，key为request的signature
+	 */
+	private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+
+	public SegmentExporter(String dir) throws IOException {
+		this(dir, DEFAULT_BLOCK_RECORDS, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public SegmentExporter(String dir, int blockRecords, int level) throws IOException {
+		super();
+		Preconditions.checkArgument(blockRecords > 0, "blockRecords less than zero!");
+		this.target = FileUtils.getFile(dir);
+		if (!target.exists()) {
+			FileUtils.forceMkdir(target);
+		} else if (target.isFile()) {
+			throw new IOException(dir + " is not a directory but a file!");
+		} else if (!target.canWrite()) {
+			throw new IOException(dir + " is a directory but cann't be writed!");
+		}
+		this.blockRecords = blockRecords;
+		this.level = level;
+	}
+
+	@Override
+	public void export(Page page) {
+		if (page.skipPageItems()) {
+			logger.info("the page items {} is ignore!", page.getPageItems());
+			return;
+		}
+		Lane lane = lane(signature(page));
+		synchronized (lane) {
+			lane.add(page.getPageItems());
+		}
+	}
+
+	@Override
+	public void export(List<Page> pages) {
+		for (Page page : pages) {
+			export(page);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Lane lane : lanes.values()) {
+			synchronized (lane) {
+				lane.close();
+			}
+		}
+		lanes.clear();
+	}
+
+	private String signature(Page page) {
+		String signature = page.request().signature();
+		return StringUtils.isBlank(signature) ? DEFAULT_SIGNATURE : signature;
+	}
+
+	private Lane lane(String signature) {
+		Lane lane = lanes.get(signature);
+		if (lane != null) {
+			return lane;
+		}
+		synchronized (this) {
+			lane = lanes.get(signature);
+			if (lane == null) {
+				lane = new Lane(signature);
+				lanes.put(signature, lane);
+			}
+		}
+		return lane;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("target", target).add("blockRecords", blockRecords).add("level", level)
+				.toString();
+	}
+
+	/**
+	 * 一个signature对应的输出文件，所有方法都需要在持有该通道的锁时调用。
+	 */
+	private class Lane {
+
+		private final File file;
+
+		private final CountingOutputStream counter;
+
+		private final DataOutputStream out;
+
+		private final Deflater deflater = new Deflater(level);
+
+		private final List<Record> records = new ArrayList<Record>(blockRecords);
+
+		/**
+		 * 已写出块的偏移
+		 */
+		private final List<Long> offsets = new ArrayList<Long>();
+
+		/**
+		 * 已写出块的记录数
+		 */
+		private final List<Integer> counts = new ArrayList<Integer>();
+
+		private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+
+		/**
+		 * 编码单条记录的缓冲区
+		 */
+		private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+
+		private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+
+		private final byte[] chunk = new byte[64 * 1024];
+
+		private boolean closed;
+
+		/**
+		 * 写入文件失败后该文件的状态未知，不再接受新的记录，关闭时只为已完整写出的块写入footer
+		 */
+		private ExportException failure;
+
+		Lane(String signature) {
+			File candidate = FileUtils.getFile(target, signature + SUFFIX);
+			for (int i = 1; candidate.exists(); i++) {
+				candidate = FileUtils.getFile(target, signature + "-" + i + SUFFIX);
+			}
+			this.file = candidate;
+			try {
+				this.counter = new CountingOutputStream(new FileOutputStream(file));
+				this.out = new DataOutputStream(new BufferedOutputStream(counter, 64 * 1024));
+				out.writeInt(MAGIC);
+				out.writeByte(VERSION);
+			} catch (IOException e) {
+				throw new ExportException("create segment file " + file + " error!", e);
+			}
+		}
+
+		void add(Map<String, Object> items) {
+			if (closed) {
+				throw new ExportException("the segment file " + file + " is closed!");
+			}
+			if (failure != null) {
+				throw new ExportException("the segment file " + file + " is failed!", failure);
+			}
+			if (items == null) {
+				return;
+			}
+			Record record = encode(items);
+			if (record == null) {
+				return;
+			}
+			records.add(record);
+			if (records.size() >= blockRecords) {
+				flushBlock();
+			}
+		}
+
+		/**
+		 * 加入块之前单独编码每条记录的值，无法编码的记录(如key为null或值无法转为json)被跳过，不影响同一块中的其他记录。
+		 *
+		 * @return 返回编码后的记录，无法编码时返回null
+		 */
+		private Record encode(Map<String, Object> items) {
+			String[] keys = new String[items.size()];
+			int[] ends = new int[keys.length];
+			recordBuffer.reset();
+			try {
+				int i = 0;
+				for (Map.Entry<String, Object> entry : items.entrySet()) {
+					keys[i] = Preconditions.checkNotNull(entry.getKey(), "the key is null!");
+					writeValue(recordOut, entry.getValue());
+					ends[i++] = recordBuffer.size();
+				}
+			} catch (IOException | RuntimeException e) {
+				logger.error("encode record of segment file {} error, the record with keys {} is dropped!", file, items.keySet(), e);
+				return null;
+			}
+			return new Record(keys, ends, recordBuffer.toByteArray());
+		}
+
+		/**
+		 * 块格式：int原始长度、int压缩长度、压缩数据；原始数据为key字典、记录数，以及按列排列的值。
+		 *
+		 * 记录在加入时已编码，块只需按列拼接各记录的值再压缩；块完整写出后才计入footer的偏移和记录数。
+		 */
+		private void flushBlock() {
+			if (records.isEmpty() || failure != null) {
+				records.clear();
+				return;
+			}
+			int count = records.size();
+			byte[] bytes;
+			try {
+				Set<String> dictionary = new LinkedHashSet<String>();
+				for (Record record : records) {
+					Collections.addAll(dictionary, record.keys);
+				}
+
+				raw.reset();
+				DataOutputStream block = new DataOutputStream(raw);
+				block.writeInt(dictionary.size());
+				for (String key : dictionary) {
+					writeString(block, key);
+				}
+				block.writeInt(records.size());
+				// 记录的key顺序通常与字典一致，从上一列的位置之后开始查找
+				int[] cursors = new int[count];
+				for (String key : dictionary) {
+					for (int r = 0; r < count; r++) {
+						Record record = records.get(r);
+						int i = record.indexOf(key, cursors[r]);
+						if (i < 0) {
+							block.writeByte(ABSENT);
+						} else {
+							int start = i == 0 ? 0 : record.ends[i - 1];
+							block.write(record.values, start, record.ends[i] - start);
+							cursors[r] = i + 1;
+						}
+					}
+				}
+				block.flush();
+
+				bytes = raw.toByteArray();
+				raw.reset();
+				deflater.reset();
+				deflater.setInput(bytes);
+				deflater.finish();
+				while (!deflater.finished()) {
+					int n = deflater.deflate(chunk);
+					raw.write(chunk, 0, n);
+				}
+			} catch (IOException | RuntimeException e) {
+				throw new ExportException("encode block of segment file " + file + " error, " + count + " records are dropped!", e);
+			} finally {
+				records.clear();
+			}
+
+			long offset;
+			try {
+				out.flush();
+				offset = counter.getByteCount();
+				out.writeInt(bytes.length);
+				out.writeInt(raw.size());
+				raw.writeTo(out);
+			} catch (IOException e) {
+				failure = new ExportException("write block to segment file " + file + " error!", e);
+				throw failure;
+			}
+			offsets.add(offset);
+			counts.add(count);
+		}
+
+		/**
+		 * footer格式：int块数，每块long偏移和int记录数，然后是long footer偏移和int magic。
+		 */
+		void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				try {
+					flushBlock();
+				} catch (ExportException e) {
+					// 仍为已完整写出的块写入footer
+					logger.error("flush the last block of segment file {} error!", file, e);
+				}
+				out.flush();
+				long footer = counter.getByteCount();
+				out.writeInt(offsets.size());
+				for (int i = 0; i < offsets.size(); i++) {
+					out.writeLong(offsets.get(i));
+					out.writeInt(counts.get(i));
+				}
+				out.writeLong(footer);
+				out.writeInt(MAGIC);
+				out.flush();
+			} catch (IOException e) {
+				logger.error("close segment file {} error!", file, e);
+			} finally {
+				IOUtils.closeQuietly(out);
+				deflater.end();
+			}
+		}
+
+	}
+
+	/**
+	 * 已编码的一条记录，values为各个值的编码依次拼接，ends[i]为第i个值的结束位置
+	 */
+	private static class Record {
+
+		private final String[] keys;
+
+		private final int[] ends;
+
+		private final byte[] values;
+
+		private Record(String[] keys, int[] ends, byte[] values) {
+			this.keys = keys;
+			this.ends = ends;
+			this.values = values;
+		}
+
+		/**
+		 * 从from开始查找key的位置，到末尾后再从头查找
+		 */
+		private int indexOf(String key, int from) {
+			for (int i = 0; i < keys.length; i++) {
+				int index = (from + i) % keys.length;
+				if (keys[index].equals(key)) {
+					return index;
+				}
+			}
+			return -1;
+		}
+
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			out.writeByte(LONG);
+			out.writeLong(((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			out.writeByte((Boolean) value ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+		} else {
+			out.writeByte(JSON);
+			writeString(out, Jsons_.toString(value, false));
+		}
+	}
+
+}
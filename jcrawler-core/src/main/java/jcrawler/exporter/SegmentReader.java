@@ -0,0 +1,271 @@
+package jcrawler.exporter;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.support.Jsons_;
+
+/**
+ * SegmentExporter输出文件的读取器。
+ *
+ * 打开时只读取footer索引，记录按块惰性解码：迭代时每次只解压当前块，内存中最多保留一个块的记录。
+ * 通过iterator(long)可直接定位到第n条记录所在的块开始读取，不需要解码之前的块。
+ * 文件没有footer(导出器未正常关闭)时顺序扫描一遍块头重建索引，末尾不完整的块被忽略。
+ *
+ * @author warhin.wang
+ *
+ */
+public class SegmentReader implements Closeable, Iterable<Map<String, Object>> {
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	private final List<Long> offsets = new ArrayList<Long>();
+
+	/**
+	 * 每个块第一条记录的序号，最后一个元素为总记录数
+	 */
+	private final List<Long> firsts = new ArrayList<Long>();
+
+	public SegmentReader(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() < 5 || raf.readInt() != SegmentExporter.MAGIC) {
+				throw new IOException(file + " is not a segment file!");
+			}
+			byte version = raf.readByte();
+			if (version != SegmentExporter.VERSION) {
+				throw new IOException("unsupported segment version " + version + " of " + file);
+			}
+			if (!readFooter()) {
+				scan();
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	private boolean readFooter() throws IOException {
+		long length = raf.length();
+		if (length < 5 + 16) {
+			return false;
+		}
+		raf.seek(length - 12);
+		long footer = raf.readLong();
+		if (raf.readInt() != SegmentExporter.MAGIC || footer < 5 || footer > length - 16) {
+			return false;
+		}
+		raf.seek(footer);
+		int blocks = raf.readInt();
+		long first = 0;
+		for (int i = 0; i < blocks; i++) {
+			offsets.add(raf.readLong());
+			firsts.add(first);
+			first += raf.readInt();
+		}
+		firsts.add(first);
+		return true;
+	}
+
+	private void scan() throws IOException {
+		offsets.clear();
+		firsts.clear();
+		long length = raf.length();
+		long offset = 5;
+		long first = 0;
+		while (offset + 8 <= length) {
+			raf.seek(offset);
+			raf.readInt();
+			int compressed = raf.readInt();
+			if (compressed < 0 || offset + 8 + compressed > length) {
+				break;
+			}
+			DataInputStream block = block(offset);
+			int keys = block.readInt();
+			for (int i = 0; i < keys; i++) {
+				readString(block);
+			}
+			offsets.add(offset);
+			firsts.add(first);
+			first += block.readInt();
+			offset += 8 + compressed;
+		}
+		firsts.add(first);
+	}
+
+	public File file() {
+		return file;
+	}
+
+	public int blocks() {
+		return offsets.size();
+	}
+
+	public long records() {
+		return firsts.get(firsts.size() - 1);
+	}
+
+	/**
+	 * 解码第index个块中的所有记录
+	 */
+	public List<Map<String, Object>> block(int index) throws IOException {
+		Preconditions.checkElementIndex(index, offsets.size());
+		DataInputStream in = block(offsets.get(index));
+		int keyCount = in.readInt();
+		String[] keys = new String[keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			keys[i] = readString(in);
+		}
+		int count = in.readInt();
+		List<Map<String, Object>> records = new ArrayList<Map<String, Object>>(count);
+		for (int i = 0; i < count; i++) {
+			records.add(new LinkedHashMap<String, Object>());
+		}
+		for (String key : keys) {
+			for (Map<String, Object> record : records) {
+				byte type = in.readByte();
+				if (type != SegmentExporter.ABSENT) {
+					record.put(key, readValue(in, type));
+				}
+			}
+		}
+		return records;
+	}
+
+	private DataInputStream block(long offset) throws IOException {
+		byte[] compressed;
+		int rawLength;
+		synchronized (raf) {
+			raf.seek(offset);
+			rawLength = raf.readInt();
+			compressed = new byte[raf.readInt()];
+			raf.readFully(compressed);
+		}
+		byte[] bytes = new byte[rawLength];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			int n = 0;
+			while (n < rawLength && !inflater.finished()) {
+				int read = inflater.inflate(bytes, n, rawLength - n);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				n += read;
+			}
+			if (n != rawLength) {
+				throw new EOFException("truncated block at " + offset + " of " + file);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("corrupted block at " + offset + " of " + file, e);
+		} finally {
+			inflater.end();
+		}
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+	@Override
+	public Iterator<Map<String, Object>> iterator() {
+		return iterator(0);
+	}
+
+	/**
+	 * 从第from条记录开始迭代，只解码from所在的块及其之后的块。
+	 */
+	public Iterator<Map<String, Object>> iterator(long from) {
+		Preconditions.checkArgument(from >= 0, "from less than zero!");
+		int index = Collections.binarySearch(firsts, from);
+		final int start = index >= 0 ? index : -index - 2;
+		final int skip = (int) (from - (start < offsets.size() ? firsts.get(start) : records()));
+		return new Iterator<Map<String, Object>>() {
+
+			private int next = start;
+
+			private Iterator<Map<String, Object>> current = Collections.emptyIterator();
+
+			private int toSkip = skip;
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext() && next < offsets.size()) {
+					try {
+						List<Map<String, Object>> records = block(next++);
+						current = records.subList(Math.min(toSkip, records.size()), records.size()).iterator();
+						toSkip = 0;
+					} catch (IOException e) {
+						throw new ExportException("read block of " + file + " error!", e);
+					}
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public Map<String, Object> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("file", file).add("blocks", blocks()).add("records", records()).toString();
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static Object readValue(DataInputStream in, byte type) throws IOException {
+		switch (type) {
+		case SegmentExporter.NULL:
+			return null;
+		case SegmentExporter.STRING:
+			return readString(in);
+		case SegmentExporter.LONG:
+			return in.readLong();
+		case SegmentExporter.DOUBLE:
+			return in.readDouble();
+		case SegmentExporter.BOOLEAN_TRUE:
+			return Boolean.TRUE;
+		case SegmentExporter.BOOLEAN_FALSE:
+			return Boolean.FALSE;
+		case SegmentExporter.JSON:
+			return Jsons_.toObject(readString(in), Object.class);
+		default:
+			throw new IOException("unknown value type " + type);
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package jcrawler.fetcher;
+
+import java.util.concurrent.CompletableFuture;
+
+import jcrawler.Request;
+import jcrawler.Response;
+
+/**
+ * 异步下载器，下载过程不占用调用线程，下载结果以CompletableFuture形式返回。
+ * 
+ * 下载失败时返回的future以FetchException异常结束。
+ * 
+ * @author warhin.wang
+ *
+ */
+public interface AsyncFetcher {
+	
+	CompletableFuture<Response> fetchAsync(Request request);
+
+}
@@ -0,0 +1,310 @@
+package jcrawler.fetcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.ByteArrayBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+
+import jcrawler.Request;
+import jcrawler.Response;
+import jcrawler.Site;
+import jcrawler.support.http.HttpTemplate;
+
+/**
+ * 该fetcher基于httpasyncclient组件(NIO事件循环)实现。
+ *
+ * 少量IO线程即可同时维持成千上万个未完成的请求，请求的构造与HttpFetcher完全一致(headers、proxy扩展、charset等)，
+ * 因此已有的Site/Request配置无需修改即可使用。同时实现了Fetcher接口，可以在同步流程中直接替代HttpFetcher。
+ *
+ * @author warhin.wang
+ *
+ */
+public class AsyncHttpFetcher implements AsyncFetcher, Fetcher, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncHttpFetcher.class);
+
+	public static final int DEFAULT_MAX_TOTAL = 2000;
+	public static final int DEFAULT_MAX_PER_ROUTE = 200;
+
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+	private static final int MAX_INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	private CloseableHttpAsyncClient httpAsyncClient;
+
+	/**
+	 * 每个site一个cookieStore，与HttpFetcherFactory中每个site一个httpClient的cookie隔离方式一致
+	 */
+	private Map<Site, CookieStore> cookieStores = new ConcurrentHashMap<Site, CookieStore>();
+
+	public static AsyncHttpFetcher create() {
+		return create(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, Runtime.getRuntime().availableProcessors());
+	}
+
+	public static AsyncHttpFetcher create(int maxTotal, int maxPerRoute, int ioThreads) {
+		IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+				.setIoThreadCount(ioThreads <= 0 ? Runtime.getRuntime().availableProcessors() : ioThreads)
+				.setSoKeepAlive(true)
+				.setTcpNoDelay(true)
+				.build();
+		PoolingNHttpClientConnectionManager connManager = null;
+		try {
+			connManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig),
+					ManagedNHttpClientConnectionFactory.INSTANCE, DnsCache.GLOBAL);
+		} catch (IOReactorException e) {
+			throw new FetchException("create io reactor error!", e);
+		}
+		connManager.setMaxTotal(maxTotal <= 0 ? DEFAULT_MAX_TOTAL : maxTotal);
+		connManager.setDefaultMaxPerRoute(maxPerRoute <= 0 ? DEFAULT_MAX_PER_ROUTE : maxPerRoute);
+		CloseableHttpAsyncClient client = HttpAsyncClientBuilder.create()
+				.setConnectionManager(connManager)
+				.setUserAgent(HttpFetcherFactory.DEFAULT_USERAGENT)
+				.build();
+		return new AsyncHttpFetcher(client);
+	}
+
+	public AsyncHttpFetcher(CloseableHttpAsyncClient httpAsyncClient) {
+		super();
+		this.httpAsyncClient = httpAsyncClient;
+		this.httpAsyncClient.start();
+	}
+
+	@Override
+	public CompletableFuture<Response> fetchAsync(final Request request) {
+		final CompletableFuture<Response> future = new CompletableFuture<Response>();
+		final Response response = Response.create(request);
+		HttpUriRequest uriRequest = null;
+		try {
+			if (!HttpFetcher.isSupportedMethod(request)) {
+				throw new FetchException("Not support method[" + request.method() + "].");
+			}
+			uriRequest = HttpFetcher.toHttpUriRequest(request);
+		} catch (Exception e) {
+			future.completeExceptionally(e instanceof FetchException ? e : new FetchException(e));
+			return future;
+		}
+		HttpClientContext context = HttpClientContext.create();
+		context.setCookieStore(getCookieStore(request.site()));
+		final LimitedResponseConsumer consumer = new LimitedResponseConsumer(future);
+		final TransferLimiter limiter = new TransferLimiter(request, () -> consumer.abort());
+		consumer.limiter = limiter;
+		future.whenComplete((r, e) -> limiter.finish());
+		limiter.start();
+		this.httpAsyncClient.execute(HttpAsyncMethods.create(uriRequest), consumer, context, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(HttpResponse httpResponse) {
+				if (future.isDone()) {
+					return;
+				}
+				// 报文主体恰好在超过最大字节数时接收完毕，交换以consumer被取消前的状态正常结束
+				handle(httpResponse != null ? httpResponse : consumer.partialResult());
+			}
+
+			private void handle(HttpResponse httpResponse) {
+				try {
+					// 异步客户端的响应拦截器执行于报文体到达之前，gzip解压需在报文体完整接收后进行
+					HttpTemplate.GZipResponseInterceptor.INSTANCE.process(httpResponse, null);
+					new HttpFetcher.CompositedResponseHandler(request, response).handleResponse(httpResponse);
+					if (!future.complete(response)) {
+						// 已因超过下载总时限而结束
+						response.release();
+					}
+				} catch (HttpResponseException e) {
+					FetchException fe = new FetchException(e);
+					fe.setStatusCode(e.getStatusCode());
+					fe.setStatusMessage(e.getMessage());
+					future.completeExceptionally(fe);
+				} catch (Exception e) {
+					logger.error("Couldn't retrive response of url[{}].", request.url2str(), e);
+					future.completeExceptionally(new FetchException(e));
+				}
+			}
+
+			@Override
+			public void failed(Exception e) {
+				if (limiter.failed()) {
+					future.completeExceptionally(limiter.exception(e));
+					return;
+				}
+				logger.error("Couldn't retrive response of url[{}].", request.url2str(), e);
+				future.completeExceptionally(new FetchException(e));
+			}
+
+			@Override
+			public void cancelled() {
+				if (limiter.reason() == FetchAbortException.Reason.BODY_TOO_LARGE) {
+					// 报文主体超过最大字节数，已接收的部分作为截断的响应
+					handle(consumer.partialResult());
+				} else if (limiter.failed()) {
+					future.completeExceptionally(limiter.exception(null));
+				} else {
+					future.completeExceptionally(new FetchException("the request of url[" + request.url2str() + "] is cancelled."));
+				}
+			}
+
+		});
+		return future;
+	}
+
+	@Override
+	public Response fetch(Request request) throws FetchException {
+		try {
+			return fetchAsync(request).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FetchException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof FetchException ? (FetchException) cause : new FetchException(cause);
+		}
+	}
+
+	/**
+	 * 与BasicAsyncResponseConsumer一样在内存中接收完整的响应，同时按TransferLimiter限制接收过程：
+	 * 报文主体超过maxBodyBytes时停止接收并取消交换，已接收的部分通过partialResult()取得；低于最低传输速率或超过下载总时限时以异常结束交换。
+	 * 
+	 * 每次最多从decoder读取READ_SIZE个字节后检查限制，不会像SimpleInputBuffer那样一次读完socket中已到达的全部数据。
+	 * 报文主体的大小按接收到的原始字节计算，gzip压缩的报文主体被截断后无法完整解压，此时下载失败。
+	 */
+	static class LimitedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+		private static final int READ_SIZE = 8 * 1024;
+
+		private final CompletableFuture<Response> future;
+
+		private volatile TransferLimiter limiter;
+
+		private volatile HttpResponse response;
+
+		private volatile HttpEntity entity;
+
+		private volatile ByteArrayBuffer content;
+
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_SIZE);
+
+		LimitedResponseConsumer(CompletableFuture<Response> future) {
+			super();
+			this.future = future;
+		}
+
+		@Override
+		protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
+			this.response = response;
+		}
+
+		@Override
+		protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+			long length = entity.getContentLength();
+			// Content-Length可能远大于允许接收的字节数，初始缓冲不按其分配
+			long initial = Math.min(length < 0 ? INITIAL_BUFFER_SIZE : length, Math.min(MAX_INITIAL_BUFFER_SIZE, limiter.maxBodyBytes() + 1));
+			this.entity = entity;
+			this.content = new ByteArrayBuffer((int) Math.max(initial, 1));
+			limiter.bodyStarted();
+		}
+
+		@Override
+		protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+			int n;
+			while ((n = decoder.read(readBuffer)) > 0) {
+				content.append(readBuffer.array(), 0, n);
+				readBuffer.clear();
+				limiter.transferred(n);
+				if (content.length() > limiter.maxBodyBytes()) {
+					limiter.abort(FetchAbortException.Reason.BODY_TOO_LARGE);
+					return;
+				}
+			}
+		}
+
+		@Override
+		protected HttpResponse buildResult(HttpContext context) {
+			return partialResult();
+		}
+
+		@Override
+		protected void releaseResources() {
+			// 被取消时仍需通过partialResult()取得已接收的部分，缓冲随consumer一起回收
+		}
+
+		/**
+		 * @return 返回包含已接收报文主体的响应，尚未收到响应时返回null
+		 */
+		HttpResponse partialResult() {
+			HttpResponse responseToUse = this.response;
+			if (responseToUse != null && this.entity != null) {
+				ByteArrayEntity received = new ByteArrayEntity(content.buffer(), 0, content.length());
+				received.setContentType(entity.getContentType());
+				received.setContentEncoding(entity.getContentEncoding());
+				responseToUse.setEntity(received);
+			}
+			return responseToUse;
+		}
+
+		/**
+		 * 由TransferLimiter中断时调用：取消consumer使交换在下次接收数据时结束，超过下载总时限或低于最低传输速率时立即以异常结束future。
+		 */
+		boolean abort() {
+			boolean cancelled = cancel();
+			if (limiter.failed()) {
+				future.completeExceptionally(limiter.exception(null));
+			}
+			return cancelled;
+		}
+
+	}
+
+	private CookieStore getCookieStore(Site site) {
+		if (site == null) site = Site.LOCALHOST;
+		CookieStore cookieStore = cookieStores.get(site);
+		if (cookieStore == null) {
+			cookieStore = HttpFetcherFactory.createCookieStore(site);
+			CookieStore existed = cookieStores.putIfAbsent(site, cookieStore);
+			if (existed != null) {
+				cookieStore = existed;
+			}
+		}
+		return cookieStore;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.httpAsyncClient.close();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("httpAsyncClient", httpAsyncClient).toString();
+	}
+
+}
@@ -0,0 +1,239 @@
+package jcrawler.fetcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Initializable;
+import jcrawler.Request;
+import jcrawler.Response;
+
+/**
+ * 带本地HTTP缓存的下载器，包装另一个fetcher，重复爬取时对已缓存的页面发起条件请求(If-None-Match/If-Modified-Since)。
+ *
+ * 服务端返回304时不再下载报文主体，由HttpCache用缓存的响应头和报文主体构造response，并标记为notModified，之后照常交给extractor处理，
+ * site设置了skipNotModified时爬虫线程直接跳过该页面；服务端返回200时将新的响应保存到缓存中。
+ *
+ * 验证器只在下载期间临时加入request的请求头，下载结束后移除，不会被checkpoint记录或复制到抽取出的新request中；用户自己设置了验证器时不覆盖。
+ * 读写缓存失败时只记录警告，退化为普通下载。
+ *
+ * @author warhin.wang
+ *
+ */
+public class CachingFetcher implements Fetcher, AsyncFetcher, Initializable, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(CachingFetcher.class);
+
+	private final Fetcher fetcher;
+
+	private final AsyncFetcher asyncFetcher;
+
+	private final HttpCache cache;
+
+	/**
+	 * @param fetcher 被包装的下载器，为null时使用HttpFetcherFactory.getFetcher(site)
+	 */
+	public CachingFetcher(Fetcher fetcher, HttpCache cache) {
+		this(fetcher, fetcher instanceof AsyncFetcher ? (AsyncFetcher) fetcher : null, cache);
+	}
+
+	/**
+	 * @param asyncFetcher 被包装的异步下载器
+	 */
+	public CachingFetcher(AsyncFetcher asyncFetcher, HttpCache cache) {
+		this(asyncFetcher instanceof Fetcher ? (Fetcher) asyncFetcher : null, asyncFetcher, cache);
+		Preconditions.checkNotNull(asyncFetcher, "the asyncFetcher is null!");
+	}
+
+	private CachingFetcher(Fetcher fetcher, AsyncFetcher asyncFetcher, HttpCache cache) {
+		super();
+		Preconditions.checkNotNull(cache, "the http cache is null!");
+		this.fetcher = fetcher;
+		this.asyncFetcher = asyncFetcher;
+		this.cache = cache;
+	}
+
+	public HttpCache cache() {
+		return cache;
+	}
+
+	@Override
+	public Response fetch(Request request) throws FetchException {
+		if (fetcher == null && asyncFetcher != null) {
+			try {
+				return fetchAsync(request).join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof FetchException ? (FetchException) e.getCause() : new FetchException(e.getCause());
+			}
+		}
+		if (!HttpCache.cacheable(request)) {
+			return delegate(request);
+		}
+		HttpCache.Entry entry = lookup(request);
+		List<String> validators = addValidators(request, entry);
+		Response response;
+		try {
+			response = delegate(request);
+		} finally {
+			removeValidators(request, validators);
+		}
+		Response cached = revalidated(request, entry, response);
+		if (cached != null) {
+			return cached;
+		}
+		if (entry != null && response.statusCode() == HttpStatus.SC_NOT_MODIFIED) {
+			// 缓存项在下载期间被替换或删除，释放304响应后重新下载完整的响应
+			response.release();
+			response = delegate(request);
+		}
+		store(request, response);
+		return response;
+	}
+
+	/**
+	 * 被包装的不是异步下载器时，在调用线程中同步下载。
+	 */
+	@Override
+	public CompletableFuture<Response> fetchAsync(Request request) {
+		if (asyncFetcher == null) {
+			CompletableFuture<Response> future = new CompletableFuture<Response>();
+			try {
+				future.complete(fetch(request));
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		if (!HttpCache.cacheable(request)) {
+			return asyncFetcher.fetchAsync(request);
+		}
+		HttpCache.Entry entry = lookup(request);
+		List<String> validators = addValidators(request, entry);
+		return asyncFetcher.fetchAsync(request).whenComplete((response, e) -> {
+			removeValidators(request, validators);
+		}).thenCompose(response -> {
+			Response cached = revalidated(request, entry, response);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(cached);
+			}
+			if (entry != null && response.statusCode() == HttpStatus.SC_NOT_MODIFIED) {
+				response.release();
+				return asyncFetcher.fetchAsync(request);
+			}
+			return CompletableFuture.completedFuture(response);
+		}).thenApply(response -> {
+			if (!response.notModified()) {
+				store(request, response);
+			}
+			return response;
+		});
+	}
+
+	private Response delegate(Request request) {
+		Fetcher fetcherToUse = fetcher;
+		if (fetcherToUse == null) {
+			fetcherToUse = HttpFetcherFactory.getInstance().getFetcher(request.site());
+		}
+		return fetcherToUse.fetch(request);
+	}
+
+	private HttpCache.Entry lookup(Request request) {
+		try {
+			return cache.lookup(request);
+		} catch (IOException e) {
+			logger.warn("lookup the http cache of url[{}] error!", request.url2str(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * 按缓存项的验证器加入条件请求头，返回加入的请求头名称。
+	 */
+	private static List<String> addValidators(Request request, HttpCache.Entry entry) {
+		if (entry == null) {
+			return Collections.emptyList();
+		}
+		List<String> added = new ArrayList<String>(2);
+		if (entry.etag() != null && !request.hasHeader(HttpHeaders.IF_NONE_MATCH)) {
+			request.header(HttpHeaders.IF_NONE_MATCH, entry.etag());
+			added.add(HttpHeaders.IF_NONE_MATCH);
+		}
+		if (entry.lastModified() != null && !request.hasHeader(HttpHeaders.IF_MODIFIED_SINCE)) {
+			request.header(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified());
+			added.add(HttpHeaders.IF_MODIFIED_SINCE);
+		}
+		return added;
+	}
+
+	private static void removeValidators(Request request, List<String> validators) {
+		for (String name : validators) {
+			request.removeHeader(name);
+		}
+	}
+
+	/**
+	 * @return 服务端返回304时由缓存构造的response，否则返回null
+	 */
+	private Response revalidated(Request request, HttpCache.Entry entry, Response response) {
+		if (entry == null || response.statusCode() != HttpStatus.SC_NOT_MODIFIED) {
+			return null;
+		}
+		try {
+			Response cached = cache.revalidated(request, entry, response);
+			if (cached != null) {
+				response.release();
+				logger.debug("the page of url[{}] is not modified since {}.", request.url2str(), entry.storedAt());
+			}
+			return cached;
+		} catch (IOException e) {
+			logger.warn("read the http cache of url[{}] error!", request.url2str(), e);
+			return null;
+		}
+	}
+
+	private void store(Request request, Response response) {
+		try {
+			cache.store(request, response);
+		} catch (IOException e) {
+			logger.warn("store the http cache of url[{}] error!", request.url2str(), e);
+		}
+	}
+
+	@Override
+	public void init() {
+		if (fetcher instanceof Initializable) {
+			((Initializable) fetcher).init();
+		} else if (asyncFetcher instanceof Initializable) {
+			((Initializable) asyncFetcher).init();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		logger.info("close the http cache : {}", cache);
+		if (fetcher instanceof Closeable) {
+			((Closeable) fetcher).close();
+		} else if (asyncFetcher instanceof Closeable) {
+			((Closeable) asyncFetcher).close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("fetcher", fetcher).add("asyncFetcher", asyncFetcher).add("cache", cache)
+				.toString();
+	}
+
+}
@@ -0,0 +1,309 @@
+package jcrawler.fetcher;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.util.InetAddressUtils;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Envirenment;
+
+/**
+ * 带有效期的并发DNS缓存，作为HttpClient的DnsResolver使用，避免每次建立新连接都经过jvm默认的解析器。
+ *
+ * 1 解析成功的结果保存ttl，解析失败(host不存在)的结果保存negativeTtl，有效期内直接返回缓存的结果，不再访问DNS服务器；
+ * 2 同一host同时只有一次解析在进行，其他线程等待该次解析的结果，大量请求同时访问一个新host时不会同时发出大量DNS查询；
+ * 3 解析成功的结果过期后先继续使用，同时由后台线程刷新，爬虫线程不会因为过期而阻塞在DNS查询上；
+ * 4 prefetch(host)由后台线程预先解析host，抽取出的链接进入requestQueue时即可开始解析，等到下载时通常已在缓存中。
+ *
+ * 缓存超过maxSize个host时先清除过期的结果，仍然超过时任意清除一部分。ip地址不经过缓存。
+ *
+ * 所有基于HttpClient的fetcher共用GLOBAL实例。Http2Fetcher使用的java.net.http不支持替换解析器，但预解析同样会预热jvm自身的地址缓存。
+ *
+ * @author warhin.wang
+ *
+ */
+public class DnsCache implements DnsResolver {
+
+	private static final Logger logger = LoggerFactory.getLogger(DnsCache.class);
+
+	public static final DnsCache GLOBAL = new DnsCache(Envirenment.DEFAULT_DNS_TTL, Envirenment.DEFAULT_DNS_NEGATIVE_TTL,
+			Envirenment.DEFAULT_DNS_CACHE_SIZE, Envirenment.DEFAULT_DNS_RESOLVER_THREADS);
+
+	private final long ttl;
+
+	private final long negativeTtl;
+
+	private final int maxSize;
+
+	private final DnsResolver resolver;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * 正在进行的解析，key为host
+	 */
+	private final Map<String, CompletableFuture<Entry>> inflight = new ConcurrentHashMap<String, CompletableFuture<Entry>>();
+
+	private final ThreadPoolExecutor prefetcher;
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder stales = new LongAdder();
+
+	private final LongAdder negatives = new LongAdder();
+
+	private final LongAdder prefetches = new LongAdder();
+
+	/**
+	 * @param ttl 解析成功的结果的有效期，单位millis
+	 * @param negativeTtl 解析失败的结果的有效期，单位millis，0表示不缓存解析失败的结果
+	 * @param maxSize 最多保存的host数量
+	 * @param threads 预解析和后台刷新的线程数量
+	 */
+	public DnsCache(long ttl, long negativeTtl, int maxSize, int threads) {
+		this(SystemDefaultDnsResolver.INSTANCE, ttl, negativeTtl, maxSize, threads);
+	}
+
+	/**
+	 * @param resolver 实际执行解析的解析器
+	 */
+	public DnsCache(DnsResolver resolver, long ttl, long negativeTtl, int maxSize, int threads) {
+		super();
+		Preconditions.checkNotNull(resolver, "the resolver is null!");
+		Preconditions.checkArgument(ttl > 0, "ttl less than zero!");
+		Preconditions.checkArgument(negativeTtl >= 0, "negativeTtl less than zero!");
+		Preconditions.checkArgument(maxSize > 0, "maxSize less than zero!");
+		Preconditions.checkArgument(threads > 0, "threads less than zero!");
+		this.resolver = resolver;
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.maxSize = maxSize;
+		AtomicInteger count = new AtomicInteger();
+		this.prefetcher = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(Envirenment.DEFAULT_DNS_PREFETCH_QUEUE), r -> {
+					Thread thread = new Thread(r, "dns-resolver-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.DiscardPolicy());
+		// 空闲时不保留线程
+		this.prefetcher.allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+		if (isAddress(host)) {
+			return resolver.resolve(host);
+		}
+		String key = host.toLowerCase(Locale.ENGLISH);
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			if (!entry.expired()) {
+				hits.increment();
+				if (entry.addresses == null) {
+					negatives.increment();
+				}
+				return entry.get(host);
+			}
+			if (entry.addresses != null) {
+				// 过期的解析结果先继续使用，由后台线程刷新
+				stales.increment();
+				submit(key, true);
+				return entry.get(host);
+			}
+		}
+		misses.increment();
+		return lookup(key).get(host);
+	}
+
+	/**
+	 * 由后台线程预先解析host，host已在缓存中、正在解析或等待预解析的host过多时忽略。
+	 */
+	public void prefetch(String host) {
+		if (StringUtils.isBlank(host) || isAddress(host)) {
+			return;
+		}
+		String key = host.toLowerCase(Locale.ENGLISH);
+		Entry entry = entries.get(key);
+		if (entry == null || entry.expired()) {
+			submit(key, entry != null);
+		}
+	}
+
+	private void submit(String host, boolean refresh) {
+		if (inflight.containsKey(host)) {
+			return;
+		}
+		try {
+			prefetcher.execute(() -> {
+				Entry entry = entries.get(host);
+				if (entry == null || entry.expired()) {
+					lookup(host);
+				}
+			});
+			if (!refresh) {
+				prefetches.increment();
+			}
+		} catch (RejectedExecutionException e) {
+			logger.debug("the dns prefetch of host[{}] is rejected.", host);
+		}
+	}
+
+	/**
+	 * 解析host并保存结果，同一host正在解析时等待该次解析的结果。
+	 */
+	private Entry lookup(String host) {
+		CompletableFuture<Entry> future = new CompletableFuture<Entry>();
+		CompletableFuture<Entry> existed = inflight.putIfAbsent(host, future);
+		if (existed != null) {
+			return existed.join();
+		}
+		Entry entry;
+		try {
+			try {
+				entry = new Entry(resolver.resolve(host), null, System.currentTimeMillis() + ttl);
+			} catch (UnknownHostException e) {
+				entry = new Entry(null, e.getMessage(), System.currentTimeMillis() + negativeTtl);
+			}
+			if (entry.addresses != null || negativeTtl > 0) {
+				entries.put(host, entry);
+			} else {
+				entries.remove(host);
+			}
+		} catch (RuntimeException e) {
+			inflight.remove(host, future);
+			future.completeExceptionally(e);
+			throw e;
+		}
+		inflight.remove(host, future);
+		future.complete(entry);
+		if (entries.size() > maxSize) {
+			evict();
+		}
+		return entry;
+	}
+
+	/**
+	 * 先清除过期的结果，仍然超过maxSize时任意清除一部分，直到降至maxSize的90%。
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			Iterator<Entry> iter = entries.values().iterator();
+			while (iter.hasNext()) {
+				if (iter.next().expired()) {
+					iter.remove();
+				}
+			}
+			int target = maxSize / 10 * 9;
+			iter = entries.values().iterator();
+			while (entries.size() > target && iter.hasNext()) {
+				iter.next();
+				iter.remove();
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private static boolean isAddress(String host) {
+		return InetAddressUtils.isIPv4Address(host) || InetAddressUtils.isIPv6Address(host);
+	}
+
+	/**
+	 * 清除host的解析结果，下次访问时重新解析。
+	 */
+	public void invalidate(String host) {
+		if (host != null) {
+			entries.remove(host.toLowerCase(Locale.ENGLISH));
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return 缓存的host数量
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return 直接从缓存中返回结果的次数，包括解析失败的结果
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return 需要等待解析的次数
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("size", entries.size()).add("hits", hits).add("misses", misses)
+				.add("stales", stales).add("negatives", negatives).add("prefetches", prefetches).add("ttl", ttl)
+				.add("negativeTtl", negativeTtl).toString();
+	}
+
+	/**
+	 * 一次解析的结果，addresses为null时表示host不存在
+	 */
+	private static class Entry {
+
+		private final InetAddress[] addresses;
+
+		private final String error;
+
+		private final long expiresAt;
+
+		Entry(InetAddress[] addresses, String error, long expiresAt) {
+			this.addresses = addresses;
+			this.error = error;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean expired() {
+			return System.currentTimeMillis() >= expiresAt;
+		}
+
+		InetAddress[] get(String host) throws UnknownHostException {
+			if (addresses == null) {
+				throw new UnknownHostException(error != null ? error : host);
+			}
+			return addresses.clone();
+		}
+
+	}
+
+}
@@ -0,0 +1,41 @@
+package jcrawler.fetcher;
+
+/**
+ * 下载过程中因超过限制而主动中断连接时抛出的异常，reason标明超过的是哪一项限制。
+ *
+ * 报文主体超过最大字节数时不抛出该异常，页面保留已读取的部分并标记为truncated。
+ *
+ * @author warhin.wang
+ *
+ */
+public class FetchAbortException extends FetchException {
+
+	private static final long serialVersionUID = -3265406151260958512L;
+
+	public static enum Reason {
+		/**
+		 * 报文主体超过最大字节数
+		 */
+		BODY_TOO_LARGE,
+		/**
+		 * 传输速率低于最低传输速率
+		 */
+		TRANSFER_TOO_SLOW,
+		/**
+		 * 超过下载总时限
+		 */
+		DEADLINE_EXCEEDED
+	}
+
+	private final Reason reason;
+
+	public FetchAbortException(Reason reason, String message, Throwable cause) {
+		super(message, cause);
+		this.reason = reason;
+	}
+
+	public Reason reason() {
+		return reason;
+	}
+
+}
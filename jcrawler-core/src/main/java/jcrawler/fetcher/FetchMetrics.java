@@ -0,0 +1,78 @@
+package jcrawler.fetcher;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * 下载过程的统计信息，目前记录因超过限制而中断的连接数及中断前已接收的字节数。
+ *
+ * 所有fetcher共用GLOBAL实例，计数基于LongAdder，多个爬虫线程并发累加时没有竞争。
+ *
+ * @author warhin.wang
+ *
+ */
+public class FetchMetrics {
+
+	public static final FetchMetrics GLOBAL = new FetchMetrics();
+
+	private final Map<FetchAbortException.Reason, LongAdder> aborts = new EnumMap<FetchAbortException.Reason, LongAdder>(
+			FetchAbortException.Reason.class);
+
+	private final LongAdder abortedBytes = new LongAdder();
+
+	public FetchMetrics() {
+		super();
+		for (FetchAbortException.Reason reason : FetchAbortException.Reason.values()) {
+			aborts.put(reason, new LongAdder());
+		}
+	}
+
+	/**
+	 * 记录一次中断。
+	 *
+	 * @param reason 中断原因
+	 * @param transferred 中断前已接收的报文主体字节数
+	 */
+	public void aborted(FetchAbortException.Reason reason, long transferred) {
+		aborts.get(reason).increment();
+		abortedBytes.add(transferred);
+	}
+
+	/**
+	 * @return 因reason中断的次数
+	 */
+	public long aborts(FetchAbortException.Reason reason) {
+		return aborts.get(reason).sum();
+	}
+
+	/**
+	 * @return 中断次数之和
+	 */
+	public long aborts() {
+		long sum = 0;
+		for (LongAdder adder : aborts.values()) {
+			sum += adder.sum();
+		}
+		return sum;
+	}
+
+	/**
+	 * @return 中断前已接收的报文主体字节数之和
+	 */
+	public long abortedBytes() {
+		return abortedBytes.sum();
+	}
+
+	@Override
+	public String toString() {
+		MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this);
+		for (Map.Entry<FetchAbortException.Reason, LongAdder> entry : aborts.entrySet()) {
+			helper.add(entry.getKey().name(), entry.getValue().sum());
+		}
+		return helper.add("abortedBytes", abortedBytes()).toString();
+	}
+
+}
@@ -0,0 +1,362 @@
+package jcrawler.fetcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import jcrawler.Envirenment;
+import jcrawler.Message;
+import jcrawler.Request;
+import jcrawler.Response;
+import jcrawler.ResponseBody;
+import jcrawler.support.BufferPool;
+
+/**
+ * 基于本地磁盘的HTTP缓存，按request的identify保存上一次成功响应的验证器(ETag/Last-Modified)、响应头和报文主体，用于重复爬取时发起条件请求。
+ *
+ * 每个缓存项是一个单独的文件，文件名为identify的murmur3_128哈希，按哈希的前两位分散到子目录中；文件开头是验证器和响应头，其后是报文主体，
+ * 查询验证器时只读取文件开头。写入时先写临时文件再原子地替换，并发写入同一缓存项时以最后一次为准，读取方不会看到写了一半的文件。
+ *
+ * 只缓存GET请求的200响应，且响应必须带有ETag或Last-Modified、没有Cache-Control: no-store、报文主体未被截断。
+ * 保存的报文主体是解压后的字节，因此不保存Content-Encoding、Content-Length以及逐跳(hop-by-hop)的响应头。
+ *
+ * @author warhin.wang
+ *
+ */
+public class HttpCache {
+
+	private static final int MAGIC = 0x4A434843;
+
+	private static final String SUFFIX = ".cache";
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	/**
+	 * 不随缓存项保存、也不从304响应中更新的响应头
+	 */
+	private static final Set<String> UNSTORED_HEADERS = new HashSet<String>(Arrays.asList("connection", "keep-alive",
+			"proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade", "content-encoding",
+			"content-length"));
+
+	private final File dir;
+
+	private final LongAdder lookups = new LongAdder();
+
+	private final LongAdder revalidated = new LongAdder();
+
+	private final LongAdder stores = new LongAdder();
+
+	private final LongAdder savedBytes = new LongAdder();
+
+	public HttpCache(Path dir) throws IOException {
+		super();
+		Preconditions.checkNotNull(dir, "the http cache dir is null!");
+		this.dir = dir.toFile();
+		FileUtils.forceMkdir(this.dir);
+	}
+
+	/**
+	 * @return 返回true，如果该request可以使用缓存：只有GET请求才发起条件请求
+	 */
+	public static boolean cacheable(Request request) {
+		return request.method() == Message.Method.GET;
+	}
+
+	/**
+	 * @return 返回true，如果该response可以保存到缓存中
+	 */
+	public static boolean cacheable(Request request, Response response) {
+		if (!cacheable(request) || response == null || response.statusCode() != HttpStatus.SC_OK) {
+			return false;
+		}
+		if (StringUtils.isBlank(response.header(HttpHeaders.ETAG)) && StringUtils.isBlank(response.header(HttpHeaders.LAST_MODIFIED))) {
+			return false;
+		}
+		String cacheControl = response.header(HttpHeaders.CACHE_CONTROL);
+		if (cacheControl != null && cacheControl.toLowerCase(Locale.ENGLISH).contains("no-store")) {
+			return false;
+		}
+		ResponseBody body = response.body();
+		return body != null && !body.released() && !body.truncated();
+	}
+
+	/**
+	 * 查询request对应的缓存项，只读取验证器和响应头，不读取报文主体。
+	 *
+	 * @return 缓存项，不存在时返回null
+	 */
+	public Entry lookup(Request request) throws IOException {
+		lookups.increment();
+		String identify = request.identify();
+		DataInputStream in = open(identify);
+		if (in == null) {
+			return null;
+		}
+		try {
+			return readEntry(in, identify);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * 服务端确认缓存项未修改(304)后，用缓存的响应头和报文主体构造response，并用304响应中的响应头更新缓存的响应头。
+	 *
+	 * 缓存项在lookup之后被替换或删除时返回null，调用方应重新发起不带验证器的请求。
+	 *
+	 * @param entry lookup返回的缓存项
+	 * @param notModified 服务端返回的304响应
+	 */
+	public Response revalidated(Request request, Entry entry, Response notModified) throws IOException {
+		String identify = request.identify();
+		DataInputStream in = open(identify);
+		if (in == null) {
+			return null;
+		}
+		ResponseBody body;
+		Entry stored;
+		try {
+			stored = readEntry(in, identify);
+			if (stored == null || !stored.sameValidators(entry)) {
+				return null;
+			}
+			long size = in.readLong();
+			body = ResponseBody.read(new BoundedInputStream(in, size), request.maxBodyBytes(), Envirenment.DEFAULT_BODY_SPILL_THRESHOLD);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		Response response = Response.create(request);
+		response.statusCode(stored.statusCode).statusMessage(stored.statusMessage).header(stored.headers);
+		for (Map.Entry<String, String> header : notModified.headers().entrySet()) {
+			if (header.getValue() != null && !UNSTORED_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+				response.header(header.getKey(), header.getValue());
+			}
+		}
+		response.contentLength(body.size()).charset(stored.charset);
+		response.body(body, stored.text);
+		response.notModified(true);
+		revalidated.increment();
+		savedBytes.add(body.size());
+		if (!StringUtils.equals(stored.etag, StringUtils.trimToNull(response.header(HttpHeaders.ETAG)))
+				|| !StringUtils.equals(stored.lastModified, StringUtils.trimToNull(response.header(HttpHeaders.LAST_MODIFIED)))) {
+			// 304响应带来了新的验证器，重写缓存项；其余响应头(如Date)的变化不值得每次重写
+			store(request, response);
+		}
+		return response;
+	}
+
+	/**
+	 * 保存response，不满足cacheable(request, response)时忽略。
+	 */
+	public void store(Request request, Response response) throws IOException {
+		if (!cacheable(request, response)) {
+			return;
+		}
+		String identify = request.identify();
+		File file = file(identify);
+		FileUtils.forceMkdir(file.getParentFile());
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		DataOutputStream out = null;
+		InputStream in = null;
+		byte[] buffer = BufferPool.BYTES.acquire(ResponseBody.CHUNK_SIZE);
+		boolean success = false;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), ResponseBody.CHUNK_SIZE));
+			out.writeInt(MAGIC);
+			out.writeUTF(identify);
+			out.writeUTF(StringUtils.defaultString(response.header(HttpHeaders.ETAG)));
+			out.writeUTF(StringUtils.defaultString(response.header(HttpHeaders.LAST_MODIFIED)));
+			out.writeInt(response.statusCode());
+			out.writeUTF(StringUtils.defaultString(response.statusMessage()));
+			out.writeUTF(StringUtils.defaultString(response.charset()));
+			out.writeBoolean(request.requestText() || response.isText());
+			out.writeLong(System.currentTimeMillis());
+			Map<String, String> headers = storedHeaders(response.headers());
+			out.writeInt(headers.size());
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				out.writeUTF(header.getKey());
+				out.writeUTF(header.getValue());
+			}
+			ResponseBody body = response.body();
+			out.writeLong(body.size());
+			in = body.openStream();
+			IOUtils.copyLarge(in, out, buffer);
+			out.close();
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			stores.increment();
+			success = true;
+		} finally {
+			BufferPool.BYTES.release(buffer);
+			IOUtils.closeQuietly(in);
+			IOUtils.closeQuietly(out);
+			if (!success) {
+				FileUtils.deleteQuietly(tmp);
+			}
+		}
+	}
+
+	/**
+	 * 删除request对应的缓存项。
+	 */
+	public boolean remove(Request request) {
+		return FileUtils.deleteQuietly(file(request.identify()));
+	}
+
+	private static Map<String, String> storedHeaders(Map<String, String> headers) {
+		Map<String, String> stored = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if (header.getValue() != null && !UNSTORED_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+				stored.put(header.getKey(), header.getValue());
+			}
+		}
+		return stored;
+	}
+
+	private File file(String identify) {
+		String hash = HASH_FUNCTION.hashString(identify, StandardCharsets.UTF_8).toString();
+		return new File(new File(dir, hash.substring(0, 2)), hash + SUFFIX);
+	}
+
+	private DataInputStream open(String identify) throws IOException {
+		try {
+			return new DataInputStream(new BufferedInputStream(new FileInputStream(file(identify)), ResponseBody.CHUNK_SIZE));
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 读取缓存项的开头部分，读取后输入流位于报文主体的长度处；哈希冲突或文件损坏时返回null。
+	 */
+	private static Entry readEntry(DataInputStream in, String identify) throws IOException {
+		if (in.readInt() != MAGIC || !identify.equals(in.readUTF())) {
+			return null;
+		}
+		Entry entry = new Entry();
+		entry.etag = StringUtils.trimToNull(in.readUTF());
+		entry.lastModified = StringUtils.trimToNull(in.readUTF());
+		entry.statusCode = in.readInt();
+		entry.statusMessage = in.readUTF();
+		entry.charset = StringUtils.defaultIfEmpty(in.readUTF(), "UTF-8");
+		entry.text = in.readBoolean();
+		entry.storedAt = in.readLong();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			entry.headers.put(in.readUTF(), in.readUTF());
+		}
+		return entry;
+	}
+
+	/**
+	 * @return 查询缓存的次数
+	 */
+	public long lookups() {
+		return lookups.sum();
+	}
+
+	/**
+	 * @return 服务端返回304、直接使用缓存报文主体的次数
+	 */
+	public long revalidated() {
+		return revalidated.sum();
+	}
+
+	/**
+	 * @return 写入缓存项的次数
+	 */
+	public long stores() {
+		return stores.sum();
+	}
+
+	/**
+	 * @return 因304响应而不必重新下载的报文主体字节数之和
+	 */
+	public long savedBytes() {
+		return savedBytes.sum();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("dir", dir).add("lookups", lookups).add("revalidated", revalidated)
+				.add("stores", stores).add("savedBytes", savedBytes).toString();
+	}
+
+	/**
+	 * 缓存项的验证器和响应头
+	 */
+	public static class Entry {
+
+		private String etag;
+
+		private String lastModified;
+
+		private int statusCode;
+
+		private String statusMessage;
+
+		private String charset;
+
+		private boolean text;
+
+		private long storedAt;
+
+		private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+		public String etag() {
+			return etag;
+		}
+
+		public String lastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return 写入该缓存项的时间
+		 */
+		public long storedAt() {
+			return storedAt;
+		}
+
+		boolean sameValidators(Entry that) {
+			return StringUtils.equals(etag, that.etag) && StringUtils.equals(lastModified, that.lastModified);
+		}
+
+		@Override
+		public String toString() {
+			return MoreObjects.toStringHelper(this).add("etag", etag).add("lastModified", lastModified)
+					.add("statusCode", statusCode).add("storedAt", storedAt).toString();
+		}
+
+	}
+
+}
@@ -1,8 +1,10 @@
 package jcrawler.fetcher;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HeaderIterator;
@@ -11,13 +13,13 @@ import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +27,7 @@ import jcrawler.Envirenment;
 import jcrawler.Message;
 import jcrawler.Request;
 import jcrawler.Response;
+import jcrawler.ResponseBody;
 import jcrawler.support.http.HttpEntitys;
 import jcrawler.support.http.ResponseHandlers;
 
@@ -47,32 +50,71 @@ public class HttpFetcher implements Fetcher {
 		this.httpClient = httpClient;
 	}
 
+	/**
+	 * 下载过程受request的maxBodyBytes、minTransferRate、downloadDeadline限制：报文主体超过最大字节数时中断连接，返回的response只保留前maxBodyBytes个字节并标记为truncated；
+	 * 低于最低传输速率或超过下载总时限时中断连接并抛出FetchAbortException。
+	 */
 	@Override
 	public Response fetch(Request request) throws FetchException {
 		Response response = Response.create(request);
+		TransferLimiter limiter = null;
 		try {
 			if (!supportMethod(request)) {
 				throw new FetchException("Not support method[" + request.method() + "].");
 			}
-			HttpUriRequest uriRequest = createHttpUriRequest(request);
-			ResponseHandler<Object> responseHandler = new CompositedResponseHandler(request, response);
+			final HttpUriRequest uriRequest = createHttpUriRequest(request);
+			limiter = new TransferLimiter(request, () -> {
+				uriRequest.abort();
+				return true;
+			}).start();
+			ResponseHandler<Object> responseHandler = new CompositedResponseHandler(request, response, limiter);
 			this.httpClient.execute(uriRequest, responseHandler);
+		} catch (HttpResponseException e) {
+			FetchException fe = new FetchException(e);
+			fe.setStatusCode(e.getStatusCode());
+			fe.setStatusMessage(e.getMessage());
+			throw fe;
 		} catch (ClientProtocolException e) {
 			logger.error("Couldn't retrive response of url[{}].", request.url2str(), e);
 			throw new FetchException(e);
 		} catch (IOException e) {
+			if (limiter != null && limiter.failed()) {
+				throw limiter.exception(e);
+			}
+			if (response.truncated()) {
+				// 报文主体超过最大字节数后中断了连接，释放连接时的异常可以忽略
+				return response;
+			}
 			logger.error("Couldn't retrive response of url[{}].", request.url2str(), e);
 			throw new FetchException(e);
+		} finally {
+			if (limiter != null) {
+				limiter.finish();
+			}
 		}
 		return response;
 	}
 	
 	protected boolean supportMethod(Request request) {
+		return isSupportedMethod(request);
+	}
+	
+	public HttpUriRequest createHttpUriRequest(Request request) {
+		return toHttpUriRequest(request);
+	}
+	
+	/**
+	 * supportMethod的默认实现，AsyncHttpFetcher和Http2Fetcher共用
+	 */
+	static boolean isSupportedMethod(Request request) {
 		Message.Method method = request.method();
 		return method == Message.Method.GET || method == Message.Method.POST || method == Message.Method.HEAD;
 	}
 	
-	public HttpUriRequest createHttpUriRequest(Request request) {
+	/**
+	 * createHttpUriRequest的默认实现，AsyncHttpFetcher共用
+	 */
+	static HttpUriRequest toHttpUriRequest(Request request) {
 		RequestBuilder requestBuilder = null;
 		Message.Method method = request.method();
 		// set http request method
@@ -138,11 +180,20 @@ public class HttpFetcher implements Fetcher {
 		
 		private Request request;
 		private Response response;
+		private TransferLimiter limiter;
 
 		public CompositedResponseHandler(Request request, Response response) {
+			this(request, response, null);
+		}
+
+		/**
+		 * @param limiter 下载限制器，为null时只按request的maxBodyBytes截断报文主体，不中断连接
+		 */
+		public CompositedResponseHandler(Request request, Response response, TransferLimiter limiter) {
 			super();
 			this.request = request;
 			this.response = response;
+			this.limiter = limiter;
 		}
 
 		@Override
@@ -174,20 +225,36 @@ public class HttpFetcher implements Fetcher {
 				}
 			}
 			response.charset(charset);
-			// set response content
+			// set response content：报文主体以字节流方式读入可重复读取的ResponseBody，文本内容在第一次访问时才解码
 			HttpEntity entity = httpResponse.getEntity();
 			if (entity == null) return null;
-			Object result = null;
-			if (request.requestText() || response.isText()) {
-				String content = EntityUtils.toString(entity, charset);
-				result = content;
-				response.rawContent(content).content(result);
-			} else if (request.requestBinary() || response.isBinary()) {
-				byte[] content = EntityUtils.toByteArray(entity);
-				result = content;
-				response.rawContent(null).content(result);
+			boolean text = request.requestText() || response.isText();
+			if (!text && !request.requestBinary() && !response.isBinary()) {
+				return null;
+			}
+			InputStream in = entity.getContent();
+			if (in == null) return null;
+			long maxBodyBytes = limiter != null ? limiter.maxBodyBytes() : request.maxBodyBytes();
+			ResponseBody body = null;
+			try {
+				body = ResponseBody.read(limiter != null ? limiter.limit(in) : in, maxBodyBytes, Envirenment.DEFAULT_BODY_SPILL_THRESHOLD);
+			} finally {
+				// 中断后的连接不能复用，关闭输入流时不再读完剩余的报文主体
+				if (limiter != null && (limiter.reason() != null || (body != null && body.truncated()))) {
+					limiter.abort(FetchAbortException.Reason.BODY_TOO_LARGE);
+					IOUtils.closeQuietly(in);
+				} else {
+					in.close();
+				}
+			}
+			if (limiter != null) {
+				limiter.finish();
+			}
+			if (body.truncated()) {
+				logger.warn("the response body of url[{}] exceeds {} bytes and is truncated.", request.url2str(), maxBodyBytes);
 			}
-			return  result;
+			response.rawContent(null).content(null).body(body, text);
+			return body;
 		}
 
 	}
@@ -2,18 +2,33 @@ package jcrawler.fetcher;
 
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.NoHttpResponseException;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import jcrawler.Envirenment;
 import jcrawler.Site;
@@ -21,40 +36,122 @@ import jcrawler.support.http.Browser;
 import jcrawler.support.http.HttpTemplate;
 
 /**
+ * 每个site一个HttpFetcher，每个HttpFetcher使用该site独立的连接池：
+ * 连接池的大小、每个route的连接数、连接的保持时间和空闲关闭时间都取自site，一个繁忙的site不会占满其他site的连接，多site爬取时总连接数也不再受单一连接池的限制。
+ * 
+ * 所有连接池通过DnsCache.GLOBAL解析host，建立新连接时不再每次都经过jvm默认的解析器。
+ * 
+ * 后台线程每隔DEFAULT_CONNECTION_REAPER_INTERVAL关闭所有连接池中已过期和空闲超时的连接，poolStats()返回各连接池的使用情况用于调整每个host的连接数。
+ * 
  * @author code4crafter@gmail.com <br>
  * @since 0.4.0
  */
 public class HttpFetcherFactory {
 
-	public static final int DEFAULT_MAX = 100;
+	private static final Logger logger = LoggerFactory.getLogger(HttpFetcherFactory.class);
+
+	public static final int DEFAULT_MAX = Envirenment.DEFAULT_MAX_CONNECTIONS;
 	public static final String DEFAULT_USERAGENT = Browser.CHROME_31.getValue();
 	
+	private static final Registry<ConnectionSocketFactory> SOCKET_FACTORY_REGISTRY = RegistryBuilder.<ConnectionSocketFactory>create()
+			.register("http", PlainConnectionSocketFactory.getSocketFactory())
+			.register("https", SSLConnectionSocketFactory.getSocketFactory())
+			.build();
+	
 	private static HttpFetcherFactory factoryInstance;
 	
-    private PoolingHttpClientConnectionManager connectionManager;
-    
     private Map<Site, HttpFetcher> fetcherCache = new ConcurrentHashMap<Site, HttpFetcher>();
+    
+    private Map<Site, PoolingHttpClientConnectionManager> connectionManagers = new ConcurrentHashMap<Site, PoolingHttpClientConnectionManager>();
+    
+    private ScheduledExecutorService connectionReaper;
+    
+    private volatile Fetcher http2Fetcher;
 
     public static synchronized HttpFetcherFactory getInstance() {
     	if (factoryInstance == null) {
-    		factoryInstance = new HttpFetcherFactory(createConnectionManager(DEFAULT_MAX, DEFAULT_MAX));
+    		factoryInstance = new HttpFetcherFactory(Envirenment.DEFAULT_CONNECTION_REAPER_INTERVAL);
     	}
     	return factoryInstance;
     }
 
-    private HttpFetcherFactory(PoolingHttpClientConnectionManager connectionManager) {
+    private HttpFetcherFactory(long reaperIntervalMills) {
 		super();
-		this.connectionManager = connectionManager;
+		this.connectionReaper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "http-connection-reaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.connectionReaper.scheduleWithFixedDelay(() -> {
+			try {
+				reapConnections();
+			} catch (Exception e) {
+				logger.error("reap http connections error : ", e);
+			}
+		}, reaperIntervalMills, reaperIntervalMills, TimeUnit.MILLISECONDS);
 	}
 	
-	private static PoolingHttpClientConnectionManager createConnectionManager(int maxTotal, int maxPerRoute) {
-		PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
-		connManager.setMaxTotal(maxTotal <= 0 ? DEFAULT_MAX : maxTotal);
-		connManager.setDefaultMaxPerRoute(maxPerRoute <= 0 ? DEFAULT_MAX : maxPerRoute);
-		connManager.setDefaultSocketConfig(createSocketConfig(null));
+	private static PoolingHttpClientConnectionManager createConnectionManager(Site site) {
+		PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager(SOCKET_FACTORY_REGISTRY, DnsCache.GLOBAL);
+		int maxTotal = site.maxConnections() <= 0 ? DEFAULT_MAX : site.maxConnections();
+		int maxPerRoute = site.maxConnectionsPerRoute() <= 0 ? Envirenment.DEFAULT_MAX_CONNECTIONS_PER_ROUTE : site.maxConnectionsPerRoute();
+		connManager.setMaxTotal(maxTotal);
+		connManager.setDefaultMaxPerRoute(Math.min(maxPerRoute, maxTotal));
+		connManager.setDefaultSocketConfig(createSocketConfig(site));
 		return connManager;
 	}
 	
+	/**
+	 * Http2Fetcher依赖java 11的java.net.http，位于单独的src/main/java11中，只在java 11及以上的jdk中编译，因此通过反射加载
+	 */
+	private static final String HTTP2_FETCHER_CLASS = "jcrawler.fetcher.Http2Fetcher";
+	
+	/**
+	 * @return 返回true，如果当前jvm提供了java.net.http(java 11及以上)且Http2Fetcher已编译，可以使用Http2Fetcher
+	 */
+	public static boolean isHttp2Supported() {
+		try {
+			Class.forName("java.net.http.HttpClient");
+			Class.forName(HTTP2_FETCHER_CLASS);
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * 按site的设置选择fetcher：site.http2()为true且当前jvm支持时返回所有site共用的Http2Fetcher，否则返回该site的HttpFetcher。
+	 */
+	public Fetcher getFetcher(Site site) {
+		if (site != null && site.http2()) {
+			Fetcher fetcher = getHttp2Fetcher();
+			if (fetcher != null) {
+				return fetcher;
+			}
+		}
+		return getHttpFetcher(site);
+	}
+	
+	private Fetcher getHttp2Fetcher() {
+		if (http2Fetcher == null) {
+			synchronized (this) {
+				if (http2Fetcher == null) {
+					if (!isHttp2Supported()) {
+						logger.warn("the http2 isn't supported by current jvm, fallback to the http/1.1 fetcher.");
+						return null;
+					}
+					try {
+						http2Fetcher = (Fetcher) Class.forName(HTTP2_FETCHER_CLASS).getConstructor().newInstance();
+					} catch (ReflectiveOperationException e) {
+						logger.warn("create the http2 fetcher error, fallback to the http/1.1 fetcher.", e);
+						return null;
+					}
+				}
+			}
+		}
+		return http2Fetcher;
+	}
+	
 	public HttpFetcher getDefaultHttpFetcher() {
 		return getHttpFetcher(Site.LOCALHOST);
 	}
@@ -62,23 +159,92 @@ public class HttpFetcherFactory {
 	public HttpFetcher getHttpFetcher(Site site) {
 		if (site == null) site = Site.LOCALHOST;
 		
-		if (fetcherCache.containsKey(site)) {
-			return fetcherCache.get(site);
+		HttpFetcher httpFetcher = fetcherCache.get(site);
+		if (httpFetcher != null) {
+			return httpFetcher;
 		}
-		
+		return fetcherCache.computeIfAbsent(site, this::createHttpFetcher);
+	}
+	
+	private HttpFetcher createHttpFetcher(Site site) {
+		PoolingHttpClientConnectionManager connectionManager = createConnectionManager(site);
+		connectionManagers.put(site, connectionManager);
 		HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
 				.setConnectionManager(connectionManager)
 				.addInterceptorFirst(HttpTemplate.GZipRequestInterceptor.INSTANCE)
 				.addInterceptorFirst(HttpTemplate.GZipResponseInterceptor.INSTANCE);
 		httpClientBuilder.setUserAgent(createUserAgent(site))
 				.setRetryHandler(createHttpRequestRetryHandler(site))
+				.setKeepAliveStrategy(createKeepAliveStrategy(site))
 				.setDefaultCookieStore(createCookieStore(site));
 		CloseableHttpClient client = httpClientBuilder.build();
-		
-		HttpFetcher httpFetcher = new HttpFetcher(client);
-		fetcherCache.put(site, httpFetcher);
-		
-		return httpFetcher;
+		return new HttpFetcher(client);
+	}
+	
+	/**
+	 * 关闭所有连接池中已过期的连接，以及空闲时间超过site.idleEviction()的连接。
+	 */
+	public void reapConnections() {
+		for (Map.Entry<Site, PoolingHttpClientConnectionManager> entry : connectionManagers.entrySet()) {
+			Site site = entry.getKey();
+			PoolingHttpClientConnectionManager connectionManager = entry.getValue();
+			connectionManager.closeExpiredConnections();
+			if (site.idleEviction() > 0) {
+				connectionManager.closeIdleConnections(site.idleEviction(), TimeUnit.MILLISECONDS);
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("the connection pool of site[{}] : {}.", site.name(), connectionManager.getTotalStats());
+			}
+		}
+	}
+	
+	/**
+	 * @return 返回site的连接池的使用情况(leased/pending/available/max)，该site尚未创建连接池时返回null
+	 */
+	public PoolStats poolStats(Site site) {
+		PoolingHttpClientConnectionManager connectionManager = connectionManagers.get(site == null ? Site.LOCALHOST : site);
+		return connectionManager == null ? null : connectionManager.getTotalStats();
+	}
+	
+	/**
+	 * @return 返回site的连接池中一个route的使用情况，该site尚未创建连接池时返回null
+	 */
+	public PoolStats poolStats(Site site, HttpRoute route) {
+		PoolingHttpClientConnectionManager connectionManager = connectionManagers.get(site == null ? Site.LOCALHOST : site);
+		return connectionManager == null ? null : connectionManager.getStats(route);
+	}
+	
+	/**
+	 * @return 返回所有连接池的使用情况，key为site的name
+	 */
+	public Map<String, PoolStats> poolStats() {
+		Map<String, PoolStats> stats = new TreeMap<String, PoolStats>();
+		for (Map.Entry<Site, PoolingHttpClientConnectionManager> entry : connectionManagers.entrySet()) {
+			stats.put(entry.getKey().name(), entry.getValue().getTotalStats());
+		}
+		return stats;
+	}
+	
+	/**
+	 * @return 返回site的连接池的利用率，即已租用的连接数与最大连接数之比，该site尚未创建连接池时返回0
+	 */
+	public double poolUtilization(Site site) {
+		PoolStats stats = poolStats(site);
+		return stats == null || stats.getMax() <= 0 ? 0 : (double) stats.getLeased() / stats.getMax();
+	}
+	
+	/**
+	 * 服务端通过Keep-Alive头指定了保持时间时取其与site.keepAlive()中较短的一个，否则取site.keepAlive()；site.keepAlive()为0时完全以服务端为准。
+	 */
+	private static ConnectionKeepAliveStrategy createKeepAliveStrategy(final Site site) {
+		return (response, context) -> {
+			long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			long siteKeepAlive = site.keepAlive();
+			if (siteKeepAlive <= 0) {
+				return keepAlive;
+			}
+			return keepAlive > 0 ? Math.min(keepAlive, siteKeepAlive) : siteKeepAlive;
+		};
 	}
 	
 	private static SocketConfig createSocketConfig(Site site) {
@@ -98,18 +264,14 @@ public class HttpFetcherFactory {
 		return ua;
 	}
 	
+	/**
+	 * 下载失败后的重试由RetryScheduler按退避延迟进行，不再阻塞爬虫线程；HttpClient只在复用的连接已被服务端关闭(没有收到任何响应)时立即重试一次。
+	 */
 	private HttpRequestRetryHandler createHttpRequestRetryHandler(Site site) {
-		HttpRequestRetryHandler retryHandler = null;
-		if (site != null) {
-        	int retryTimes = site.retryTimes();
-        	retryHandler = new DefaultHttpRequestRetryHandler(retryTimes<=0 ? Envirenment.DEFAULT_RETRY_TIMES : retryTimes, true);
-        } else {
-        	retryHandler = DefaultHttpRequestRetryHandler.INSTANCE;
-        }
-		return retryHandler;
+		return (exception, executionCount, context) -> executionCount <= 1 && exception instanceof NoHttpResponseException;
 	}
 
-    private CookieStore createCookieStore(Site site) {
+    static CookieStore createCookieStore(Site site) {
         CookieStore cookieStore = new BasicCookieStore();
         List<BasicClientCookie> initCookies = site.cookies();
         if (initCookies != null && !initCookies.isEmpty()) {
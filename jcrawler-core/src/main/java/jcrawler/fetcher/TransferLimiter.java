@@ -0,0 +1,216 @@
+package jcrawler.fetcher;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.concurrent.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+
+import jcrawler.Envirenment;
+import jcrawler.Request;
+
+/**
+ * 单次下载的限制器，按request(未设置时取site)的maxBodyBytes、minTransferRate、downloadDeadline限制下载过程，超过任一限制时立即中断连接，
+ * 不再把剩余的报文主体读完。
+ *
+ * 下载总时限由共用的定时线程到期中断，即使读取阻塞在socket上也能及时生效；传输速率在每次接收到数据时按开始接收报文主体以来的平均速率检查，
+ * 开始接收后的DEFAULT_TRANSFER_RATE_GRACE时长内不检查；报文主体的大小由读取方检查后调用abort(BODY_TOO_LARGE)。
+ *
+ * 每次中断都会记录到FetchMetrics.GLOBAL中，同一次下载只记录第一次中断；finish()之后不再中断。
+ *
+ * @author warhin.wang
+ *
+ */
+public class TransferLimiter {
+
+	private static final Logger logger = LoggerFactory.getLogger(TransferLimiter.class);
+
+	private static final ScheduledThreadPoolExecutor DEADLINES;
+
+	static {
+		DEADLINES = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "fetch-deadline");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// 绝大多数下载都在时限内完成，取消的任务需立即移出队列
+		DEADLINES.setRemoveOnCancelPolicy(true);
+	}
+
+	private final String url;
+
+	private final long maxBodyBytes;
+
+	private final long minTransferRate;
+
+	private final long downloadDeadline;
+
+	/**
+	 * 中断连接的方式，同步请求为HttpUriRequest.abort()，异步请求为取消对应的Future
+	 */
+	private final Cancellable aborter;
+
+	private final long start = System.currentTimeMillis();
+
+	private long transferStart;
+
+	private long transferred;
+
+	private volatile FetchAbortException.Reason reason;
+
+	private boolean finished;
+
+	private ScheduledFuture<?> deadlineTask;
+
+	public TransferLimiter(Request request, Cancellable aborter) {
+		super();
+		this.url = request.url2str();
+		this.maxBodyBytes = request.maxBodyBytes();
+		this.minTransferRate = request.minTransferRate();
+		this.downloadDeadline = request.downloadDeadline();
+		this.aborter = aborter;
+	}
+
+	/**
+	 * 开始计时，设置了下载总时限时在到期后中断连接。
+	 */
+	public synchronized TransferLimiter start() {
+		if (downloadDeadline > 0 && deadlineTask == null && !finished) {
+			deadlineTask = DEADLINES.schedule(() -> {
+				abort(FetchAbortException.Reason.DEADLINE_EXCEEDED);
+			}, downloadDeadline, TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	public long maxBodyBytes() {
+		return maxBodyBytes;
+	}
+
+	/**
+	 * 包装报文主体的输入流，每次读取后检查下载总时限和传输速率，超过时中断连接并抛出IOException。
+	 */
+	public InputStream limit(InputStream in) {
+		bodyStarted();
+		return new FilterInputStream(in) {
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				transferred(b < 0 ? 0 : 1);
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				transferred(n < 0 ? 0 : n);
+				return n;
+			}
+
+		};
+	}
+
+	/**
+	 * 开始接收报文主体，传输速率从此时开始计算。
+	 */
+	public synchronized void bodyStarted() {
+		if (transferStart == 0) {
+			transferStart = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * 接收到n个字节的报文主体后调用，超过下载总时限或低于最低传输速率时中断连接并抛出IOException。
+	 */
+	public void transferred(long n) throws IOException {
+		long now = System.currentTimeMillis();
+		FetchAbortException.Reason exceeded = null;
+		synchronized (this) {
+			transferred += n;
+			if (reason != null) {
+				exceeded = reason;
+			} else if (downloadDeadline > 0 && now - start >= downloadDeadline) {
+				exceeded = FetchAbortException.Reason.DEADLINE_EXCEEDED;
+			} else if (minTransferRate > 0 && transferStart > 0) {
+				long elapsed = now - transferStart;
+				if (elapsed >= Envirenment.DEFAULT_TRANSFER_RATE_GRACE && transferred * 1000 < minTransferRate * elapsed) {
+					exceeded = FetchAbortException.Reason.TRANSFER_TOO_SLOW;
+				}
+			}
+		}
+		if (exceeded != null) {
+			abort(exceeded);
+			throw new IOException("the download of url[" + url + "] is aborted : " + exceeded);
+		}
+	}
+
+	/**
+	 * 因reason中断连接，只有第一次调用且尚未finish()时生效。
+	 *
+	 * @return 返回true，如果本次调用中断了连接
+	 */
+	public boolean abort(FetchAbortException.Reason reason) {
+		long transferredToUse;
+		synchronized (this) {
+			if (finished || this.reason != null) {
+				return false;
+			}
+			this.reason = reason;
+			transferredToUse = transferred;
+		}
+		FetchMetrics.GLOBAL.aborted(reason, transferredToUse);
+		logger.warn("abort the download of url[{}] after {} bytes : {}.", url, transferredToUse, reason);
+		aborter.cancel();
+		return true;
+	}
+
+	/**
+	 * @return 返回中断原因，未中断时返回null
+	 */
+	public FetchAbortException.Reason reason() {
+		return reason;
+	}
+
+	/**
+	 * @return 返回true，如果连接因下载总时限或传输速率被中断，此时下载失败
+	 */
+	public boolean failed() {
+		FetchAbortException.Reason reasonToUse = reason;
+		return reasonToUse != null && reasonToUse != FetchAbortException.Reason.BODY_TOO_LARGE;
+	}
+
+	public FetchAbortException exception(Throwable cause) {
+		return new FetchAbortException(reason, "the download of url[" + url + "] is aborted : " + reason, cause);
+	}
+
+	/**
+	 * 下载结束(无论成功与否)后调用，取消下载总时限的定时任务，之后不再中断连接。
+	 */
+	public void finish() {
+		ScheduledFuture<?> task;
+		synchronized (this) {
+			finished = true;
+			task = deadlineTask;
+			deadlineTask = null;
+		}
+		if (task != null) {
+			task.cancel(false);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("url", url).add("maxBodyBytes", maxBodyBytes)
+				.add("minTransferRate", minTransferRate).add("downloadDeadline", downloadDeadline)
+				.add("transferred", transferred).add("reason", reason).toString();
+	}
+
+}
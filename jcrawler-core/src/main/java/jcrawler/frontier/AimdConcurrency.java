@@ -0,0 +1,305 @@
+package jcrawler.frontier;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+import org.apache.http.HttpStatus;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Envirenment;
+import jcrawler.Response;
+import jcrawler.fetcher.FetchAbortException;
+import jcrawler.fetcher.FetchException;
+
+/**
+ * 按host自适应调整并发数的AIMD(加性增、乘性减)策略，由PolitenessFrontier为每个host创建一个Limit。
+ *
+ * 每个host的并发上限从initialLimit开始：
+ * 1 每完成一轮(约等于当前上限个数的请求)且期间没有过载信号时，比较最近的p95延迟与基准延迟，延迟稳定时上限加1，明显上升(超过基准的latencyTolerance倍)时上限乘以latencyBackoff；
+ * 2 收到429/503、504或超时时立即将上限乘以overloadBackoff，之后在当时未完成的请求全部结束前不再重复降低，避免同一批请求的失败被多次计入；
+ * 3 上限不低于1，不超过maxLimit与site的maxConnectionsPerRoute中较小的一个。
+ *
+ * 基准延迟取观察到的最低p95，并缓慢向最近的p95靠拢，以适应服务端延迟的长期变化。
+ *
+ * Limit不是线程安全的，由PolitenessFrontier在对应host的锁内访问。
+ *
+ * @author warhin.wang
+ *
+ */
+public class AimdConcurrency {
+
+	/**
+	 * 计算p95时使用的最近延迟样本数
+	 */
+	private static final int WINDOW = 32;
+
+	/**
+	 * 计算p95前至少需要的样本数
+	 */
+	private static final int MIN_SAMPLES = 8;
+
+	/**
+	 * 基准延迟每轮向最近的p95靠拢的比例
+	 */
+	private static final double BASELINE_DRIFT = 0.05;
+
+	private final int initialLimit;
+
+	private final int maxLimit;
+
+	private final double overloadBackoff;
+
+	private final double latencyBackoff;
+
+	private final double latencyTolerance;
+
+	public AimdConcurrency() {
+		this(Envirenment.DEFAULT_HOST_INITIAL_CONCURRENCY, Envirenment.DEFAULT_HOST_MAX_CONCURRENCY, 0.5, 0.8, 1.5);
+	}
+
+	/**
+	 * @param initialLimit 每个host初始的并发上限
+	 * @param maxLimit 每个host最大的并发上限
+	 * @param overloadBackoff 过载或超时时上限的缩减比例
+	 * @param latencyBackoff 延迟上升时上限的缩减比例
+	 * @param latencyTolerance p95延迟超过基准延迟的该倍数时视为延迟上升
+	 */
+	public AimdConcurrency(int initialLimit, int maxLimit, double overloadBackoff, double latencyBackoff,
+			double latencyTolerance) {
+		super();
+		Preconditions.checkArgument(initialLimit > 0, "initialLimit less than zero!");
+		Preconditions.checkArgument(maxLimit >= initialLimit, "maxLimit less than initialLimit!");
+		Preconditions.checkArgument(overloadBackoff > 0 && overloadBackoff < 1, "overloadBackoff must be in (0, 1)!");
+		Preconditions.checkArgument(latencyBackoff > 0 && latencyBackoff < 1, "latencyBackoff must be in (0, 1)!");
+		Preconditions.checkArgument(latencyTolerance > 1, "latencyTolerance must be greater than 1!");
+		this.initialLimit = initialLimit;
+		this.maxLimit = maxLimit;
+		this.overloadBackoff = overloadBackoff;
+		this.latencyBackoff = latencyBackoff;
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	/**
+	 * @param maxConnectionsPerRoute site允许的每个route的最大连接数，小于等于0时不限制
+	 */
+	public Limit newLimit(int maxConnectionsPerRoute) {
+		int max = maxConnectionsPerRoute > 0 ? Math.min(maxLimit, maxConnectionsPerRoute) : maxLimit;
+		return new Limit(Math.min(initialLimit, max), max);
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("initialLimit", initialLimit).add("maxLimit", maxLimit)
+				.add("overloadBackoff", overloadBackoff).add("latencyBackoff", latencyBackoff)
+				.add("latencyTolerance", latencyTolerance).toString();
+	}
+
+	/**
+	 * 一次请求的结果对并发上限的影响
+	 */
+	public static enum Outcome {
+
+		/**
+		 * 成功收到响应，计入延迟样本
+		 */
+		SUCCESS,
+
+		/**
+		 * 服务端过载(429/503)，降低上限
+		 */
+		OVERLOADED,
+
+		/**
+		 * 超时(504、连接或读取超时、超过下载总时限或低于最低传输速率)，降低上限
+		 */
+		TIMEOUT,
+
+		/**
+		 * 其他失败(如404、连接被拒绝)，不影响上限
+		 */
+		FAILURE;
+
+		public static Outcome of(Response response, Throwable e) {
+			if (e == null) {
+				if (response == null) {
+					return FAILURE;
+				}
+				return of(response.statusCode());
+			}
+			if (e instanceof FetchAbortException) {
+				return ((FetchAbortException) e).reason() == FetchAbortException.Reason.BODY_TOO_LARGE ? FAILURE : TIMEOUT;
+			}
+			if (e instanceof FetchException && ((FetchException) e).getStatusCode() > 0) {
+				Outcome outcome = of(((FetchException) e).getStatusCode());
+				return outcome == SUCCESS ? FAILURE : outcome;
+			}
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				// SocketTimeoutException、ConnectTimeoutException均为InterruptedIOException
+				if (cause instanceof InterruptedIOException) {
+					return TIMEOUT;
+				}
+			}
+			return FAILURE;
+		}
+
+		private static Outcome of(int statusCode) {
+			switch (statusCode) {
+			case 429:
+			case HttpStatus.SC_SERVICE_UNAVAILABLE:
+				return OVERLOADED;
+			case HttpStatus.SC_GATEWAY_TIMEOUT:
+				return TIMEOUT;
+			default:
+				return SUCCESS;
+			}
+		}
+
+	}
+
+	/**
+	 * 一个host的并发上限及其延迟样本
+	 */
+	public class Limit {
+
+		private final int max;
+
+		private int limit;
+
+		private int inFlight;
+
+		private final long[] samples = new long[WINDOW];
+
+		private int sampleCount;
+
+		/**
+		 * 本轮已完成的请求数量
+		 */
+		private int completed;
+
+		/**
+		 * 本轮是否收到过过载或超时
+		 */
+		private boolean congested;
+
+		/**
+		 * 上次降低上限时未完成的请求中尚未结束的数量，为0前不再因过载再次降低
+		 */
+		private int recovering;
+
+		private long baseline;
+
+		private long p95;
+
+		private Limit(int limit, int max) {
+			this.limit = limit;
+			this.max = max;
+		}
+
+		/**
+		 * @return 返回true，如果未完成的请求数小于当前上限
+		 */
+		public boolean available() {
+			return inFlight < limit;
+		}
+
+		public void acquire() {
+			inFlight++;
+		}
+
+		/**
+		 * 一个请求结束后调用。
+		 *
+		 * @param latencyMillis 从开始下载到结束的时长
+		 */
+		public void release(long latencyMillis, Outcome outcome) {
+			if (inFlight > 0) {
+				inFlight--;
+			}
+			boolean wasRecovering = recovering > 0;
+			if (recovering > 0) {
+				recovering--;
+			}
+			switch (outcome) {
+			case SUCCESS:
+				samples[sampleCount++ % WINDOW] = latencyMillis;
+				break;
+			case OVERLOADED:
+			case TIMEOUT:
+				congested = true;
+				if (!wasRecovering) {
+					decrease(overloadBackoff);
+				}
+				break;
+			default:
+				break;
+			}
+			if (++completed >= limit) {
+				endRound();
+			}
+		}
+
+		/**
+		 * 一轮结束：没有过载信号时按p95延迟加性增加或乘性减小上限。
+		 */
+		private void endRound() {
+			boolean congestedToUse = congested;
+			completed = 0;
+			congested = false;
+			if (congestedToUse || sampleCount < MIN_SAMPLES) {
+				if (!congestedToUse && sampleCount > 0 && limit < max) {
+					// 样本不足时只增加上限
+					limit++;
+				}
+				return;
+			}
+			p95 = percentile95();
+			if (baseline == 0 || p95 < baseline) {
+				baseline = p95;
+			} else {
+				baseline += (long) ((p95 - baseline) * BASELINE_DRIFT);
+			}
+			if (p95 > baseline * latencyTolerance) {
+				decrease(latencyBackoff);
+			} else if (limit < max) {
+				limit++;
+			}
+		}
+
+		private void decrease(double backoff) {
+			limit = Math.max(1, (int) (limit * backoff));
+			recovering = inFlight;
+		}
+
+		private long percentile95() {
+			int n = Math.min(sampleCount, WINDOW);
+			long[] sorted = Arrays.copyOf(samples, n);
+			Arrays.sort(sorted);
+			return sorted[Math.min(n - 1, (int) Math.ceil(n * 0.95) - 1)];
+		}
+
+		public int limit() {
+			return limit;
+		}
+
+		public int inFlight() {
+			return inFlight;
+		}
+
+		/**
+		 * @return 最近一轮计算的p95延迟，单位millis
+		 */
+		public long p95() {
+			return p95;
+		}
+
+		@Override
+		public String toString() {
+			return MoreObjects.toStringHelper(this).add("limit", limit).add("max", max).add("inFlight", inFlight)
+					.add("p95", p95).add("baseline", baseline).toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,388 @@
+package jcrawler.frontier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.JCrawlerException;
+import jcrawler.Request;
+
+/**
+ * 内存占用有界的request队列，适合待爬取request数量巨大的宽爬取任务。
+ * 
+ * 只在内存中保留一小段最先待取出的request(hot段)，hot段已满时新加入的request以RequestCodec编码后追加写入磁盘上的segment文件，
+ * 每个segment文件最多容纳segmentRecords个request；hot段取空后从最早的segment文件中按顺序读回一批request，读完的segment文件随即删除。
+ * 因此无论队列中有多少request，堆内存占用都保持在hot段大小之内，整个队列仍然保持FIFO顺序。
+ * 
+ * 磁盘上的segment文件只用于扩展容量，并不保证崩溃后可恢复，close时将删除所有segment文件。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class DiskBackedFrontier extends AbstractQueue<Request> implements BlockingQueue<Request>, Closeable {
+	
+	private static final Logger logger = LoggerFactory.getLogger(DiskBackedFrontier.class);
+	
+	public static final int DEFAULT_HOT_CAPACITY = 10000;
+	
+	public static final int DEFAULT_SEGMENT_RECORDS = 100000;
+	
+	private static final String SEGMENT_SUFFIX = ".seg";
+	
+	private final File dir;
+	
+	private final int hotCapacity;
+	
+	private final int segmentRecords;
+	
+	private final RequestCodec codec;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	private final Condition notEmpty = lock.newCondition();
+	
+	/**
+	 * 内存中的hot段
+	 */
+	private final ArrayDeque<Request> hot;
+	
+	/**
+	 * 尚未读完的segment文件，按写入顺序排列，最后一个为当前写入的segment
+	 */
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+	
+	/**
+	 * 当前正在写入的segment文件
+	 */
+	private DataOutputStream writer;
+	
+	/**
+	 * 当前正在读取的segment文件
+	 */
+	private DataInputStream reader;
+	
+	/**
+	 * 磁盘上尚未读回的request数量
+	 */
+	private long spilled;
+	
+	private long nextSegmentId;
+	
+	public DiskBackedFrontier(String dir) throws IOException {
+		this(dir, DEFAULT_HOT_CAPACITY, DEFAULT_SEGMENT_RECORDS, new RequestCodec());
+	}
+	
+	public DiskBackedFrontier(String dir, int hotCapacity, int segmentRecords, RequestCodec codec) throws IOException {
+		super();
+		Preconditions.checkArgument(hotCapacity > 1, "hotCapacity less than 2!");
+		Preconditions.checkArgument(segmentRecords > 0, "segmentRecords less than zero!");
+		Preconditions.checkNotNull(codec, "the codec is null!");
+		this.dir = FileUtils.getFile(dir);
+		if (!this.dir.exists()) {
+			FileUtils.forceMkdir(this.dir);
+		} else if (this.dir.isFile()) {
+			throw new IOException(dir + " is not a directory but a file!");
+		}
+		this.hotCapacity = hotCapacity;
+		this.segmentRecords = segmentRecords;
+		this.codec = codec;
+		this.hot = new ArrayDeque<Request>(hotCapacity);
+	}
+
+	@Override
+	public boolean offer(Request request) {
+		Preconditions.checkNotNull(request, "the request is null!");
+		lock.lock();
+		try {
+			// 磁盘上还有request时，新request必须排在其后才能保持FIFO顺序
+			if (spilled == 0 && hot.size() < hotCapacity) {
+				hot.offer(request);
+			} else {
+				spill(request);
+			}
+			notEmpty.signal();
+			return true;
+		} catch (IOException e) {
+			logger.error("spill request {} to disk error!", request, e);
+			throw new JCrawlerException("spill request to disk error!", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Request request, long timeout, TimeUnit unit) {
+		return offer(request);
+	}
+
+	@Override
+	public void put(Request request) {
+		offer(request);
+	}
+
+	@Override
+	public Request poll() {
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Request poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (isEmptyLocked()) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Request take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (isEmptyLocked()) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Request peek() {
+		lock.lock();
+		try {
+			refillIfEmpty();
+			return hot.peek();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private boolean isEmptyLocked() {
+		return hot.isEmpty() && spilled == 0;
+	}
+	
+	private Request dequeue() {
+		refillIfEmpty();
+		return hot.poll();
+	}
+	
+	private void refillIfEmpty() {
+		if (!hot.isEmpty() || spilled == 0) {
+			return;
+		}
+		try {
+			refill();
+		} catch (IOException e) {
+			logger.error("read requests from segment {} error, the segment is skipped!", segments.peekFirst(), e);
+			skipSegment();
+		}
+	}
+	
+	private void spill(Request request) throws IOException {
+		// 先完整编码，编码失败时segment文件和计数均不受影响
+		byte[] record = codec.encode(request);
+		Segment current = segments.peekLast();
+		if (writer == null || current.written >= segmentRecords) {
+			rollWriter();
+			current = new Segment(new File(dir, String.format("%016d%s", nextSegmentId++, SEGMENT_SUFFIX)));
+			writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(current.file)));
+			segments.addLast(current);
+		}
+		writer.write(record);
+		current.written++;
+		spilled++;
+	}
+	
+	private void rollWriter() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+	
+	/**
+	 * 从最早的segment文件中读回一批request填满hot段的一半，为读写交替留出空间。
+	 */
+	private void refill() throws IOException {
+		Segment first = segments.peekFirst();
+		if (first == segments.peekLast() && writer != null) {
+			// 正在写入的segment需先关闭，之后的request写入新的segment
+			rollWriter();
+		}
+		if (reader == null) {
+			reader = new DataInputStream(new BufferedInputStream(new FileInputStream(first.file)));
+		}
+		int batch = Math.max(1, hotCapacity / 2);
+		while (batch-- > 0 && first.read < first.written) {
+			hot.offer(codec.read(reader));
+			first.read++;
+			spilled--;
+		}
+		if (first.read >= first.written) {
+			closeReaderAndDelete(segments.removeFirst());
+		}
+	}
+	
+	private void skipSegment() {
+		Segment first = segments.removeFirst();
+		spilled -= first.written - first.read;
+		if (segments.isEmpty()) {
+			IOUtils.closeQuietly(writer);
+			writer = null;
+		}
+		closeReaderAndDelete(first);
+	}
+	
+	private void closeReaderAndDelete(Segment segment) {
+		IOUtils.closeQuietly(reader);
+		reader = null;
+		FileUtils.deleteQuietly(segment.file);
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return (int) Math.min(Integer.MAX_VALUE, hot.size() + spilled);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return 返回磁盘上尚未读回的request数量
+	 */
+	public long spilled() {
+		lock.lock();
+		try {
+			return spilled;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int drainTo(Collection<? super Request> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Request> c, int maxElements) {
+		int n = 0;
+		Request request = null;
+		while (n < maxElements && (request = poll()) != null) {
+			c.add(request);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * 只返回内存中hot段的快照，磁盘上的request不会被读回，不支持通过该迭代器删除元素。
+	 */
+	@Override
+	public Iterator<Request> iterator() {
+		lock.lock();
+		try {
+			return Collections.unmodifiableList(new LinkedList<Request>(hot)).iterator();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 关闭所有segment文件并删除，队列中尚未取出的request将丢失。
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			IOUtils.closeQuietly(writer);
+			writer = null;
+			IOUtils.closeQuietly(reader);
+			reader = null;
+			for (Segment segment : segments) {
+				FileUtils.deleteQuietly(segment.file);
+			}
+			segments.clear();
+			hot.clear();
+			spilled = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("dir", dir)
+				.add("hotCapacity", hotCapacity)
+				.add("size", size())
+				.add("spilled", spilled())
+				.add("segments", segments.size())
+				.toString();
+	}
+	
+	private static class Segment {
+		
+		private final File file;
+		
+		private int written;
+		
+		private int read;
+
+		private Segment(File file) {
+			this.file = file;
+		}
+		
+		@Override
+		public String toString() {
+			return file.getName();
+		}
+		
+	}
+
+}
@@ -0,0 +1,403 @@
+package jcrawler.frontier;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Request;
+import jcrawler.robots.RobotsCache;
+
+/**
+ * 按host调度的request队列，以此取代爬虫线程每次爬取后的全局休眠。
+ *
+ * 每个host拥有一个FIFO子队列以及下次允许访问的时刻，只有到达该时刻的host中的request才能被取出；
+ * 有待爬取request的host按下次允许访问的时刻排列在一个DelayQueue中，爬虫线程总是取到最先就绪的host，
+ * 因此只要还有其他host就绪，爬虫线程就不会因为某个site的sleepTime而空等，多site爬取时吞吐率近似线性增长。
+ *
+ * site的sleepTime是每条连接两次请求之间的间隔，而不是整个host的间隔：同一host两次被取出的间隔为sleepTime除以该host的连接数，
+ * 指定AimdConcurrency时连接数为该host当前的并发上限，否则为site的maxConnectionsPerRoute，
+ * 因此单site爬取的吞吐率随连接数增长，与原先每个爬虫线程爬取后休眠sleepTime的效果相当。
+ * 需要严格按host间隔sleepTime访问时可将site的maxConnectionsPerRoute设为1。
+ * 指定RobotsCache时间隔不小于该host的robots.txt中的Crawl-delay，Crawl-delay是整个host的间隔，不按连接数分摊。
+ *
+ * 指定AimdConcurrency时还按host限制未完成的请求数：host的未完成请求数达到其当前上限后暂不调度，直到有请求通过completed报告结束；
+ * 上限由AimdConcurrency按每个请求的延迟和结果自适应调整，hostLimits()返回每个host当前的上限。
+ * 此时每个取出的request都必须在结束后调用completed，JCrawler的爬虫线程会自动调用。
+ *
+ * 已空闲的host(没有待爬取和未完成的request，且已过其下次允许访问的时刻)会在新host加入时被批量清除，host集合的大小与活跃的host数量成正比。
+ *
+ * @author warhin.wang
+ *
+ */
+public class PolitenessFrontier extends AbstractQueue<Request> implements BlockingQueue<Request> {
+
+	private static final int MIN_SWEEP_THRESHOLD = 1024;
+
+	/**
+	 * host集合，key为host名称，value为该host的子队列
+	 */
+	private final ConcurrentMap<String, HostQueue> hosts = new ConcurrentHashMap<String, HostQueue>();
+
+	/**
+	 * 有待爬取request的host集合，按下次允许访问的时刻排序
+	 */
+	private final DelayQueue<HostQueue> readyHosts = new DelayQueue<HostQueue>();
+
+	private final AtomicInteger count = new AtomicInteger(0);
+
+	/**
+	 * host集合的大小超过该值时清除空闲的host，每次清除后调整为剩余host数量的两倍，使清除的开销平摊到每个新加入的host
+	 */
+	private final AtomicInteger sweepThreshold = new AtomicInteger(MIN_SWEEP_THRESHOLD);
+
+	/**
+	 * 按host自适应调整并发数的策略，为null时不限制每个host的并发数
+	 */
+	private final AimdConcurrency concurrency;
+
+	/**
+	 * robots.txt规则缓存，指定后同一host两次被取出的间隔不小于其Crawl-delay
+	 */
+	private volatile RobotsCache robots;
+
+	public PolitenessFrontier() {
+		this(null);
+	}
+
+	public PolitenessFrontier(AimdConcurrency concurrency) {
+		super();
+		this.concurrency = concurrency;
+	}
+
+	public PolitenessFrontier robots(RobotsCache robots) {
+		this.robots = robots;
+		return this;
+	}
+
+	@Override
+	public boolean offer(Request request) {
+		Preconditions.checkNotNull(request, "the request is null!");
+		String host = hostOf(request);
+		while (true) {
+			HostQueue hostQueue = hostQueue(host, request);
+			synchronized (hostQueue) {
+				// 已被清除的host需重新取得
+				if (hostQueue.removed) {
+					continue;
+				}
+				hostQueue.requests.add(request);
+				count.incrementAndGet();
+				if (!hostQueue.scheduled && hostQueue.available()) {
+					hostQueue.scheduled = true;
+					readyHosts.offer(hostQueue);
+				}
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public boolean offer(Request request, long timeout, TimeUnit unit) {
+		return offer(request);
+	}
+
+	@Override
+	public void put(Request request) {
+		offer(request);
+	}
+
+	@Override
+	public Request poll() {
+		HostQueue hostQueue = readyHosts.poll();
+		return hostQueue == null ? null : pollFrom(hostQueue);
+	}
+
+	@Override
+	public Request poll(long timeout, TimeUnit unit) throws InterruptedException {
+		HostQueue hostQueue = readyHosts.poll(timeout, unit);
+		return hostQueue == null ? null : pollFrom(hostQueue);
+	}
+
+	@Override
+	public Request take() throws InterruptedException {
+		return pollFrom(readyHosts.take());
+	}
+
+	private Request pollFrom(HostQueue hostQueue) {
+		synchronized (hostQueue) {
+			Request request = hostQueue.requests.poll();
+			count.decrementAndGet();
+			int connections;
+			if (hostQueue.limit != null) {
+				hostQueue.limit.acquire();
+				connections = hostQueue.limit.limit();
+			} else {
+				connections = request.site() == null ? 1 : request.site().maxConnectionsPerRoute();
+			}
+			hostQueue.nextAllowed = System.nanoTime() + delayNanos(request, connections);
+			if (hostQueue.requests.isEmpty() || !hostQueue.available()) {
+				hostQueue.scheduled = false;
+			} else {
+				readyHosts.offer(hostQueue);
+			}
+			return request;
+		}
+	}
+
+	/**
+	 * 一个取出的request下载结束(无论成功与否)后调用，按其延迟和结果调整该host的并发上限，host的未完成请求数低于上限后重新调度该host。
+	 * 未指定AimdConcurrency时不做任何事。
+	 *
+	 * @param latencyMillis 从开始下载到结束的时长
+	 * @param outcome 下载的结果
+	 */
+	public void completed(Request request, long latencyMillis, AimdConcurrency.Outcome outcome) {
+		if (concurrency == null) {
+			return;
+		}
+		HostQueue hostQueue = hosts.get(hostOf(request));
+		if (hostQueue == null) {
+			return;
+		}
+		synchronized (hostQueue) {
+			hostQueue.limit.release(latencyMillis, outcome);
+			if (!hostQueue.scheduled && !hostQueue.requests.isEmpty() && hostQueue.available()) {
+				hostQueue.scheduled = true;
+				readyHosts.offer(hostQueue);
+			}
+		}
+	}
+
+	/**
+	 * 同一host两次访问之间的最小间隔，默认为sleepTime按连接数分摊后与Crawl-delay中较大的一个，子类可覆盖该方法实现其他的限速策略。
+	 *
+	 * @param request 刚从该host中取出的request
+	 * @param connections 该host当前的连接数，不小于1
+	 * @return 返回间隔时长，单位纳秒
+	 */
+	protected long delayNanos(Request request, int connections) {
+		long delay = request.site() == null ? 0
+				: TimeUnit.MILLISECONDS.toNanos(request.site().sleepTime()) / Math.max(1, connections);
+		RobotsCache robotsToUse = robots;
+		return robotsToUse == null ? delay
+				: Math.max(delay, TimeUnit.MILLISECONDS.toNanos(robotsToUse.crawlDelay(request)));
+	}
+
+	/**
+	 * 以url中的host名称作为调度单位，不做DNS解析。
+	 */
+	protected String hostOf(Request request) {
+		String host = request.url().getHost();
+		return host == null ? "" : host.toLowerCase(Locale.ENGLISH);
+	}
+
+	private HostQueue hostQueue(String host, Request request) {
+		HostQueue hostQueue = hosts.get(host);
+		if (hostQueue == null) {
+			if (hosts.size() >= sweepThreshold.get()) {
+				sweep();
+			}
+			hostQueue = new HostQueue(host, concurrency == null ? null
+					: concurrency.newLimit(request.site() == null ? 0 : request.site().maxConnectionsPerRoute()));
+			HostQueue existed = hosts.putIfAbsent(host, hostQueue);
+			if (existed != null) {
+				hostQueue = existed;
+			}
+		}
+		return hostQueue;
+	}
+
+	/**
+	 * 清除所有空闲的host：没有待爬取的request、不在readyHosts中、没有未完成的请求，且已过其下次允许访问的时刻，
+	 * 因此之后重新加入的该host不会早于原定的时刻被访问。
+	 */
+	private void sweep() {
+		int threshold = sweepThreshold.get();
+		// 只由一个线程清除
+		if (!sweepThreshold.compareAndSet(threshold, Integer.MAX_VALUE)) {
+			return;
+		}
+		long now = System.nanoTime();
+		try {
+			for (HostQueue hostQueue : hosts.values()) {
+				synchronized (hostQueue) {
+					if (hostQueue.idle(now)) {
+						hostQueue.removed = true;
+						hosts.remove(hostQueue.host, hostQueue);
+					}
+				}
+			}
+		} finally {
+			sweepThreshold.set(Math.max(MIN_SWEEP_THRESHOLD, hosts.size() * 2));
+		}
+	}
+
+	@Override
+	public Request peek() {
+		HostQueue hostQueue = readyHosts.peek();
+		if (hostQueue == null) {
+			return null;
+		}
+		synchronized (hostQueue) {
+			return hostQueue.requests.peek();
+		}
+	}
+
+	@Override
+	public int size() {
+		return count.get();
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int drainTo(Collection<? super Request> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Request> c, int maxElements) {
+		int n = 0;
+		Request request = null;
+		while (n < maxElements && (request = poll()) != null) {
+			c.add(request);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * 返回当前所有待爬取request的快照，不支持通过该迭代器删除元素。
+	 */
+	@Override
+	public Iterator<Request> iterator() {
+		List<Request> snapshot = new ArrayList<Request>(size());
+		for (HostQueue hostQueue : hosts.values()) {
+			synchronized (hostQueue) {
+				snapshot.addAll(hostQueue.requests);
+			}
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+	/**
+	 * @return 返回当前已知的host数量
+	 */
+	public int hosts() {
+		return hosts.size();
+	}
+
+	/**
+	 * @return 返回每个host当前的并发上限，未指定AimdConcurrency时返回空集合
+	 */
+	public Map<String, Integer> hostLimits() {
+		Map<String, Integer> limits = new TreeMap<String, Integer>();
+		if (concurrency == null) {
+			return limits;
+		}
+		for (HostQueue hostQueue : hosts.values()) {
+			synchronized (hostQueue) {
+				limits.put(hostQueue.host, hostQueue.limit.limit());
+			}
+		}
+		return limits;
+	}
+
+	/**
+	 * @return 返回host当前的并发上限及其延迟统计，未指定AimdConcurrency或host未知时返回null
+	 */
+	public AimdConcurrency.Limit hostLimit(String host) {
+		HostQueue hostQueue = host == null ? null : hosts.get(host.toLowerCase(Locale.ENGLISH));
+		return hostQueue == null ? null : hostQueue.limit;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("size", size())
+				.add("hosts", hosts.size())
+				.add("readyHosts", readyHosts.size())
+				.add("concurrency", concurrency)
+				.toString();
+	}
+
+	private static class HostQueue implements Delayed {
+
+		private final String host;
+
+		private final Queue<Request> requests = new LinkedList<Request>();
+
+		/**
+		 * 下次允许访问该host的时刻，单位纳秒，只在不位于readyHosts中时修改
+		 */
+		private volatile long nextAllowed = System.nanoTime();
+
+		/**
+		 * 是否已位于readyHosts中
+		 */
+		private boolean scheduled;
+
+		/**
+		 * 是否已从host集合中清除，清除后不再加入request
+		 */
+		private boolean removed;
+
+		/**
+		 * 该host的并发上限，未指定AimdConcurrency时为null
+		 */
+		private final AimdConcurrency.Limit limit;
+
+		private HostQueue(String host, AimdConcurrency.Limit limit) {
+			this.host = host;
+			this.limit = limit;
+		}
+
+		private boolean available() {
+			return limit == null || limit.available();
+		}
+
+		private boolean idle(long now) {
+			return requests.isEmpty() && !scheduled && (limit == null || limit.inFlight() == 0) && nextAllowed - now <= 0;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(nextAllowed - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			if (o == this) return 0;
+			long diff = nextAllowed - ((HostQueue) o).nextAllowed;
+			return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+		}
+
+		@Override
+		public String toString() {
+			return host;
+		}
+
+	}
+
+}
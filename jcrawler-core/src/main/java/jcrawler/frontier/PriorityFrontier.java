@@ -0,0 +1,221 @@
+package jcrawler.frontier;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+import jcrawler.Request;
+
+/**
+ * 按Request.prior()调度的request队列，prior值更高的request更优先被取出。
+ * 
+ * 每个优先级对应一个无锁的FIFO桶(ConcurrentLinkedQueue)，超出[minPrior, maxPrior]范围的prior归入两端的桶，
+ * 因此不会像PriorityBlockingQueue那样所有线程争抢同一把锁。
+ * 
+ * 为避免低优先级的request被饿死，取出时按加权轮转选择起始桶：第i个桶(从低到高)的权重为2^i，
+ * 起始桶为空时再从最高优先级的桶依次向下查找。因此高优先级的request总是占据绝大部分份额，低优先级的request也总能得到处理。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class PriorityFrontier extends AbstractQueue<Request> implements BlockingQueue<Request> {
+	
+	public static final int DEFAULT_MIN_PRIOR = 0;
+	
+	public static final int DEFAULT_MAX_PRIOR = 7;
+	
+	/**
+	 * 单个桶的最大权重，防止桶数较多时轮转表过大
+	 */
+	private static final int MAX_WEIGHT = 1 << 10;
+	
+	private final int minPrior;
+	
+	private final Queue<Request>[] buckets;
+	
+	/**
+	 * 加权轮转表，元素为起始桶的下标
+	 */
+	private final int[] schedule;
+	
+	private final AtomicLong ticket = new AtomicLong();
+	
+	/**
+	 * 许可数量即队列中request的数量，取出request前需先获得一个许可
+	 */
+	private final Semaphore available = new Semaphore(0);
+	
+	public PriorityFrontier() {
+		this(DEFAULT_MIN_PRIOR, DEFAULT_MAX_PRIOR);
+	}
+	
+	public PriorityFrontier(int minPrior, int maxPrior) {
+		super();
+		Preconditions.checkArgument(maxPrior >= minPrior, "maxPrior less than minPrior!");
+		Preconditions.checkArgument((long) maxPrior - minPrior < 64, "too many priorities!");
+		this.minPrior = minPrior;
+		int n = maxPrior - minPrior + 1;
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Queue<Request>[] bucketsToUse = new Queue[n];
+		this.buckets = bucketsToUse;
+		for (int i = 0; i < n; i++) {
+			this.buckets[i] = new ConcurrentLinkedQueue<Request>();
+		}
+		this.schedule = buildSchedule(n);
+	}
+	
+	/**
+	 * 构造加权轮转表，各个桶在表中均匀交错分布，而不是连续排列。
+	 */
+	private static int[] buildSchedule(int n) {
+		int[] weights = new int[n];
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			weights[i] = Math.min(1 << Math.min(i, 30), MAX_WEIGHT);
+			total += weights[i];
+		}
+		// smooth weighted round-robin
+		int[] schedule = new int[total];
+		int[] current = new int[n];
+		for (int s = 0; s < total; s++) {
+			int best = 0;
+			for (int i = 0; i < n; i++) {
+				current[i] += weights[i];
+				if (current[i] > current[best]) {
+					best = i;
+				}
+			}
+			current[best] -= total;
+			schedule[s] = best;
+		}
+		return schedule;
+	}
+	
+	private Queue<Request> bucketOf(Request request) {
+		long index = (long) request.prior() - minPrior;
+		return buckets[(int) Math.max(0, Math.min(buckets.length - 1, index))];
+	}
+
+	@Override
+	public boolean offer(Request request) {
+		Preconditions.checkNotNull(request, "the request is null!");
+		bucketOf(request).offer(request);
+		available.release();
+		return true;
+	}
+
+	@Override
+	public boolean offer(Request request, long timeout, TimeUnit unit) {
+		return offer(request);
+	}
+
+	@Override
+	public void put(Request request) {
+		offer(request);
+	}
+
+	@Override
+	public Request poll() {
+		return available.tryAcquire() ? dequeue() : null;
+	}
+
+	@Override
+	public Request poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return available.tryAcquire(timeout, unit) ? dequeue() : null;
+	}
+
+	@Override
+	public Request take() throws InterruptedException {
+		available.acquire();
+		return dequeue();
+	}
+	
+	/**
+	 * 调用者已获得一个许可，队列中必然有一个request属于它，只是可能暂时被其他线程从当前查找的桶中取走，因此循环查找直到取到为止。
+	 */
+	private Request dequeue() {
+		int start = schedule[(int) ((ticket.getAndIncrement() & Long.MAX_VALUE) % schedule.length)];
+		while (true) {
+			Request request = buckets[start].poll();
+			if (request != null) {
+				return request;
+			}
+			for (int i = buckets.length - 1; i >= 0; i--) {
+				request = buckets[i].poll();
+				if (request != null) {
+					return request;
+				}
+			}
+		}
+	}
+
+	@Override
+	public Request peek() {
+		for (int i = buckets.length - 1; i >= 0; i--) {
+			Request request = buckets[i].peek();
+			if (request != null) {
+				return request;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int size() {
+		return available.availablePermits();
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int drainTo(Collection<? super Request> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Request> c, int maxElements) {
+		int n = 0;
+		Request request = null;
+		while (n < maxElements && (request = poll()) != null) {
+			c.add(request);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * 返回当前所有待爬取request的快照，按优先级从高到低排列，不支持通过该迭代器删除元素。
+	 */
+	@Override
+	public Iterator<Request> iterator() {
+		List<Request> snapshot = new ArrayList<Request>(size());
+		for (int i = buckets.length - 1; i >= 0; i--) {
+			snapshot.addAll(buckets[i]);
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("size", size())
+				.add("buckets", buckets.length)
+				.toString();
+	}
+
+}
@@ -0,0 +1,308 @@
+package jcrawler.frontier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import jcrawler.Envirenment;
+import jcrawler.Message.Method;
+import jcrawler.Request;
+import jcrawler.Site;
+
+/**
+ * Request对象的紧凑二进制编解码器。
+ * 
+ * 只写入与所属site不同的属性：与site相同的header、charset、timeout、下载限制均省略，解码后通过site重新取得；
+ * site本身不做序列化，只写入其name，解码时从已登记的site中查找，因此编码过的site会被自动登记；
+ * 跨进程解码(比如从checkpoint恢复)时需先登记所有site，未登记的site解码后为null。
+ * 字符串以int长度前缀加UTF-8字节写入，没有writeUTF的长度限制；每个request先完整编码再一次写出。
+ * ext中的String及基本类型按类型标记直接写入，其他可序列化的对象使用java序列化，不可序列化的对象将被忽略。
+ * 
+ * @author warhin.wang
+ *
+ */
+public class RequestCodec {
+	
+	private static final int FLAG_BINARY = 1;
+	private static final int FLAG_SITE = 1 << 1;
+	private static final int FLAG_REQUEST_CHARSET = 1 << 2;
+	private static final int FLAG_RESPONSE_CHARSET = 1 << 3;
+	private static final int FLAG_TIMEOUT = 1 << 4;
+	private static final int FLAG_SIGNATURE = 1 << 5;
+	private static final int FLAG_PRIOR = 1 << 6;
+	private static final int FLAG_LIMITS = 1 << 7;
+	
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_STRING = 1;
+	private static final byte TYPE_INT = 2;
+	private static final byte TYPE_LONG = 3;
+	private static final byte TYPE_BOOLEAN = 4;
+	private static final byte TYPE_DOUBLE = 5;
+	private static final byte TYPE_SERIALIZABLE = 6;
+	
+	private static final Method[] METHODS = Method.values();
+	
+	/**
+	 * 已登记的site集合，key为site的name
+	 */
+	private final ConcurrentMap<String, Site> sites = new ConcurrentHashMap<String, Site>();
+	
+	public RequestCodec register(Site site) {
+		if (site != null && StringUtils.isNotBlank(site.name())) {
+			sites.putIfAbsent(site.name(), site);
+		}
+		return this;
+	}
+	
+	/**
+	 * 先将request完整编码到缓冲区再一次写入out，编码失败(如ext中的对象无法序列化)时out中不会留下不完整的记录。
+	 */
+	public void write(Request request, DataOutput out) throws IOException {
+		out.write(encode(request));
+	}
+	
+	/**
+	 * @return request的完整编码
+	 */
+	public byte[] encode(Request request) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		encode(request, new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+	
+	private void encode(Request request, DataOutput out) throws IOException {
+		Site site = request.site();
+		register(site);
+		String requestCharset = request.requestCharset();
+		String responseCharset = request.responseCharset();
+		int timeout = request.timeout();
+		boolean hasSite = site != null && StringUtils.isNotBlank(site.name());
+		boolean writeRequestCharset = requestCharset != null && !(hasSite && requestCharset.equals(site.requestCharset()));
+		boolean writeResponseCharset = responseCharset != null && !(hasSite && responseCharset.equals(site.responseCharset()));
+		boolean writeTimeout = timeout > 0 && !(hasSite && timeout == site.timeout());
+		boolean writeLimits = hasSite ? !sameLimits(request, site.maxBodyBytes(), site.minTransferRate(), site.downloadDeadline())
+				: !sameLimits(request, Envirenment.DEFAULT_MAX_BODY_BYTES, Envirenment.DEFAULT_MIN_TRANSFER_RATE, Envirenment.DEFAULT_DOWNLOAD_DEADLINE);
+		
+		int flags = 0;
+		if (request.requestBinary()) flags |= FLAG_BINARY;
+		if (hasSite) flags |= FLAG_SITE;
+		if (writeRequestCharset) flags |= FLAG_REQUEST_CHARSET;
+		if (writeResponseCharset) flags |= FLAG_RESPONSE_CHARSET;
+		if (writeTimeout) flags |= FLAG_TIMEOUT;
+		if (request.signature() != null) flags |= FLAG_SIGNATURE;
+		if (request.prior() != 0) flags |= FLAG_PRIOR;
+		if (writeLimits) flags |= FLAG_LIMITS;
+		
+		out.writeByte(flags);
+		out.writeByte(request.method().ordinal());
+		writeString(request.url2str(), out);
+		if (hasSite) writeString(site.name(), out);
+		if (writeRequestCharset) writeString(requestCharset, out);
+		if (writeResponseCharset) writeString(responseCharset, out);
+		if (writeTimeout) out.writeInt(timeout);
+		if (request.signature() != null) writeString(request.signature(), out);
+		if (request.prior() != 0) out.writeInt(request.prior());
+		if (writeLimits) {
+			out.writeLong(request.maxBodyBytes());
+			out.writeLong(request.minTransferRate());
+			out.writeLong(request.downloadDeadline());
+		}
+		writeHeaders(request, hasSite ? site.headers() : null, out);
+		writeStrings(request.data(), out);
+		writeExt(request.ext(), out);
+	}
+	
+	public Request read(DataInput in) throws IOException {
+		int flags = in.readUnsignedByte();
+		Method method = METHODS[in.readUnsignedByte()];
+		Request request = Request.create(readString(in));
+		request.method(method);
+		if ((flags & FLAG_BINARY) != 0) request.requestBinary(true);
+		if ((flags & FLAG_SITE) != 0) {
+			String siteName = readString(in);
+			request.site(sites.get(siteName));
+		}
+		if ((flags & FLAG_REQUEST_CHARSET) != 0) request.requestCharset(readString(in));
+		if ((flags & FLAG_RESPONSE_CHARSET) != 0) request.responseCharset(readString(in));
+		if ((flags & FLAG_TIMEOUT) != 0) request.timeout(in.readInt());
+		if ((flags & FLAG_SIGNATURE) != 0) request.signature(readString(in));
+		if ((flags & FLAG_PRIOR) != 0) request.prior(in.readInt());
+		if ((flags & FLAG_LIMITS) != 0) {
+			request.maxBodyBytes(in.readLong()).minTransferRate(in.readLong()).downloadDeadline(in.readLong());
+		}
+		int headers = in.readInt();
+		for (int i = 0; i < headers; i++) {
+			request.header(readString(in), readNullableString(in));
+		}
+		int data = in.readInt();
+		for (int i = 0; i < data; i++) {
+			request.data(readString(in), readNullableString(in));
+		}
+		int ext = in.readInt();
+		for (int i = 0; i < ext; i++) {
+			request.ext(readString(in), readValue(in));
+		}
+		return request;
+	}
+	
+	private static boolean sameLimits(Request request, long maxBodyBytes, long minTransferRate, long downloadDeadline) {
+		return request.maxBodyBytes() == maxBodyBytes && request.minTransferRate() == minTransferRate
+				&& request.downloadDeadline() == downloadDeadline;
+	}
+	
+	private void writeHeaders(Request request, Map<String, String> siteHeaders, DataOutput out) throws IOException {
+		Map<String, String> headers = request.headers();
+		int n = 0;
+		for (Map.Entry<String, String> entry : headers.entrySet()) {
+			if (!isSiteHeader(entry, siteHeaders)) n++;
+		}
+		out.writeInt(n);
+		for (Map.Entry<String, String> entry : headers.entrySet()) {
+			if (!isSiteHeader(entry, siteHeaders)) {
+				writeString(entry.getKey(), out);
+				writeNullableString(entry.getValue(), out);
+			}
+		}
+	}
+	
+	private static boolean isSiteHeader(Map.Entry<String, String> entry, Map<String, String> siteHeaders) {
+		return siteHeaders != null && StringUtils.equals(entry.getValue(), siteHeaders.get(entry.getKey()));
+	}
+	
+	private void writeStrings(Map<String, String> map, DataOutput out) throws IOException {
+		if (map == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(map.size());
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(entry.getKey(), out);
+			writeNullableString(entry.getValue(), out);
+		}
+	}
+	
+	private void writeExt(Map<String, Object> ext, DataOutput out) throws IOException {
+		if (ext == null) {
+			out.writeInt(0);
+			return;
+		}
+		int n = 0;
+		for (Object value : ext.values()) {
+			if (isWritable(value)) n++;
+		}
+		out.writeInt(n);
+		for (Map.Entry<String, Object> entry : ext.entrySet()) {
+			if (isWritable(entry.getValue())) {
+				writeString(entry.getKey(), out);
+				writeValue(entry.getValue(), out);
+			}
+		}
+	}
+	
+	private static boolean isWritable(Object value) {
+		return value == null || value instanceof Serializable;
+	}
+	
+	private void writeValue(Object value, DataOutput out) throws IOException {
+		if (value == null) {
+			out.writeByte(TYPE_NULL);
+		} else if (value instanceof String) {
+			out.writeByte(TYPE_STRING);
+			writeString((String) value, out);
+		} else if (value instanceof Integer) {
+			out.writeByte(TYPE_INT);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(TYPE_LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(TYPE_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Double) {
+			out.writeByte(TYPE_DOUBLE);
+			out.writeDouble((Double) value);
+		} else {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(value);
+			oos.close();
+			out.writeByte(TYPE_SERIALIZABLE);
+			out.writeInt(bytes.size());
+			out.write(bytes.toByteArray());
+		}
+	}
+	
+	private Object readValue(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case TYPE_NULL:
+			return null;
+		case TYPE_STRING:
+			return readString(in);
+		case TYPE_INT:
+			return in.readInt();
+		case TYPE_LONG:
+			return in.readLong();
+		case TYPE_BOOLEAN:
+			return in.readBoolean();
+		case TYPE_DOUBLE:
+			return in.readDouble();
+		case TYPE_SERIALIZABLE:
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return ois.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			} finally {
+				ois.close();
+			}
+		default:
+			throw new IOException("unknown ext value type " + type);
+		}
+	}
+	
+	private static void writeNullableString(String value, DataOutput out) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			writeString(value, out);
+		}
+	}
+	
+	private static String readNullableString(DataInput in) throws IOException {
+		return in.readBoolean() ? readString(in) : null;
+	}
+	
+	/**
+	 * 以int长度前缀加UTF-8字节写入字符串，不受writeUTF的65535字节限制，过长的url或ext值不会使编码失败。
+	 */
+	public static void writeString(String value, DataOutput out) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	public static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("illegal string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
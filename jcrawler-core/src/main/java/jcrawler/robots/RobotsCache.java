@@ -0,0 +1,333 @@
+package jcrawler.robots;
+
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jcrawler.Envirenment;
+import jcrawler.Request;
+import jcrawler.Response;
+import jcrawler.Site;
+import jcrawler.fetcher.FetchException;
+import jcrawler.fetcher.Fetcher;
+import jcrawler.fetcher.HttpFetcherFactory;
+
+/**
+ * 按host缓存robots.txt规则，request进入requestQueue之前由allowed(request)判断是否允许爬取。
+ *
+ * 每个host(协议、host、端口的组合)的robots.txt只通过fetcher下载一次并编译为RobotsRules，之后的判断只需一次缓存查找和一次trie匹配：
+ * 1 200时按其内容解析，其他4xx(robots.txt不存在)时允许爬取该host的所有url，规则保存ttl；
+ * 2 429、5xx或网络错误时视为该host的robots.txt暂时不可用，errorTtl内check(request)返回DEFERRED，调用者应推迟而不是放弃该request，之后重新下载；
+ * 3 check(request)从不阻塞调用者：host的规则尚未缓存时交给后台线程下载并返回DEFERRED，规则过期时在后台重新下载期间继续使用过期的规则，
+ *   因此爬虫线程、异步分发线程以及解析新链接时都不会等待robots.txt的下载；
+ * 4 同一host同时只下载一次；缓存超过maxSize个host时清除最久未使用的host。
+ *
+ * crawlDelay(request)只查询已缓存的规则，不会下载robots.txt，供PolitenessFrontier计算同一host两次访问的间隔。
+ *
+ * @author warhin.wang
+ *
+ */
+public class RobotsCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(RobotsCache.class);
+
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * 下载robots.txt的fetcher，为null时按site从HttpFetcherFactory获取
+	 */
+	private final Fetcher fetcher;
+
+	private final String agent;
+
+	private final long ttl;
+
+	private final long errorTtl;
+
+	private final Cache<String, Entry> cache;
+
+	/**
+	 * 正在下载的robots.txt，key为origin
+	 */
+	private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<String, CompletableFuture<Entry>>();
+
+	private final ThreadPoolExecutor loader;
+
+	private final LongAdder fetches = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private final LongAdder disallowed = new LongAdder();
+
+	public RobotsCache() {
+		this(null);
+	}
+
+	public RobotsCache(Fetcher fetcher) {
+		this(fetcher, Envirenment.DEFAULT_ROBOTS_AGENT, Envirenment.DEFAULT_ROBOTS_TTL, Envirenment.DEFAULT_ROBOTS_ERROR_TTL,
+				Envirenment.DEFAULT_ROBOTS_CACHE_SIZE);
+	}
+
+	public RobotsCache(Fetcher fetcher, String agent, long ttl, long errorTtl, int maxSize) {
+		this(fetcher, agent, ttl, errorTtl, maxSize, Envirenment.DEFAULT_ROBOTS_LOADER_THREADS);
+	}
+
+	/**
+	 * @param fetcher 下载robots.txt的fetcher，为null时按site从HttpFetcherFactory获取
+	 * @param agent 与robots.txt中user-agent比较的本爬虫名称
+	 * @param ttl robots.txt的缓存有效期，单位millis
+	 * @param errorTtl robots.txt暂时无法访问时推迟该host的request的时长，单位millis
+	 * @param maxSize 最多缓存的host数量
+	 * @param threads 后台下载robots.txt的线程数量
+	 */
+	public RobotsCache(Fetcher fetcher, String agent, long ttl, long errorTtl, int maxSize, int threads) {
+		super();
+		Preconditions.checkArgument(ttl > 0, "ttl less than zero!");
+		Preconditions.checkArgument(errorTtl >= 0, "errorTtl less than zero!");
+		Preconditions.checkArgument(maxSize > 0, "maxSize less than zero!");
+		Preconditions.checkArgument(threads > 0, "threads less than zero!");
+		this.fetcher = fetcher;
+		this.agent = agent;
+		this.ttl = ttl;
+		this.errorTtl = errorTtl;
+		this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+		AtomicInteger count = new AtomicInteger();
+		this.loader = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread thread = new Thread(r, "robots-loader-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// 空闲时不保留线程
+		this.loader.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 判断该request所在host的robots.txt是否允许爬取其url，不会阻塞调用者。
+	 *
+	 * @return robots.txt尚未下载完成或暂时不可用时返回DEFERRED，调用者应推迟该request，待deferDelay(request)之后重新判断
+	 */
+	public Verdict check(Request request) {
+		URL url = request.url();
+		if (url == null) {
+			return Verdict.ALLOWED;
+		}
+		String origin = originOf(url);
+		Entry entry = cache.getIfPresent(origin);
+		if (entry == null || entry.expired()) {
+			// 在后台下载，过期的规则在下载完成前继续使用
+			load(origin, request);
+		}
+		if (entry == null || entry.unavailable) {
+			return Verdict.DEFERRED;
+		}
+		if (entry.rules.allowed(url)) {
+			return Verdict.ALLOWED;
+		}
+		disallowed.increment();
+		return Verdict.DISALLOWED;
+	}
+
+	/**
+	 * @return 返回true，如果该request所在host的robots.txt允许爬取其url；robots.txt尚未下载完成或暂时不可用时返回false
+	 */
+	public boolean allowed(Request request) {
+		return check(request) == Verdict.ALLOWED;
+	}
+
+	/**
+	 * @return 返回该request所在host的robots规则，尚未缓存或已过期时等待下载robots.txt；robots.txt暂时不可用时为DISALLOW_ALL
+	 */
+	public RobotsRules rules(Request request) {
+		String origin = originOf(request.url());
+		Entry entry = cache.getIfPresent(origin);
+		if (entry != null && !entry.expired()) {
+			return entry.rules;
+		}
+		try {
+			return load(origin, request).join().rules;
+		} catch (RuntimeException e) {
+			logger.error("load the robots.txt of {} error : ", origin, e);
+			return RobotsRules.ALLOW_ALL;
+		}
+	}
+
+	/**
+	 * @return 该request所在host的robots.txt暂时不可用时，距离重新下载的时长，单位millis；其他情况返回0
+	 */
+	public long deferDelay(Request request) {
+		if (request.url() == null) {
+			return 0;
+		}
+		Entry entry = cache.getIfPresent(originOf(request.url()));
+		return entry == null || !entry.unavailable ? 0 : Math.max(0, entry.expiresAt - System.currentTimeMillis());
+	}
+
+	/**
+	 * 由后台线程下载origin的robots.txt并放入缓存，该origin正在下载时返回该次下载。
+	 */
+	private CompletableFuture<Entry> load(String origin, Request request) {
+		CompletableFuture<Entry> future = loading.get(origin);
+		if (future != null) {
+			return future;
+		}
+		CompletableFuture<Entry> created = new CompletableFuture<Entry>();
+		future = loading.putIfAbsent(origin, created);
+		if (future != null) {
+			return future;
+		}
+		try {
+			loader.execute(() -> {
+				try {
+					Entry entry = fetch(origin, request);
+					// 先放入缓存再结束下载，使其他线程总能看到其中之一
+					cache.put(origin, entry);
+					created.complete(entry);
+				} catch (RuntimeException e) {
+					created.completeExceptionally(e);
+				} finally {
+					loading.remove(origin, created);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			loading.remove(origin, created);
+			created.completeExceptionally(e);
+		}
+		return created;
+	}
+
+	/**
+	 * @return 返回该request所在host的robots.txt指定的访问间隔，不超过DEFAULT_ROBOTS_MAX_CRAWL_DELAY，规则尚未缓存时返回0
+	 */
+	public long crawlDelay(Request request) {
+		if (request.url() == null) {
+			return 0;
+		}
+		Entry entry = cache.getIfPresent(originOf(request.url()));
+		return entry == null ? 0 : Math.min(entry.rules.crawlDelay(), Envirenment.DEFAULT_ROBOTS_MAX_CRAWL_DELAY);
+	}
+
+	private Entry fetch(String origin, Request request) {
+		fetches.increment();
+		Site site = request.site();
+		Request robotsRequest = Request.create(origin + "/robots.txt");
+		robotsRequest.site(site);
+		Fetcher fetcherToUse = fetcher != null ? fetcher : HttpFetcherFactory.getInstance().getFetcher(site);
+		Response response = null;
+		try {
+			response = fetcherToUse.fetch(robotsRequest);
+			RobotsRules rules = RobotsRules.parse(response.rawContent(), agent);
+			logger.info("load the robots.txt of {} : {}.", origin, rules);
+			return new Entry(rules, false, System.currentTimeMillis() + ttl);
+		} catch (Exception e) {
+			int statusCode = e instanceof FetchException ? ((FetchException) e).getStatusCode() : 0;
+			if (statusCode >= HttpStatus.SC_BAD_REQUEST && statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR
+					&& statusCode != SC_TOO_MANY_REQUESTS) {
+				// robots.txt不存在或不可访问，不做任何限制
+				return new Entry(RobotsRules.ALLOW_ALL, false, System.currentTimeMillis() + ttl);
+			}
+			errors.increment();
+			logger.warn("the robots.txt of {} is unreachable, defer the requests of the host in {} millis : {}", origin, errorTtl, e.toString());
+			return new Entry(RobotsRules.DISALLOW_ALL, true, System.currentTimeMillis() + errorTtl);
+		} finally {
+			if (response != null) {
+				response.release();
+			}
+		}
+	}
+
+	/**
+	 * @return robots.txt的作用范围：协议、host和端口，如http://example.com:80
+	 */
+	private static String originOf(URL url) {
+		String protocol = url.getProtocol();
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		return new StringBuilder(protocol.length() + url.getHost().length() + 9).append(protocol).append("://")
+				.append(url.getHost().toLowerCase(Locale.ENGLISH)).append(':').append(port).toString();
+	}
+
+	/**
+	 * 清除host的规则，下次访问时重新下载robots.txt。
+	 */
+	public void invalidate(Request request) {
+		if (request.url() != null) {
+			cache.invalidate(originOf(request.url()));
+		}
+	}
+
+	/**
+	 * @return 缓存的host数量
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	/**
+	 * @return 因robots.txt被拒绝的request数量
+	 */
+	public long disallowed() {
+		return disallowed.sum();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("agent", agent).add("size", cache.size()).add("fetches", fetches)
+				.add("errors", errors).add("disallowed", disallowed).add("ttl", ttl).add("errorTtl", errorTtl).toString();
+	}
+
+	/**
+	 * robots.txt对一个request的判断结果
+	 */
+	public static enum Verdict {
+
+		ALLOWED,
+
+		DISALLOWED,
+
+		/**
+		 * robots.txt暂时不可用，既不能确定允许也不能确定禁止，稍后重新判断
+		 */
+		DEFERRED;
+
+	}
+
+	private static class Entry {
+
+		private final RobotsRules rules;
+
+		/**
+		 * robots.txt暂时不可用(429、5xx或网络错误)
+		 */
+		private final boolean unavailable;
+
+		private final long expiresAt;
+
+		Entry(RobotsRules rules, boolean unavailable, long expiresAt) {
+			this.rules = rules;
+			this.unavailable = unavailable;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean expired() {
+			return System.currentTimeMillis() >= expiresAt;
+		}
+
+	}
+
+}
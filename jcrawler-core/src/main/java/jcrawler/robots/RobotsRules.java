@@ -0,0 +1,425 @@
+package jcrawler.robots;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * 一个host的robots.txt中适用于本爬虫的规则，编译为按路径前缀组织的trie，判断一个url是否允许爬取时只需沿url的路径走一遍trie。
+ *
+ * 规则的匹配方式与RFC 9309及主流搜索引擎一致：
+ * 1 allow和disallow均为路径前缀，与url的path(含query)比较，区分大小写；
+ * 2 *匹配任意长度的字符序列，末尾的$表示必须匹配到url的结尾；
+ * 3 多条规则同时匹配时以最长的规则为准，长度相同时allow优先；没有规则匹配时允许爬取。
+ *
+ * 适用的规则组为user-agent与agent匹配的组中最长的一个(同名的多个组合并)，没有匹配的组时使用*组。
+ *
+ * RobotsRules创建后不可变，可被多个线程同时使用。
+ *
+ * @author warhin.wang
+ *
+ */
+public class RobotsRules {
+
+	/**
+	 * 允许爬取所有url，用于robots.txt不存在(4xx)或没有适用的规则时
+	 */
+	public static final RobotsRules ALLOW_ALL = new RobotsRules(null, 0, 0);
+
+	/**
+	 * 禁止爬取所有url，robots.txt暂时无法访问(5xx、429或网络错误)时RobotsCache.rules(request)返回该规则
+	 */
+	public static final RobotsRules DISALLOW_ALL = compile(Arrays.asList(new Rule("/", false)), 0);
+
+	/**
+	 * trie中表示规则末尾$的键，url中不会出现该字符
+	 */
+	private static final char END = '\0';
+
+	private static final char STAR = '*';
+
+	private final Node root;
+
+	private final int rules;
+
+	private final long crawlDelay;
+
+	private RobotsRules(Node root, int rules, long crawlDelay) {
+		super();
+		this.root = root;
+		this.rules = rules;
+		this.crawlDelay = crawlDelay;
+	}
+
+	/**
+	 * 解析robots.txt，选出适用于agent的规则组并编译。
+	 *
+	 * @param content robots.txt的内容
+	 * @param agent 本爬虫的user-agent名称(product token)，如jcrawler
+	 */
+	public static RobotsRules parse(String content, String agent) {
+		if (StringUtils.isBlank(content)) {
+			return ALLOW_ALL;
+		}
+		String agentToUse = StringUtils.isBlank(agent) ? "*" : agent.trim().toLowerCase(Locale.ENGLISH);
+		List<Group> groups = new ArrayList<Group>();
+		Group group = null;
+		boolean agentLine = false;
+		for (String line : StringUtils.split(content, "\r\n")) {
+			int comment = line.indexOf('#');
+			if (comment >= 0) {
+				line = line.substring(0, comment);
+			}
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue;
+			}
+			String key = line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+			String value = line.substring(colon + 1).trim();
+			if ("user-agent".equals(key)) {
+				// 连续的多行user-agent属于同一组
+				if (!agentLine) {
+					group = new Group();
+					groups.add(group);
+				}
+				group.agents.add(value.toLowerCase(Locale.ENGLISH));
+				agentLine = true;
+			} else if ("allow".equals(key) || "disallow".equals(key)) {
+				agentLine = false;
+				// 空的disallow表示不限制
+				if (group != null && !value.isEmpty()) {
+					group.rules.add(new Rule(value, "allow".equals(key)));
+				}
+			} else if ("crawl-delay".equals(key)) {
+				agentLine = false;
+				if (group != null) {
+					group.crawlDelay = parseDelay(value);
+				}
+			}
+			// sitemap等其他字段不属于任何组，也不结束当前组
+		}
+		// 选出agent匹配的最长user-agent，没有时使用*
+		String matched = null;
+		for (Group g : groups) {
+			for (String token : g.agents) {
+				if (!"*".equals(token) && !token.isEmpty() && agentToUse.startsWith(token)
+						&& (matched == null || token.length() > matched.length())) {
+					matched = token;
+				}
+			}
+		}
+		String selected = matched == null ? "*" : matched;
+		List<Rule> rules = new ArrayList<Rule>();
+		long crawlDelay = 0;
+		for (Group g : groups) {
+			if (g.agents.contains(selected)) {
+				rules.addAll(g.rules);
+				crawlDelay = Math.max(crawlDelay, g.crawlDelay);
+			}
+		}
+		return compile(rules, crawlDelay);
+	}
+
+	private static long parseDelay(String value) {
+		try {
+			double seconds = Double.parseDouble(value);
+			return seconds > 0 ? (long) (seconds * 1000) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static RobotsRules compile(List<Rule> rules, long crawlDelay) {
+		if (rules.isEmpty()) {
+			return crawlDelay > 0 ? new RobotsRules(null, 0, crawlDelay) : ALLOW_ALL;
+		}
+		Node root = new Node();
+		for (Rule rule : rules) {
+			String pattern = normalizePattern(rule.pattern);
+			// 规则长度按原始pattern计算，与主流搜索引擎的优先级一致
+			long score = ((long) rule.pattern.length() << 1) | (rule.allow ? 1 : 0);
+			Node node = root;
+			int length = pattern.length();
+			// 只有末尾的$表示结尾，其他位置的$按普通字符匹配
+			boolean anchored = length > 0 && pattern.charAt(length - 1) == '$';
+			if (anchored) {
+				length--;
+			}
+			for (int i = 0; i < length; i++) {
+				node = node.addChild(pattern.charAt(i));
+			}
+			if (anchored) {
+				node = node.addChild(END);
+			}
+			node.score = Math.max(node.score, score);
+		}
+		return new RobotsRules(root, rules.size(), crawlDelay);
+	}
+
+	/**
+	 * 规范化pattern：补全开头的/，合并连续的*，去掉末尾无意义的*，转义非ascii字符并统一%xx为大写。
+	 */
+	private static String normalizePattern(String pattern) {
+		StringBuilder sb = new StringBuilder(pattern.length() + 1);
+		if (pattern.charAt(0) != '/' && pattern.charAt(0) != STAR) {
+			sb.append('/');
+		}
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == STAR && sb.length() > 0 && sb.charAt(sb.length() - 1) == STAR) {
+				continue;
+			}
+			if (c > 0x7f) {
+				byte[] bytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+				if (Character.isHighSurrogate(c) && i + 1 < pattern.length()) {
+					bytes = pattern.substring(i, i + 2).getBytes(StandardCharsets.UTF_8);
+					i++;
+				}
+				for (byte b : bytes) {
+					sb.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+							.append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+		while (sb.length() > 1 && sb.charAt(sb.length() - 1) == STAR) {
+			sb.setLength(sb.length() - 1);
+		}
+		return normalizeEscapes(sb.toString());
+	}
+
+	/**
+	 * 统一%xx为大写，没有%时直接返回原字符串。
+	 */
+	private static String normalizeEscapes(String path) {
+		int percent = path.indexOf('%');
+		if (percent < 0) {
+			return path;
+		}
+		char[] chars = path.toCharArray();
+		for (int i = percent; i < chars.length - 2; i++) {
+			if (chars[i] == '%') {
+				chars[i + 1] = Character.toUpperCase(chars[i + 1]);
+				chars[i + 2] = Character.toUpperCase(chars[i + 2]);
+				i += 2;
+			}
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return 返回true，如果允许爬取该url
+	 */
+	public boolean allowed(URL url) {
+		return root == null || allowed(pathOf(url));
+	}
+
+	/**
+	 * @param path url的path(含query)，如/a/b?c=d
+	 * @return 返回true，如果允许爬取该path
+	 */
+	public boolean allowed(String path) {
+		if (root == null) {
+			return true;
+		}
+		long score = match(root, normalizeEscapes(path));
+		// 没有规则匹配，或者最长的规则为allow
+		return score < 0 || (score & 1) == 1;
+	}
+
+	/**
+	 * 沿path走trie，返回所有匹配的规则中最高的优先级，没有匹配时返回-1。
+	 *
+	 * 以NFA的方式同时推进所有可能的trie节点：*节点匹配任意字符后仍停留在原处，每个节点在同一位置只出现一次，
+	 * 因此耗时为O(path长度 * 同时活跃的节点数)，不会因多个*回溯而指数增长；没有*的规则同时只有一个活跃节点。
+	 */
+	private static long match(Node root, String path) {
+		long best = -1;
+		int length = path.length();
+		Node[] current = new Node[8];
+		Node[] next = new Node[8];
+		int size = enter(root, current, 0);
+		for (int pos = 0; size > 0; pos++) {
+			if (pos == length) {
+				for (int i = 0; i < size; i++) {
+					Node node = current[i];
+					best = Math.max(best, node.score);
+					Node end = node.child(END);
+					if (end != null) {
+						best = Math.max(best, end.score);
+					}
+				}
+				break;
+			}
+			char c = path.charAt(pos);
+			int nextSize = 0;
+			for (int i = 0; i < size; i++) {
+				Node node = current[i];
+				best = Math.max(best, node.score);
+				if (node.star) {
+					if (nextSize + 2 > next.length) {
+						next = Arrays.copyOf(next, next.length << 1);
+					}
+					nextSize = enter(node, next, nextSize);
+				}
+				Node child = node.child(c);
+				if (child != null) {
+					if (nextSize + 2 > next.length) {
+						next = Arrays.copyOf(next, next.length << 1);
+					}
+					nextSize = enter(child, next, nextSize);
+				}
+			}
+			Node[] swap = current;
+			current = next;
+			next = swap;
+			size = nextSize;
+		}
+		return best;
+	}
+
+	/**
+	 * 将节点加入活跃集合，其*子节点可匹配空序列，一并加入；调用者需保证至少还有两个空位。
+	 *
+	 * @return 活跃集合新的大小
+	 */
+	private static int enter(Node node, Node[] nodes, int size) {
+		for (int i = 0; i < size; i++) {
+			if (nodes[i] == node) {
+				return size;
+			}
+		}
+		nodes[size++] = node;
+		// 连续的*已在编译时合并，*节点的*子节点不存在
+		Node star = node.starChild;
+		if (star != null) {
+			for (int i = 0; i < size; i++) {
+				if (nodes[i] == star) {
+					return size;
+				}
+			}
+			nodes[size++] = star;
+		}
+		return size;
+	}
+
+	/**
+	 * @return url中与robots规则比较的部分，即path和query，path为空时为/
+	 */
+	public static String pathOf(URL url) {
+		String file = url.getFile();
+		if (file.isEmpty()) {
+			return "/";
+		}
+		return file.charAt(0) == '?' ? "/" + file : file;
+	}
+
+	/**
+	 * @return robots.txt指定的两次访问之间的最小间隔，单位millis，未指定时为0
+	 */
+	public long crawlDelay() {
+		return crawlDelay;
+	}
+
+	/**
+	 * @return 规则数量
+	 */
+	public int rules() {
+		return rules;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("rules", rules).add("crawlDelay", crawlDelay).toString();
+	}
+
+	/**
+	 * trie的节点，子节点较少，按数组顺序查找比哈希表更快
+	 */
+	private static final class Node {
+
+		private char[] keys = new char[0];
+
+		private Node[] children = new Node[0];
+
+		/**
+		 * 在该节点结束的规则的优先级：规则长度左移一位，allow时最低位为1；没有规则在该节点结束时为-1
+		 */
+		private long score = -1;
+
+		/**
+		 * 是否为*节点，*节点匹配任意字符后仍停留在该节点
+		 */
+		private boolean star;
+
+		/**
+		 * *子节点，没有时为null
+		 */
+		private Node starChild;
+
+		/**
+		 * @return 返回key对应的子节点，不存在时返回null
+		 */
+		Node child(char key) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == key) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return 返回key对应的子节点，不存在时创建
+		 */
+		Node addChild(char key) {
+			Node existed = child(key);
+			if (existed != null) {
+				return existed;
+			}
+			Node child = new Node();
+			if (key == STAR) {
+				child.star = true;
+				starChild = child;
+			}
+			keys = Arrays.copyOf(keys, keys.length + 1);
+			children = Arrays.copyOf(children, children.length + 1);
+			keys[keys.length - 1] = key;
+			children[children.length - 1] = child;
+			return child;
+		}
+
+	}
+
+	private static final class Group {
+
+		private final List<String> agents = new ArrayList<String>();
+
+		private final List<Rule> rules = new ArrayList<Rule>();
+
+		private long crawlDelay;
+
+	}
+
+	private static final class Rule {
+
+		private final String pattern;
+
+		private final boolean allow;
+
+		Rule(String pattern, boolean allow) {
+			this.pattern = pattern;
+			this.allow = allow;
+		}
+
+	}
+
+}
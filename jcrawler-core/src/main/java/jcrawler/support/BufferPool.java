@@ -0,0 +1,220 @@
+package jcrawler.support;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+/**
+ * 线程安全的数组缓冲池，用于下载、解压、解码等高频路径上复用临时缓冲，减少年轻代的分配压力。
+ *
+ * 缓冲按2的幂划分大小级别(size class)，从minSize到maxSize，申请时向上取整到所在级别；超过maxSize的申请直接分配，归还时丢弃。
+ * 每个级别再按线程分为若干条带(stripe)，线程优先使用自己的条带，减少多线程并发时的竞争；每个级别最多保留retainedBytes字节的空闲缓冲。
+ * 缓冲常在申请之外的线程上归还(比如由导出线程释放下载线程申请的缓冲)，因此自己的条带为空或已满时依次尝试其他条带。
+ *
+ * 归还的缓冲内容不会被清空，使用者不能假设申请到的缓冲内容为零；同一缓冲归还后不能再继续使用。
+ *
+ * @author warhin.wang
+ *
+ */
+public abstract class BufferPool<T> {
+
+	public static final int DEFAULT_MIN_SIZE = 4 * 1024;
+
+	public static final int DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+
+	public static final long DEFAULT_RETAINED_BYTES = 8L * 1024 * 1024;
+
+	/**
+	 * 默认的byte数组缓冲池
+	 */
+	public static final BufferPool<byte[]> BYTES = new BufferPool<byte[]>(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_RETAINED_BYTES) {
+
+		@Override
+		protected byte[] allocate(int size) {
+			return new byte[size];
+		}
+
+		@Override
+		protected int length(byte[] buffer) {
+			return buffer.length;
+		}
+
+	};
+
+	/**
+	 * 默认的char数组缓冲池，char占两个字节，保留的字节数按char数计算
+	 */
+	public static final BufferPool<char[]> CHARS = new BufferPool<char[]>(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_RETAINED_BYTES / 2) {
+
+		@Override
+		protected char[] allocate(int size) {
+			return new char[size];
+		}
+
+		@Override
+		protected int length(char[] buffer) {
+			return buffer.length;
+		}
+
+	};
+
+	private final int minShift;
+
+	private final int maxShift;
+
+	private final int stripeMask;
+
+	/**
+	 * 每个级别每个条带的空闲缓冲，下标依次为级别和条带
+	 */
+	private final ArrayBlockingQueue<T>[][] stripes;
+
+	private final LongAdder acquired = new LongAdder();
+
+	private final LongAdder reused = new LongAdder();
+
+	private final LongAdder allocated = new LongAdder();
+
+	private final LongAdder allocatedUnits = new LongAdder();
+
+	private final LongAdder released = new LongAdder();
+
+	private final LongAdder discarded = new LongAdder();
+
+	protected BufferPool(int minSize, int maxSize, long retainedUnits) {
+		Preconditions.checkArgument(minSize > 0 && Integer.bitCount(minSize) == 1, "minSize must be a power of 2!");
+		Preconditions.checkArgument(maxSize >= minSize && Integer.bitCount(maxSize) == 1, "maxSize must be a power of 2!");
+		this.minShift = Integer.numberOfTrailingZeros(minSize);
+		this.maxShift = Integer.numberOfTrailingZeros(maxSize);
+		int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+		this.stripeMask = stripeCount - 1;
+		int classes = maxShift - minShift + 1;
+		// 无法直接创建泛型数组
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ArrayBlockingQueue<T>[][] stripesToUse = new ArrayBlockingQueue[classes][stripeCount];
+		this.stripes = stripesToUse;
+		for (int c = 0; c < classes; c++) {
+			long size = 1L << (minShift + c);
+			int capacity = (int) Math.max(1, retainedUnits / size / stripeCount);
+			for (int s = 0; s < stripeCount; s++) {
+				stripes[c][s] = new ArrayBlockingQueue<T>(capacity);
+			}
+		}
+	}
+
+	protected abstract T allocate(int size);
+
+	protected abstract int length(T buffer);
+
+	/**
+	 * 申请一个长度不小于size的缓冲。
+	 */
+	public T acquire(int size) {
+		Preconditions.checkArgument(size >= 0, "size less than zero!");
+		acquired.increment();
+		int sizeClass = sizeClass(size);
+		if (sizeClass < 0) {
+			return newBuffer(size);
+		}
+		ArrayBlockingQueue<T>[] queues = stripes[sizeClass];
+		int stripe = stripe();
+		for (int i = 0; i < queues.length; i++) {
+			T buffer = queues[(stripe + i) & stripeMask].poll();
+			if (buffer != null) {
+				reused.increment();
+				return buffer;
+			}
+		}
+		return newBuffer(1 << (minShift + sizeClass));
+	}
+
+	/**
+	 * 归还缓冲，只有长度恰好为某个级别大小的缓冲会被保留。
+	 */
+	public void release(T buffer) {
+		if (buffer == null) {
+			return;
+		}
+		released.increment();
+		int length = length(buffer);
+		if (Integer.bitCount(length) != 1) {
+			discarded.increment();
+			return;
+		}
+		int sizeClass = Integer.numberOfTrailingZeros(length) - minShift;
+		if (sizeClass < 0 || sizeClass >= stripes.length) {
+			discarded.increment();
+			return;
+		}
+		ArrayBlockingQueue<T>[] queues = stripes[sizeClass];
+		int stripe = stripe();
+		for (int i = 0; i < queues.length; i++) {
+			if (queues[(stripe + i) & stripeMask].offer(buffer)) {
+				return;
+			}
+		}
+		discarded.increment();
+	}
+
+	private T newBuffer(int size) {
+		allocated.increment();
+		allocatedUnits.add(size);
+		return allocate(size);
+	}
+
+	private int sizeClass(int size) {
+		if (size <= (1 << minShift)) {
+			return 0;
+		}
+		int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+		return shift > maxShift ? -1 : shift - minShift;
+	}
+
+	private int stripe() {
+		return (int) Thread.currentThread().getId() & stripeMask;
+	}
+
+	/**
+	 * @return 申请次数
+	 */
+	public long acquired() {
+		return acquired.sum();
+	}
+
+	/**
+	 * @return 申请时复用空闲缓冲的次数
+	 */
+	public long reused() {
+		return reused.sum();
+	}
+
+	/**
+	 * @return 申请时新分配缓冲的次数
+	 */
+	public long allocated() {
+		return allocated.sum();
+	}
+
+	/**
+	 * @return 新分配缓冲的总长度(byte或char的个数)
+	 */
+	public long allocatedUnits() {
+		return allocatedUnits.sum();
+	}
+
+	/**
+	 * @return 归还时因池已满或长度不符被丢弃的次数
+	 */
+	public long discarded() {
+		return discarded.sum();
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("acquired", acquired()).add("reused", reused()).add("allocated", allocated())
+				.add("allocatedUnits", allocatedUnits()).add("released", released.sum()).add("discarded", discarded()).toString();
+	}
+
+}
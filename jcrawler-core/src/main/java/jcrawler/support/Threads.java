@@ -1,10 +1,37 @@
 package jcrawler.support;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class Threads {
 	
+	/**
+	 * 创建每个任务一个虚拟线程的ExecutorService。
+	 * 
+	 * 虚拟线程在JDK21及以上版本才可用，运行时通过反射探测，当前JVM不支持时返回null，由调用者回退到平台线程池。
+	 * 
+	 * @return 返回虚拟线程ExecutorService，如果当前JVM不支持虚拟线程则返回null
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	public static boolean isVirtualThreadSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
 	public static void sleep(long timeoutInMillis, boolean ignoreInterrupted) {
 		if (timeoutInMillis <= 0) return;
 		try {
@@ -25,7 +25,6 @@ import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIUtils;
@@ -317,7 +316,7 @@ public class HttpTemplate implements HttpOperator {
 			}
 			for (HeaderElement element : elements) {
 				if (StringUtils.equalsIgnoreCase("gzip", element.getName())) {
-					response.setEntity(new GzipDecompressingEntity(entity));
+					response.setEntity(new PooledGzipEntity(entity));
 					return;
 				}
 			}
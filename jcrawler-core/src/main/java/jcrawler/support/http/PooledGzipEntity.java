@@ -0,0 +1,254 @@
+package jcrawler.support.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import jcrawler.support.BufferPool;
+
+/**
+ * gzip解压的HttpEntity，与httpclient自带的GzipDecompressingEntity功能一致，但解压时使用的Inflater和输入缓冲都从池中获取，关闭后归还。
+ *
+ * GZIPInputStream每次都新建Inflater(占用本地内存并依赖finalize回收)和输入缓冲，在每秒数千个页面时是主要的分配来源之一。
+ *
+ * @author warhin.wang
+ *
+ */
+public class PooledGzipEntity extends HttpEntityWrapper {
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private static final ArrayBlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<Inflater>(256);
+
+	private InputStream content;
+
+	public PooledGzipEntity(HttpEntity entity) {
+		super(entity);
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		if (wrappedEntity.isStreaming()) {
+			if (content == null) {
+				content = new PooledGzipInputStream(wrappedEntity.getContent());
+			}
+			return content;
+		}
+		return new PooledGzipInputStream(wrappedEntity.getContent());
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return null;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		InputStream in = getContent();
+		byte[] buffer = BufferPool.BYTES.acquire(BUFFER_SIZE);
+		try {
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				outstream.write(buffer, 0, n);
+			}
+		} finally {
+			BufferPool.BYTES.release(buffer);
+			in.close();
+		}
+	}
+
+	private static Inflater acquireInflater() {
+		Inflater inflater = INFLATERS.poll();
+		return inflater == null ? new Inflater(true) : inflater;
+	}
+
+	private static void releaseInflater(Inflater inflater) {
+		inflater.reset();
+		if (!INFLATERS.offer(inflater)) {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * 解压到每个member末尾时校验CRC和长度，之后有下一个member时继续解压(与GZIPInputStream一致)，之后没有数据或不是gzip头时结束。
+	 */
+	static class PooledGzipInputStream extends InflaterInputStream {
+
+		private static final int FHCRC = 2;
+		private static final int FEXTRA = 4;
+		private static final int FNAME = 8;
+		private static final int FCOMMENT = 16;
+
+		private final CRC32 crc = new CRC32();
+
+		private boolean eos;
+
+		/**
+		 * 输入缓冲中已读入但尚未被inflater消耗的字节(trailer以及下一个member的开头)，读取头部和trailer时先从这里读
+		 */
+		private int leftoverPos;
+
+		private int leftoverLen;
+
+		private boolean closed;
+
+		PooledGzipInputStream(InputStream in) throws IOException {
+			super(in, acquireInflater(), 1);
+			this.buf = BufferPool.BYTES.acquire(BUFFER_SIZE);
+			try {
+				readHeader(true);
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			if (eos) {
+				return -1;
+			}
+			while (true) {
+				int n = super.read(b, off, len);
+				if (n != -1) {
+					crc.update(b, off, n);
+					return n;
+				}
+				readTrailer();
+				if (!nextMember()) {
+					eos = true;
+					return -1;
+				}
+			}
+		}
+
+		/**
+		 * 读取下一个member的头部，并将输入缓冲中剩余的字节交给重置后的inflater。
+		 *
+		 * @return 返回false，如果之后没有数据或者不是gzip头(视为末尾的无用数据而忽略)
+		 */
+		private boolean nextMember() throws IOException {
+			int b = leftoverLen > 0 ? readUByte() : in.read();
+			if (b != 0x1f) {
+				return false;
+			}
+			b = leftoverLen > 0 ? readUByte() : in.read();
+			if (b != 0x8b) {
+				return false;
+			}
+			readHeader(false);
+			inf.reset();
+			// 使len - inf.getRemaining()仍为剩余输入在缓冲中的位置
+			len = leftoverPos + leftoverLen;
+			if (leftoverLen > 0) {
+				inf.setInput(buf, leftoverPos, leftoverLen);
+				leftoverLen = 0;
+			}
+			return true;
+		}
+
+		/**
+		 * @param magic 是否需要读取并校验开头的两个字节，读取后续member时已由调用者读取
+		 */
+		private void readHeader(boolean magic) throws IOException {
+			if (magic && (readUByte() != 0x1f || readUByte() != 0x8b)) {
+				throw new ZipException("Not in GZIP format");
+			}
+			if (readUByte() != 8) {
+				throw new ZipException("Unsupported compression method");
+			}
+			int flags = readUByte();
+			// MTIME、XFL、OS
+			skipBytes(6);
+			if ((flags & FEXTRA) == FEXTRA) {
+				skipBytes(readUByte() | (readUByte() << 8));
+			}
+			if ((flags & FNAME) == FNAME) {
+				while (readUByte() != 0) {
+				}
+			}
+			if ((flags & FCOMMENT) == FCOMMENT) {
+				while (readUByte() != 0) {
+				}
+			}
+			if ((flags & FHCRC) == FHCRC) {
+				skipBytes(2);
+			}
+			crc.reset();
+		}
+
+		/**
+		 * trailer为CRC32和原始长度，可能有一部分已被读入输入缓冲
+		 */
+		private void readTrailer() throws IOException {
+			leftoverLen = inf.getRemaining();
+			leftoverPos = len - leftoverLen;
+			long trailerCrc = 0;
+			long trailerSize = 0;
+			for (int i = 0; i < 8; i++) {
+				int b = readUByte();
+				if (i < 4) {
+					trailerCrc |= (long) b << (8 * i);
+				} else {
+					trailerSize |= (long) b << (8 * (i - 4));
+				}
+			}
+			if (trailerCrc != crc.getValue() || trailerSize != (inf.getBytesWritten() & 0xffffffffL)) {
+				throw new ZipException("Corrupt GZIP trailer");
+			}
+		}
+
+		private int readUByte() throws IOException {
+			if (leftoverLen > 0) {
+				leftoverLen--;
+				return buf[leftoverPos++] & 0xff;
+			}
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException();
+			}
+			return b;
+		}
+
+		private void skipBytes(int n) throws IOException {
+			while (n-- > 0) {
+				readUByte();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				in.close();
+			} finally {
+				releaseInflater(inf);
+				BufferPool.BYTES.release(buf);
+				buf = null;
+			}
+		}
+
+	}
+
+}
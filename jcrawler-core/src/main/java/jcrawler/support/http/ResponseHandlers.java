@@ -98,7 +98,12 @@ public class ResponseHandlers {
 		
 		public long getContentLength(HttpResponse response) {
 			String length = getHeader(response, HttpHeaders.CONTENT_LENGTH);
-			return StringUtils.isBlank(length) ? response.getEntity().getContentLength() : NumberUtils.toLong(length);
+			if (StringUtils.isNotBlank(length)) {
+				return NumberUtils.toLong(length);
+			}
+			// 304等响应没有报文主体
+			HttpEntity entity = response.getEntity();
+			return entity == null ? 0 : entity.getContentLength();
 		}
 		
 		public String getContentType(HttpResponse response) {
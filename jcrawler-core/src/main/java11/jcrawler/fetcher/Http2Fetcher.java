@@ -0,0 +1,366 @@
+package jcrawler.fetcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieManager;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+
+import jcrawler.Envirenment;
+import jcrawler.Message;
+import jcrawler.Request;
+import jcrawler.Response;
+import jcrawler.Site;
+import jcrawler.support.http.HttpEntitys;
+import jcrawler.support.http.HttpTemplate;
+
+/**
+ * 该fetcher基于jdk自带的java.net.http.HttpClient实现，优先使用HTTP/2。
+ *
+ * 同一host的并发请求在HTTP/2下作为同一连接上的多个stream复用少量连接，不再像HttpFetcher那样每个未完成的请求独占一个连接；
+ * https通过ALPN协商，http通过h2c升级协商，服务端不支持HTTP/2时自动回退到HTTP/1.1。
+ *
+ * 每个site一个HttpClient，cookie按site隔离；响应被转换为httpcomponents的HttpResponse后复用HttpFetcher.CompositedResponseHandler，
+ * 因此gzip解压、charset识别、maxBodyBytes/minTransferRate/downloadDeadline等下载限制与HttpFetcher完全一致。
+ * 设置了代理(Request.PROXY)的请求交给该site的HttpFetcher执行。
+ *
+ * 需要运行于java 11及以上版本，可先通过HttpFetcherFactory.isHttp2Supported()判断。
+ *
+ * @author warhin.wang
+ *
+ */
+public class Http2Fetcher implements AsyncFetcher, Fetcher, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(Http2Fetcher.class);
+
+	private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+	/**
+	 * java.net.http不允许设置的请求头，由HttpClient自行管理
+	 */
+	private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(
+			Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+
+	private final ExecutorService executor;
+
+	private final boolean shutdownExecutor;
+
+	private final Map<Site, HttpClient> clients = new ConcurrentHashMap<Site, HttpClient>();
+
+	public Http2Fetcher() {
+		this(Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "http2-fetcher");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * @param executor HttpClient处理响应及异步下载时读取报文主体所用的线程池，由调用者负责关闭
+	 */
+	public Http2Fetcher(ExecutorService executor) {
+		this(executor, false);
+	}
+
+	private Http2Fetcher(ExecutorService executor, boolean shutdownExecutor) {
+		super();
+		this.executor = executor;
+		this.shutdownExecutor = shutdownExecutor;
+	}
+
+	@Override
+	public CompletableFuture<Response> fetchAsync(final Request request) {
+		final CompletableFuture<Response> future = new CompletableFuture<Response>();
+		if (request.ext(Request.PROXY) != null) {
+			try {
+				future.complete(fallback(request));
+			} catch (Exception e) {
+				future.completeExceptionally(e instanceof FetchException ? e : new FetchException(e));
+			}
+			return future;
+		}
+		final Exchange exchange;
+		try {
+			exchange = send(request);
+		} catch (Exception e) {
+			future.completeExceptionally(e instanceof FetchException ? e : new FetchException(e));
+			return future;
+		}
+		// 报文主体以阻塞方式读取，不占用HttpClient的选择器线程
+		exchange.httpResponse.whenCompleteAsync((httpResponse, e) -> {
+			try {
+				future.complete(exchange.handle(httpResponse, e));
+			} catch (Exception fe) {
+				future.completeExceptionally(fe);
+			}
+		}, executor);
+		return future;
+	}
+
+	@Override
+	public Response fetch(Request request) throws FetchException {
+		if (request.ext(Request.PROXY) != null) {
+			return fallback(request);
+		}
+		Exchange exchange = send(request);
+		HttpResponse<InputStream> httpResponse = null;
+		Throwable cause = null;
+		try {
+			httpResponse = exchange.httpResponse.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			exchange.cancel();
+			exchange.limiter.finish();
+			throw new FetchException(e);
+		} catch (ExecutionException e) {
+			cause = e.getCause();
+		} catch (CancellationException e) {
+			cause = e;
+		}
+		return exchange.handle(httpResponse, cause);
+	}
+
+	private Response fallback(Request request) {
+		return HttpFetcherFactory.getInstance().getHttpFetcher(request.site()).fetch(request);
+	}
+
+	private Exchange send(Request request) {
+		if (!HttpFetcher.isSupportedMethod(request)) {
+			throw new FetchException("Not support method[" + request.method() + "].");
+		}
+		HttpRequest httpRequest = createHttpRequest(request);
+		Exchange exchange = new Exchange(request);
+		exchange.limiter.start();
+		exchange.httpResponse = getClient(request.site()).sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+		return exchange;
+	}
+
+	static HttpRequest createHttpRequest(Request request) {
+		String url = request.url2str();
+		Message.Method method = request.method();
+		HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.noBody();
+		String formContentType = null;
+		Map<String, String> data = request.data();
+		if (data != null && !data.isEmpty()) {
+			HttpEntity form = HttpEntitys.formEntity(data, request.requestCharset());
+			String formContent;
+			try {
+				formContent = EntityUtils.toString(form);
+			} catch (IOException e) {
+				throw new FetchException(e);
+			}
+			if (method == Message.Method.POST || method == Message.Method.PUT) {
+				bodyPublisher = HttpRequest.BodyPublishers.ofString(formContent);
+				formContentType = form.getContentType().getValue();
+			} else {
+				url = url + (url.indexOf('?') < 0 ? "?" : "&") + formContent;
+			}
+		}
+		int timeoutToUse = request.timeout() > 0 ? request.timeout() : Envirenment.DEFAULT_CONNECTION_TIMEOUT;
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+				.timeout(Duration.ofMillis(timeoutToUse))
+				.method(method.name(), bodyPublisher);
+		for (Map.Entry<String, String> entry : request.headers().entrySet()) {
+			if (entry.getValue() != null && !RESTRICTED_HEADERS.contains(entry.getKey().toLowerCase(Locale.ENGLISH))) {
+				builder.header(entry.getKey(), entry.getValue());
+			}
+		}
+		if (!request.hasHeader(org.apache.http.HttpHeaders.USER_AGENT)) {
+			Site site = request.site();
+			String userAgent = site == null ? null : StringUtils.trimToNull(site.userAgent());
+			builder.header(org.apache.http.HttpHeaders.USER_AGENT, userAgent == null ? HttpFetcherFactory.DEFAULT_USERAGENT : userAgent);
+		}
+		if (!request.hasHeader(org.apache.http.HttpHeaders.ACCEPT_ENCODING)) {
+			builder.header(org.apache.http.HttpHeaders.ACCEPT_ENCODING, "gzip");
+		}
+		if (formContentType != null && !request.hasHeader(org.apache.http.HttpHeaders.CONTENT_TYPE)) {
+			builder.header(org.apache.http.HttpHeaders.CONTENT_TYPE, formContentType);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * 将java.net.http的响应转换为httpcomponents的响应，报文主体仍以流的方式读取。
+	 */
+	static org.apache.http.HttpResponse adapt(HttpResponse<InputStream> httpResponse) {
+		int statusCode = httpResponse.statusCode();
+		ProtocolVersion version = httpResponse.version() == HttpClient.Version.HTTP_2 ? HTTP_2 : HttpVersion.HTTP_1_1;
+		BasicHttpResponse adapted = new BasicHttpResponse(version, statusCode,
+				EnglishReasonPhraseCatalog.INSTANCE.getReason(statusCode, Locale.ENGLISH));
+		HttpHeaders headers = httpResponse.headers();
+		for (Map.Entry<String, List<String>> entry : headers.map().entrySet()) {
+			if (entry.getKey().startsWith(":")) {
+				continue;
+			}
+			for (String value : entry.getValue()) {
+				adapted.addHeader(entry.getKey(), value);
+			}
+		}
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContent(httpResponse.body());
+		entity.setContentLength(headers.firstValueAsLong(org.apache.http.HttpHeaders.CONTENT_LENGTH).orElse(-1L));
+		entity.setContentType(headers.firstValue(org.apache.http.HttpHeaders.CONTENT_TYPE).orElse(null));
+		entity.setContentEncoding(headers.firstValue(org.apache.http.HttpHeaders.CONTENT_ENCODING).orElse(null));
+		adapted.setEntity(entity);
+		return adapted;
+	}
+
+	private HttpClient getClient(Site site) {
+		if (site == null) site = Site.LOCALHOST;
+		HttpClient client = clients.get(site);
+		if (client != null) {
+			return client;
+		}
+		return clients.computeIfAbsent(site, this::createClient);
+	}
+
+	private HttpClient createClient(Site site) {
+		int timeoutToUse = site.timeout() > 0 ? site.timeout() : Envirenment.DEFAULT_CONNECTION_TIMEOUT;
+		return HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(Duration.ofMillis(timeoutToUse))
+				.cookieHandler(createCookieManager(site))
+				.executor(executor)
+				.build();
+	}
+
+	private static CookieManager createCookieManager(Site site) {
+		CookieManager cookieManager = new CookieManager();
+		List<BasicClientCookie> initCookies = site.cookies();
+		if (initCookies != null) {
+			for (BasicClientCookie cookie : initCookies) {
+				HttpCookie httpCookie = new HttpCookie(cookie.getName(), cookie.getValue());
+				httpCookie.setDomain(StringUtils.defaultIfBlank(cookie.getDomain(), site.domain()));
+				httpCookie.setPath(StringUtils.defaultIfBlank(cookie.getPath(), "/"));
+				httpCookie.setSecure(cookie.isSecure());
+				if (cookie.getExpiryDate() != null) {
+					httpCookie.setMaxAge(Math.max(0, (cookie.getExpiryDate().getTime() - System.currentTimeMillis()) / 1000));
+				}
+				cookieManager.getCookieStore().add(null, httpCookie);
+			}
+		}
+		return cookieManager;
+	}
+
+	@Override
+	public void close() throws IOException {
+		clients.clear();
+		if (shutdownExecutor) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("clients", clients.size()).add("executor", executor).toString();
+	}
+
+	/**
+	 * 一次请求的上下文，同时作为TransferLimiter中断连接的方式：取消尚未收到响应头的future，关闭正在读取的报文主体(HTTP/2下即重置该stream)。
+	 */
+	private static class Exchange implements Cancellable {
+
+		private final Request request;
+
+		private final Response response;
+
+		private final TransferLimiter limiter;
+
+		private volatile CompletableFuture<HttpResponse<InputStream>> httpResponse;
+
+		private volatile InputStream body;
+
+		Exchange(Request request) {
+			this.request = request;
+			this.response = Response.create(request);
+			this.limiter = new TransferLimiter(request, this);
+		}
+
+		@Override
+		public boolean cancel() {
+			CompletableFuture<HttpResponse<InputStream>> future = httpResponse;
+			if (future != null) {
+				future.cancel(true);
+			}
+			IOUtils.closeQuietly(body);
+			return true;
+		}
+
+		Response handle(HttpResponse<InputStream> httpResponse, Throwable cause) {
+			try {
+				if (cause != null) {
+					if (limiter.failed()) {
+						throw limiter.exception(cause);
+					}
+					logger.error("Couldn't retrive response of url[{}].", request.url2str(), cause);
+					throw cause instanceof FetchException ? (FetchException) cause : new FetchException(cause);
+				}
+				this.body = httpResponse.body();
+				if (limiter.failed()) {
+					throw limiter.exception(null);
+				}
+				org.apache.http.HttpResponse adapted = adapt(httpResponse);
+				HttpTemplate.GZipResponseInterceptor.INSTANCE.process(adapted, null);
+				new HttpFetcher.CompositedResponseHandler(request, response, limiter).handleResponse(adapted);
+				return response;
+			} catch (HttpResponseException e) {
+				FetchException fe = new FetchException(e);
+				fe.setStatusCode(e.getStatusCode());
+				fe.setStatusMessage(e.getMessage());
+				throw fe;
+			} catch (IOException | HttpException e) {
+				if (limiter.failed()) {
+					throw limiter.exception(e);
+				}
+				if (response.truncated()) {
+					return response;
+				}
+				logger.error("Couldn't retrive response of url[{}].", request.url2str(), e);
+				throw new FetchException(e);
+			} finally {
+				limiter.finish();
+				// 未读完的报文主体(比如不需要的content type)在关闭时取消，HTTP/2下只重置该stream，不影响同一连接上的其他请求
+				IOUtils.closeQuietly(body);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,176 @@
+package jcrawler.checkpoint;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jcrawler.Request;
+import jcrawler.executor.FingerprintReserver;
+import jcrawler.frontier.RequestCodec;
+
+public class CheckpointerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Request request(int i) {
+		Request request = Request.create("http://example.com/" + i).signature("news");
+		request.ext("index", i);
+		return request;
+	}
+
+	private static Set<String> urls(BlockingQueue<Request> queue) {
+		Set<String> urls = new HashSet<String>();
+		for (Request request : queue) {
+			urls.add(request.url2str());
+		}
+		return urls;
+	}
+
+	private static List<String> files(File dir) {
+		List<String> names = new ArrayList<String>(Arrays.asList(dir.list()));
+		Collections.sort(names);
+		return names;
+	}
+
+	@Test(timeout = 10000)
+	public void testRecoverPendingRequests() throws Exception {
+		File dir = folder.newFolder("checkpoint");
+		Checkpointer checkpointer = new Checkpointer(dir.toPath(), 60000);
+		assertFalse(checkpointer.exists());
+		checkpointer.start();
+		for (int i = 0; i < 10; i++) {
+			checkpointer.enqueued(request(i));
+		}
+		for (int i = 0; i < 10; i += 2) {
+			checkpointer.completed(request(i));
+		}
+		checkpointer.close();
+		// close时合并为快照，空的预写日志被删除
+		assertEquals(Arrays.asList("snapshot.dat"), files(dir));
+
+		Checkpointer recovered = new Checkpointer(dir.toPath(), 60000);
+		assertTrue(recovered.exists());
+		BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+		FingerprintReserver reserver = new FingerprintReserver(100);
+		assertEquals(5, recovered.recover(queue, reserver));
+		assertEquals(new HashSet<String>(Arrays.asList("http://example.com/1", "http://example.com/3",
+				"http://example.com/5", "http://example.com/7", "http://example.com/9")), urls(queue));
+		for (Request request : queue) {
+			assertEquals("news", request.signature());
+			assertNotNull(request.ext("index"));
+		}
+		// 已完成和未完成的request都不会被再次加入
+		assertEquals(10, reserver.count());
+		for (int i = 0; i < 10; i++) {
+			assertFalse(reserver.reserve(request(i)));
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testCompactAcrossSessions() throws Exception {
+		File dir = folder.newFolder("checkpoint");
+		Checkpointer first = new Checkpointer(dir.toPath(), 50);
+		first.start();
+		for (int round = 0; round < 4; round++) {
+			for (int i = round * 10; i < round * 10 + 10; i++) {
+				first.enqueued(request(i));
+			}
+			// 超过合并间隔，checkpoint线程滚动预写日志并合并
+			Thread.sleep(150);
+		}
+		for (int i = 0; i < 20; i++) {
+			first.completed(request(i));
+		}
+		first.close();
+		assertEquals(Arrays.asList("snapshot.dat"), files(dir));
+
+		// 第二次运行：恢复后继续完成一部分request
+		Checkpointer second = new Checkpointer(dir.toPath(), 60000);
+		BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+		assertEquals(20, second.recover(queue, null));
+		second.start();
+		for (int i = 20; i < 30; i++) {
+			second.completed(request(i));
+		}
+		second.enqueued(request(100));
+		second.close();
+
+		Checkpointer third = new Checkpointer(dir.toPath(), 60000);
+		queue.clear();
+		FingerprintReserver reserver = new FingerprintReserver(100);
+		assertEquals(11, third.recover(queue, reserver));
+		Set<String> expected = new HashSet<String>();
+		for (int i = 30; i < 40; i++) {
+			expected.add("http://example.com/" + i);
+		}
+		expected.add("http://example.com/100");
+		assertEquals(expected, urls(queue));
+		assertEquals(41, reserver.count());
+	}
+
+	@Test(timeout = 10000)
+	public void testTruncatedWalTailIsIgnored() throws Exception {
+		File dir = folder.newFolder("checkpoint");
+		Checkpointer checkpointer = new Checkpointer(dir.toPath(), 60000);
+		// 启动前加入的事件由checkpoint线程一次写入
+		for (int i = 0; i < 3; i++) {
+			checkpointer.enqueued(request(i));
+		}
+		checkpointer.completed(request(1));
+		checkpointer.start();
+		File wal = new File(dir, "wal-0000000000000000.log");
+		while (wal.length() == 0) {
+			Thread.sleep(10);
+		}
+		// 模拟崩溃：复制正在写入的预写日志，并在末尾追加一条不完整的记录
+		File crashed = folder.newFolder("crashed");
+		File copy = new File(crashed, wal.getName());
+		byte[] written = FileUtils.readFileToByteArray(wal);
+		byte[] partial = new RequestCodec().encode(request(99));
+		FileOutputStream out = new FileOutputStream(copy);
+		try {
+			out.write(written);
+			out.write(written[0]);
+			out.write(partial, 0, partial.length / 2);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+		checkpointer.close();
+
+		Checkpointer recovered = new Checkpointer(crashed.toPath(), 60000);
+		BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+		assertEquals(2, recovered.recover(queue, null));
+		assertEquals(new HashSet<String>(Arrays.asList("http://example.com/0", "http://example.com/2")), urls(queue));
+		assertEquals(Arrays.asList("snapshot.dat"), files(crashed));
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		File dir = folder.newFolder("checkpoint");
+		Checkpointer checkpointer = new Checkpointer(dir.toPath(), 60000);
+		checkpointer.start();
+		checkpointer.enqueued(request(0));
+		checkpointer.close();
+		assertTrue(checkpointer.exists());
+		checkpointer.clear();
+		assertFalse(checkpointer.exists());
+		assertEquals(0, checkpointer.recover(new LinkedBlockingQueue<Request>(), null));
+	}
+
+}
@@ -0,0 +1,78 @@
+package jcrawler.executor;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import jcrawler.Request;
+
+public class FingerprintReserverTest {
+
+	private static Request request(int i) {
+		return Request.create("http://example.com/page/" + i);
+	}
+
+	@Test
+	public void testExactDeduplication() {
+		FingerprintReserver reserver = new FingerprintReserver(16);
+		// 预期容量很小，保留过程中段需要多次扩容
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(reserver.reserve(request(i)));
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertFalse(reserver.reserve(request(i)));
+		}
+		assertEquals(10000, reserver.count());
+		assertTrue(reserver.memoryBytes() > 0);
+		reserver.reset();
+		assertEquals(0, reserver.count());
+		assertTrue(reserver.reserve(request(0)));
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentReserveAcceptsEachUrlOnce() throws Exception {
+		final FingerprintReserver reserver = new FingerprintReserver(64, 4);
+		final AtomicInteger accepted = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 2500;
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					// 相邻线程的url集合重叠一半
+					for (int i = offset; i < offset + 5000; i++) {
+						if (reserver.reserve(request(i))) {
+							accepted.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(20, TimeUnit.SECONDS));
+		int unique = 2500 * (threads + 1);
+		assertEquals(unique, accepted.get());
+		assertEquals(unique, reserver.count());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSegmentsMustBePowerOfTwo() {
+		new FingerprintReserver(1000, 3);
+	}
+
+}
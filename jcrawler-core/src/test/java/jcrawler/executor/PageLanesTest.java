@@ -0,0 +1,131 @@
+package jcrawler.executor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import jcrawler.Page;
+import jcrawler.Request;
+import jcrawler.exporter.Exporter;
+
+public class PageLanesTest {
+
+	private static Page page(String url, String signature) {
+		Request request = Request.create(url);
+		if (signature != null) {
+			request.signature(signature);
+		}
+		return Page.create().request(request);
+	}
+
+	@Test
+	public void testUnsignedPagesSpreadAcrossLanes() {
+		PageLanes lanes = new PageLanes(4, 400);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(lanes.offer(page("http://example.com/" + i, null)));
+		}
+		for (int i = 0; i < lanes.lanes(); i++) {
+			assertEquals(25, lanes.lane(i).size());
+		}
+		// 所有通道的容量都可用
+		assertEquals(300, lanes.remainingCapacity());
+	}
+
+	@Test
+	public void testSignedPagesKeepOrderInOneLane() {
+		PageLanes lanes = new PageLanes(4, 400);
+		for (int i = 0; i < 20; i++) {
+			lanes.offer(page("http://example.com/" + i, "news"));
+		}
+		int used = 0;
+		for (int i = 0; i < lanes.lanes(); i++) {
+			List<Page> pages = new ArrayList<Page>();
+			lanes.lane(i).drainTo(pages);
+			if (!pages.isEmpty()) {
+				used++;
+				for (int j = 0; j < pages.size(); j++) {
+					assertEquals("http://example.com/" + j, pages.get(j).request().url2str());
+				}
+			}
+		}
+		assertEquals(1, used);
+	}
+
+	@Test(timeout = 10000)
+	public void testUnsignedPagesExportedByAllWorkers() throws Exception {
+		int workers = 4;
+		int pages = 200;
+		PageLanes lanes = new PageLanes(workers, 1000);
+		final Map<String, AtomicInteger> exportedBy = new ConcurrentHashMap<String, AtomicInteger>();
+		final AtomicInteger exported = new AtomicInteger();
+		Exporter exporter = new Exporter() {
+			@Override
+			public void export(Page page) {
+				String thread = Thread.currentThread().getName();
+				exportedBy.putIfAbsent(thread, new AtomicInteger());
+				exportedBy.get(thread).incrementAndGet();
+				exported.incrementAndGet();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		List<PageExporterWorker> exporterWorkers = new ArrayList<PageExporterWorker>();
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		for (int i = 0; i < workers; i++) {
+			PageExporterWorker worker = new PageExporterWorker(lanes.lane(i), Arrays.<Exporter> asList(exporter), 1);
+			exporterWorkers.add(worker);
+			executor.submit(worker);
+		}
+		for (int i = 0; i < pages; i++) {
+			lanes.put(page("http://example.com/" + i, null));
+		}
+		while (exported.get() < pages) {
+			Thread.sleep(10);
+		}
+		for (PageExporterWorker worker : exporterWorkers) {
+			worker.stop();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(workers, exportedBy.size());
+		for (AtomicInteger count : exportedBy.values()) {
+			assertEquals(pages / workers, count.get());
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testTakeWaitsOnAllLanes() throws Exception {
+		final PageLanes lanes = new PageLanes(4, 400);
+		final Page[] taken = new Page[1];
+		Thread taker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					taken[0] = lanes.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		taker.start();
+		Thread.sleep(50);
+		Page page = page("http://example.com/x", "any-signature");
+		lanes.put(page);
+		taker.join();
+		assertSame(page, taken[0]);
+		assertNull(lanes.poll(10, TimeUnit.MILLISECONDS));
+	}
+
+}
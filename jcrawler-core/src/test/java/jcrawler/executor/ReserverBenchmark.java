@@ -0,0 +1,82 @@
+package jcrawler.executor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jcrawler.Request;
+
+/**
+ * 多个生产者线程并发reserve时，对比各Reserver实现的吞吐率(reserves/sec)。
+ *
+ * 每个线程reserve的url中有一半与其他线程重复，以此模拟多个页面抽取出相同链接的场景。
+ *
+ * 运行方式：java jcrawler.executor.ReserverBenchmark [threads] [requestsPerThread]
+ *
+ * @author warhin.wang
+ *
+ */
+public class ReserverBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int requestsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+		long capacity = (long) threads * requestsPerThread;
+
+		Request[][] requests = new Request[threads][requestsPerThread];
+		for (int t = 0; t < threads; t++) {
+			for (int i = 0; i < requestsPerThread; i++) {
+				// 偶数位置的url所有线程共享，奇数位置的url每个线程独有
+				String url = (i % 2 == 0) ? "http://bench.jcrawler/shared/" + i : "http://bench.jcrawler/" + t + "/" + i;
+				requests[t][i] = Request.create(url);
+			}
+		}
+
+		for (int round = 0; round < 2; round++) {
+			report("SetReserver", new SetReserver(), requests);
+			report("BloomReserver", new BloomReserver(), requests);
+			report("ConcurrentBloomReserver", new ConcurrentBloomReserver(capacity, 0.0001), requests);
+		}
+	}
+
+	private static void report(String name, Reserver reserver, Request[][] requests) throws InterruptedException {
+		int total = requests.length * requests[0].length;
+		AtomicInteger reserved = new AtomicInteger();
+		long elapsed = run(reserver, requests, reserved);
+		System.out.printf("%-24s %d threads : %.0f reserves/sec, reserved %d, count %d%n", name, requests.length,
+				total * 1e9 / elapsed, reserved.get(), reserver.count());
+	}
+
+	private static long run(final Reserver reserver, Request[][] requests, final AtomicInteger reserved)
+			throws InterruptedException {
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final CountDownLatch doneSignal = new CountDownLatch(requests.length);
+		for (final Request[] batch : requests) {
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						startSignal.await();
+						int n = 0;
+						for (Request request : batch) {
+							if (reserver.reserve(request)) {
+								n++;
+							}
+						}
+						reserved.addAndGet(n);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						doneSignal.countDown();
+					}
+				}
+
+			}).start();
+		}
+		long start = System.nanoTime();
+		startSignal.countDown();
+		doneSignal.await();
+		return System.nanoTime() - start;
+	}
+
+}
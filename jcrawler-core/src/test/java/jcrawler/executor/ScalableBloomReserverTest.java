@@ -0,0 +1,110 @@
+package jcrawler.executor;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jcrawler.Request;
+
+public class ScalableBloomReserverTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Request request(int i) {
+		return Request.create("http://example.com/page/" + i);
+	}
+
+	@Test
+	public void testGrowsLayers() {
+		ScalableBloomReserver reserver = new ScalableBloomReserver(100, 0.001);
+		int accepted = 0;
+		for (int i = 0; i < 1000; i++) {
+			if (reserver.reserve(request(i))) {
+				accepted++;
+			}
+		}
+		// 容量100，放大倍数2：100 + 200 + 400 + 800
+		assertEquals(4, reserver.layers());
+		assertEquals(accepted, reserver.count());
+		assertTrue("accepted " + accepted, accepted >= 995);
+		for (int i = 0; i < 1000; i++) {
+			assertFalse(reserver.reserve(request(i)));
+		}
+		reserver.reset();
+		assertEquals(1, reserver.layers());
+		assertEquals(0, reserver.count());
+		assertTrue(reserver.reserve(request(0)));
+	}
+
+	@Test
+	public void testSnapshotAndRestore() throws Exception {
+		String snapshot = new File(folder.getRoot(), "reserver/snapshot.dat").getPath();
+		ScalableBloomReserver reserver = new ScalableBloomReserver(100, 0.001, snapshot);
+		reserver.init();
+		for (int i = 0; i < 500; i++) {
+			reserver.reserve(request(i));
+		}
+		int count = reserver.count();
+		int layers = reserver.layers();
+		reserver.close();
+		assertTrue(new File(snapshot).isFile());
+
+		ScalableBloomReserver restored = new ScalableBloomReserver(100, 0.001, snapshot);
+		restored.init();
+		assertEquals(count, restored.count());
+		assertEquals(layers, restored.layers());
+		for (int i = 0; i < 500; i++) {
+			assertFalse(restored.reserve(request(i)));
+		}
+		assertEquals(count, restored.count());
+	}
+
+	@Test
+	public void testCorruptedSnapshotStartsEmpty() throws Exception {
+		File snapshot = folder.newFile("snapshot.dat");
+		FileUtils.writeStringToFile(snapshot, "not a snapshot", "UTF-8");
+		ScalableBloomReserver reserver = new ScalableBloomReserver(100, 0.001, snapshot.getPath());
+		reserver.init();
+		assertEquals(0, reserver.count());
+		assertTrue(reserver.reserve(request(0)));
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentReserve() throws Exception {
+		final ScalableBloomReserver reserver = new ScalableBloomReserver(1000, 0.001);
+		final AtomicInteger accepted = new AtomicInteger();
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 2500;
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					// 相邻线程的url集合重叠一半
+					for (int i = offset; i < offset + 5000; i++) {
+						if (reserver.reserve(request(i))) {
+							accepted.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(20, TimeUnit.SECONDS));
+		int unique = 2500 * (threads + 1);
+		assertEquals(accepted.get(), reserver.count());
+		assertTrue("accepted " + accepted.get(), accepted.get() <= unique);
+		assertTrue("accepted " + accepted.get(), accepted.get() >= unique * 0.99);
+	}
+
+}
@@ -0,0 +1,118 @@
+package jcrawler.executor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import jcrawler.Page;
+import jcrawler.Request;
+import jcrawler.fetcher.Fetcher;
+import jcrawler.fetcher.HttpFetcher;
+import jcrawler.support.Threads;
+
+/**
+ * 对比固定平台线程池与虚拟线程两种模式下SpiderWorker的吞吐率(pages/sec)。
+ *
+ * 本地启动一个每次响应延迟固定时长的stub HTTP server，分别以两种模式下载相同数量的页面。
+ * 当前JVM不支持虚拟线程时只运行平台线程池模式。
+ *
+ * 运行方式：java jcrawler.executor.SpiderWorkerBenchmark [pages] [latencyMills] [platformThreads] [virtualWorkers]
+ *
+ * @author warhin.wang
+ *
+ */
+public class SpiderWorkerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		final long latencyMills = args.length > 1 ? Long.parseLong(args[1]) : 50;
+		int platformThreads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+		int virtualWorkers = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+		server.createContext("/", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				Threads.sleep(latencyMills, true);
+				byte[] body = "<html><body>stub</body></html>".getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body);
+				os.close();
+			}
+
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/page/";
+
+		try {
+			double platform = run(Executors.newFixedThreadPool(platformThreads), platformThreads, baseUrl, pages);
+			System.out.printf("platform pool (%d threads) : %.1f pages/sec%n", platformThreads, platform);
+
+			ExecutorService virtualExecutor = Threads.newVirtualThreadPerTaskExecutor();
+			if (virtualExecutor == null) {
+				System.out.println("virtual threads are not supported by current jvm, skipped.");
+			} else {
+				double virtual = run(virtualExecutor, virtualWorkers, baseUrl, pages);
+				System.out.printf("virtual threads (%d workers) : %.1f pages/sec%n", virtualWorkers, virtual);
+			}
+		} finally {
+			server.stop(0);
+			System.exit(0);
+		}
+	}
+
+	private static double run(ExecutorService executor, int workers, String baseUrl, int pages) throws InterruptedException {
+		PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
+		connManager.setMaxTotal(workers);
+		connManager.setDefaultMaxPerRoute(workers);
+		Fetcher fetcher = new HttpFetcher(HttpClientBuilder.create().setConnectionManager(connManager).build());
+
+		BlockingQueue<Request> requestQueue = new LinkedBlockingQueue<Request>();
+		BlockingQueue<Page> pageQueue = new LinkedBlockingQueue<Page>();
+		for (int i = 0; i < pages; i++) {
+			requestQueue.offer(Request.create(baseUrl + i));
+		}
+
+		long start = System.nanoTime();
+		List<SpiderWorker> spiders = new ArrayList<SpiderWorker>();
+		for (int i = 0; i < workers; i++) {
+			SpiderWorker spider = new SpiderWorker(requestQueue, pageQueue, fetcher, null);
+			spiders.add(spider);
+			executor.submit(spider);
+		}
+		int received = 0;
+		while (received < pages) {
+			if (pageQueue.poll(10, TimeUnit.SECONDS) == null) {
+				System.out.println("timeout while waiting pages, received " + received);
+				break;
+			}
+			received++;
+		}
+		long elapsed = System.nanoTime() - start;
+		for (SpiderWorker spider : spiders) {
+			spider.stop();
+		}
+		executor.shutdownNow();
+		connManager.shutdown();
+		return received * 1e9 / elapsed;
+	}
+
+}
@@ -0,0 +1,157 @@
+package jcrawler.exporter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import jcrawler.Page;
+import jcrawler.Request;
+import jcrawler.support.Jsons_;
+
+/**
+ * 多个导出线程并发导出时，对比FileExporter与原有实现(全局锁、pretty json)的吞吐率(lines/sec)。
+ *
+ * 每个线程导出的page分布在若干个signature上，以此模拟多种类型request的输出文件。计时包含close，即所有数据都已写出到文件。
+ *
+ * 运行方式：java jcrawler.exporter.FileExporterBenchmark [threads] [pagesPerThread] [signatures]
+ *
+ * @author warhin.wang
+ *
+ */
+public class FileExporterBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int pagesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+		int signatures = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+		Page[][] pages = new Page[threads][pagesPerThread];
+		for (int t = 0; t < threads; t++) {
+			for (int i = 0; i < pagesPerThread; i++) {
+				Page page = Page.create().request(Request.create("http://bench.jcrawler/" + t + "/" + i).signature("s" + (i % signatures)));
+				page.addPageItem("url", "http://bench.jcrawler/" + t + "/" + i).addPageItem("title", "title of page " + i)
+						.addPageItem("price", i * 0.01).addPageItem("tags", new String[] { "a", "b", "c" });
+				pages[t][i] = page;
+			}
+		}
+
+		for (int round = 0; round < 2; round++) {
+			File dir = Files.createTempDirectory("jcrawler-bench").toFile();
+			try {
+				report("LegacyFileExporter", new LegacyFileExporter(new File(dir, "legacy")), pages, 1);
+				report("FileExporter", new FileExporter(new File(dir, "page").getPath()), pages, 1);
+				report("FileExporter(batch 100)", new FileExporter(new File(dir, "batch").getPath()), pages, 100);
+			} finally {
+				FileUtils.deleteQuietly(dir);
+			}
+		}
+	}
+
+	private static void report(String name, Exporter exporter, Page[][] pages, int batchSize) throws Exception {
+		int total = pages.length * pages[0].length;
+		long elapsed = run(exporter, pages, batchSize);
+		System.out.printf("%-24s %d threads : %.0f lines/sec%n", name, pages.length, total * 1e9 / elapsed);
+	}
+
+	private static long run(final Exporter exporter, Page[][] pages, final int batchSize) throws Exception {
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final CountDownLatch doneSignal = new CountDownLatch(pages.length);
+		for (final Page[] own : pages) {
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						startSignal.await();
+						if (batchSize > 1 && exporter instanceof BatchExporter) {
+							List<Page> batch = new ArrayList<Page>(batchSize);
+							for (Page page : own) {
+								batch.add(page);
+								if (batch.size() == batchSize) {
+									((BatchExporter) exporter).export(batch);
+									batch.clear();
+								}
+							}
+							if (!batch.isEmpty()) {
+								((BatchExporter) exporter).export(batch);
+							}
+						} else {
+							for (Page page : own) {
+								exporter.export(page);
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						doneSignal.countDown();
+					}
+				}
+
+			}).start();
+		}
+		long start = System.nanoTime();
+		startSignal.countDown();
+		doneSignal.await();
+		exporter.close();
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * 原有的FileExporter实现：每个page都要获取一次全局锁查找writer，pageItems先转为pretty json字符串再写出，直到close时才flush。
+	 */
+	private static class LegacyFileExporter implements Exporter, Closeable {
+
+		private final File target;
+
+		private final Map<String, BufferedWriter> bufferedWriters = new HashMap<String, BufferedWriter>();
+
+		LegacyFileExporter(File target) throws IOException {
+			FileUtils.forceMkdir(target);
+			this.target = target;
+		}
+
+		@Override
+		public void export(Page page) {
+			String signature = page.request().signature();
+			BufferedWriter writer = null;
+			synchronized (bufferedWriters) {
+				writer = bufferedWriters.get(signature);
+				if (writer == null) {
+					try {
+						writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(target, signature), true), "UTF-8"));
+					} catch (IOException e) {
+						throw new ExportException("create bufferedWriter error!", e);
+					}
+					bufferedWriters.put(signature, writer);
+				}
+			}
+			try {
+				IOUtils.write(Jsons_.toString(page.getPageItems()), writer);
+				writer.newLine();
+			} catch (IOException e) {
+				throw new ExportException("write data to target error!", e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (BufferedWriter writer : bufferedWriters.values()) {
+				IOUtils.closeQuietly(writer);
+			}
+		}
+
+	}
+
+}
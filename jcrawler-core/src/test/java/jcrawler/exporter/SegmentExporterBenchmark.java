@@ -0,0 +1,90 @@
+package jcrawler.exporter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import jcrawler.Page;
+import jcrawler.Request;
+import jcrawler.support.Jsons_;
+
+/**
+ * 对比FileExporter(逐行json)与SegmentExporter(分块压缩列式)输出同样pageItems时的文件大小和全量读回耗时。
+ *
+ * 运行方式：java jcrawler.exporter.SegmentExporterBenchmark [pages]
+ *
+ * @author warhin.wang
+ *
+ */
+public class SegmentExporterBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		File dir = Files.createTempDirectory("jcrawler-bench").toFile();
+		try {
+			File json = new File(dir, "json");
+			File segment = new File(dir, "segment");
+			FileExporter fileExporter = new FileExporter(json.getPath());
+			SegmentExporter segmentExporter = new SegmentExporter(segment.getPath());
+			for (int i = 0; i < pages; i++) {
+				Page page = Page.create().request(Request.create("http://bench.jcrawler/item/" + i).signature("items"));
+				page.addPageItem("url", "http://bench.jcrawler/item/" + i).addPageItem("title", "title of item " + (i % 5000))
+						.addPageItem("category", "category-" + (i % 20)).addPageItem("price", (i % 1000) * 0.5)
+						.addPageItem("stock", i % 300).addPageItem("available", i % 3 != 0);
+				fileExporter.export(page);
+				segmentExporter.export(page);
+			}
+			fileExporter.close();
+			segmentExporter.close();
+
+			File jsonFile = new File(json, "items");
+			File segmentFile = new File(segment, "items" + SegmentExporter.SUFFIX);
+			for (int round = 0; round < 3; round++) {
+				long start = System.nanoTime();
+				long count = 0;
+				BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(jsonFile), StandardCharsets.UTF_8));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (Jsons_.toObject(line, Map.class) != null) {
+							count++;
+						}
+					}
+				} finally {
+					IOUtils.closeQuietly(reader);
+				}
+				report("FileExporter", jsonFile.length(), count, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				count = 0;
+				SegmentReader segmentReader = new SegmentReader(segmentFile);
+				try {
+					for (Map<String, Object> record : segmentReader) {
+						if (record != null) {
+							count++;
+						}
+					}
+				} finally {
+					segmentReader.close();
+				}
+				report("SegmentExporter", segmentFile.length(), count, System.nanoTime() - start);
+			}
+		} finally {
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+	private static void report(String name, long bytes, long records, long elapsed) {
+		System.out.printf("%-16s %d records : %d bytes (%.1f bytes/record), read %.0f records/sec%n", name, records, bytes,
+				(double) bytes / records, records * 1e9 / elapsed);
+	}
+
+}
@@ -0,0 +1,111 @@
+package jcrawler.exporter;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jcrawler.Page;
+import jcrawler.Request;
+
+public class SegmentReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File write(int records, int blockRecords) throws Exception {
+		File dir = folder.newFolder("segments");
+		SegmentExporter exporter = new SegmentExporter(dir.getPath(), blockRecords, Deflater.BEST_SPEED);
+		for (int i = 0; i < records; i++) {
+			Page page = Page.create().request(Request.create("http://example.com/" + i));
+			page.addPageItem("id", i).addPageItem("title", "标题" + i);
+			if (i % 2 == 0) {
+				// 只有部分记录包含该列
+				page.addPageItem("even", true);
+			}
+			exporter.export(page);
+		}
+		exporter.close();
+		return new File(dir, "output" + SegmentExporter.SUFFIX);
+	}
+
+	private static void assertRecord(long i, Map<String, Object> record) {
+		assertEquals(Long.valueOf(i), record.get("id"));
+		assertEquals("标题" + i, record.get("title"));
+		assertEquals(i % 2 == 0 ? Boolean.TRUE : null, record.get("even"));
+	}
+
+	@Test
+	public void testBlocks() throws Exception {
+		SegmentReader reader = new SegmentReader(write(250, 100));
+		try {
+			assertEquals(3, reader.blocks());
+			assertEquals(250, reader.records());
+			List<Map<String, Object>> block = reader.block(2);
+			assertEquals(50, block.size());
+			for (int i = 0; i < block.size(); i++) {
+				assertRecord(200 + i, block.get(i));
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testSeek() throws Exception {
+		SegmentReader reader = new SegmentReader(write(250, 100));
+		try {
+			for (long from : new long[] { 0, 1, 99, 100, 101, 199, 200, 249 }) {
+				Iterator<Map<String, Object>> iterator = reader.iterator(from);
+				long expected = from;
+				while (iterator.hasNext()) {
+					assertRecord(expected++, iterator.next());
+				}
+				assertEquals(250, expected);
+			}
+			assertFalse(reader.iterator(250).hasNext());
+			assertFalse(reader.iterator(1000).hasNext());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testScanWithoutFooter() throws Exception {
+		File file = write(250, 100);
+		// 截掉footer以及最后一个块的一部分，模拟导出器未正常关闭
+		SegmentReader complete = new SegmentReader(file);
+		List<Map<String, Object>> last = complete.block(2);
+		complete.close();
+		assertEquals(50, last.size());
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// footer共52字节：int块数、3个块各12字节、long偏移和int magic
+			raf.setLength(raf.length() - 52 - 20);
+		} finally {
+			raf.close();
+		}
+		SegmentReader reader = new SegmentReader(file);
+		try {
+			assertEquals(2, reader.blocks());
+			assertEquals(200, reader.records());
+			Iterator<Map<String, Object>> iterator = reader.iterator(150);
+			long expected = 150;
+			while (iterator.hasNext()) {
+				assertRecord(expected++, iterator.next());
+			}
+			assertEquals(200, expected);
+		} finally {
+			reader.close();
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package jcrawler.fetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+import com.sun.net.httpserver.HttpServer;
+
+import jcrawler.Request;
+import jcrawler.Response;
+import jcrawler.Site;
+
+/**
+ * 对比直接使用HttpFetcher与使用CachingFetcher重复爬取同一批未修改页面时，服务端发送的报文主体字节数和吞吐率(pages/sec)。
+ *
+ * 测试服务端基于jdk自带的com.sun.net.httpserver，每个页面带有固定的ETag，请求带有匹配的If-None-Match时返回304。
+ *
+ * 运行方式：java jcrawler.fetcher.CachingFetcherBenchmark [pages] [pageKBytes] [recrawls]
+ *
+ * @author warhin.wang
+ *
+ */
+public class CachingFetcherBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int pageKBytes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int recrawls = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		byte[] page = new byte[pageKBytes * 1024];
+		Arrays.fill(page, (byte) 'x');
+		AtomicLong sentBytes = new AtomicLong();
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			String etag = "\"" + exchange.getRequestURI().getPath().hashCode() + "\"";
+			exchange.getResponseHeaders().add("ETag", etag);
+			exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				exchange.sendResponseHeaders(200, page.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(page);
+				sentBytes.addAndGet(page.length);
+			}
+			exchange.close();
+		});
+		server.start();
+		String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/page/";
+
+		Path dir = Files.createTempDirectory("jcrawler-http-cache");
+		try {
+			Site site = Site.create("caching-bench");
+			Fetcher plain = HttpFetcherFactory.getInstance().getFetcher(site);
+			CachingFetcher caching = new CachingFetcher(plain, new HttpCache(dir));
+			for (int round = 0; round <= recrawls; round++) {
+				report(round == 0 ? "HttpFetcher(first)" : "HttpFetcher", plain, base, site, pages, sentBytes);
+				report(round == 0 ? "CachingFetcher(first)" : "CachingFetcher", caching, base, site, pages, sentBytes);
+			}
+			System.out.println(caching.cache());
+		} finally {
+			server.stop(0);
+			FileUtils.deleteQuietly(dir.toFile());
+		}
+	}
+
+	private static void report(String name, Fetcher fetcher, String base, Site site, int pages, AtomicLong sentBytes)
+			throws IOException {
+		long sentBefore = sentBytes.get();
+		int notModified = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < pages; i++) {
+			Request request = Request.create(base + i);
+			request.site(site);
+			Response response = fetcher.fetch(request);
+			if (response.notModified()) {
+				notModified++;
+			}
+			response.release();
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%-22s %d pages (%d not modified) : %.0f pages/sec, %d body bytes sent%n", name, pages, notModified,
+				pages * 1e9 / elapsed, sentBytes.get() - sentBefore);
+	}
+
+}
@@ -0,0 +1,182 @@
+package jcrawler.fetcher;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jcrawler.Request;
+import jcrawler.Response;
+import jcrawler.ResponseBody;
+
+public class CachingFetcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ResponseBody body(String content) {
+		try {
+			return ResponseBody.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), 1024 * 1024, 1024 * 1024);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 模拟服务端：请求带有当前ETag时返回304，否则返回200和当前版本的页面，并记录每次请求的If-None-Match
+	 */
+	private static class StubFetcher implements Fetcher, AsyncFetcher {
+
+		private String version = "v1";
+
+		private final List<String> validators = new ArrayList<String>();
+
+		private final List<Response> responses = new ArrayList<Response>();
+
+		@Override
+		public Response fetch(Request request) throws FetchException {
+			String validator = request.header(HttpHeaders.IF_NONE_MATCH);
+			validators.add(validator);
+			Response response = Response.create(request).charset("UTF-8");
+			response.header(HttpHeaders.ETAG, "\"" + version + "\"");
+			if (("\"" + version + "\"").equals(validator)) {
+				// 304响应同样持有报文主体(如连接上的剩余字节)，需要被释放
+				response.statusCode(HttpStatus.SC_NOT_MODIFIED).body(body(""), true);
+			} else {
+				response.statusCode(HttpStatus.SC_OK).contentType("text/html").body(body("<html>" + version + "</html>"), true);
+			}
+			responses.add(response);
+			return response;
+		}
+
+		@Override
+		public CompletableFuture<Response> fetchAsync(Request request) {
+			return CompletableFuture.completedFuture(fetch(request));
+		}
+
+	}
+
+	private static String content(Response response) throws IOException {
+		return new String(response.body().bytes(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		StubFetcher stub = new StubFetcher();
+		HttpCache cache = new HttpCache(folder.newFolder("cache").toPath());
+		CachingFetcher fetcher = new CachingFetcher((Fetcher) stub, cache);
+		Request request = Request.create("http://example.com/").requestText(true);
+
+		Response first = fetcher.fetch(request);
+		assertEquals(HttpStatus.SC_OK, first.statusCode());
+		assertFalse(first.notModified());
+		assertEquals(1, cache.stores());
+
+		Response second = fetcher.fetch(request);
+		assertEquals(HttpStatus.SC_OK, second.statusCode());
+		assertTrue(second.notModified());
+		assertEquals("<html>v1</html>", content(second));
+		assertEquals(1, cache.revalidated());
+		// 第一次不带验证器，第二次带上缓存项的ETag
+		assertEquals(null, stub.validators.get(0));
+		assertEquals("\"v1\"", stub.validators.get(1));
+		// 304响应已被释放，验证器在下载结束后从request中移除
+		assertTrue(stub.responses.get(1).body().released());
+		assertFalse(request.hasHeader(HttpHeaders.IF_NONE_MATCH));
+	}
+
+	@Test
+	public void testModified() throws Exception {
+		StubFetcher stub = new StubFetcher();
+		HttpCache cache = new HttpCache(folder.newFolder("cache").toPath());
+		CachingFetcher fetcher = new CachingFetcher((Fetcher) stub, cache);
+		Request request = Request.create("http://example.com/").requestText(true);
+		fetcher.fetch(request);
+		stub.version = "v2";
+
+		Response modified = fetcher.fetch(request);
+		assertFalse(modified.notModified());
+		assertEquals("<html>v2</html>", content(modified));
+		assertEquals(2, cache.stores());
+		// 缓存项已更新为新版本
+		Response cached = fetcher.fetch(request);
+		assertTrue(cached.notModified());
+		assertEquals("<html>v2</html>", content(cached));
+		assertEquals("\"v2\"", stub.validators.get(2));
+	}
+
+	@Test
+	public void testUserValidatorKept() throws Exception {
+		StubFetcher stub = new StubFetcher();
+		HttpCache cache = new HttpCache(folder.newFolder("cache").toPath());
+		CachingFetcher fetcher = new CachingFetcher((Fetcher) stub, cache);
+		Request request = Request.create("http://example.com/").requestText(true);
+		fetcher.fetch(request);
+		request.header(HttpHeaders.IF_NONE_MATCH, "\"user\"");
+		fetcher.fetch(request);
+		assertEquals("\"user\"", stub.validators.get(1));
+		assertEquals("\"user\"", request.header(HttpHeaders.IF_NONE_MATCH));
+	}
+
+	@Test
+	public void testEntryReplacedDuringRevalidation() throws Exception {
+		final StubFetcher stub = new StubFetcher();
+		final HttpCache cache = new HttpCache(folder.newFolder("cache").toPath());
+		Request request = Request.create("http://example.com/").requestText(true);
+		new CachingFetcher((Fetcher) stub, cache).fetch(request);
+		// 下载期间缓存项被删除：304响应被释放，重新发起不带验证器的请求
+		Fetcher removing = new Fetcher() {
+			@Override
+			public Response fetch(Request r) throws FetchException {
+				cache.remove(r);
+				return stub.fetch(r);
+			}
+		};
+		Response response = new CachingFetcher(removing, cache).fetch(request);
+		assertFalse(response.notModified());
+		assertEquals(HttpStatus.SC_OK, response.statusCode());
+		assertEquals("<html>v1</html>", content(response));
+		assertEquals(3, stub.validators.size());
+		assertEquals(null, stub.validators.get(2));
+		assertTrue(stub.responses.get(1).body().released());
+		assertEquals(2, cache.stores());
+	}
+
+	@Test
+	public void testAsyncNotModified() throws Exception {
+		StubFetcher stub = new StubFetcher();
+		HttpCache cache = new HttpCache(folder.newFolder("cache").toPath());
+		CachingFetcher fetcher = new CachingFetcher((AsyncFetcher) stub, cache);
+		Request request = Request.create("http://example.com/").requestText(true);
+		assertFalse(fetcher.fetchAsync(request).join().notModified());
+		Response second = fetcher.fetchAsync(request).join();
+		assertTrue(second.notModified());
+		assertEquals("<html>v1</html>", content(second));
+		assertTrue(stub.responses.get(1).body().released());
+		assertFalse(request.hasHeader(HttpHeaders.IF_NONE_MATCH));
+	}
+
+	@Test
+	public void testPostNotCached() throws Exception {
+		StubFetcher stub = new StubFetcher();
+		HttpCache cache = new HttpCache(folder.newFolder("cache").toPath());
+		CachingFetcher fetcher = new CachingFetcher((Fetcher) stub, cache);
+		Request request = Request.create("http://example.com/form").requestText(true);
+		request.method(Request.Method.POST);
+		fetcher.fetch(request);
+		fetcher.fetch(request);
+		assertEquals(0, cache.stores());
+		assertEquals(null, stub.validators.get(1));
+	}
+
+}
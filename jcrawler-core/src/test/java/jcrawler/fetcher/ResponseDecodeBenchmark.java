@@ -0,0 +1,113 @@
+package jcrawler.fetcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+import jcrawler.Envirenment;
+import jcrawler.ResponseBody;
+import jcrawler.support.BufferPool;
+import jcrawler.support.http.PooledGzipEntity;
+
+/**
+ * 对比原有解码路径(GzipDecompressingEntity + EntityUtils.toString)与池化路径(PooledGzipEntity + ResponseBody)处理gzip压缩页面时
+ * 每个页面分配的字节数和吞吐率(pages/sec)。
+ *
+ * 池化路径模拟爬取时的线程分工：当前线程下载、解码，ResponseBody交给另一个线程(相当于导出线程)释放，因此归还的缓冲不在申请它的线程上。
+ *
+ * 分配字节数通过com.sun.management.ThreadMXBean统计当前线程的分配量得到，仅在HotSpot上可用。
+ *
+ * 运行方式：java jcrawler.fetcher.ResponseDecodeBenchmark [pageKBytes] [pages]
+ *
+ * @author warhin.wang
+ *
+ */
+public class ResponseDecodeBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int pageKBytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int pages = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		StringBuilder html = new StringBuilder("<html><body>");
+		for (int i = 0; html.length() < pageKBytes * 1024; i++) {
+			html.append("<div class=\"item\"><a href=\"/item/").append(i).append("\">商品 ").append(i).append("</a></div>\n");
+		}
+		html.append("</body></html>");
+		ByteArrayOutputStream gz = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(gz);
+		out.write(html.toString().getBytes(StandardCharsets.UTF_8));
+		out.close();
+		byte[] compressed = gz.toByteArray();
+
+		// 在另一个线程上释放ResponseBody
+		final BlockingQueue<ResponseBody> releasing = new ArrayBlockingQueue<ResponseBody>(16);
+		Thread releaser = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						releasing.take().release();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "releaser");
+		releaser.setDaemon(true);
+		releaser.start();
+
+		for (int round = 0; round < 3; round++) {
+			report("EntityUtils", pages, compressed, null);
+			report("ResponseBody(pooled)", pages, compressed, releasing);
+		}
+		releaser.interrupt();
+		System.out.println(BufferPool.BYTES);
+		System.out.println(BufferPool.CHARS);
+	}
+
+	private static void report(String name, int pages, byte[] compressed, BlockingQueue<ResponseBody> releasing)
+			throws Exception {
+		com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long checksum = 0;
+		long reusedBefore = BufferPool.BYTES.reused();
+		long allocatedBefore = mxBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < pages; i++) {
+			checksum += releasing != null ? decodePooled(compressed, releasing) : decode(compressed);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = mxBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		System.out.printf("%-22s %d pages : %.0f pages/sec, %d bytes allocated/page, %d byte buffers reused (checksum %d)%n",
+				name, pages, pages * 1e9 / elapsed, allocated / pages, BufferPool.BYTES.reused() - reusedBefore, checksum);
+	}
+
+	private static int decode(byte[] compressed) throws Exception {
+		HttpEntity entity = new GzipDecompressingEntity(new ByteArrayEntity(compressed));
+		return EntityUtils.toString(entity, "UTF-8").length();
+	}
+
+	private static int decodePooled(byte[] compressed, BlockingQueue<ResponseBody> releasing) throws Exception {
+		HttpEntity entity = new PooledGzipEntity(new ByteArrayEntity(compressed));
+		InputStream in = entity.getContent();
+		ResponseBody body;
+		try {
+			body = ResponseBody.read(in, Envirenment.DEFAULT_MAX_BODY_BYTES, Envirenment.DEFAULT_BODY_SPILL_THRESHOLD);
+		} finally {
+			in.close();
+		}
+		int length = body.text("UTF-8").length();
+		releasing.put(body);
+		return length;
+	}
+
+}
@@ -0,0 +1,123 @@
+package jcrawler.fetcher;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.concurrent.Cancellable;
+import org.junit.Test;
+
+import jcrawler.Envirenment;
+import jcrawler.Request;
+import jcrawler.ResponseBody;
+
+public class TransferLimiterTest {
+
+	/**
+	 * 记录被调用次数的中断方式
+	 */
+	private static class CountingAborter implements Cancellable {
+
+		private final AtomicInteger cancelled = new AtomicInteger();
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		@Override
+		public boolean cancel() {
+			cancelled.incrementAndGet();
+			latch.countDown();
+			return true;
+		}
+
+	}
+
+	@Test
+	public void testBodyTooLarge() throws Exception {
+		CountingAborter aborter = new CountingAborter();
+		Request request = Request.create("http://example.com/large").maxBodyBytes(1000);
+		TransferLimiter limiter = new TransferLimiter(request, aborter).start();
+		long aborts = FetchMetrics.GLOBAL.aborts(FetchAbortException.Reason.BODY_TOO_LARGE);
+		CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(new byte[1024 * 1024]));
+		ResponseBody body = ResponseBody.read(limiter.limit(in), limiter.maxBodyBytes(), Envirenment.DEFAULT_BODY_SPILL_THRESHOLD);
+		assertTrue(body.truncated());
+		assertEquals(1000, body.size());
+		// 超过最大字节数后不再读取剩余的报文主体
+		assertTrue("read " + in.getByteCount(), in.getByteCount() < 100 * 1024);
+
+		assertTrue(limiter.abort(FetchAbortException.Reason.BODY_TOO_LARGE));
+		assertFalse(limiter.abort(FetchAbortException.Reason.DEADLINE_EXCEEDED));
+		assertEquals(1, aborter.cancelled.get());
+		assertEquals(FetchAbortException.Reason.BODY_TOO_LARGE, limiter.reason());
+		// 截断的报文主体仍然可用，下载不算失败
+		assertFalse(limiter.failed());
+		assertEquals(aborts + 1, FetchMetrics.GLOBAL.aborts(FetchAbortException.Reason.BODY_TOO_LARGE));
+		limiter.finish();
+		body.release();
+	}
+
+	@Test(timeout = 5000)
+	public void testDeadlineExceeded() throws Exception {
+		CountingAborter aborter = new CountingAborter();
+		Request request = Request.create("http://example.com/deadline").downloadDeadline(100);
+		TransferLimiter limiter = new TransferLimiter(request, aborter).start();
+		InputStream in = limiter.limit(new ByteArrayInputStream(new byte[100]));
+		assertEquals(10, in.read(new byte[10]));
+		// 读取阻塞时由定时线程中断连接
+		assertTrue(aborter.latch.await(2, TimeUnit.SECONDS));
+		assertEquals(FetchAbortException.Reason.DEADLINE_EXCEEDED, limiter.reason());
+		assertTrue(limiter.failed());
+		try {
+			in.read(new byte[10]);
+			fail("the read after the deadline should fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("DEADLINE_EXCEEDED"));
+		}
+		FetchAbortException exception = limiter.exception(null);
+		assertEquals(FetchAbortException.Reason.DEADLINE_EXCEEDED, exception.reason());
+		limiter.finish();
+		assertEquals(1, aborter.cancelled.get());
+	}
+
+	@Test
+	public void testFinishCancelsDeadline() throws Exception {
+		CountingAborter aborter = new CountingAborter();
+		Request request = Request.create("http://example.com/fast").downloadDeadline(100);
+		TransferLimiter limiter = new TransferLimiter(request, aborter).start();
+		InputStream in = limiter.limit(new ByteArrayInputStream(new byte[100]));
+		assertEquals(100, IOUtils.toByteArray(in).length);
+		limiter.finish();
+		assertFalse(aborter.latch.await(300, TimeUnit.MILLISECONDS));
+		assertNull(limiter.reason());
+		assertFalse(limiter.abort(FetchAbortException.Reason.BODY_TOO_LARGE));
+		assertEquals(0, aborter.cancelled.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testTransferTooSlow() throws Exception {
+		CountingAborter aborter = new CountingAborter();
+		Request request = Request.create("http://example.com/slow").minTransferRate(1024 * 1024);
+		TransferLimiter limiter = new TransferLimiter(request, aborter).start();
+		limiter.bodyStarted();
+		// 宽限期内不检查传输速率
+		limiter.transferred(10);
+		assertNull(limiter.reason());
+		Thread.sleep(Envirenment.DEFAULT_TRANSFER_RATE_GRACE + 100);
+		try {
+			limiter.transferred(10);
+			fail("the transfer should be too slow");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("TRANSFER_TOO_SLOW"));
+		}
+		assertEquals(FetchAbortException.Reason.TRANSFER_TOO_SLOW, limiter.reason());
+		assertTrue(limiter.failed());
+		assertEquals(1, aborter.cancelled.get());
+	}
+
+}
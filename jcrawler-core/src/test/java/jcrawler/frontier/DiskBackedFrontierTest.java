@@ -0,0 +1,118 @@
+package jcrawler.frontier;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jcrawler.Request;
+
+public class DiskBackedFrontierTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Request request(int i) {
+		Request request = Request.create("http://example.com/" + i).signature("s" + (i % 3)).prior(i % 5);
+		request.ext("index", "第" + i + "个");
+		return request;
+	}
+
+	private static void assertRequest(int i, Request request) {
+		assertNotNull("missing request " + i, request);
+		assertEquals("http://example.com/" + i, request.url2str());
+		assertEquals("s" + (i % 3), request.signature());
+		assertEquals(i % 5, request.prior());
+		assertEquals("第" + i + "个", request.ext("index"));
+	}
+
+	private static int segmentFiles(File dir) {
+		String[] names = dir.list();
+		int count = 0;
+		for (String name : names) {
+			if (name.endsWith(".seg")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testSpillAndRefillKeepFifo() throws Exception {
+		File dir = folder.newFolder("frontier");
+		DiskBackedFrontier frontier = new DiskBackedFrontier(dir.getPath(), 10, 25, new RequestCodec());
+		for (int i = 0; i < 200; i++) {
+			assertTrue(frontier.offer(request(i)));
+		}
+		assertEquals(200, frontier.size());
+		assertEquals(190, frontier.spilled());
+		// 190个request写入8个segment文件
+		assertEquals(8, segmentFiles(dir));
+
+		for (int i = 0; i < 200; i++) {
+			assertRequest(i, frontier.poll());
+		}
+		assertNull(frontier.poll());
+		assertEquals(0, frontier.size());
+		assertEquals(0, frontier.spilled());
+		// 读完的segment文件随即删除
+		assertEquals(0, segmentFiles(dir));
+		frontier.close();
+	}
+
+	@Test
+	public void testInterleavedOfferAndPoll() throws Exception {
+		DiskBackedFrontier frontier = new DiskBackedFrontier(folder.newFolder("frontier").getPath(), 4, 7, new RequestCodec());
+		List<Request> polled = new ArrayList<Request>();
+		int next = 0;
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < 5; i++) {
+				frontier.offer(request(next++));
+			}
+			// 每轮取出的比加入的少，队列持续增长并不断在hot段和磁盘之间交替
+			frontier.drainTo(polled, 3);
+		}
+		frontier.drainTo(polled);
+		assertEquals(next, polled.size());
+		for (int i = 0; i < polled.size(); i++) {
+			assertRequest(i, polled.get(i));
+		}
+		frontier.close();
+	}
+
+	@Test
+	public void testPeekRefillsFromDisk() throws Exception {
+		DiskBackedFrontier frontier = new DiskBackedFrontier(folder.newFolder("frontier").getPath(), 2, 10, new RequestCodec());
+		for (int i = 0; i < 5; i++) {
+			frontier.offer(request(i));
+		}
+		assertRequest(0, frontier.poll());
+		assertRequest(1, frontier.poll());
+		assertRequest(2, frontier.peek());
+		assertRequest(2, frontier.poll(10, TimeUnit.MILLISECONDS));
+		assertRequest(3, frontier.take());
+		assertRequest(4, frontier.take());
+		assertNull(frontier.poll(10, TimeUnit.MILLISECONDS));
+		frontier.close();
+	}
+
+	@Test
+	public void testCloseDeletesSegments() throws Exception {
+		File dir = folder.newFolder("frontier");
+		DiskBackedFrontier frontier = new DiskBackedFrontier(dir.getPath(), 2, 10, new RequestCodec());
+		for (int i = 0; i < 50; i++) {
+			frontier.offer(request(i));
+		}
+		assertTrue(segmentFiles(dir) > 0);
+		frontier.close();
+		assertEquals(0, segmentFiles(dir));
+		assertEquals(0, frontier.size());
+	}
+
+}
@@ -0,0 +1,84 @@
+package jcrawler.frontier;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import jcrawler.Request;
+import jcrawler.Site;
+
+public class PolitenessFrontierTest {
+
+	private static Request request(Site site, String url) {
+		Request request = Request.create(url);
+		request.site(site);
+		return request;
+	}
+
+	/**
+	 * 从frontier中依次取出count个request，每取出一个立即报告完成，返回耗时(毫秒)
+	 */
+	private static long drain(PolitenessFrontier frontier, int count) throws InterruptedException {
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			Request request = frontier.poll(5, TimeUnit.SECONDS);
+			assertNotNull(request);
+			frontier.completed(request, 1, AimdConcurrency.Outcome.SUCCESS);
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	@Test(timeout = 10000)
+	public void testSingleHostSpacingSharedByConnections() throws Exception {
+		Site site = Site.create("example").sleepTime(200).maxConnectionsPerRoute(10);
+		PolitenessFrontier frontier = new PolitenessFrontier();
+		for (int i = 0; i < 21; i++) {
+			frontier.offer(request(site, "http://example.com/" + i));
+		}
+		// 每条连接间隔200ms，10条连接时同一host约每20ms取出一个，20个间隔约400ms，而不是4s
+		long elapsed = drain(frontier, 21);
+		assertTrue("elapsed " + elapsed, elapsed >= 350);
+		assertTrue("elapsed " + elapsed, elapsed < 2000);
+		assertEquals(0, frontier.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testSingleHostSpacingFollowsAdaptiveLimit() throws Exception {
+		Site site = Site.create("example").sleepTime(200);
+		PolitenessFrontier frontier = new PolitenessFrontier(new AimdConcurrency(4, 4, 0.5, 0.8, 1.5));
+		for (int i = 0; i < 11; i++) {
+			frontier.offer(request(site, "http://example.com/" + i));
+		}
+		// 并发上限为4时同一host约每50ms取出一个
+		long elapsed = drain(frontier, 11);
+		assertEquals(Integer.valueOf(4), frontier.hostLimits().get("example.com"));
+		assertTrue("elapsed " + elapsed, elapsed >= 450);
+		assertTrue("elapsed " + elapsed, elapsed < 1800);
+	}
+
+	@Test(timeout = 10000)
+	public void testSingleConnectionKeepsSleepTime() throws Exception {
+		Site site = Site.create("example").sleepTime(100).maxConnectionsPerRoute(1);
+		PolitenessFrontier frontier = new PolitenessFrontier();
+		for (int i = 0; i < 4; i++) {
+			frontier.offer(request(site, "http://example.com/" + i));
+		}
+		long elapsed = drain(frontier, 4);
+		assertTrue("elapsed " + elapsed, elapsed >= 280);
+	}
+
+	@Test(timeout = 10000)
+	public void testHostsDoNotWaitForEachOther() throws Exception {
+		Site site = Site.create("example").sleepTime(1000).maxConnectionsPerRoute(1);
+		PolitenessFrontier frontier = new PolitenessFrontier();
+		for (int i = 0; i < 10; i++) {
+			frontier.offer(request(site, "http://host" + i + ".example.com/"));
+		}
+		long elapsed = drain(frontier, 10);
+		assertTrue("elapsed " + elapsed, elapsed < 500);
+		assertEquals(10, frontier.hosts());
+	}
+
+}
@@ -0,0 +1,84 @@
+package jcrawler.frontier;
+
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import jcrawler.Request;
+
+/**
+ * 多线程同时存取request时，对比PriorityFrontier与PriorityBlockingQueue的吞吐率(ops/sec)。
+ *
+ * 每个线程交替offer和poll，request的prior在[0, 7]之间循环分布。
+ *
+ * 运行方式：java jcrawler.frontier.PriorityFrontierBenchmark [threads] [opsPerThread]
+ *
+ * @author warhin.wang
+ *
+ */
+public class PriorityFrontierBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+		final Request[] requests = new Request[8];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = Request.create("http://bench.jcrawler/" + i).prior(i);
+		}
+
+		for (int round = 0; round < 2; round++) {
+			BlockingQueue<Request> pbq = new PriorityBlockingQueue<Request>(11, new Comparator<Request>() {
+
+				@Override
+				public int compare(Request arg0, Request arg1) {
+					return arg1.prior() - arg0.prior();
+				}
+
+			});
+			report("PriorityBlockingQueue", pbq, requests, threads, opsPerThread);
+			report("PriorityFrontier", new PriorityFrontier(), requests, threads, opsPerThread);
+		}
+	}
+
+	private static void report(String name, BlockingQueue<Request> queue, Request[] requests, int threads,
+			int opsPerThread) throws InterruptedException {
+		long elapsed = run(queue, requests, threads, opsPerThread);
+		System.out.printf("%-22s %d threads : %.0f ops/sec%n", name, threads,
+				2L * threads * opsPerThread * 1e9 / elapsed);
+	}
+
+	private static long run(final BlockingQueue<Request> queue, final Request[] requests, int threads,
+			final int opsPerThread) throws InterruptedException {
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final CountDownLatch doneSignal = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int offset = t;
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						startSignal.await();
+						for (int i = 0; i < opsPerThread; i++) {
+							queue.offer(requests[(offset + i) % requests.length]);
+							queue.poll(1, TimeUnit.SECONDS);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						doneSignal.countDown();
+					}
+				}
+
+			}).start();
+		}
+		long start = System.nanoTime();
+		startSignal.countDown();
+		doneSignal.await();
+		return System.nanoTime() - start;
+	}
+
+}
@@ -0,0 +1,50 @@
+package jcrawler.robots;
+
+import java.util.Random;
+
+/**
+ * 测试编译后的robots规则判断一个url是否允许爬取的耗时(ns/url)，规则包含普通前缀、*通配和$结尾。
+ *
+ * 运行方式：java jcrawler.robots.RobotsRulesBenchmark [urls] [rounds]
+ *
+ * @author warhin.wang
+ *
+ */
+public class RobotsRulesBenchmark {
+
+	private static final String ROBOTS = "User-agent: *\n"
+			+ "Disallow: /private\n"
+			+ "Allow: /private/public\n"
+			+ "Disallow: /search\n"
+			+ "Disallow: /*.pdf$\n"
+			+ "Disallow: /*?sid=\n"
+			+ "Disallow: /cart/*/checkout\n"
+			+ "Allow: /cart/view\n"
+			+ "Crawl-delay: 1\n";
+
+	public static void main(String[] args) {
+		int urls = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		RobotsRules rules = RobotsRules.parse(ROBOTS, "jcrawler");
+		String[] paths = new String[1024];
+		Random random = new Random(1);
+		for (int i = 0; i < paths.length; i++) {
+			String dir = i % 7 == 0 ? "/private/" : (i % 11 == 0 ? "/cart/" + i + "/" : "/dir" + random.nextInt(50) + "/");
+			paths[i] = dir + "page-" + random.nextInt(100000) + (i % 3 == 0 ? ".pdf" : ".html") + (i % 5 == 0 ? "?sid=" + i : "");
+		}
+		for (int round = 0; round < rounds; round++) {
+			int allowed = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < urls; i++) {
+				if (rules.allowed(paths[i & (paths.length - 1)])) {
+					allowed++;
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("round %d : %d urls (%d allowed) : %.0f ns/url%n", round, urls, allowed, (double) elapsed / urls);
+		}
+		System.out.println(rules);
+	}
+
+}
@@ -0,0 +1,149 @@
+package jcrawler.robots;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+
+import org.junit.Test;
+
+public class RobotsRulesTest {
+
+	private static RobotsRules rules(String... lines) {
+		StringBuilder sb = new StringBuilder("User-agent: *\n");
+		for (String line : lines) {
+			sb.append(line).append('\n');
+		}
+		return RobotsRules.parse(sb.toString(), "jcrawler");
+	}
+
+	@Test
+	public void testLongestMatchWins() {
+		RobotsRules rules = rules("Disallow: /folder", "Allow: /folder/page");
+		assertTrue(rules.allowed("/folder/page"));
+		assertTrue(rules.allowed("/folder/page.html"));
+		assertFalse(rules.allowed("/folder/other"));
+		assertFalse(rules.allowed("/folder"));
+		assertTrue(rules.allowed("/other"));
+
+		rules = rules("Allow: /p", "Disallow: /");
+		assertTrue(rules.allowed("/page"));
+		assertFalse(rules.allowed("/other"));
+
+		// 长度按原始pattern计算，*也计入长度
+		rules = rules("Allow: /page", "Disallow: /*.html");
+		assertTrue(rules.allowed("/page"));
+		assertFalse(rules.allowed("/page.html"));
+	}
+
+	@Test
+	public void testAllowWinsTie() {
+		RobotsRules rules = rules("Disallow: /page", "Allow: /page");
+		assertTrue(rules.allowed("/page"));
+		rules = rules("Allow: /page", "Disallow: /page");
+		assertTrue(rules.allowed("/page"));
+		rules = rules("Disallow: /a*c", "Allow: /ab*");
+		assertTrue(rules.allowed("/abc"));
+	}
+
+	@Test
+	public void testNoMatchAllowed() {
+		assertTrue(rules("Disallow: /private").allowed("/public"));
+		assertTrue(rules("Disallow:").allowed("/anything"));
+		assertTrue(RobotsRules.parse("", "jcrawler").allowed("/anything"));
+		assertFalse(rules("Disallow: /").allowed("/anything"));
+	}
+
+	@Test
+	public void testEndAnchor() {
+		RobotsRules rules = rules("Disallow: /*.php$");
+		assertFalse(rules.allowed("/index.php"));
+		assertFalse(rules.allowed("/a/b.php"));
+		assertTrue(rules.allowed("/index.php?x=1"));
+		assertTrue(rules.allowed("/index.php5"));
+
+		rules = rules("Disallow: /fish$");
+		assertFalse(rules.allowed("/fish"));
+		assertTrue(rules.allowed("/fish/"));
+		assertTrue(rules.allowed("/fishing"));
+
+		// 只有末尾的$表示结尾
+		rules = rules("Disallow: /a$b");
+		assertFalse(rules.allowed("/a$b"));
+		assertFalse(rules.allowed("/a$bc"));
+		assertTrue(rules.allowed("/a"));
+	}
+
+	@Test
+	public void testWildcard() {
+		RobotsRules rules = rules("Disallow: /*?sid=", "Disallow: /cart/*/checkout", "Allow: /cart/view");
+		assertFalse(rules.allowed("/list?sid=1"));
+		assertTrue(rules.allowed("/list?a=1&sid=1"));
+		assertFalse(rules.allowed("/cart/42/checkout"));
+		assertFalse(rules.allowed("/cart/a/b/checkout/done"));
+		assertTrue(rules.allowed("/cart/42/view"));
+		assertTrue(rules.allowed("/cart/view"));
+	}
+
+	@Test(timeout = 2000)
+	public void testWildcardNotExponential() {
+		RobotsRules rules = rules("Disallow: /*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*b", "Allow: /*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*c$");
+		StringBuilder path = new StringBuilder("/");
+		for (int i = 0; i < 5000; i++) {
+			path.append('a');
+		}
+		assertTrue(rules.allowed(path.toString()));
+		assertFalse(rules.allowed(path + "b"));
+		assertTrue(rules.allowed(path + "c"));
+	}
+
+	@Test
+	public void testAgentSelection() {
+		String robots = "User-agent: *\n"
+				+ "Disallow: /\n"
+				+ "\n"
+				+ "User-agent: jcrawler\n"
+				+ "Disallow: /private\n"
+				+ "\n"
+				+ "User-agent: jcrawler-news\n"
+				+ "Disallow: /news\n"
+				+ "\n"
+				+ "User-agent: other\n"
+				+ "User-agent: JCrawler\n"
+				+ "Disallow: /tmp\n"
+				+ "Crawl-delay: 2\n";
+		// 同名的多个组合并，user-agent不区分大小写
+		RobotsRules rules = RobotsRules.parse(robots, "JCrawler");
+		assertFalse(rules.allowed("/private/a"));
+		assertFalse(rules.allowed("/tmp/a"));
+		assertTrue(rules.allowed("/news/a"));
+		assertTrue(rules.allowed("/"));
+		assertEquals(2000, rules.crawlDelay());
+
+		// 选用匹配的最长user-agent
+		rules = RobotsRules.parse(robots, "jcrawler-news");
+		assertFalse(rules.allowed("/news/a"));
+		assertTrue(rules.allowed("/private/a"));
+
+		// 没有匹配的组时使用*组
+		rules = RobotsRules.parse(robots, "somebot");
+		assertFalse(rules.allowed("/anything"));
+	}
+
+	@Test
+	public void testNoApplicableGroup() {
+		RobotsRules rules = RobotsRules.parse("User-agent: somebot\nDisallow: /\n", "jcrawler");
+		assertTrue(rules.allowed("/anything"));
+	}
+
+	@Test
+	public void testUrlAndEscapes() throws Exception {
+		RobotsRules rules = rules("Disallow: /*?", "Disallow: /%e4%b8%ad", "Disallow: /文");
+		assertTrue(rules.allowed(new URL("http://example.com")));
+		assertTrue(rules.allowed(new URL("http://example.com/a")));
+		assertFalse(rules.allowed(new URL("http://example.com/a?b=c")));
+		assertFalse(rules.allowed(new URL("http://example.com?b=c")));
+		assertFalse(rules.allowed("/%E4%B8%AD"));
+		assertFalse(rules.allowed("/%e6%96%87x"));
+	}
+
+}
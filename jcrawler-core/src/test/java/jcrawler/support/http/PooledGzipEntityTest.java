@@ -0,0 +1,146 @@
+package jcrawler.support.http;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.junit.Test;
+
+public class PooledGzipEntityTest {
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(data);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.write(part, 0, part.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] text(String prefix, int lines) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			sb.append(prefix).append(i).append('\n');
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] random(int length) {
+		byte[] data = new byte[length];
+		new Random(42).nextBytes(data);
+		return data;
+	}
+
+	private static byte[] decode(byte[] gzipped) throws IOException {
+		InputStream in = new PooledGzipEntity(new ByteArrayEntity(gzipped)).getContent();
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * 每次最多返回几个字节的输入流，使member的边界落在输入缓冲的任意位置
+	 */
+	private static InputStream trickle(byte[] data, final int max) {
+		return new FilterInputStream(new ByteArrayInputStream(data)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, max));
+			}
+		};
+	}
+
+	@Test
+	public void testSingleMember() throws Exception {
+		byte[] data = text("第一行", 5000);
+		assertArrayEquals(data, decode(gzip(data)));
+		assertArrayEquals(new byte[0], decode(gzip(new byte[0])));
+	}
+
+	@Test
+	public void testMultipleMembers() throws Exception {
+		byte[] first = text("first", 3000);
+		byte[] second = random(20000);
+		byte[] third = text("third", 10);
+		byte[] gzipped = concat(gzip(first), gzip(second), gzip(third));
+		assertArrayEquals(concat(first, second, third), decode(gzipped));
+		for (int max : new int[] { 1, 3, 7, 4096 }) {
+			InputStream in = new PooledGzipEntity(new InputStreamEntity(trickle(gzipped, max))).getContent();
+			try {
+				assertArrayEquals("chunk " + max, concat(first, second, third), IOUtils.toByteArray(in));
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	@Test
+	public void testHeaderWithFileName() throws Exception {
+		byte[] data = text("named", 100);
+		byte[] gzipped = gzip(data);
+		// 设置FNAME标志，在10字节的固定头部之后插入以0结尾的文件名
+		gzipped[3] = 8;
+		byte[] named = concat(Arrays.copyOfRange(gzipped, 0, 10), "page.html\0".getBytes(StandardCharsets.US_ASCII),
+				Arrays.copyOfRange(gzipped, 10, gzipped.length));
+		assertArrayEquals(data, decode(named));
+	}
+
+	@Test
+	public void testTrailingGarbageIgnored() throws Exception {
+		byte[] data = text("garbage", 100);
+		assertArrayEquals(data, decode(concat(gzip(data), new byte[] { 0, 0, 0, 0 })));
+	}
+
+	@Test(expected = ZipException.class)
+	public void testCorruptedCrc() throws Exception {
+		byte[] gzipped = gzip(text("crc", 100));
+		// trailer的前4个字节为CRC32
+		gzipped[gzipped.length - 8] ^= 0x01;
+		decode(gzipped);
+	}
+
+	@Test(expected = ZipException.class)
+	public void testCorruptedSizeInSecondMember() throws Exception {
+		byte[] second = gzip(text("size", 100));
+		second[second.length - 1] ^= 0x01;
+		decode(concat(gzip(text("ok", 100)), second));
+	}
+
+	@Test(expected = ZipException.class)
+	public void testNotGzip() throws Exception {
+		decode("<html></html>".getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testWriteTo() throws Exception {
+		byte[] data = random(100000);
+		PooledGzipEntity entity = new PooledGzipEntity(new ByteArrayEntity(gzip(data)));
+		assertEquals(-1, entity.getContentLength());
+		assertNull(entity.getContentEncoding());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertArrayEquals(data, out.toByteArray());
+	}
+
+}
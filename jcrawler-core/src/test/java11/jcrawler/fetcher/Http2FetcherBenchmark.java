@@ -0,0 +1,359 @@
+package jcrawler.fetcher;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+
+import jcrawler.Request;
+import jcrawler.Response;
+import jcrawler.Site;
+
+/**
+ * 对比HttpFetcher(HTTP/1.1连接池)与Http2Fetcher(HTTP/2多路复用)对同一host并发下载时的吞吐率(requests/sec)和服务端接受的连接数。
+ *
+ * 测试服务端是一个只支持h2c升级的最小HTTP/2实现：不解析请求头，每个stream在固定延迟后返回同样的页面，不支持升级的连接按HTTP/1.1 keep-alive处理。
+ *
+ * 运行方式：java jcrawler.fetcher.Http2FetcherBenchmark [requests] [concurrency] [latencyMills]
+ *
+ * @author warhin.wang
+ *
+ */
+public class Http2FetcherBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		long latency = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+		byte[] page = new byte[4096];
+		Arrays.fill(page, (byte) 'x');
+		for (int round = 0; round < 2; round++) {
+			BenchServer h1Server = new BenchServer(latency, page);
+			Site h1Site = Site.create("h1-bench-" + round).maxConnections(concurrency).maxConnectionsPerRoute(concurrency);
+			report("HttpFetcher", h1Server, h1Site, HttpFetcherFactory.getInstance().getFetcher(h1Site), requests, concurrency);
+			h1Server.close();
+
+			BenchServer h2Server = new BenchServer(latency, page);
+			Site h2Site = Site.create("h2-bench-" + round).http2(true);
+			Http2Fetcher http2Fetcher = new Http2Fetcher();
+			report("Http2Fetcher", h2Server, h2Site, http2Fetcher, requests, concurrency);
+			reportAsync("Http2Fetcher(async)", h2Server, h2Site, http2Fetcher, requests, concurrency);
+			http2Fetcher.close();
+			h2Server.close();
+		}
+		System.out.println(FetchMetrics.GLOBAL);
+	}
+
+	private static void report(String name, BenchServer server, Site site, Fetcher fetcher, int requests, int concurrency)
+			throws Exception {
+		warmUp(server, site, fetcher);
+		int connectionsBefore = server.connections.get();
+		ExecutorService threads = Executors.newFixedThreadPool(concurrency);
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		long start = System.nanoTime();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < concurrency; t++) {
+			futures.add(threads.submit(() -> {
+				int i;
+				while ((i = next.getAndIncrement()) < requests) {
+					try {
+						fetcher.fetch(request(server, site, i)).release();
+					} catch (FetchException e) {
+						failed.incrementAndGet();
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		long elapsed = System.nanoTime() - start;
+		threads.shutdown();
+		print(name, requests, failed.get(), elapsed, server.connections.get() - connectionsBefore, server.upgrades.get());
+	}
+
+	private static void reportAsync(String name, BenchServer server, Site site, AsyncFetcher fetcher, int requests, int concurrency)
+			throws Exception {
+		int connectionsBefore = server.connections.get();
+		Semaphore inFlight = new Semaphore(concurrency);
+		AtomicInteger failed = new AtomicInteger();
+		List<CompletableFuture<Response>> futures = new ArrayList<CompletableFuture<Response>>(requests);
+		long start = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			inFlight.acquire();
+			futures.add(fetcher.fetchAsync(request(server, site, i)).whenComplete((response, e) -> {
+				inFlight.release();
+				if (e != null) {
+					failed.incrementAndGet();
+				} else {
+					response.release();
+				}
+			}));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+		long elapsed = System.nanoTime() - start;
+		print(name, requests, failed.get(), elapsed, server.connections.get() - connectionsBefore, server.upgrades.get());
+	}
+
+	/**
+	 * 先单独完成一次请求，h2c升级成功后并发请求才会复用同一个HTTP/2连接
+	 */
+	private static void warmUp(BenchServer server, Site site, Fetcher fetcher) {
+		fetcher.fetch(request(server, site, -1)).release();
+	}
+
+	private static Request request(BenchServer server, Site site, int i) {
+		Request request = Request.create("http://127.0.0.1:" + server.port() + "/item/" + i);
+		request.site(site);
+		return request;
+	}
+
+	private static void print(String name, int requests, int failed, long elapsed, int connections, int upgrades) {
+		System.out.printf("%-20s %d requests (%d failed) : %.0f requests/sec, %d new connections (h2c upgrades so far %d)%n", name,
+				requests, failed, requests * 1e9 / elapsed, connections, upgrades);
+	}
+
+	/**
+	 * 最小的h2c测试服务端
+	 */
+	static class BenchServer implements Closeable {
+
+		private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+		private static final int DATA = 0x0, HEADERS = 0x1, SETTINGS = 0x4, PING = 0x6, GOAWAY = 0x7, WINDOW_UPDATE = 0x8;
+
+		private static final int FLAG_END_STREAM = 0x1, FLAG_ACK = 0x1, FLAG_END_HEADERS = 0x4;
+
+		private final ServerSocket serverSocket;
+
+		private final long latency;
+
+		private final byte[] page;
+
+		private final ExecutorService connectionThreads = Executors.newCachedThreadPool();
+
+		private final ScheduledExecutorService responders = Executors.newScheduledThreadPool(2);
+
+		private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+		final AtomicInteger connections = new AtomicInteger();
+
+		final AtomicInteger upgrades = new AtomicInteger();
+
+		BenchServer(long latency, byte[] page) throws IOException {
+			this.serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+			this.latency = latency;
+			this.page = page;
+			Thread acceptor = new Thread(() -> {
+				while (!serverSocket.isClosed()) {
+					try {
+						Socket socket = serverSocket.accept();
+						socket.setTcpNoDelay(true);
+						connections.incrementAndGet();
+						sockets.add(socket);
+						connectionThreads.execute(() -> serve(socket));
+					} catch (IOException e) {
+						return;
+					}
+				}
+			}, "bench-acceptor");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		int port() {
+			return serverSocket.getLocalPort();
+		}
+
+		private void serve(Socket socket) {
+			try {
+				InputStream in = new BufferedInputStream(socket.getInputStream());
+				OutputStream out = socket.getOutputStream();
+				String head;
+				while ((head = readHead(in)) != null) {
+					if (head.toLowerCase().contains("upgrade: h2c")) {
+						upgrades.incrementAndGet();
+						new H2Connection(in, out).serve();
+						return;
+					}
+					Thread.sleep(latency);
+					String status = "HTTP/1.1 200 OK\r\nContent-Type: text/html\r\nContent-Length: " + page.length + "\r\n\r\n";
+					out.write(status.getBytes(StandardCharsets.US_ASCII));
+					out.write(page);
+					out.flush();
+				}
+			} catch (Exception e) {
+				// 客户端关闭连接
+			} finally {
+				IOUtils.closeQuietly(socket);
+				sockets.remove(socket);
+			}
+		}
+
+		private static String readHead(InputStream in) throws IOException {
+			StringBuilder head = new StringBuilder();
+			int b;
+			while ((b = in.read()) != -1) {
+				head.append((char) b);
+				int n = head.length();
+				if (n >= 4 && head.charAt(n - 4) == '\r' && head.charAt(n - 3) == '\n' && head.charAt(n - 2) == '\r'
+						&& head.charAt(n - 1) == '\n') {
+					return head.toString();
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+			for (Socket socket : sockets) {
+				IOUtils.closeQuietly(socket);
+			}
+			connectionThreads.shutdownNow();
+			responders.shutdownNow();
+		}
+
+		/**
+		 * 一个升级后的HTTP/2连接，只处理SETTINGS、HEADERS、PING、WINDOW_UPDATE、GOAWAY帧
+		 */
+		private class H2Connection {
+
+			private final DataInputStream in;
+
+			private final OutputStream out;
+
+			private long connectionWindow = 65535;
+
+			H2Connection(InputStream in, OutputStream out) {
+				this.in = new DataInputStream(in);
+				this.out = out;
+			}
+
+			void serve() throws Exception {
+				out.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+						.getBytes(StandardCharsets.US_ASCII));
+				// SETTINGS_MAX_CONCURRENT_STREAMS = 1000
+				writeFrame(SETTINGS, 0, 0, new byte[] { 0, 3, 0, 0, 0x03, (byte) 0xe8 });
+				byte[] preface = new byte[PREFACE.length];
+				in.readFully(preface);
+				if (!Arrays.equals(preface, PREFACE)) {
+					throw new IOException("bad connection preface");
+				}
+				// 升级前的请求作为stream 1
+				respondLater(1);
+				while (true) {
+					int length = (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+					int type = in.readUnsignedByte();
+					int flags = in.readUnsignedByte();
+					int stream = in.readInt() & 0x7fffffff;
+					byte[] payload = new byte[length];
+					in.readFully(payload);
+					switch (type) {
+					case SETTINGS:
+						if ((flags & FLAG_ACK) == 0) {
+							writeFrame(SETTINGS, FLAG_ACK, 0, new byte[0]);
+						}
+						break;
+					case HEADERS:
+						respondLater(stream);
+						break;
+					case PING:
+						if ((flags & FLAG_ACK) == 0) {
+							writeFrame(PING, FLAG_ACK, 0, payload);
+						}
+						break;
+					case WINDOW_UPDATE:
+						if (stream == 0) {
+							synchronized (this) {
+								connectionWindow += ((payload[0] & 0x7f) << 24) | ((payload[1] & 0xff) << 16) | ((payload[2] & 0xff) << 8)
+										| (payload[3] & 0xff);
+								notifyAll();
+							}
+						}
+						break;
+					case GOAWAY:
+						return;
+					default:
+						break;
+					}
+				}
+			}
+
+			private void respondLater(int stream) {
+				responders.schedule(() -> {
+					try {
+						respond(stream);
+					} catch (Exception e) {
+						// 连接已关闭
+					}
+				}, latency, TimeUnit.MILLISECONDS);
+			}
+
+			private void respond(int stream) throws Exception {
+				// HPACK：:status 200为静态表第8项；content-type(31)与content-length(28)按不索引的字面值编码
+				byte[] length = String.valueOf(page.length).getBytes(StandardCharsets.US_ASCII);
+				byte[] type = "text/html".getBytes(StandardCharsets.US_ASCII);
+				byte[] block = new byte[1 + 3 + type.length + 3 + length.length];
+				int pos = 0;
+				block[pos++] = (byte) 0x88;
+				block[pos++] = 0x0f;
+				block[pos++] = 0x10;
+				block[pos++] = (byte) type.length;
+				System.arraycopy(type, 0, block, pos, type.length);
+				pos += type.length;
+				block[pos++] = 0x0f;
+				block[pos++] = 0x0d;
+				block[pos++] = (byte) length.length;
+				System.arraycopy(length, 0, block, pos, length.length);
+				synchronized (this) {
+					while (connectionWindow < page.length) {
+						wait();
+					}
+					connectionWindow -= page.length;
+				}
+				synchronized (out) {
+					writeFrame(HEADERS, FLAG_END_HEADERS, stream, block);
+					writeFrame(DATA, FLAG_END_STREAM, stream, page);
+				}
+			}
+
+			private void writeFrame(int type, int flags, int stream, byte[] payload) throws IOException {
+				synchronized (out) {
+					byte[] header = new byte[] { (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+							(byte) type, (byte) flags, (byte) (stream >>> 24), (byte) (stream >>> 16), (byte) (stream >>> 8),
+							(byte) stream };
+					out.write(header);
+					out.write(payload);
+					out.flush();
+				}
+			}
+
+		}
+
+	}
+
+}